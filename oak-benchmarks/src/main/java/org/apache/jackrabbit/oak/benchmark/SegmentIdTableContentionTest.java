@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.jackrabbit.oak.segment.SegmentId;
+import org.apache.jackrabbit.oak.segment.SegmentIdFactory;
+import org.apache.jackrabbit.oak.segment.SegmentStore;
+import org.apache.jackrabbit.oak.segment.SegmentTracker;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Resolves segment identifiers through a {@link SegmentTracker} from many
+ * threads, as it happens when reading from a segment store. Run with
+ * increasing {@code --concurrency} levels and compare the synchronized
+ * segment id tables ({@code -DSegmentIdTableContentionTest=synchronized},
+ * the default) with the lock-free ones
+ * ({@code -DSegmentIdTableContentionTest=concurrent}).
+ */
+public class SegmentIdTableContentionTest extends AbstractTest<Object> {
+
+    private static final String TYPE = System.getProperty("SegmentIdTableContentionTest", "synchronized");
+
+    private static final int SEGMENT_COUNT = Integer.getInteger("segmentCount", 100000);
+
+    private static final int LOOKUPS = 1000000;
+
+    private SegmentTracker tracker;
+
+    private SegmentId[] ids;
+
+    @Override
+    protected void beforeSuite() throws Exception {
+        tracker = new SegmentTracker(new SegmentIdFactory() {
+
+            @NotNull
+            @Override
+            public SegmentId newSegmentId(long msb, long lsb) {
+                return new SegmentId(SegmentStore.EMPTY_STORE, msb, lsb);
+            }
+
+        }, "concurrent".equals(TYPE));
+
+        // Keep the ids strongly referenced, so they are not removed from
+        // the weak references tables of the tracker.
+        ids = new SegmentId[SEGMENT_COUNT];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = tracker.newDataSegmentId();
+        }
+    }
+
+    @Override
+    protected void runTest() throws Exception {
+        Random random = ThreadLocalRandom.current();
+        for (int i = 0; i < LOOKUPS; i++) {
+            SegmentId id = ids[random.nextInt(ids.length)];
+            SegmentId resolved = tracker.newSegmentId(id.getMostSignificantBits(), id.getLeastSignificantBits());
+            if (resolved != id) {
+                throw new IllegalStateException("Segment id " + id + " resolved to a different instance");
+            }
+        }
+    }
+
+    @Override
+    protected void afterSuite() throws Exception {
+        ids = null;
+        tracker = null;
+    }
+
+    @Override
+    protected String comment() {
+        return TYPE;
+    }
+
+}
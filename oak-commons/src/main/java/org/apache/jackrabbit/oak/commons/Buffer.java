@@ -39,8 +39,9 @@ import java.util.zip.CRC32;
  * throws {@link NoSuchMethodError}. In order to prevent occurrences of this
  * exceptions in the future, {@link Buffer} is used consistently in place of
  * {@link ByteBuffer}. Since it is not possible to directly convert a {@link
- * Buffer} into a {@link ByteBuffer} and the other way around, {@link Buffer}
- * makes it less likely to develop dangerous code in the future.
+ * ByteBuffer} into a {@link Buffer}, and a {@link Buffer} only converts into
+ * a read-only view with {@link #toByteBuffer()}, {@link Buffer} makes it less
+ * likely to develop dangerous code in the future.
  */
 final public class Buffer {
 
@@ -78,6 +79,18 @@ final public class Buffer {
         return new Buffer(buffer.asReadOnlyBuffer());
     }
 
+    /**
+     * Returns a read-only {@link ByteBuffer} view of this buffer, e.g. to hand
+     * its content to an I/O library without copying it. The view shares the
+     * content of this buffer and starts with the same position and limit, but
+     * has its own position, limit and mark.
+     *
+     * @return a read-only view of this buffer.
+     */
+    public ByteBuffer toByteBuffer() {
+        return buffer.asReadOnlyBuffer();
+    }
+
     public Buffer position(int pos) {
         ((java.nio.Buffer) buffer).position(pos);
         return this;
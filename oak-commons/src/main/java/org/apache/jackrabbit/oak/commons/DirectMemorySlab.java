@@ -0,0 +1,278 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.commons;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A fixed amount of direct memory divided into blocks of a fixed size. The
+ * memory is allocated in chunks of up to {@link #CHUNK_SIZE} bytes the first
+ * time a block of a chunk is needed, and is kept until this instance is
+ * closed. Released blocks are reused by later allocations, so that no direct
+ * memory is allocated or left to the garbage collector once all chunks are
+ * in use.
+ * <p>
+ * A value is stored in as many blocks as needed, which do not need to be
+ * adjacent. Free blocks are kept in a list linked through the first bytes
+ * of each free block, so that no heap memory is needed to track them.
+ * Allocating and releasing blocks is thread-safe. Reading and writing the
+ * blocks of a value is not synchronized: the caller must ensure the blocks
+ * are not released while they are accessed.
+ */
+public class DirectMemorySlab {
+
+    private static final Logger log = LoggerFactory.getLogger(DirectMemorySlab.class);
+
+    /**
+     * The maximum size of a chunk of direct memory in bytes.
+     */
+    public static final int CHUNK_SIZE = 16 * 1024 * 1024;
+
+    private static final int NO_BLOCK = -1;
+
+    private final int blockSize;
+
+    private final int blocksPerChunk;
+
+    private final Buffer[] chunks;
+
+    private final int numBlocks;
+
+    /**
+     * The first block of the free list or {@link #NO_BLOCK}.
+     */
+    private int freeList = NO_BLOCK;
+
+    /**
+     * The number of blocks in the free list.
+     */
+    private int numFree;
+
+    /**
+     * The number of blocks taken from the chunks so far. Blocks above this
+     * mark were never used and are not in the free list.
+     */
+    private int numUsed;
+
+    private boolean outOfMemory;
+
+    private boolean closed;
+
+    /**
+     * @param size      the amount of direct memory in bytes.
+     * @param blockSize the size of a block in bytes. Must be a divisor of
+     *                  {@link #CHUNK_SIZE} and at least 4 bytes.
+     */
+    public DirectMemorySlab(long size, int blockSize) {
+        checkArgument(size > 0, "size must be positive: %s", size);
+        checkArgument(blockSize >= 4 && CHUNK_SIZE % blockSize == 0,
+                "blockSize must be a divisor of %s and at least 4: %s", CHUNK_SIZE, blockSize);
+        long blocks = Math.max(1, size / blockSize);
+        checkArgument(blocks <= Integer.MAX_VALUE, "size is too large: %s", size);
+        this.blockSize = blockSize;
+        this.blocksPerChunk = CHUNK_SIZE / blockSize;
+        this.numBlocks = (int) blocks;
+        this.chunks = new Buffer[(numBlocks + blocksPerChunk - 1) / blocksPerChunk];
+    }
+
+    /**
+     * @return the size of a block in bytes.
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * @param length a length in bytes.
+     * @return the number of blocks needed to store a value of the given length.
+     */
+    public int getBlockCount(int length) {
+        return Math.max(1, (length + blockSize - 1) / blockSize);
+    }
+
+    /**
+     * Allocate blocks for a value of the given length.
+     *
+     * @param length the length of the value in bytes.
+     * @return the blocks or {@code null} if there are not enough free
+     * blocks or this instance is closed.
+     */
+    @Nullable
+    public synchronized int[] allocate(int length) {
+        int count = getBlockCount(length);
+        if (closed || count > numFree + numBlocks - numUsed) {
+            return null;
+        }
+        int[] blocks = new int[count];
+        int i = 0;
+        try {
+            for (; i < count; i++) {
+                if (freeList != NO_BLOCK) {
+                    blocks[i] = freeList;
+                    freeList = chunk(freeList).getInt(offset(freeList));
+                    numFree--;
+                } else {
+                    blocks[i] = numUsed;
+                    allocateChunk(numUsed);
+                    numUsed++;
+                }
+            }
+        } catch (OutOfMemoryError e) {
+            if (!outOfMemory) {
+                outOfMemory = true;
+                log.warn("Unable to allocate direct memory ({} of {} bytes in use). " +
+                        "Please check -XX:MaxDirectMemorySize.",
+                        (long) numUsed * blockSize, (long) numBlocks * blockSize, e);
+            }
+            release(blocks, i);
+            return null;
+        }
+        return blocks;
+    }
+
+    /**
+     * Release the given blocks. The blocks must not be accessed afterwards.
+     *
+     * @param blocks the blocks to release.
+     */
+    public synchronized void release(int[] blocks) {
+        if (!closed) {
+            release(blocks, blocks.length);
+        }
+    }
+
+    /**
+     * Write the remaining bytes of {@code data} to the given blocks. The
+     * position of {@code data} is not changed.
+     *
+     * @param blocks the blocks to write to.
+     * @param data   the data to write.
+     * @return {@code false} if this instance was closed.
+     */
+    public boolean write(int[] blocks, Buffer data) {
+        Buffer source = data.duplicate();
+        int end = source.limit();
+        for (int b : blocks) {
+            int length = Math.min(blockSize, end - source.position());
+            if (length <= 0) {
+                break;
+            }
+            Buffer chunk = chunks[b / blocksPerChunk];
+            if (chunk == null) {
+                return false;
+            }
+            Buffer target = chunk.duplicate();
+            target.position(offset(b));
+            source.limit(source.position() + length);
+            target.put(source);
+            source.limit(end);
+        }
+        return true;
+    }
+
+    /**
+     * Read {@code length} bytes from the given blocks into {@code data}.
+     *
+     * @param blocks the blocks to read from.
+     * @param length the number of bytes to read.
+     * @param data   the buffer to read into.
+     * @return {@code false} if this instance was closed.
+     */
+    public boolean read(int[] blocks, int length, Buffer data) {
+        int remaining = length;
+        for (int b : blocks) {
+            int n = Math.min(blockSize, remaining);
+            if (n <= 0) {
+                break;
+            }
+            Buffer chunk = chunks[b / blocksPerChunk];
+            if (chunk == null) {
+                return false;
+            }
+            Buffer source = chunk.duplicate();
+            source.position(offset(b));
+            source.limit(offset(b) + n);
+            data.put(source);
+            remaining -= n;
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of bytes in use.
+     */
+    public synchronized long getUsedMemory() {
+        return (long) (numUsed - numFree) * blockSize;
+    }
+
+    /**
+     * @return the maximum number of bytes.
+     */
+    public long getMaxMemory() {
+        return (long) numBlocks * blockSize;
+    }
+
+    /**
+     * Drop all chunks of direct memory. Further allocations fail and reads
+     * and writes of blocks allocated before return {@code false}.
+     */
+    public synchronized void close() {
+        closed = true;
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = null;
+        }
+        freeList = NO_BLOCK;
+        numFree = 0;
+        numUsed = 0;
+    }
+
+    private void release(int[] blocks, int count) {
+        for (int i = 0; i < count; i++) {
+            int b = blocks[i];
+            chunk(b).duplicate().position(offset(b)).putInt(freeList);
+            freeList = b;
+            numFree++;
+        }
+    }
+
+    private Buffer chunk(int block) {
+        return chunks[block / blocksPerChunk];
+    }
+
+    /**
+     * Allocate the chunk of the given block if necessary.
+     */
+    private void allocateChunk(int block) {
+        int index = block / blocksPerChunk;
+        if (chunks[index] == null) {
+            int blocks = Math.min(blocksPerChunk, numBlocks - index * blocksPerChunk);
+            chunks[index] = Buffer.allocateDirect(blocks * blockSize);
+        }
+    }
+
+    private int offset(int block) {
+        return (block % blocksPerChunk) * blockSize;
+    }
+
+}
@@ -23,6 +23,7 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.nio.ReadOnlyBufferException;
 import java.nio.charset.StandardCharsets;
 
@@ -230,4 +231,22 @@ public class BufferTest {
         // Exception thrown here, as the copy is read-only
         buffer2.put(byteArray, 0, 1);
     }
+
+    @Test
+    public void convertToReadOnlyByteBuffer() {
+        String testString = "Test string";
+        Buffer buffer = Buffer.wrap(testString.getBytes(StandardCharsets.UTF_8));
+        buffer.position(5);
+
+        ByteBuffer view = buffer.toByteBuffer();
+        assertTrue(view.isReadOnly());
+        assertEquals(5, view.position());
+        assertEquals(buffer.limit(), view.limit());
+
+        // The view shares the content but not the position
+        view.position(7);
+        assertEquals(5, buffer.position());
+        buffer.put((byte) '-');
+        assertEquals((byte) '-', view.get(5));
+    }
 }
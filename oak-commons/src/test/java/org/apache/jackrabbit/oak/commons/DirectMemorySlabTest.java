@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.commons;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link DirectMemorySlab}
+ */
+public class DirectMemorySlabTest {
+
+    private static final int BLOCK_SIZE = 512;
+
+    private static byte[] read(DirectMemorySlab slab, int[] blocks, int length) {
+        byte[] data = new byte[length];
+        assertTrue(slab.read(blocks, length, Buffer.wrap(data)));
+        return data;
+    }
+
+    @Test
+    public void allocateAndReuseBlocks() {
+        DirectMemorySlab slab = new DirectMemorySlab(8 * BLOCK_SIZE, BLOCK_SIZE);
+        byte[] data = new byte[3 * BLOCK_SIZE + 1];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        int[] first = slab.allocate(data.length);
+        assertNotNull(first);
+        assertEquals(4, first.length);
+        assertTrue(slab.write(first, Buffer.wrap(data)));
+        assertArrayEquals(data, read(slab, first, data.length));
+
+        int[] second = slab.allocate(data.length);
+        assertNotNull(second);
+        // only blocks for 4 * BLOCK_SIZE bytes left
+        assertNull(slab.allocate(data.length));
+        assertEquals(8 * BLOCK_SIZE, slab.getUsedMemory());
+
+        slab.release(second);
+        int[] third = slab.allocate(data.length);
+        assertNotNull(third);
+        assertTrue(slab.write(third, Buffer.wrap(data)));
+        assertArrayEquals(data, read(slab, third, data.length));
+        // the first value is unchanged
+        assertArrayEquals(data, read(slab, first, data.length));
+
+        slab.release(first);
+        slab.release(third);
+        assertEquals(0, slab.getUsedMemory());
+    }
+
+    @Test
+    public void closeDropsMemory() {
+        DirectMemorySlab slab = new DirectMemorySlab(8 * BLOCK_SIZE, BLOCK_SIZE);
+        byte[] data = new byte[BLOCK_SIZE];
+        int[] blocks = slab.allocate(data.length);
+        assertNotNull(blocks);
+
+        slab.close();
+        assertFalse(slab.write(blocks, Buffer.wrap(data)));
+        assertFalse(slab.read(blocks, data.length, Buffer.wrap(data)));
+        assertNull(slab.allocate(data.length));
+        assertEquals(0, slab.getUsedMemory());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void blockSizeMustDivideChunkSize() {
+        new DirectMemorySlab(8 * BLOCK_SIZE, 1000);
+    }
+}
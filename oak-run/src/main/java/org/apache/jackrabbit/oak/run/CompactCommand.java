@@ -56,11 +56,15 @@ class CompactCommand implements Command {
                 .withOptionalArg()
                 .ofType(Boolean.class);
         OptionSpec<String> compactor = parser.accepts("compactor",
-                "Allow the user to control compactor type to be used. Valid choices are \"classic\" and \"diff\". " +
-                        "While the former is slower, it might be more stable, due to lack of optimisations employed " +
-                        "by the \"diff\" compactor which compacts the checkpoints on top of each other. If not " +
-                        "specified, \"diff\" compactor is used.")
+                "Allow the user to control compactor type to be used. Valid choices are \"classic\", \"diff\" " +
+                        "and \"parallel\". While the former is slower, it might be more stable, due to lack of optimisations employed " +
+                        "by the \"diff\" compactor which compacts the checkpoints on top of each other. The \"parallel\" " +
+                        "compactor additionally compacts subtrees concurrently. If not specified, \"diff\" compactor is used.")
                 .withRequiredArg().ofType(String.class);
+        OptionSpec<Integer> threads = parser.accepts("threads",
+                "Number of threads used by the \"parallel\" compactor. If not specified, the number of " +
+                        "available processors is used.")
+                .withRequiredArg().ofType(Integer.class);
         OptionSet options = parser.parse(args);
 
         String path = directoryArg.value(options);
@@ -108,6 +112,10 @@ class CompactCommand implements Command {
                 tarBuilder.withCompactorType(CompactorType.fromDescription(compactor.value(options)));
             }
 
+            if (options.has(threads)) {
+                tarBuilder.withConcurrency(threads.value(options));
+            }
+
             code = tarBuilder
                     .build()
                     .run();
@@ -35,8 +35,11 @@ import java.util.stream.Collectors;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
 import com.amazonaws.services.s3.model.DeleteObjectsRequest.KeyVersion;
 
+import org.apache.jackrabbit.oak.segment.remote.queue.UploadConcurrencyLimit;
 import org.apache.jackrabbit.oak.segment.spi.monitor.FileStoreMonitor;
 import org.apache.jackrabbit.oak.segment.spi.monitor.IOMonitor;
+import org.apache.jackrabbit.oak.segment.spi.monitor.RemoteStoreMonitor;
+import org.apache.jackrabbit.oak.segment.spi.monitor.RemoteStoreMonitorAdapter;
 import org.apache.jackrabbit.oak.segment.spi.persistence.SegmentArchiveManager;
 import org.apache.jackrabbit.oak.segment.spi.persistence.SegmentArchiveReader;
 import org.apache.jackrabbit.oak.segment.spi.persistence.SegmentArchiveWriter;
@@ -55,10 +58,26 @@ public class AwsArchiveManager implements SegmentArchiveManager {
 
     private final FileStoreMonitor monitor;
 
+    private final RemoteStoreMonitor remoteStoreMonitor;
+
+    private final UploadConcurrencyLimit uploadConcurrency;
+
     public AwsArchiveManager(S3Directory directory, IOMonitor ioMonitor, FileStoreMonitor fileStoreMonitor) {
+        this(directory, ioMonitor, fileStoreMonitor, new RemoteStoreMonitorAdapter(), new UploadConcurrencyLimit());
+    }
+
+    /**
+     * Create a new archive manager
+     * @param uploadConcurrency  limit for the number of concurrent segment
+     *                           uploads of the created archive writers
+     */
+    public AwsArchiveManager(S3Directory directory, IOMonitor ioMonitor, FileStoreMonitor fileStoreMonitor,
+            RemoteStoreMonitor remoteStoreMonitor, UploadConcurrencyLimit uploadConcurrency) {
         this.directory = directory;
         this.ioMonitor = ioMonitor;
         this.monitor = fileStoreMonitor;
+        this.remoteStoreMonitor = remoteStoreMonitor;
+        this.uploadConcurrency = uploadConcurrency;
     }
 
     @Override
@@ -105,7 +124,8 @@ public class AwsArchiveManager implements SegmentArchiveManager {
 
     @Override
     public SegmentArchiveWriter create(String archiveName) throws IOException {
-        return new AwsSegmentArchiveWriter(directory.withDirectory(archiveName), archiveName, ioMonitor, monitor);
+        return new AwsSegmentArchiveWriter(directory.withDirectory(archiveName), archiveName, ioMonitor, monitor,
+                remoteStoreMonitor, uploadConcurrency);
     }
 
     @Override
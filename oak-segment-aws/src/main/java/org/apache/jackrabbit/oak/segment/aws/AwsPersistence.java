@@ -18,6 +18,7 @@ package org.apache.jackrabbit.oak.segment.aws;
 
 import java.io.IOException;
 
+import org.apache.jackrabbit.oak.segment.remote.queue.UploadConcurrencyLimit;
 import org.apache.jackrabbit.oak.segment.spi.monitor.FileStoreMonitor;
 import org.apache.jackrabbit.oak.segment.spi.monitor.IOMonitor;
 import org.apache.jackrabbit.oak.segment.spi.monitor.RemoteStoreMonitor;
@@ -36,6 +37,12 @@ public class AwsPersistence implements SegmentNodeStorePersistence {
 
     protected final AwsContext awsContext;
 
+    /**
+     * Shared by the archive writers of this persistence, so the concurrency
+     * learnt while writing an archive is kept for the next one.
+     */
+    protected final UploadConcurrencyLimit uploadConcurrency = new UploadConcurrencyLimit();
+
     public AwsPersistence(AwsContext awsContext) {
         this.awsContext = awsContext;
     }
@@ -44,7 +51,8 @@ public class AwsPersistence implements SegmentNodeStorePersistence {
     public SegmentArchiveManager createArchiveManager(boolean mmap, boolean offHeapAccess, IOMonitor ioMonitor,
             FileStoreMonitor fileStoreMonitor, RemoteStoreMonitor remoteStoreMonitor) {
         awsContext.setRemoteStoreMonitor(remoteStoreMonitor);
-        return new AwsArchiveManager(awsContext.directory, ioMonitor, fileStoreMonitor);
+        return new AwsArchiveManager(awsContext.directory, ioMonitor, fileStoreMonitor, remoteStoreMonitor,
+                uploadConcurrency);
     }
 
     @Override
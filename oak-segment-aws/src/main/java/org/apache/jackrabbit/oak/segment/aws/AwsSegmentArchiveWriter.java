@@ -28,8 +28,10 @@ import com.google.common.base.Stopwatch;
 import org.apache.jackrabbit.oak.commons.Buffer;
 import org.apache.jackrabbit.oak.segment.remote.AbstractRemoteSegmentArchiveWriter;
 import org.apache.jackrabbit.oak.segment.remote.RemoteSegmentArchiveEntry;
+import org.apache.jackrabbit.oak.segment.remote.queue.UploadConcurrencyLimit;
 import org.apache.jackrabbit.oak.segment.spi.monitor.FileStoreMonitor;
 import org.apache.jackrabbit.oak.segment.spi.monitor.IOMonitor;
+import org.apache.jackrabbit.oak.segment.spi.monitor.RemoteStoreMonitor;
 
 public class AwsSegmentArchiveWriter extends AbstractRemoteSegmentArchiveWriter {
 
@@ -44,6 +46,13 @@ public class AwsSegmentArchiveWriter extends AbstractRemoteSegmentArchiveWriter
         this.archiveName = archiveName;
     }
 
+    public AwsSegmentArchiveWriter(S3Directory directory, String archiveName, IOMonitor ioMonitor,
+            FileStoreMonitor monitor, RemoteStoreMonitor remoteStoreMonitor, UploadConcurrencyLimit uploadConcurrency) {
+        super(ioMonitor, monitor, remoteStoreMonitor, uploadConcurrency);
+        this.directory = directory;
+        this.archiveName = archiveName;
+    }
+
     @Override
     public String getName() {
         return archiveName;
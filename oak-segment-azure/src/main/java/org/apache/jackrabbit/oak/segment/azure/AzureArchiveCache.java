@@ -0,0 +1,404 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.segment.azure;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.lang.Thread.currentThread;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.oak.cache.AbstractCacheStats;
+import org.apache.jackrabbit.oak.commons.Buffer;
+import org.apache.jackrabbit.oak.segment.remote.RemoteSegmentArchiveEntry;
+import org.apache.jackrabbit.oak.segment.remote.persistentcache.PersistentDiskCache;
+import org.apache.jackrabbit.oak.segment.spi.monitor.IOMonitor;
+import org.apache.jackrabbit.oak.segment.spi.monitor.IOMonitorAdapter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A local, file backed tier for the archives of an {@link AzurePersistence}.
+ * <p>
+ * Archives are immutable once closed. The first time a closed archive is
+ * opened its index, graph and binary references are stored in a local
+ * directory, so opening it again, e.g. on a cold start of another instance
+ * sharing the directory or after a restart, does not need to list or
+ * download any blobs. Segments are kept in a {@link PersistentDiskCache}
+ * limited in size. When a segment has to be fetched from Azure the
+ * following entries of its archive are fetched ahead in the background,
+ * as segments written together tend to be read together.
+ * <p>
+ * The size limit only applies to the segments. The index, graph and binary
+ * references of the archives are small in comparison and are removed when
+ * the respective archive is deleted through the {@link AzureArchiveManager}.
+ * <p>
+ * Archives are identified by the URI of their directory, which includes the
+ * storage account, the container and the root path of the segment store.
+ * Archive names are only unique within a segment store, so the same local
+ * directory can be shared by several segment stores.
+ */
+public class AzureArchiveCache implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(AzureArchiveCache.class);
+
+    /**
+     * Number of entries following a missed segment to fetch ahead.
+     */
+    static final int READ_AHEAD = Integer.getInteger("segment.azure.cache.readAhead", 4);
+
+    /**
+     * Number of threads fetching segments ahead.
+     */
+    private static final int READ_AHEAD_THREADS = Integer.getInteger("segment.azure.cache.readAheadThreads", 4);
+
+    /**
+     * Maximum number of segments waiting to be fetched ahead. Further
+     * requests are dropped.
+     */
+    private static final int READ_AHEAD_QUEUE_SIZE = 1024;
+
+    static final String INDEX_FILE_NAME = "index.dat";
+
+    private static final int INDEX_MAGIC = 0x0A415A49;
+
+    private static final int INDEX_VERSION = 1;
+
+    /**
+     * Suffix of the marker recording that an archive doesn't contain a data
+     * file, e.g. a graph.
+     */
+    private static final String ABSENT_SUFFIX = ".absent";
+
+    /**
+     * Loads a data file of an archive from Azure.
+     */
+    interface DataFileLoader {
+
+        @Nullable
+        Buffer load() throws IOException;
+    }
+
+    /**
+     * Loads a segment of an archive from Azure.
+     */
+    interface SegmentLoader {
+
+        @NotNull
+        Buffer load(@NotNull RemoteSegmentArchiveEntry entry) throws IOException;
+    }
+
+    /**
+     * The locally stored index of an archive.
+     */
+    static class Index {
+
+        @NotNull
+        final List<RemoteSegmentArchiveEntry> entries;
+
+        final long length;
+
+        Index(@NotNull List<RemoteSegmentArchiveEntry> entries, long length) {
+            this.entries = entries;
+            this.length = length;
+        }
+    }
+
+    @NotNull
+    private final File archivesDirectory;
+
+    @NotNull
+    private final PersistentDiskCache segmentCache;
+
+    @NotNull
+    private final ThreadPoolExecutor readAheadExecutor;
+
+    /**
+     * Segments scheduled to be fetched ahead.
+     */
+    private final Set<UUID> readAheadPending = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Create a new instance
+     * @param directory  local directory of the cache
+     * @param maxSizeMB  maximum size of the cached segments in MB
+     */
+    public AzureArchiveCache(@NotNull File directory, int maxSizeMB) {
+        this(directory, maxSizeMB, new IOMonitorAdapter());
+    }
+
+    /**
+     * Create a new instance
+     * @param directory  local directory of the cache
+     * @param maxSizeMB  maximum size of the cached segments in MB
+     * @param ioMonitor  monitor for the IO of the segment cache
+     */
+    public AzureArchiveCache(@NotNull File directory, int maxSizeMB, @NotNull IOMonitor ioMonitor) {
+        checkArgument(maxSizeMB > 0, "maxSizeMB must be positive");
+        this.archivesDirectory = new File(directory, "archives");
+        this.segmentCache = new PersistentDiskCache(new File(directory, "segments"), maxSizeMB, ioMonitor);
+        this.readAheadExecutor = new ThreadPoolExecutor(READ_AHEAD_THREADS, READ_AHEAD_THREADS, 60, SECONDS,
+                new ArrayBlockingQueue<>(READ_AHEAD_QUEUE_SIZE), r -> {
+                    Thread thread = new Thread(r, "azure-archive-read-ahead");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.readAheadExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return  statistics of the segments served from this cache
+     */
+    @NotNull
+    public AbstractCacheStats getSegmentCacheStats() {
+        return segmentCache.getCacheStats();
+    }
+
+    /**
+     * Read the locally stored index of an archive.
+     * @param archiveUri   URI of the directory of the archive
+     * @param archiveName  name of the archive
+     * @return  the index or {@code null} if the index of the archive hasn't
+     *          been stored yet or can't be read.
+     */
+    @Nullable
+    Index readIndex(@NotNull URI archiveUri, @NotNull String archiveName) {
+        File file = new File(getArchiveDirectory(archiveUri, archiveName), INDEX_FILE_NAME);
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_VERSION) {
+                log.warn("Ignoring local index of {} with an unknown format", archiveName);
+                return null;
+            }
+            long length = in.readLong();
+            int count = in.readInt();
+            List<RemoteSegmentArchiveEntry> entries = new ArrayList<>(count);
+            for (int k = 0; k < count; k++) {
+                entries.add(new RemoteSegmentArchiveEntry(
+                        in.readLong(), in.readLong(), in.readInt(), in.readInt(),
+                        in.readInt(), in.readInt(), in.readBoolean()));
+            }
+            return new Index(entries, length);
+        } catch (IOException e) {
+            log.warn("Can't read the local index of {}", archiveName, e);
+            return null;
+        }
+    }
+
+    /**
+     * Store the index of a closed archive locally.
+     */
+    void writeIndex(@NotNull URI archiveUri, @NotNull String archiveName, @NotNull Collection<RemoteSegmentArchiveEntry> entries, long length) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(INDEX_VERSION);
+            out.writeLong(length);
+            out.writeInt(entries.size());
+            for (RemoteSegmentArchiveEntry entry : entries) {
+                out.writeLong(entry.getMsb());
+                out.writeLong(entry.getLsb());
+                out.writeInt(entry.getPosition());
+                out.writeInt(entry.getLength());
+                out.writeInt(entry.getGeneration());
+                out.writeInt(entry.getFullGeneration());
+                out.writeBoolean(entry.isCompacted());
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        write(archiveUri, archiveName, INDEX_FILE_NAME, bytes.toByteArray());
+    }
+
+    /**
+     * Read a data file of a closed archive from the local directory, loading
+     * and storing it through {@code loader} if it isn't stored yet.
+     * @param archiveUri   URI of the directory of the archive
+     * @param archiveName  name of the archive
+     * @param extension    extension of the data file
+     * @param loader       loader reading the data file from Azure
+     * @return  the data file or {@code null} if the archive doesn't contain it
+     */
+    @Nullable
+    Buffer readDataFile(@NotNull URI archiveUri, @NotNull String archiveName, @NotNull String extension,
+            @NotNull DataFileLoader loader) throws IOException {
+        File directory = getArchiveDirectory(archiveUri, archiveName);
+        File file = new File(directory, archiveName + extension);
+        if (new File(directory, archiveName + extension + ABSENT_SUFFIX).exists()) {
+            return null;
+        }
+        if (file.exists()) {
+            try {
+                return Buffer.wrap(Files.readAllBytes(file.toPath()));
+            } catch (IOException e) {
+                log.warn("Can't read the local copy of {}{}", archiveName, extension, e);
+            }
+        }
+
+        Buffer buffer = loader.load();
+        if (buffer == null) {
+            write(archiveUri, archiveName, archiveName + extension + ABSENT_SUFFIX, new byte[0]);
+        } else {
+            byte[] data = new byte[buffer.remaining()];
+            buffer.duplicate().get(data);
+            write(archiveUri, archiveName, archiveName + extension, data);
+        }
+        return buffer;
+    }
+
+    /**
+     * @return  the cached segment or {@code null} if not cached
+     */
+    @Nullable
+    Buffer readSegment(long msb, long lsb) {
+        return segmentCache.readSegment(msb, lsb, () -> null);
+    }
+
+    /**
+     * @return  {@code true} if the segment is cached
+     */
+    boolean containsSegment(long msb, long lsb) {
+        return segmentCache.containsSegment(msb, lsb);
+    }
+
+    /**
+     * Asynchronously add a segment fetched from Azure to this cache.
+     */
+    void writeSegment(long msb, long lsb, @NotNull Buffer buffer) {
+        segmentCache.writeSegment(msb, lsb, buffer);
+    }
+
+    /**
+     * Schedule fetching the passed entries into this cache unless they are
+     * cached already. Requests exceeding the capacity of the read ahead
+     * queue are dropped.
+     */
+    void readAhead(@NotNull Collection<RemoteSegmentArchiveEntry> entries, @NotNull SegmentLoader loader) {
+        for (RemoteSegmentArchiveEntry entry : entries) {
+            UUID uuid = new UUID(entry.getMsb(), entry.getLsb());
+            if (containsSegment(entry.getMsb(), entry.getLsb()) || !readAheadPending.add(uuid)) {
+                continue;
+            }
+            try {
+                readAheadExecutor.execute(() -> {
+                    try {
+                        if (!containsSegment(entry.getMsb(), entry.getLsb())) {
+                            writeSegment(entry.getMsb(), entry.getLsb(), loader.load(entry));
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        log.debug("Can't read segment {} ahead", uuid, e);
+                    } finally {
+                        readAheadPending.remove(uuid);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                readAheadPending.remove(uuid);
+            }
+        }
+    }
+
+    /**
+     * Remove the locally stored index and data files of an archive. This
+     * method should be called whenever an archive is deleted or renamed.
+     * Cached segments are left to be evicted eventually.
+     */
+    void invalidate(@NotNull URI archiveUri, @NotNull String archiveName) {
+        File directory = getArchiveDirectory(archiveUri, archiveName);
+        if (directory.exists() && !FileUtils.deleteQuietly(directory)) {
+            log.warn("Can't delete the local copy of {}", archiveName);
+        }
+    }
+
+    /**
+     * Discard pending read ahead requests and close the segment cache.
+     */
+    @Override
+    public void close() {
+        readAheadExecutor.getQueue().clear();
+        readAheadExecutor.shutdown();
+        try {
+            if (!readAheadExecutor.awaitTermination(60, SECONDS)) {
+                log.warn("Timeout waiting for reading ahead to complete");
+            }
+        } catch (InterruptedException e) {
+            log.warn("Interrupted while waiting for reading ahead to complete");
+            currentThread().interrupt();
+        }
+        segmentCache.close();
+    }
+
+    /**
+     * The local directory of an archive is named after the archive and a
+     * name based UUID of the URI of its directory in Azure.
+     */
+    private File getArchiveDirectory(URI archiveUri, String archiveName) {
+        UUID location = UUID.nameUUIDFromBytes(archiveUri.toString().getBytes(UTF_8));
+        return new File(archivesDirectory, archiveName + "." + location);
+    }
+
+    /**
+     * Write a file to the local directory of an archive, replacing it
+     * atomically so concurrent readers never see a partial file. Failures
+     * are logged, as the file can always be loaded from Azure again.
+     */
+    private void write(URI archiveUri, String archiveName, String fileName, byte[] data) {
+        File directory = getArchiveDirectory(archiveUri, archiveName);
+        File file = new File(directory, fileName);
+        File temp = new File(directory, fileName + "." + UUID.randomUUID() + ".part");
+        try {
+            Files.createDirectories(directory.toPath());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp.toPath())))) {
+                out.write(data);
+            }
+            try {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            log.warn("Can't store {} of {} locally", fileName, archiveName, e);
+            FileUtils.deleteQuietly(temp);
+        }
+    }
+}
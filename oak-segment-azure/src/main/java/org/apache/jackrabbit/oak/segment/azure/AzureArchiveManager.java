@@ -24,11 +24,15 @@ import com.microsoft.azure.storage.blob.CloudBlockBlob;
 import com.microsoft.azure.storage.blob.CopyStatus;
 import org.apache.jackrabbit.oak.segment.spi.persistence.SegmentArchiveManager;
 import org.apache.jackrabbit.oak.segment.remote.RemoteUtilities;
+import org.apache.jackrabbit.oak.segment.remote.queue.UploadConcurrencyLimit;
 import org.apache.jackrabbit.oak.segment.spi.monitor.FileStoreMonitor;
 import org.apache.jackrabbit.oak.segment.spi.monitor.IOMonitor;
+import org.apache.jackrabbit.oak.segment.spi.monitor.RemoteStoreMonitor;
+import org.apache.jackrabbit.oak.segment.spi.monitor.RemoteStoreMonitorAdapter;
 import org.apache.jackrabbit.oak.segment.spi.persistence.SegmentArchiveReader;
 import org.apache.jackrabbit.oak.segment.spi.persistence.SegmentArchiveWriter;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -62,10 +66,48 @@ public class AzureArchiveManager implements SegmentArchiveManager {
 
     protected final FileStoreMonitor monitor;
 
+    protected final RemoteStoreMonitor remoteStoreMonitor;
+
+    @Nullable
+    protected final AzureArchiveCache archiveCache;
+
+    protected final UploadConcurrencyLimit uploadConcurrency;
+
     public AzureArchiveManager(CloudBlobDirectory cloudBlobDirectory, IOMonitor ioMonitor, FileStoreMonitor fileStoreMonitor) {
+        this(cloudBlobDirectory, ioMonitor, fileStoreMonitor, new RemoteStoreMonitorAdapter());
+    }
+
+    public AzureArchiveManager(CloudBlobDirectory cloudBlobDirectory, IOMonitor ioMonitor, FileStoreMonitor fileStoreMonitor,
+            RemoteStoreMonitor remoteStoreMonitor) {
+        this(cloudBlobDirectory, ioMonitor, fileStoreMonitor, remoteStoreMonitor, null);
+    }
+
+    /**
+     * Create a new archive manager
+     * @param archiveCache  local tier for reading closed archives or
+     *                      {@code null} to always read from Azure
+     */
+    public AzureArchiveManager(CloudBlobDirectory cloudBlobDirectory, IOMonitor ioMonitor, FileStoreMonitor fileStoreMonitor,
+            RemoteStoreMonitor remoteStoreMonitor, @Nullable AzureArchiveCache archiveCache) {
+        this(cloudBlobDirectory, ioMonitor, fileStoreMonitor, remoteStoreMonitor, archiveCache, new UploadConcurrencyLimit());
+    }
+
+    /**
+     * Create a new archive manager
+     * @param archiveCache       local tier for reading closed archives or
+     *                           {@code null} to always read from Azure
+     * @param uploadConcurrency  limit for the number of concurrent segment
+     *                           uploads of the created archive writers
+     */
+    public AzureArchiveManager(CloudBlobDirectory cloudBlobDirectory, IOMonitor ioMonitor, FileStoreMonitor fileStoreMonitor,
+            RemoteStoreMonitor remoteStoreMonitor, @Nullable AzureArchiveCache archiveCache,
+            UploadConcurrencyLimit uploadConcurrency) {
         this.cloudBlobDirectory = cloudBlobDirectory;
         this.ioMonitor = ioMonitor;
         this.monitor = fileStoreMonitor;
+        this.remoteStoreMonitor = remoteStoreMonitor;
+        this.archiveCache = archiveCache;
+        this.uploadConcurrency = uploadConcurrency;
     }
 
     @Override
@@ -113,7 +155,7 @@ public class AzureArchiveManager implements SegmentArchiveManager {
             if (!archiveDirectory.getBlockBlobReference("closed").exists()) {
                 throw new IOException("The archive " + archiveName + " hasn't been closed correctly.");
             }
-            return new AzureSegmentArchiveReader(archiveDirectory, ioMonitor);
+            return new AzureSegmentArchiveReader(archiveDirectory, ioMonitor, archiveCache);
         } catch (StorageException | URISyntaxException e) {
             throw new IOException(e);
         }
@@ -127,11 +169,12 @@ public class AzureArchiveManager implements SegmentArchiveManager {
 
     @Override
     public SegmentArchiveWriter create(String archiveName) throws IOException {
-        return new AzureSegmentArchiveWriter(getDirectory(archiveName), ioMonitor, monitor);
+        return new AzureSegmentArchiveWriter(getDirectory(archiveName), ioMonitor, monitor, remoteStoreMonitor, uploadConcurrency);
     }
 
     @Override
     public boolean delete(String archiveName) {
+        invalidateArchiveCache(archiveName);
         try {
             getBlobs(archiveName)
                     .forEach(cloudBlob -> {
@@ -150,6 +193,7 @@ public class AzureArchiveManager implements SegmentArchiveManager {
 
     @Override
     public boolean renameTo(String from, String to) {
+        invalidateArchiveCache(from);
         try {
             CloudBlobDirectory targetDirectory = getDirectory(to);
             getBlobs(from)
@@ -229,6 +273,7 @@ public class AzureArchiveManager implements SegmentArchiveManager {
     }
 
     private void delete(String archiveName, Set<UUID> recoveredEntries) throws IOException {
+        invalidateArchiveCache(archiveName);
         getBlobs(archiveName)
                 .forEach(cloudBlob -> {
                     if (!recoveredEntries.contains(RemoteUtilities.getSegmentUUID(getName(cloudBlob)))) {
@@ -260,6 +305,16 @@ public class AzureArchiveManager implements SegmentArchiveManager {
         }
     }
 
+    private void invalidateArchiveCache(String archiveName) {
+        if (archiveCache != null) {
+            try {
+                archiveCache.invalidate(getDirectory(archiveName).getUri(), archiveName);
+            } catch (IOException e) {
+                log.warn("Can't invalidate the local copy of {}", archiveName, e);
+            }
+        }
+    }
+
     private List<CloudBlob> getBlobs(String archiveName) throws IOException {
         return AzureUtilities.getBlobs(getDirectory(archiveName));
     }
@@ -34,6 +34,7 @@ import com.microsoft.azure.storage.blob.CloudAppendBlob;
 import com.microsoft.azure.storage.blob.CloudBlobDirectory;
 import com.microsoft.azure.storage.blob.CloudBlockBlob;
 import com.microsoft.azure.storage.blob.ListBlobItem;
+import org.apache.jackrabbit.oak.segment.remote.queue.UploadConcurrencyLimit;
 import org.apache.jackrabbit.oak.segment.spi.monitor.FileStoreMonitor;
 import org.apache.jackrabbit.oak.segment.spi.monitor.IOMonitor;
 import org.apache.jackrabbit.oak.segment.spi.monitor.RemoteStoreMonitor;
@@ -43,6 +44,7 @@ import org.apache.jackrabbit.oak.segment.spi.persistence.ManifestFile;
 import org.apache.jackrabbit.oak.segment.spi.persistence.RepositoryLock;
 import org.apache.jackrabbit.oak.segment.spi.persistence.SegmentArchiveManager;
 import org.apache.jackrabbit.oak.segment.spi.persistence.SegmentNodeStorePersistence;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -60,8 +62,28 @@ public class AzurePersistence implements SegmentNodeStorePersistence {
 
     protected final CloudBlobDirectory segmentstoreDirectory;
 
+    @Nullable
+    protected final AzureArchiveCache archiveCache;
+
+    /**
+     * Shared by the archive writers of this persistence, so the concurrency
+     * learnt while writing an archive is kept for the next one.
+     */
+    protected final UploadConcurrencyLimit uploadConcurrency = new UploadConcurrencyLimit();
+
     public AzurePersistence(CloudBlobDirectory segmentStoreDirectory) {
+        this(segmentStoreDirectory, null);
+    }
+
+    /**
+     * Create a new persistence
+     * @param segmentStoreDirectory  directory of the segment store
+     * @param archiveCache           local tier for reading closed archives or
+     *                               {@code null} to always read from Azure
+     */
+    public AzurePersistence(CloudBlobDirectory segmentStoreDirectory, @Nullable AzureArchiveCache archiveCache) {
         this.segmentstoreDirectory = segmentStoreDirectory;
+        this.archiveCache = archiveCache;
 
         BlobRequestOptions defaultRequestOptions = segmentStoreDirectory.getServiceClient().getDefaultRequestOptions();
         if (defaultRequestOptions.getRetryPolicyFactory() == null) {
@@ -84,7 +106,8 @@ public class AzurePersistence implements SegmentNodeStorePersistence {
     @Override
     public SegmentArchiveManager createArchiveManager(boolean mmap, boolean offHeapAccess, IOMonitor ioMonitor, FileStoreMonitor fileStoreMonitor, RemoteStoreMonitor remoteStoreMonitor) {
         attachRemoteStoreMonitor(remoteStoreMonitor);
-        return new AzureArchiveManager(segmentstoreDirectory, ioMonitor, fileStoreMonitor);
+        return new AzureArchiveManager(segmentstoreDirectory, ioMonitor, fileStoreMonitor, remoteStoreMonitor, archiveCache,
+                uploadConcurrency);
     }
 
     @Override
@@ -21,6 +21,10 @@ import static org.apache.jackrabbit.oak.segment.azure.AzureUtilities.readBufferF
 import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -33,17 +37,49 @@ import org.apache.jackrabbit.oak.commons.Buffer;
 import org.apache.jackrabbit.oak.segment.remote.AbstractRemoteSegmentArchiveReader;
 import org.apache.jackrabbit.oak.segment.remote.RemoteSegmentArchiveEntry;
 import org.apache.jackrabbit.oak.segment.spi.monitor.IOMonitor;
+import org.jetbrains.annotations.Nullable;
 
 public class AzureSegmentArchiveReader extends AbstractRemoteSegmentArchiveReader {
 
     private final CloudBlobDirectory archiveDirectory;
 
+    /**
+     * Local tier for reading this archive or {@code null} if none.
+     */
+    @Nullable
+    private final AzureArchiveCache cache;
+
     private final long length;
 
+    /**
+     * The entries of the index ordered by their position in the archive.
+     * Only used for reading ahead with a {@link #cache}.
+     */
+    private final List<RemoteSegmentArchiveEntry> entries;
+
     AzureSegmentArchiveReader(CloudBlobDirectory archiveDirectory, IOMonitor ioMonitor) throws IOException {
+        this(archiveDirectory, ioMonitor, null);
+    }
+
+    /**
+     * Create a new reader for an archive.
+     * @param archiveDirectory  directory of the archive
+     * @param ioMonitor         monitor for reads from Azure
+     * @param cache             local tier for reading the archive or {@code null}
+     *                          for none. Must only be passed for closed archives.
+     */
+    AzureSegmentArchiveReader(CloudBlobDirectory archiveDirectory, IOMonitor ioMonitor, @Nullable AzureArchiveCache cache)
+            throws IOException {
         super(ioMonitor);
         this.archiveDirectory = archiveDirectory;
+        this.cache = cache;
         this.length = computeArchiveIndexAndLength();
+        if (cache != null) {
+            entries = new ArrayList<>(index.values());
+            entries.sort(Comparator.comparingInt(RemoteSegmentArchiveEntry::getPosition));
+        } else {
+            entries = Collections.emptyList();
+        }
     }
 
     @Override
@@ -56,8 +92,48 @@ public class AzureSegmentArchiveReader extends AbstractRemoteSegmentArchiveReade
         return AzureUtilities.getName(archiveDirectory);
     }
 
+    @Override
+    public Buffer readSegment(long msb, long lsb) throws IOException {
+        if (cache == null) {
+            return super.readSegment(msb, lsb);
+        }
+        RemoteSegmentArchiveEntry indexEntry = index.get(new UUID(msb, lsb));
+        if (indexEntry == null) {
+            return null;
+        }
+        Buffer buffer = cache.readSegment(msb, lsb);
+        if (buffer == null) {
+            buffer = super.readSegment(msb, lsb);
+            cache.writeSegment(msb, lsb, buffer);
+            cache.readAhead(getFollowingEntries(indexEntry), this::readEntry);
+        }
+        return buffer;
+    }
+
+    private List<RemoteSegmentArchiveEntry> getFollowingEntries(RemoteSegmentArchiveEntry indexEntry) {
+        int k = Collections.binarySearch(entries, indexEntry, Comparator.comparingInt(RemoteSegmentArchiveEntry::getPosition));
+        if (k < 0) {
+            return Collections.emptyList();
+        }
+        return entries.subList(k + 1, Math.min(entries.size(), k + 1 + AzureArchiveCache.READ_AHEAD));
+    }
+
+    private Buffer readEntry(RemoteSegmentArchiveEntry indexEntry) throws IOException {
+        return super.readSegment(indexEntry.getMsb(), indexEntry.getLsb());
+    }
+
     @Override
     protected long computeArchiveIndexAndLength() throws IOException {
+        if (cache != null) {
+            AzureArchiveCache.Index cached = cache.readIndex(archiveDirectory.getUri(), getName());
+            if (cached != null) {
+                for (RemoteSegmentArchiveEntry indexEntry : cached.entries) {
+                    index.put(new UUID(indexEntry.getMsb(), indexEntry.getLsb()), indexEntry);
+                }
+                return cached.length;
+            }
+        }
+
         long length = 0;
         for (CloudBlob blob : AzureUtilities.getBlobs(archiveDirectory)) {
             Map<String, String> metadata = blob.getMetadata();
@@ -68,6 +144,9 @@ public class AzureSegmentArchiveReader extends AbstractRemoteSegmentArchiveReade
             length += blob.getProperties().getLength();
         }
 
+        if (cache != null) {
+            cache.writeIndex(archiveDirectory.getUri(), getName(), index.values(), length);
+        }
         return length;
     }
 
@@ -78,6 +157,9 @@ public class AzureSegmentArchiveReader extends AbstractRemoteSegmentArchiveReade
 
     @Override
     protected Buffer doReadDataFile(String extension) throws IOException {
+        if (cache != null) {
+            return cache.readDataFile(archiveDirectory.getUri(), getName(), extension, () -> readBlob(getName() + extension));
+        }
         return readBlob(getName() + extension);
     }
 
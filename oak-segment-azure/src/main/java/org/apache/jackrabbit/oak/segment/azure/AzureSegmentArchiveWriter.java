@@ -33,8 +33,10 @@ import com.microsoft.azure.storage.blob.CloudBlockBlob;
 import org.apache.jackrabbit.oak.commons.Buffer;
 import org.apache.jackrabbit.oak.segment.remote.AbstractRemoteSegmentArchiveWriter;
 import org.apache.jackrabbit.oak.segment.remote.RemoteSegmentArchiveEntry;
+import org.apache.jackrabbit.oak.segment.remote.queue.UploadConcurrencyLimit;
 import org.apache.jackrabbit.oak.segment.spi.monitor.FileStoreMonitor;
 import org.apache.jackrabbit.oak.segment.spi.monitor.IOMonitor;
+import org.apache.jackrabbit.oak.segment.spi.monitor.RemoteStoreMonitor;
 
 public class AzureSegmentArchiveWriter extends AbstractRemoteSegmentArchiveWriter {
 
@@ -45,6 +47,12 @@ public class AzureSegmentArchiveWriter extends AbstractRemoteSegmentArchiveWrite
         this.archiveDirectory = archiveDirectory;
     }
 
+    public AzureSegmentArchiveWriter(CloudBlobDirectory archiveDirectory, IOMonitor ioMonitor, FileStoreMonitor monitor,
+            RemoteStoreMonitor remoteStoreMonitor, UploadConcurrencyLimit uploadConcurrency) {
+        super(ioMonitor, monitor, remoteStoreMonitor, uploadConcurrency);
+        this.archiveDirectory = archiveDirectory;
+    }
+
     @Override
     public String getName() {
         return AzureUtilities.getName(archiveDirectory);
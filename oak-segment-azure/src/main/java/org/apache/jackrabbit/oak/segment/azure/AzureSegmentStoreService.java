@@ -31,6 +31,7 @@ import org.osgi.service.component.annotations.Deactivate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.security.InvalidKeyException;
@@ -47,13 +48,22 @@ public class AzureSegmentStoreService {
 
     public static final String DEFAULT_ROOT_PATH = "/oak";
 
+    public static final int DEFAULT_LOCAL_CACHE_SIZE_MB = 1024;
+
     private ServiceRegistration registration;
 
     private SegmentNodeStorePersistence persistence;
 
+    private AzureArchiveCache archiveCache;
+
     @Activate
     public void activate(ComponentContext context, Configuration config) throws IOException {
-        persistence = createAzurePersistence(config);
+        String localCachePath = config.localCachePath();
+        if (localCachePath != null && !localCachePath.trim().isEmpty()) {
+            log.info("Using local archive cache at {} with {} MB", localCachePath, config.localCacheSizeMB());
+            archiveCache = new AzureArchiveCache(new File(localCachePath.trim()), config.localCacheSizeMB());
+        }
+        persistence = createAzurePersistence(config, archiveCache);
         registration = context.getBundleContext().registerService(SegmentNodeStorePersistence.class.getName(), persistence, new Properties());
     }
 
@@ -64,9 +74,14 @@ public class AzureSegmentStoreService {
             registration = null;
         }
         persistence = null;
+        if (archiveCache != null) {
+            archiveCache.close();
+            archiveCache = null;
+        }
     }
 
-    private static SegmentNodeStorePersistence createAzurePersistence(Configuration configuration) throws IOException {
+    private static SegmentNodeStorePersistence createAzurePersistence(Configuration configuration,
+            AzureArchiveCache archiveCache) throws IOException {
         try {
             StringBuilder connectionString = new StringBuilder();
             if (configuration.connectionURL() == null || configuration.connectionURL().trim().isEmpty()) {
@@ -86,7 +101,7 @@ public class AzureSegmentStoreService {
                 path = path.substring(1);
             }
 
-            AzurePersistence persistence = new AzurePersistence(container.getDirectoryReference(path));
+            AzurePersistence persistence = new AzurePersistence(container.getDirectoryReference(path), archiveCache);
             return persistence;
         } catch (StorageException | URISyntaxException | InvalidKeyException e) {
             throw new IOException(e);
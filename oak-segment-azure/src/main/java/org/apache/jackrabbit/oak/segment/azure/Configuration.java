@@ -56,4 +56,15 @@ import static org.apache.jackrabbit.oak.segment.azure.Configuration.PID;
             description = "Connection string to be used to connect to the Azure Storage. " +
                     "Setting it will override the accountName and accessKey properties.")
     String connectionURL() default "";
-}
\ No newline at end of file
+
+    @AttributeDefinition(
+            name = "Local archive cache path (optional)",
+            description = "Local directory for caching the index, the binary references and the segments of " +
+                    "the archives. The local cache is disabled if empty.")
+    String localCachePath() default "";
+
+    @AttributeDefinition(
+            name = "Local archive cache size (MB)",
+            description = "Maximum size of the segments kept in the local archive cache.")
+    int localCacheSizeMB() default AzureSegmentStoreService.DEFAULT_LOCAL_CACHE_SIZE_MB;
+}
@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.segment.azure;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.security.InvalidKeyException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import com.microsoft.azure.storage.StorageException;
+import com.microsoft.azure.storage.blob.CloudBlob;
+import com.microsoft.azure.storage.blob.CloudBlobContainer;
+import org.apache.jackrabbit.oak.commons.Buffer;
+import org.apache.jackrabbit.oak.segment.spi.monitor.FileStoreMonitorAdapter;
+import org.apache.jackrabbit.oak.segment.spi.monitor.IOMonitorAdapter;
+import org.apache.jackrabbit.oak.segment.spi.monitor.RemoteStoreMonitorAdapter;
+import org.apache.jackrabbit.oak.segment.spi.persistence.SegmentArchiveManager;
+import org.apache.jackrabbit.oak.segment.spi.persistence.SegmentArchiveReader;
+import org.apache.jackrabbit.oak.segment.spi.persistence.SegmentArchiveWriter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AzureArchiveCacheTest {
+
+    private static final String ARCHIVE_NAME = "data00000a.tar";
+
+    @ClassRule
+    public static AzuriteDockerRule azurite = new AzuriteDockerRule();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder(new File("target"));
+
+    private CloudBlobContainer container;
+
+    private AzureArchiveCache cache;
+
+    private SegmentArchiveManager manager;
+
+    private final List<UUID> segments = new ArrayList<>();
+
+    @Before
+    public void setup() throws StorageException, InvalidKeyException, URISyntaxException, IOException {
+        container = azurite.getContainer("oak-test");
+        cache = new AzureArchiveCache(folder.newFolder(), 16);
+        manager = new AzurePersistence(container.getDirectoryReference("oak"), cache)
+                .createArchiveManager(false, false, new IOMonitorAdapter(), new FileStoreMonitorAdapter(), new RemoteStoreMonitorAdapter());
+
+        SegmentArchiveWriter writer = manager.create(ARCHIVE_NAME);
+        for (int i = 0; i < 10; i++) {
+            UUID uuid = UUID.randomUUID();
+            writer.writeSegment(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), segmentData(i), 0, 10, 0, 0, false);
+            segments.add(uuid);
+        }
+        writer.writeBinaryReferences(new byte[] {1, 2, 3});
+        writer.flush();
+        writer.close();
+    }
+
+    @After
+    public void tearDown() {
+        cache.close();
+    }
+
+    @Test
+    public void testServeClosedArchiveLocally() throws Exception {
+        SegmentArchiveReader reader = manager.open(ARCHIVE_NAME);
+        assertEquals(10, reader.listSegments().size());
+        assertArrayEquals(new byte[] {1, 2, 3}, toArray(reader.getBinaryReferences()));
+        assertFalse(reader.hasGraph());
+
+        // Reading the first segment fetches the following ones ahead
+        UUID first = segments.get(0);
+        assertArrayEquals(segmentData(0), toArray(reader.readSegment(first.getMostSignificantBits(), first.getLeastSignificantBits())));
+        for (int i = 0; i <= AzureArchiveCache.READ_AHEAD && i < segments.size(); i++) {
+            awaitCached(segments.get(i));
+        }
+
+        // Remove all the blobs but the marker of the closed archive
+        for (CloudBlob blob : AzureUtilities.getBlobs(container.getDirectoryReference("oak/" + ARCHIVE_NAME))) {
+            if (!"closed".equals(AzureUtilities.getName(blob))) {
+                blob.delete();
+            }
+        }
+
+        // The index, the data files and the cached segments are still available
+        SegmentArchiveReader cached = manager.open(ARCHIVE_NAME);
+        assertEquals(10, cached.listSegments().size());
+        assertEquals(reader.length(), cached.length());
+        assertArrayEquals(new byte[] {1, 2, 3}, toArray(cached.getBinaryReferences()));
+        assertNull(cached.getGraph());
+        for (int i = 0; i <= AzureArchiveCache.READ_AHEAD && i < segments.size(); i++) {
+            UUID uuid = segments.get(i);
+            assertArrayEquals(segmentData(i), toArray(cached.readSegment(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits())));
+        }
+    }
+
+    @Test
+    public void testInvalidateOnDelete() throws Exception {
+        manager.open(ARCHIVE_NAME);
+        assertNotNull(cache.readIndex(archiveUri("oak"), ARCHIVE_NAME));
+
+        assertTrue(manager.delete(ARCHIVE_NAME));
+        assertNull(cache.readIndex(archiveUri("oak"), ARCHIVE_NAME));
+    }
+
+    @Test
+    public void testForceOpenBypassesCache() throws Exception {
+        manager.forceOpen(ARCHIVE_NAME);
+        assertNull(cache.readIndex(archiveUri("oak"), ARCHIVE_NAME));
+    }
+
+    @Test
+    public void testArchivesOfOtherStoresAreNotShared() throws Exception {
+        manager.open(ARCHIVE_NAME);
+        assertNotNull(cache.readIndex(archiveUri("oak"), ARCHIVE_NAME));
+
+        // An archive with the same name in another segment store sharing the cache
+        SegmentArchiveManager other = new AzurePersistence(container.getDirectoryReference("other"), cache)
+                .createArchiveManager(false, false, new IOMonitorAdapter(), new FileStoreMonitorAdapter(), new RemoteStoreMonitorAdapter());
+        assertNull(cache.readIndex(archiveUri("other"), ARCHIVE_NAME));
+        SegmentArchiveWriter writer = other.create(ARCHIVE_NAME);
+        UUID uuid = UUID.randomUUID();
+        writer.writeSegment(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), segmentData(0), 0, 10, 0, 0, false);
+        writer.flush();
+        writer.close();
+
+        SegmentArchiveReader reader = other.open(ARCHIVE_NAME);
+        assertEquals(1, reader.listSegments().size());
+        assertNull(reader.getBinaryReferences());
+        assertEquals(10, manager.open(ARCHIVE_NAME).listSegments().size());
+    }
+
+    private URI archiveUri(String rootPath) throws URISyntaxException, StorageException {
+        return container.getDirectoryReference(rootPath).getDirectoryReference(ARCHIVE_NAME).getUri();
+    }
+
+    private void awaitCached(UUID uuid) throws InterruptedException {
+        for (int k = 0; k < 100 && !cache.containsSegment(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()); k++) {
+            Thread.sleep(100);
+        }
+        assertTrue(cache.containsSegment(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()));
+    }
+
+    private static byte[] segmentData(int i) {
+        byte[] data = new byte[10];
+        for (int k = 0; k < data.length; k++) {
+            data[k] = (byte) (i + k);
+        }
+        return data;
+    }
+
+    private static byte[] toArray(Buffer buffer) {
+        byte[] data = new byte[buffer.remaining()];
+        buffer.duplicate().get(data);
+        return data;
+    }
+}
@@ -19,8 +19,11 @@ package org.apache.jackrabbit.oak.segment.remote;
 import org.apache.jackrabbit.oak.commons.Buffer;
 import org.apache.jackrabbit.oak.segment.remote.queue.SegmentWriteAction;
 import org.apache.jackrabbit.oak.segment.remote.queue.SegmentWriteQueue;
+import org.apache.jackrabbit.oak.segment.remote.queue.UploadConcurrencyLimit;
 import org.apache.jackrabbit.oak.segment.spi.monitor.FileStoreMonitor;
 import org.apache.jackrabbit.oak.segment.spi.monitor.IOMonitor;
+import org.apache.jackrabbit.oak.segment.spi.monitor.RemoteStoreMonitor;
+import org.apache.jackrabbit.oak.segment.spi.monitor.RemoteStoreMonitorAdapter;
 import org.apache.jackrabbit.oak.segment.spi.persistence.SegmentArchiveWriter;
 import org.jetbrains.annotations.NotNull;
 
@@ -47,9 +50,23 @@ public abstract class AbstractRemoteSegmentArchiveWriter implements SegmentArchi
     protected volatile boolean created = false;
 
     public AbstractRemoteSegmentArchiveWriter(IOMonitor ioMonitor, FileStoreMonitor monitor) {
+        this(ioMonitor, monitor, new RemoteStoreMonitorAdapter());
+    }
+
+    public AbstractRemoteSegmentArchiveWriter(IOMonitor ioMonitor, FileStoreMonitor monitor, RemoteStoreMonitor remoteStoreMonitor) {
+        this(ioMonitor, monitor, remoteStoreMonitor, new UploadConcurrencyLimit());
+    }
+
+    /**
+     * @param uploadConcurrency  limit for the number of concurrent segment
+     *                           uploads, shared by the writers of a persistence
+     */
+    public AbstractRemoteSegmentArchiveWriter(IOMonitor ioMonitor, FileStoreMonitor monitor, RemoteStoreMonitor remoteStoreMonitor,
+            UploadConcurrencyLimit uploadConcurrency) {
         this.ioMonitor = ioMonitor;
         this.monitor = monitor;
-        this.queue = SegmentWriteQueue.THREADS > 0 ? Optional.of(new SegmentWriteQueue(this::doWriteArchiveEntry))
+        this.queue = SegmentWriteQueue.THREADS > 0
+                ? Optional.of(new SegmentWriteQueue(this::doWriteArchiveEntry, remoteStoreMonitor, uploadConcurrency))
                 : Optional.empty();
     }
 
@@ -41,6 +41,16 @@ import static java.util.concurrent.TimeUnit.NANOSECONDS;
  *          a timer metrics for the time spent reading from segment disk cache</li>
  *     <li>{@link #OAK_SEGMENT_CACHE_DISk_SEGMENT_WRITE_TIME}:
  *          a timer metrics for the time spent writing to segment disk cache</li>
+ *     <li>{@link #OAK_SEGMENT_CACHE_DISK_HIT_TIME}:
+ *          a timer metrics for the time spent serving segments found in the disk cache</li>
+ *     <li>{@link #OAK_SEGMENT_CACHE_DISK_MISS_TIME}:
+ *          a timer metrics for the time spent looking up segments not found in the disk cache</li>
+ *     <li>{@link #OAK_SEGMENT_CACHE_DISK_EVICTION_COUNT}:
+ *          a meter metrics for the number of segments evicted from the disk cache</li>
+ *     <li>{@link #OAK_SEGMENT_CACHE_DISK_EVICTION_BYTES}:
+ *          a meter metrics for the number of bytes evicted from the disk cache</li>
+ *     <li>{@link #OAK_SEGMENT_CACHE_DISK_EVICTION_TIME}:
+ *          a timer metrics for the time spent evicting segments from the disk cache</li>
  * </ul>
  */
 public class DiskCacheIOMonitor extends IOMonitorAdapter {
@@ -48,11 +58,21 @@ public class DiskCacheIOMonitor extends IOMonitorAdapter {
     public static final String OAK_SEGMENT_CACHE_DISK_SEGMENT_WRITE_BYTES = "oak.segment.cache.disk.segment-write-bytes";
     public static final String OAK_SEGMENT_CACHE_DISK_SEGMENT_READ_TIME = "oak.segment.cache.disk.segment-read-time";
     public static final String OAK_SEGMENT_CACHE_DISk_SEGMENT_WRITE_TIME = "oak.segment.cache.disk.segment-write-time";
+    public static final String OAK_SEGMENT_CACHE_DISK_HIT_TIME = "oak.segment.cache.disk.hit-time";
+    public static final String OAK_SEGMENT_CACHE_DISK_MISS_TIME = "oak.segment.cache.disk.miss-time";
+    public static final String OAK_SEGMENT_CACHE_DISK_EVICTION_COUNT = "oak.segment.cache.disk.eviction-count";
+    public static final String OAK_SEGMENT_CACHE_DISK_EVICTION_BYTES = "oak.segment.cache.disk.eviction-bytes";
+    public static final String OAK_SEGMENT_CACHE_DISK_EVICTION_TIME = "oak.segment.cache.disk.eviction-time";
 
     private final MeterStats segmentReadBytes;
     private final MeterStats segmentWriteBytes;
     private final TimerStats segmentReadTime;
     private final TimerStats segmentWriteTime;
+    private final TimerStats hitTime;
+    private final TimerStats missTime;
+    private final MeterStats evictionCount;
+    private final MeterStats evictionBytes;
+    private final TimerStats evictionTime;
 
     public DiskCacheIOMonitor(@NotNull StatisticsProvider statisticsProvider) {
         segmentReadBytes = statisticsProvider.getMeter(
@@ -63,6 +83,16 @@ public class DiskCacheIOMonitor extends IOMonitorAdapter {
                 OAK_SEGMENT_CACHE_DISK_SEGMENT_READ_TIME, StatsOptions.METRICS_ONLY);
         segmentWriteTime = statisticsProvider.getTimer(
                 OAK_SEGMENT_CACHE_DISk_SEGMENT_WRITE_TIME, StatsOptions.METRICS_ONLY);
+        hitTime = statisticsProvider.getTimer(
+                OAK_SEGMENT_CACHE_DISK_HIT_TIME, StatsOptions.METRICS_ONLY);
+        missTime = statisticsProvider.getTimer(
+                OAK_SEGMENT_CACHE_DISK_MISS_TIME, StatsOptions.METRICS_ONLY);
+        evictionCount = statisticsProvider.getMeter(
+                OAK_SEGMENT_CACHE_DISK_EVICTION_COUNT, StatsOptions.METRICS_ONLY);
+        evictionBytes = statisticsProvider.getMeter(
+                OAK_SEGMENT_CACHE_DISK_EVICTION_BYTES, StatsOptions.METRICS_ONLY);
+        evictionTime = statisticsProvider.getTimer(
+                OAK_SEGMENT_CACHE_DISK_EVICTION_TIME, StatsOptions.METRICS_ONLY);
     }
 
     @Override
@@ -76,4 +106,35 @@ public class DiskCacheIOMonitor extends IOMonitorAdapter {
         segmentWriteBytes.mark(length);
         segmentWriteTime.update(elapsed, NANOSECONDS);
     }
+
+    /**
+     * Called after a segment has been served from the disk cache.
+     *
+     * @param elapsed Time spent looking up and reading the segment, in nanoseconds.
+     */
+    public void afterCacheHit(long elapsed) {
+        hitTime.update(elapsed, NANOSECONDS);
+    }
+
+    /**
+     * Called after a segment has not been found in the disk cache.
+     *
+     * @param elapsed Time spent looking up the segment, in nanoseconds.
+     */
+    public void afterCacheMiss(long elapsed) {
+        missTime.update(elapsed, NANOSECONDS);
+    }
+
+    /**
+     * Called after segments have been evicted from the disk cache.
+     *
+     * @param segments Number of evicted segments.
+     * @param bytes    Number of evicted bytes.
+     * @param elapsed  Time spent evicting the segments, in nanoseconds.
+     */
+    public void afterEviction(int segments, long bytes, long elapsed) {
+        evictionCount.mark(segments);
+        evictionBytes.mark(bytes);
+        evictionTime.update(elapsed, NANOSECONDS);
+    }
 }
@@ -18,7 +18,6 @@
 package org.apache.jackrabbit.oak.segment.remote.persistentcache;
 
 import com.google.common.base.Stopwatch;
-import org.apache.commons.io.FileUtils;
 import org.apache.jackrabbit.oak.commons.Buffer;
 import org.apache.jackrabbit.oak.segment.spi.monitor.IOMonitor;
 import org.apache.jackrabbit.oak.segment.spi.persistence.persistentcache.AbstractPersistentCache;
@@ -26,144 +25,245 @@ import org.apache.jackrabbit.oak.segment.spi.persistence.persistentcache.Segment
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
-import java.nio.file.Path;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.StandardCopyOption;
-import java.nio.file.attribute.BasicFileAttributes;
-import java.nio.file.attribute.FileTime;
-import java.util.Comparator;
-import java.util.Spliterator;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.function.BiConsumer;
-import java.util.stream.Stream;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static org.apache.jackrabbit.oak.segment.remote.RemoteUtilities.OFF_HEAP;
 
+/**
+ * A persistent cache storing segments in a local directory.
+ * <p>
+ * Segments of at least {@link #PACK_THRESHOLD} bytes are stored in a file of
+ * their own, named after the segment. Smaller segments are appended to pack
+ * files of about {@link #PACK_SIZE} bytes, each segment being preceded by a
+ * header containing its id and length.
+ * <p>
+ * The location of each cached segment is tracked by an in memory index
+ * ordered by access, which is used to evict the least recently used segments
+ * once the cache is full. Eviction therefore takes time proportional to the
+ * number of evicted segments and does not depend on file access times. A pack
+ * file is evicted as a whole as soon as any of its segments is selected for
+ * eviction.
+ * <p>
+ * The index is checkpointed to {@link #INDEX_FILE_NAME} on close and, at
+ * most every {@link #CHECKPOINT_INTERVAL} seconds, after an eviction so the
+ * access order survives restarts. Segment files and pack files not covered
+ * by the checkpoint, e.g. after a crash or when opening a directory populated
+ * by an earlier version of this cache, are scanned and added to the index on
+ * startup, while entries of the checkpoint whose files were evicted since are
+ * skipped. Files added to the directory by other means while the cache is
+ * open are not picked up.
+ */
 public class PersistentDiskCache extends AbstractPersistentCache {
     private static final Logger logger = LoggerFactory.getLogger(PersistentDiskCache.class);
     public static final int DEFAULT_MAX_CACHE_SIZE_MB = 512;
     public static final String NAME = "Segment Disk Cache";
 
+    /**
+     * Segments smaller than this number of bytes are appended to pack files.
+     */
+    static final int PACK_THRESHOLD = Integer.getInteger("oak.segment.cache.disk.packThreshold", 64 * 1024);
+
+    /**
+     * Number of bytes after which a pack file is not appended to any more.
+     */
+    static final int PACK_SIZE = Integer.getInteger("oak.segment.cache.disk.packSize", 4 * 1024 * 1024);
+
+    /**
+     * Minimum number of seconds between two checkpoints of the index after
+     * evictions.
+     */
+    static final int CHECKPOINT_INTERVAL = Integer.getInteger("oak.segment.cache.disk.checkpointInterval", 60);
+
+    static final String INDEX_FILE_NAME = "index.dat";
+
+    private static final int INDEX_MAGIC = 0x0A444349;
+
+    private static final int INDEX_VERSION = 1;
+
+    /**
+     * Size of the header preceding each segment in a pack file: the most and
+     * least significant bits of the segment id and the length of the segment.
+     */
+    private static final int PACK_HEADER_SIZE = 2 * Long.BYTES + Integer.BYTES;
+
+    private static final Pattern PACK_FILE_NAME = Pattern.compile("pack-(\\d{8})\\.dat");
+
+    private static final Pattern SEGMENT_FILE_NAME =
+            Pattern.compile("[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}");
+
     private final File directory;
     private final long maxCacheSizeBytes;
     private final IOMonitor diskCacheIOMonitor;
 
+    /**
+     * The {@code diskCacheIOMonitor} if it is able to track hits, misses and
+     * evictions, {@code null} otherwise.
+     */
+    private final DiskCacheIOMonitor cacheMonitor;
+
     final AtomicBoolean cleanupInProgress = new AtomicBoolean(false);
 
     final AtomicLong evictionCount = new AtomicLong();
 
-    private static final Comparator<Path> sortedByAccessTime = (path1, path2) -> {
-        try {
-            FileTime lastAccessFile1 = Files.readAttributes(path1, BasicFileAttributes.class).lastAccessTime();
-            FileTime lastAccessFile2 = Files.readAttributes(path2, BasicFileAttributes.class).lastAccessTime();
-            return lastAccessFile1.compareTo(lastAccessFile2);
-        } catch (IOException e) {
-            logger.error("A problem occurred while cleaning up the cache: ", e);
-        }
-        return 0;
-    };
+    /**
+     * The location of the cached segments in access order. Guarded by itself,
+     * to be acquired after {@link #packLock} when both are needed.
+     */
+    private final LinkedHashMap<UUID, Entry> index = new LinkedHashMap<>(1024, 0.75f, true);
+
+    /**
+     * Guards {@link #packs}, {@link #currentPack} and {@link #nextPackId}.
+     */
+    private final Object packLock = new Object();
+
+    private final Map<Integer, Pack> packs = new HashMap<>();
+
+    private Pack currentPack;
+
+    private int nextPackId;
+
+    private final Object checkpointLock = new Object();
+
+    /**
+     * Time of the last checkpoint in nanoseconds, see {@link System#nanoTime()}.
+     */
+    private volatile long lastCheckpoint = System.nanoTime();
 
     public PersistentDiskCache(File directory, int cacheMaxSizeMB, IOMonitor diskCacheIOMonitor) {
         this.directory = directory;
         this.maxCacheSizeBytes = cacheMaxSizeMB * 1024L * 1024L;
         this.diskCacheIOMonitor = diskCacheIOMonitor;
+        this.cacheMonitor = diskCacheIOMonitor instanceof DiskCacheIOMonitor
+                ? (DiskCacheIOMonitor) diskCacheIOMonitor
+                : null;
         if (!directory.exists()) {
             directory.mkdirs();
         }
 
+        recover();
+
         segmentCacheStats = new SegmentCacheStats(
                 NAME,
                 () -> maxCacheSizeBytes,
-                () -> Long.valueOf(directory.listFiles().length),
-                () -> FileUtils.sizeOfDirectory(directory),
+                () -> (long) indexSize(),
+                () -> cacheSize.get(),
                 () -> evictionCount.get());
     }
 
     @Override
     protected Buffer readSegmentInternal(long msb, long lsb) {
+        UUID uuid = new UUID(msb, lsb);
         try {
-            String segmentId = new UUID(msb, lsb).toString();
-            File segmentFile = new File(directory, segmentId);
-
             Stopwatch stopwatch = Stopwatch.createStarted();
-            if (segmentFile.exists()) {
-                diskCacheIOMonitor.beforeSegmentRead(segmentFile, msb, lsb, (int) segmentFile.length());
-                try (FileInputStream fis = new FileInputStream(segmentFile); FileChannel channel = fis.getChannel()) {
-                    int length = (int) channel.size();
-
-                    Buffer buffer;
-                    if (OFF_HEAP) {
-                        buffer = Buffer.allocateDirect(length);
-                    } else {
-                        buffer = Buffer.allocate(length);
+            Entry entry = lookup(uuid);
+            if (entry != null) {
+                Buffer buffer = read(uuid, entry, stopwatch);
+                if (buffer != null) {
+                    if (cacheMonitor != null) {
+                        cacheMonitor.afterCacheHit(stopwatch.elapsed(TimeUnit.NANOSECONDS));
                     }
-                    if (buffer.readFully(channel, 0) < length) {
-                        throw new EOFException();
-                    }
-
-                    long elapsed = stopwatch.elapsed(TimeUnit.NANOSECONDS);
-                    diskCacheIOMonitor.afterSegmentRead(segmentFile, msb, lsb, (int) segmentFile.length(), elapsed);
-
-                    buffer.flip();
-
                     return buffer;
-                } catch (FileNotFoundException e) {
-                    logger.info("Segment {} deleted from file system!", segmentId);
-                } catch (IOException e) {
-                    logger.error("Error loading segment {} from cache:", segmentId, e);
                 }
             }
+            if (cacheMonitor != null) {
+                cacheMonitor.afterCacheMiss(stopwatch.elapsed(TimeUnit.NANOSECONDS));
+            }
         } catch (Exception e) {
-            logger.error("Exception while reading segment {} from the cache:", new UUID(msb, lsb), e);
+            logger.error("Exception while reading segment {} from the cache:", uuid, e);
         }
 
         return null;
     }
 
+    private Buffer read(UUID uuid, Entry entry, Stopwatch stopwatch) {
+        String segmentId = uuid.toString();
+        File file = entry.isPacked() ? packFile(entry.pack) : new File(directory, segmentId);
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            int length = entry.isPacked() ? entry.length : (int) channel.size();
+            diskCacheIOMonitor.beforeSegmentRead(file, msb, lsb, length);
+
+            Buffer buffer;
+            if (OFF_HEAP) {
+                buffer = Buffer.allocateDirect(length);
+            } else {
+                buffer = Buffer.allocate(length);
+            }
+            if (buffer.readFully(channel, entry.offset) < length) {
+                throw new EOFException();
+            }
+
+            long elapsed = stopwatch.elapsed(TimeUnit.NANOSECONDS);
+            diskCacheIOMonitor.afterSegmentRead(file, msb, lsb, length, elapsed);
+
+            buffer.flip();
+
+            return buffer;
+        } catch (FileNotFoundException | NoSuchFileException e) {
+            logger.info("Segment {} deleted from file system!", segmentId);
+            invalidate(uuid, entry);
+        } catch (IOException e) {
+            logger.error("Error loading segment {} from cache:", segmentId, e);
+            invalidate(uuid, entry);
+        }
+        return null;
+    }
+
     @Override
     public boolean containsSegment(long msb, long lsb) {
-        return new File(directory, new UUID(msb, lsb).toString()).exists();
+        return lookup(new UUID(msb, lsb)) != null;
     }
 
     @Override
     public void writeSegment(long msb, long lsb, Buffer buffer) {
-        String segmentId = new UUID(msb, lsb).toString();
-        File segmentFile = new File(directory, segmentId);
-        File tempSegmentFile = new File(directory, segmentId + System.nanoTime() + ".part");
+        UUID uuid = new UUID(msb, lsb);
+        String segmentId = uuid.toString();
 
         Buffer bufferCopy = buffer.duplicate();
 
         Runnable task = () -> {
             if (writesPending.add(segmentId)) {
                 try {
-                    int fileSize;
-                    try (FileChannel channel = new FileOutputStream(tempSegmentFile).getChannel()) {
-                        fileSize = bufferCopy.write(channel);
-                    }
-                    try {
-                        Files.move(tempSegmentFile.toPath(), segmentFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
-                    } catch (AtomicMoveNotSupportedException e) {
-                        Files.move(tempSegmentFile.toPath(), segmentFile.toPath());
-                    }
-                    cacheSize.addAndGet(fileSize);
-                } catch (Exception e) {
-                    logger.error("Error writing segment {} to cache: {}", segmentId, e);
-                    try {
-                        Files.deleteIfExists(segmentFile.toPath());
-                        Files.deleteIfExists(tempSegmentFile.toPath());
-                    } catch (IOException i) {
-                        logger.error("Error while deleting corrupted segment file {}", segmentId, i);
+                    if (!isIndexed(uuid)) {
+                        if (bufferCopy.remaining() < PACK_THRESHOLD) {
+                            appendToPack(uuid, bufferCopy);
+                        } else {
+                            writeToFile(uuid, bufferCopy);
+                        }
                     }
                 } finally {
                     writesPending.remove(segmentId);
@@ -175,6 +275,151 @@ public class PersistentDiskCache extends AbstractPersistentCache {
         executor.execute(task);
     }
 
+    private void writeToFile(UUID uuid, Buffer buffer) {
+        String segmentId = uuid.toString();
+        File segmentFile = new File(directory, segmentId);
+        File tempSegmentFile = new File(directory, segmentId + System.nanoTime() + ".part");
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        int length = buffer.remaining();
+
+        try {
+            diskCacheIOMonitor.beforeSegmentWrite(segmentFile, msb, lsb, length);
+            Stopwatch stopwatch = Stopwatch.createStarted();
+            try (FileChannel channel = new FileOutputStream(tempSegmentFile).getChannel()) {
+                while (buffer.hasRemaining()) {
+                    buffer.write(channel);
+                }
+            }
+            try {
+                Files.move(tempSegmentFile.toPath(), segmentFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempSegmentFile.toPath(), segmentFile.toPath());
+            }
+            diskCacheIOMonitor.afterSegmentWrite(segmentFile, msb, lsb, length, stopwatch.elapsed(TimeUnit.NANOSECONDS));
+            put(uuid, new Entry(-1, 0, length));
+        } catch (Exception e) {
+            logger.error("Error writing segment {} to cache: {}", segmentId, e);
+            try {
+                Files.deleteIfExists(segmentFile.toPath());
+                Files.deleteIfExists(tempSegmentFile.toPath());
+            } catch (IOException i) {
+                logger.error("Error while deleting corrupted segment file {}", segmentId, i);
+            }
+        }
+    }
+
+    private void appendToPack(UUID uuid, Buffer buffer) {
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        int length = buffer.remaining();
+
+        ByteBuffer header = ByteBuffer.allocate(PACK_HEADER_SIZE);
+        header.putLong(msb).putLong(lsb).putInt(length);
+        header.flip();
+
+        synchronized (packLock) {
+            Pack pack = currentPack;
+            try {
+                if (pack == null || pack.size >= PACK_SIZE) {
+                    pack = newPack();
+                }
+                diskCacheIOMonitor.beforeSegmentWrite(pack.file, msb, lsb, length);
+                Stopwatch stopwatch = Stopwatch.createStarted();
+                int offset = pack.size + PACK_HEADER_SIZE;
+                while (header.hasRemaining()) {
+                    pack.channel.write(header);
+                }
+                while (buffer.hasRemaining()) {
+                    buffer.write(pack.channel);
+                }
+                diskCacheIOMonitor.afterSegmentWrite(pack.file, msb, lsb, length, stopwatch.elapsed(TimeUnit.NANOSECONDS));
+
+                pack.size = offset + length;
+                pack.segments.add(uuid);
+                cacheSize.addAndGet(PACK_HEADER_SIZE + length);
+                put(uuid, new Entry(pack.id, offset, length));
+            } catch (IOException e) {
+                logger.error("Error writing segment {} to cache: {}", uuid, e);
+                if (pack != null) {
+                    // The pack might end with a partially written segment, don't append to it any more
+                    cacheSize.addAndGet(pack.file.length() - pack.size);
+                    pack.size = (int) pack.file.length();
+                    closeCurrentPack();
+                }
+            }
+        }
+    }
+
+    private Pack newPack() throws IOException {
+        closeCurrentPack();
+        int id = nextPackId++;
+        File file = packFile(id);
+        Pack pack = new Pack(id, file, 0);
+        pack.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        packs.put(id, pack);
+        currentPack = pack;
+        return pack;
+    }
+
+    private void closeCurrentPack() {
+        if (currentPack != null) {
+            try {
+                currentPack.channel.close();
+            } catch (IOException e) {
+                logger.warn("Error closing pack file {}", currentPack.file, e);
+            }
+            currentPack.channel = null;
+            currentPack = null;
+        }
+    }
+
+    private File packFile(int id) {
+        return new File(directory, String.format("pack-%08d.dat", id));
+    }
+
+    /**
+     * Lookup a segment in the index. Segment files not known to the index,
+     * e.g. when written by an earlier version of this cache, were already
+     * added to the index by {@link #recover()}.
+     */
+    private Entry lookup(UUID uuid) {
+        synchronized (index) {
+            return index.get(uuid);
+        }
+    }
+
+    private boolean isIndexed(UUID uuid) {
+        synchronized (index) {
+            return index.containsKey(uuid);
+        }
+    }
+
+    private int indexSize() {
+        synchronized (index) {
+            return index.size();
+        }
+    }
+
+    private void put(UUID uuid, Entry entry) {
+        synchronized (index) {
+            Entry previous = index.put(uuid, entry);
+            if (!entry.isPacked()) {
+                // The bytes of packed segments are accounted for when appending to the pack
+                boolean replaced = previous != null && !previous.isPacked();
+                cacheSize.addAndGet(replaced ? entry.length - previous.length : entry.length);
+            }
+        }
+    }
+
+    private void invalidate(UUID uuid, Entry entry) {
+        synchronized (index) {
+            if (index.remove(uuid, entry) && !entry.isPacked()) {
+                cacheSize.addAndGet(-entry.length);
+            }
+        }
+    }
+
     private boolean isCacheFull() {
         return cacheSize.get() >= maxCacheSizeBytes;
     }
@@ -191,52 +436,297 @@ public class PersistentDiskCache extends AbstractPersistentCache {
     }
 
     private void cleanUpInternal() {
-        if (isCacheFull()) {
-            try {
-                Stream<Path> segmentsPaths = Files.walk(directory.toPath())
-                        .sorted(sortedByAccessTime)
-                        .filter(filePath -> !filePath.toFile().isDirectory());
-
-                StreamConsumer.forEach(segmentsPaths, (path, breaker) -> {
+        if (!isCacheFull()) {
+            return;
+        }
 
-                    if (cacheSize.get() > maxCacheSizeBytes * 0.66) {
-                        cacheSize.addAndGet(-path.toFile().length());
-                        path.toFile().delete();
-                        evictionCount.incrementAndGet();
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        long target = (long) (maxCacheSizeBytes * 0.66);
+        List<File> evictedFiles = new ArrayList<>();
+        long evictedBytes = 0;
+        int evictedSegments = 0;
+
+        synchronized (packLock) {
+            synchronized (index) {
+                // Select the least recently used segments first as the access
+                // order of the index must not change while iterating it.
+                List<UUID> segments = new ArrayList<>();
+                Set<Pack> evictedPacks = new HashSet<>();
+                long size = cacheSize.get();
+                Iterator<Map.Entry<UUID, Entry>> iterator = index.entrySet().iterator();
+                while (size > target && iterator.hasNext()) {
+                    Map.Entry<UUID, Entry> lru = iterator.next();
+                    Entry entry = lru.getValue();
+                    if (!entry.isPacked()) {
+                        segments.add(lru.getKey());
+                        size -= entry.length;
                     } else {
-                        breaker.stop();
+                        Pack pack = packs.get(entry.pack);
+                        if (pack != null && evictedPacks.add(pack)) {
+                            size -= pack.size;
+                        }
                     }
-                });
-            } catch (IOException e) {
-                logger.error("A problem occurred while cleaning up the cache: ", e);
+                }
+
+                for (UUID uuid : segments) {
+                    Entry entry = index.remove(uuid);
+                    cacheSize.addAndGet(-entry.length);
+                    evictedBytes += entry.length;
+                    evictedSegments++;
+                    evictedFiles.add(new File(directory, uuid.toString()));
+                }
+                for (Pack pack : evictedPacks) {
+                    if (pack == currentPack) {
+                        closeCurrentPack();
+                    }
+                    packs.remove(pack.id);
+                    for (UUID uuid : pack.segments) {
+                        Entry entry = index.remove(uuid);
+                        if (entry != null && entry.pack != pack.id) {
+                            // The segment has been cached again elsewhere in the meanwhile
+                            index.put(uuid, entry);
+                        } else if (entry != null) {
+                            evictedSegments++;
+                        }
+                    }
+                    cacheSize.addAndGet(-pack.size);
+                    evictedBytes += pack.size;
+                    evictedFiles.add(pack.file);
+                }
             }
         }
+
+        for (File file : evictedFiles) {
+            if (!file.delete() && file.exists()) {
+                logger.warn("Unable to delete evicted cache file {}", file);
+            }
+        }
+        evictionCount.addAndGet(evictedSegments);
+        if (cacheMonitor != null) {
+            cacheMonitor.afterEviction(evictedSegments, evictedBytes, stopwatch.elapsed(TimeUnit.NANOSECONDS));
+        }
+
+        // Writing the checkpoint takes time proportional to the size of the
+        // index, so it is not written after each eviction. A stale checkpoint
+        // is safe as entries whose files are gone are skipped on recovery.
+        if (System.nanoTime() - lastCheckpoint >= TimeUnit.SECONDS.toNanos(CHECKPOINT_INTERVAL)) {
+            writeCheckpoint();
+        }
     }
 
-    static class StreamConsumer {
+    @Override
+    public void close() {
+        super.close();
+        synchronized (packLock) {
+            closeCurrentPack();
+        }
+        writeCheckpoint();
+    }
 
-        public static class Breaker {
-            private boolean shouldBreak = false;
+    /**
+     * Persist the access ordered index to {@link #INDEX_FILE_NAME}.
+     */
+    private void writeCheckpoint() {
+        UUID[] uuids;
+        Entry[] entries;
+        synchronized (index) {
+            uuids = index.keySet().toArray(new UUID[0]);
+            entries = index.values().toArray(new Entry[0]);
+        }
 
-            public void stop() {
-                shouldBreak = true;
+        synchronized (checkpointLock) {
+            lastCheckpoint = System.nanoTime();
+            File indexFile = new File(directory, INDEX_FILE_NAME);
+            File tempIndexFile = new File(directory, INDEX_FILE_NAME + ".part");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempIndexFile)))) {
+                out.writeInt(INDEX_MAGIC);
+                out.writeInt(INDEX_VERSION);
+                out.writeInt(uuids.length);
+                for (int k = 0; k < uuids.length; k++) {
+                    out.writeLong(uuids[k].getMostSignificantBits());
+                    out.writeLong(uuids[k].getLeastSignificantBits());
+                    out.writeInt(entries[k].pack);
+                    out.writeInt(entries[k].offset);
+                    out.writeInt(entries[k].length);
+                }
+            } catch (IOException e) {
+                logger.warn("Unable to write the index of the disk cache", e);
+                tempIndexFile.delete();
+                return;
             }
+            try {
+                try {
+                    Files.move(tempIndexFile.toPath(), indexFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tempIndexFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            } catch (IOException e) {
+                logger.warn("Unable to write the index of the disk cache", e);
+            }
+        }
+    }
+
+    /**
+     * Rebuild the index from the checkpoint, if any, and the files present in
+     * the cache directory. The checkpoint is removed once read, so that it
+     * never refers to files evicted after a subsequent crash.
+     */
+    private void recover() {
+        String[] names = directory.list();
+        Set<String> files = new HashSet<>(names != null ? Arrays.asList(names) : new ArrayList<>());
+
+        Map<Integer, List<UUID>> packed = new HashMap<>();
+        Map<Integer, Integer> scanned = new HashMap<>();
+        File indexFile = new File(directory, INDEX_FILE_NAME);
+        if (files.remove(INDEX_FILE_NAME)) {
+            readCheckpoint(indexFile, files, packed, scanned);
+            if (!indexFile.delete()) {
+                logger.warn("Unable to delete the index of the disk cache {}", indexFile);
+            }
+        }
 
-            boolean get() {
-                return shouldBreak;
+        for (String name : files) {
+            Matcher matcher = PACK_FILE_NAME.matcher(name);
+            File file = new File(directory, name);
+            if (matcher.matches()) {
+                int id = Integer.parseInt(matcher.group(1));
+                Pack pack = new Pack(id, file, (int) file.length());
+                packs.put(id, pack);
+                nextPackId = Math.max(nextPackId, id + 1);
+                cacheSize.addAndGet(pack.size);
+                pack.segments.addAll(packed.getOrDefault(id, Collections.emptyList()));
+                scanPack(pack, scanned.getOrDefault(id, 0));
+            } else if (SEGMENT_FILE_NAME.matcher(name).matches()) {
+                if (!isIndexed(UUID.fromString(name))) {
+                    put(UUID.fromString(name), new Entry(-1, 0, (int) file.length()));
+                }
+            } else if (name.endsWith(".part")) {
+                file.delete();
             }
         }
+    }
 
-        public static <T> void forEach(Stream<T> stream, BiConsumer<T, Breaker> consumer) {
-            Spliterator<T> spliterator = stream.spliterator();
-            boolean hadNext = true;
-            Breaker breaker = new Breaker();
+    /**
+     * Index the segments listed in a checkpoint, skipping those whose files
+     * are gone.
+     * @param packed   receives the segments of each pack file
+     * @param scanned  receives the position up to which each pack file is
+     *                 covered by the checkpoint
+     */
+    private void readCheckpoint(
+            File indexFile,
+            Set<String> files,
+            Map<Integer, List<UUID>> packed,
+            Map<Integer, Integer> scanned) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_VERSION) {
+                logger.warn("Ignoring the index of the disk cache {} with an unknown format", indexFile);
+                return;
+            }
+            int count = in.readInt();
+            for (int k = 0; k < count; k++) {
+                UUID uuid = new UUID(in.readLong(), in.readLong());
+                Entry entry = new Entry(in.readInt(), in.readInt(), in.readInt());
+                if (entry.isPacked()) {
+                    if (files.contains(packFile(entry.pack).getName())) {
+                        put(uuid, entry);
+                        packed.computeIfAbsent(entry.pack, id -> new ArrayList<>()).add(uuid);
+                        scanned.merge(entry.pack, entry.offset + entry.length, Math::max);
+                    }
+                } else if (files.contains(uuid.toString())) {
+                    put(uuid, entry);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Unable to read the index of the disk cache {}, scanning the cache directory", indexFile, e);
+            synchronized (index) {
+                index.clear();
+            }
+            cacheSize.set(0);
+            packed.clear();
+            scanned.clear();
+        }
+    }
 
-            while (hadNext && !breaker.get()) {
-                hadNext = spliterator.tryAdvance(elem -> {
-                    consumer.accept(elem, breaker);
-                });
+    /**
+     * Index the segments of a pack file following the given position.
+     */
+    private void scanPack(Pack pack, int position) {
+        try (FileChannel channel = FileChannel.open(pack.file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(PACK_HEADER_SIZE);
+            while (position + PACK_HEADER_SIZE <= pack.size) {
+                header.clear();
+                while (header.hasRemaining()) {
+                    if (channel.read(header, position + header.position()) < 0) {
+                        throw new EOFException();
+                    }
+                }
+                header.flip();
+                UUID uuid = new UUID(header.getLong(), header.getLong());
+                int length = header.getInt();
+                int offset = position + PACK_HEADER_SIZE;
+                if (length < 0 || offset + length > pack.size) {
+                    // Partially written segment
+                    break;
+                }
+                pack.segments.add(uuid);
+                put(uuid, new Entry(pack.id, offset, length));
+                position = offset + length;
             }
+        } catch (IOException e) {
+            logger.warn("Error scanning pack file {} of the disk cache", pack.file, e);
+        }
+    }
+
+    /**
+     * Location of a cached segment.
+     */
+    private static class Entry {
+
+        /**
+         * Id of the pack file containing the segment, {@code -1} for segments
+         * stored in a file of their own.
+         */
+        final int pack;
+
+        final int offset;
+
+        final int length;
+
+        Entry(int pack, int offset, int length) {
+            this.pack = pack;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        boolean isPacked() {
+            return pack >= 0;
+        }
+    }
+
+    private static class Pack {
+
+        final int id;
+
+        final File file;
+
+        /**
+         * Segments appended to this pack, some of which might not be indexed
+         * any more.
+         */
+        final List<UUID> segments = new ArrayList<>();
+
+        int size;
+
+        /**
+         * Channel for appending segments, only open for the current pack.
+         */
+        FileChannel channel;
+
+        Pack(int id, File file, int size) {
+            this.id = id;
+            this.file = file;
+            this.size = size;
         }
     }
 }
@@ -17,6 +17,8 @@
 package org.apache.jackrabbit.oak.segment.remote.queue;
 
 import org.apache.jackrabbit.oak.segment.remote.RemoteSegmentArchiveEntry;
+import org.apache.jackrabbit.oak.segment.spi.monitor.RemoteStoreMonitor;
+import org.apache.jackrabbit.oak.segment.spi.monitor.RemoteStoreMonitorAdapter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,16 +31,48 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+/**
+ * Queue of segments waiting to be uploaded to the remote storage.
+ * <p>
+ * Segments are uploaded by up to {@link #MAX_THREADS} workers. The number of
+ * workers uploading concurrently starts at {@link #THREADS} and is adapted to
+ * the observed upload latency and failures, see {@link UploadConcurrencyLimit}.
+ * Queues sharing an {@link UploadConcurrencyLimit} share the number of
+ * concurrent uploads.
+ * <p>
+ * When an upload fails the queue stops accepting segments and a single
+ * thread retries the upload with an exponential backoff and jitter until it
+ * succeeds.
+ * <p>
+ * The queue depth, the upload durations and failures are reported to the
+ * passed {@link RemoteStoreMonitor}.
+ */
 public class SegmentWriteQueue implements Closeable {
 
     public static final int THREADS = Integer.getInteger("oak.segment.remote.threads", 5);
 
+    /**
+     * Maximum number of concurrent uploads.
+     */
+    public static final int MAX_THREADS = Integer.getInteger("oak.segment.remote.maxThreads", 2 * THREADS);
+
     private static final int QUEUE_SIZE = Integer.getInteger("oak.segment.remote.queue.size", 20);
 
+    /**
+     * Delay in milliseconds before retrying a failed upload for the first time.
+     */
+    static final int RETRY_DELAY = Integer.getInteger("oak.segment.remote.retry.delay", 1000);
+
+    /**
+     * Maximum delay in milliseconds between retries of a failed upload.
+     */
+    static final int MAX_RETRY_DELAY = Integer.getInteger("oak.segment.remote.retry.maxDelay", 10000);
+
     private static final Logger log = LoggerFactory.getLogger(SegmentWriteQueue.class);
 
     private final BlockingDeque<SegmentWriteAction> queue;
@@ -51,6 +85,10 @@ public class SegmentWriteQueue implements Closeable {
 
     private final SegmentConsumer writer;
 
+    private final RemoteStoreMonitor monitor;
+
+    private final UploadConcurrencyLimit concurrency;
+
     private volatile boolean shutdown;
 
     private final Object brokenMonitor = new Object();
@@ -58,17 +96,35 @@ public class SegmentWriteQueue implements Closeable {
     private volatile boolean broken;
 
     public SegmentWriteQueue(SegmentConsumer writer) {
-        this(writer, QUEUE_SIZE, THREADS);
+        this(writer, new RemoteStoreMonitorAdapter());
+    }
+
+    public SegmentWriteQueue(SegmentConsumer writer, RemoteStoreMonitor monitor) {
+        this(writer, monitor, new UploadConcurrencyLimit());
+    }
+
+    /**
+     * @param concurrency  limit for the number of concurrent uploads, which
+     *                     may be shared with other queues
+     */
+    public SegmentWriteQueue(SegmentConsumer writer, RemoteStoreMonitor monitor, UploadConcurrencyLimit concurrency) {
+        this(writer, QUEUE_SIZE, concurrency, monitor);
     }
 
     SegmentWriteQueue(SegmentConsumer writer, int queueSize, int threadNo) {
+        this(writer, queueSize, new UploadConcurrencyLimit(threadNo, 1, threadNo), new RemoteStoreMonitorAdapter());
+    }
+
+    SegmentWriteQueue(SegmentConsumer writer, int queueSize, UploadConcurrencyLimit concurrency, RemoteStoreMonitor monitor) {
         this.writer = writer;
+        this.monitor = monitor;
+        this.concurrency = concurrency;
         segmentsByUUID = new ConcurrentHashMap<>();
         flushLock = new ReentrantReadWriteLock();
 
         queue = new LinkedBlockingDeque<>(queueSize);
-        executor = Executors.newFixedThreadPool(threadNo + 1);
-        for (int i = 0; i < threadNo; i++) {
+        executor = Executors.newFixedThreadPool(concurrency.getMax() + 1);
+        for (int i = 0; i < concurrency.getMax(); i++) {
             executor.submit(this::mainLoop);
         }
         executor.submit(this::emergencyLoop);
@@ -112,12 +168,26 @@ public class SegmentWriteQueue implements Closeable {
     }
 
     private void consume(SegmentWriteAction segment) throws SegmentConsumeException {
+        try {
+            concurrency.acquire();
+        } catch (InterruptedException e) {
+            throw new SegmentConsumeException(segment, e);
+        }
+        long start = System.nanoTime();
         try {
             segment.passTo(writer);
         } catch (IOException | RuntimeException e) {
+            concurrency.onFailure();
+            monitor.segmentUploadError();
             setBroken(true);
             throw new SegmentConsumeException(segment, e);
+        } finally {
+            concurrency.release();
         }
+        long elapsed = System.nanoTime() - start;
+        concurrency.onSuccess(elapsed, !queue.isEmpty());
+        monitor.segmentUploadDuration(elapsed, TimeUnit.NANOSECONDS);
+
         synchronized (segmentsByUUID) {
             segmentsByUUID.remove(segment.getUuid());
             segmentsByUUID.notifyAll();
@@ -134,6 +204,7 @@ public class SegmentWriteQueue implements Closeable {
 
             boolean success = false;
             SegmentWriteAction segmentToRetry = null;
+            int attempt = 0;
             do {
                 try {
                     if (segmentToRetry == null) {
@@ -146,7 +217,7 @@ public class SegmentWriteQueue implements Closeable {
                     segmentToRetry = e.segment;
                     log.error("Can't persist the segment {}", segmentToRetry.getUuid(), e.getCause());
                     try {
-                        Thread.sleep(1000);
+                        Thread.sleep(retryDelay(attempt++));
                     } catch (InterruptedException e1) {
                         log.warn("Interrupted", e);
                     }
@@ -158,6 +229,18 @@ public class SegmentWriteQueue implements Closeable {
         }
     }
 
+    /**
+     * Exponential backoff starting at {@link #RETRY_DELAY} and capped at
+     * {@link #MAX_RETRY_DELAY}, plus a random jitter of up to 10% to avoid
+     * retrying in lockstep with other writers.
+     * @param attempt  number of retries since the last successful upload
+     * @return  the delay in milliseconds before the next retry
+     */
+    static long retryDelay(int attempt) {
+        long delay = Math.min(MAX_RETRY_DELAY, (long) RETRY_DELAY << Math.min(attempt, 30));
+        return delay + ThreadLocalRandom.current().nextLong(delay / 10 + 1);
+    }
+
     public void addToQueue(RemoteSegmentArchiveEntry indexEntry, byte[] data, int offset, int size) throws IOException {
         waitWhileBroken();
         if (shutdown) {
@@ -168,6 +251,7 @@ public class SegmentWriteQueue implements Closeable {
         flushLock.readLock().lock();
         try {
             segmentsByUUID.put(action.getUuid(), action);
+            monitor.segmentUploadQueueSize(queue.size());
             if (!queue.offer(action, 1, TimeUnit.MINUTES)) {
                 segmentsByUUID.remove(action.getUuid());
                 throw new IOException("Can't add segment to the queue");
@@ -229,6 +313,10 @@ public class SegmentWriteQueue implements Closeable {
         return queue.size();
     }
 
+    int getConcurrency() {
+        return concurrency.getLimit();
+    }
+
     private void setBroken(boolean broken) {
         synchronized (brokenMonitor) {
             this.broken = broken;
@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.segment.remote.queue;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limit for the number of concurrent segment uploads, adapted to the
+ * observed upload latency and failures.
+ * <p>
+ * The limit is increased by one after a round of successful uploads (one
+ * upload per allowed concurrent upload) while segments are waiting in the
+ * queue, as long as the recent upload latency does not exceed the long term
+ * upload latency by more than {@link #LATENCY_TOLERANCE}. It is decreased by
+ * one when the latency grows beyond that and halved on each failed upload,
+ * which is how throttling by the remote storage usually manifests itself.
+ * <p>
+ * The limit applies to all the {@link SegmentWriteQueue}s sharing an
+ * instance, so the queues of the archive writers of a persistence compete
+ * for the same uploads and the limit learnt by one writer is kept for the
+ * next one.
+ */
+public class UploadConcurrencyLimit {
+
+    private static final Logger log = LoggerFactory.getLogger(UploadConcurrencyLimit.class);
+
+    /**
+     * Ratio between the recent and the long term upload latency above which
+     * the remote storage is considered to be saturated.
+     */
+    static final double LATENCY_TOLERANCE = 2.0;
+
+    private static final double RECENT_WEIGHT = 0.2;
+
+    private static final double LONG_TERM_WEIGHT = 0.02;
+
+    private final int min;
+
+    private final int max;
+
+    private int limit;
+
+    /**
+     * Number of uploads in progress.
+     */
+    private int active;
+
+    /**
+     * Exponentially weighted moving averages of the upload latency in nanoseconds.
+     */
+    private double recentLatency;
+
+    private double longTermLatency;
+
+    /**
+     * Number of successful uploads since the last adjustment of the limit.
+     */
+    private int samples;
+
+    /**
+     * Create a limit starting at {@link SegmentWriteQueue#THREADS} and
+     * growing up to {@link SegmentWriteQueue#MAX_THREADS} concurrent uploads.
+     */
+    public UploadConcurrencyLimit() {
+        this(Math.max(1, SegmentWriteQueue.THREADS), 1,
+                Math.max(Math.max(1, SegmentWriteQueue.THREADS), SegmentWriteQueue.MAX_THREADS));
+    }
+
+    UploadConcurrencyLimit(int initial, int min, int max) {
+        checkArgument(min > 0, "min must be positive");
+        checkArgument(min <= initial && initial <= max, "initial must be between min and max");
+        this.min = min;
+        this.max = max;
+        this.limit = initial;
+    }
+
+    synchronized int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return the maximum number of concurrent uploads
+     */
+    int getMax() {
+        return max;
+    }
+
+    /**
+     * Wait until fewer uploads than the limit are in progress and start an
+     * upload. Each call must be followed by a call to {@link #release()}.
+     */
+    synchronized void acquire() throws InterruptedException {
+        while (active >= limit) {
+            wait();
+        }
+        active++;
+    }
+
+    /**
+     * Record the end of an upload started with {@link #acquire()}.
+     */
+    synchronized void release() {
+        active--;
+        notifyAll();
+    }
+
+    /**
+     * Record a successful upload.
+     * @param latency  duration of the upload in nanoseconds
+     * @param backlog  whether further segments are waiting to be uploaded
+     */
+    synchronized void onSuccess(long latency, boolean backlog) {
+        if (longTermLatency == 0) {
+            recentLatency = latency;
+            longTermLatency = latency;
+        } else {
+            recentLatency += RECENT_WEIGHT * (latency - recentLatency);
+            longTermLatency += LONG_TERM_WEIGHT * (latency - longTermLatency);
+        }
+
+        if (++samples < limit) {
+            return;
+        }
+        samples = 0;
+        if (recentLatency > LATENCY_TOLERANCE * longTermLatency) {
+            setLimit(limit - 1);
+        } else if (backlog) {
+            setLimit(limit + 1);
+        }
+    }
+
+    /**
+     * Record a failed upload.
+     */
+    synchronized void onFailure() {
+        samples = 0;
+        setLimit(limit / 2);
+    }
+
+    private void setLimit(int newLimit) {
+        newLimit = Math.max(min, Math.min(max, newLimit));
+        if (newLimit != limit) {
+            log.debug("Changing the segment upload concurrency from {} to {}", limit, newLimit);
+            limit = newLimit;
+            notifyAll();
+        }
+    }
+}
@@ -31,9 +31,13 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.UUID;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.anyInt;
@@ -142,13 +146,118 @@ public class PersistentDiskCacheTest extends AbstractPersistentCacheTest {
         verify(ioMonitorAdapter, never()).beforeSegmentRead(any(), anyLong(), anyLong(), anyInt());
         verify(ioMonitorAdapter, never()).afterSegmentRead(any(), anyLong(), anyLong(), anyInt(), anyLong());
 
-        //place segment in disk cache
+        //place segment in disk cache, which is picked up on startup
+        persistentCache.close();
         File segmentFile = new File(cacheFolder, segmentUUID.toString());
         segmentFile.createNewFile();
+        persistentCache = new PersistentDiskCache(cacheFolder, 0, ioMonitorAdapter);
 
         persistentCache.readSegment(segmentUUID.getMostSignificantBits(), segmentUUID.getLeastSignificantBits(), () -> null);
 
         verify(ioMonitorAdapter, times(1)).beforeSegmentRead(eq(segmentFile), eq(segmentUUID.getMostSignificantBits()), eq(segmentUUID.getLeastSignificantBits()), anyInt());
         verify(ioMonitorAdapter, times(1)).afterSegmentRead(eq(segmentFile), eq(segmentUUID.getMostSignificantBits()), eq(segmentUUID.getLeastSignificantBits()), anyInt(), anyLong());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void packSmallSegments() throws IOException {
+        persistentCache.close();
+        File cacheFolder = temporaryFolder.newFolder();
+        persistentCache = new PersistentDiskCache(cacheFolder, 10, new IOMonitorAdapter());
+
+        Map<UUID, byte[]> segments = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            UUID uuid = UUID.randomUUID();
+            byte[] data = randomBytes(1024 + i);
+            segments.put(uuid, data);
+            persistentCache.writeSegment(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), Buffer.wrap(data));
+        }
+        persistentCache.close();
+
+        String[] files = cacheFolder.list();
+        assertNotNull(files);
+        for (String file : files) {
+            assertTrue("Unexpected file " + file, file.startsWith("pack-") || file.equals(PersistentDiskCache.INDEX_FILE_NAME));
+        }
+
+        // Recover from the checkpoint
+        persistentCache = new PersistentDiskCache(cacheFolder, 10, new IOMonitorAdapter());
+        assertSegmentsCached(segments);
+        persistentCache.close();
+
+        // Recover by scanning the pack files
+        assertTrue(new File(cacheFolder, PersistentDiskCache.INDEX_FILE_NAME).delete());
+        persistentCache = new PersistentDiskCache(cacheFolder, 10, new IOMonitorAdapter());
+        assertSegmentsCached(segments);
+    }
+
+    @Test
+    public void evictLeastRecentlyUsed() throws IOException {
+        persistentCache.close();
+        File cacheFolder = temporaryFolder.newFolder();
+        persistentCache = new PersistentDiskCache(cacheFolder, 1, new IOMonitorAdapter());
+
+        UUID[] uuids = new UUID[4];
+        for (int i = 0; i < uuids.length; i++) {
+            uuids[i] = UUID.randomUUID();
+        }
+        for (int i = 0; i < 3; i++) {
+            writeSegment(uuids[i], randomBytes(300 * 1024));
+        }
+        persistentCache.close();
+
+        // The access order survives restarts
+        persistentCache = new PersistentDiskCache(cacheFolder, 1, new IOMonitorAdapter());
+        assertNotNull(persistentCache.readSegment(uuids[0].getMostSignificantBits(), uuids[0].getLeastSignificantBits(), () -> null));
+        writeSegment(uuids[3], randomBytes(300 * 1024));
+        persistentCache.close();
+
+        assertTrue(persistentCache.containsSegment(uuids[0].getMostSignificantBits(), uuids[0].getLeastSignificantBits()));
+        assertFalse(persistentCache.containsSegment(uuids[1].getMostSignificantBits(), uuids[1].getLeastSignificantBits()));
+        assertFalse(persistentCache.containsSegment(uuids[2].getMostSignificantBits(), uuids[2].getLeastSignificantBits()));
+        assertTrue(persistentCache.containsSegment(uuids[3].getMostSignificantBits(), uuids[3].getLeastSignificantBits()));
+        assertEquals(2, ((PersistentDiskCache) persistentCache).evictionCount.get());
+    }
+
+    @Test
+    public void evictPackedSegments() throws IOException {
+        persistentCache.close();
+        File cacheFolder = temporaryFolder.newFolder();
+        persistentCache = new PersistentDiskCache(cacheFolder, 1, new IOMonitorAdapter());
+
+        for (int i = 0; i < 100; i++) {
+            UUID uuid = UUID.randomUUID();
+            persistentCache.writeSegment(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), Buffer.wrap(randomBytes(32 * 1024)));
+        }
+        persistentCache.close();
+
+        assertTrue(persistentCache.getCacheStats().getElementCount() < 100);
+        assertTrue(persistentCache.getCacheStats().estimateCurrentWeight() < 1024 * 1024);
+        assertTrue(persistentCache.getCacheStats().getEvictionCount() > 0);
+    }
+
+    private void writeSegment(UUID uuid, byte[] data) {
+        persistentCache.writeSegment(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), Buffer.wrap(data));
+        waitWhile.accept(() -> !persistentCache.containsSegment(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()));
+        assertNoTimeout();
+    }
+
+    private void assertSegmentsCached(Map<UUID, byte[]> segments) {
+        for (Map.Entry<UUID, byte[]> segment : segments.entrySet()) {
+            UUID uuid = segment.getKey();
+            assertTrue(persistentCache.containsSegment(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()));
+            Buffer buffer = persistentCache.readSegment(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), () -> null);
+            assertNotNull("Segment " + uuid + " not found in cache", buffer);
+            byte[] expected = segment.getValue();
+            assertEquals(expected.length, buffer.remaining());
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals(expected[i], buffer.get(i));
+            }
+        }
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random().nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -17,6 +17,7 @@
 package org.apache.jackrabbit.oak.segment.remote.queue;
 
 import org.apache.jackrabbit.oak.segment.remote.RemoteSegmentArchiveEntry;
+import org.apache.jackrabbit.oak.segment.spi.monitor.RemoteStoreMonitorAdapter;
 import org.junit.After;
 import org.junit.Test;
 import org.mockito.Mockito;
@@ -34,6 +35,7 @@ import java.util.concurrent.BlockingDeque;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -323,6 +325,65 @@ public class SegmentWriteQueueTest {
         assertEquals(3, added.size());
     }
 
+    @Test
+    public void testRetryDelay() {
+        for (int attempt = 0; attempt < 40; attempt++) {
+            long backoff = Math.min(SegmentWriteQueue.MAX_RETRY_DELAY, (long) SegmentWriteQueue.RETRY_DELAY << Math.min(attempt, 30));
+            long delay = SegmentWriteQueue.retryDelay(attempt);
+            assertTrue("The retry delay should back off exponentially. Actual: " + delay, delay >= backoff);
+            assertTrue("The jitter should not exceed 10%. Actual: " + delay, delay <= backoff + backoff / 10);
+        }
+    }
+
+    @Test
+    public void testConcurrencyDecreasesOnFailure() throws IOException, InterruptedException {
+        AtomicBoolean doBreak = new AtomicBoolean(true);
+        queue = new SegmentWriteQueue((tarEntry, data, offset, size) -> {
+            if (doBreak.get()) {
+                throw new IOException();
+            }
+        });
+        int initial = queue.getConcurrency();
+
+        queue.addToQueue(tarEntry(0), EMPTY_DATA, 0, 0);
+        while (!queue.isBroken()) {
+            Thread.sleep(10);
+        }
+        assertTrue("The concurrency should decrease on failures", queue.getConcurrency() < initial || initial == 1);
+
+        doBreak.set(false);
+        queue.flush();
+        assertFalse(queue.isBroken());
+    }
+
+    @Test
+    public void testSharedConcurrencyLimit() throws IOException {
+        AtomicInteger uploads = new AtomicInteger();
+        AtomicInteger maxUploads = new AtomicInteger();
+        SegmentWriteQueue.SegmentConsumer consumer = (tarEntry, data, offset, size) -> {
+            maxUploads.accumulateAndGet(uploads.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            uploads.decrementAndGet();
+        };
+        UploadConcurrencyLimit concurrency = new UploadConcurrencyLimit(1, 1, 2);
+        queue = new SegmentWriteQueue(consumer, new RemoteStoreMonitorAdapter(), concurrency);
+        queueBlocked = new SegmentWriteQueue(consumer, new RemoteStoreMonitorAdapter(), concurrency);
+
+        for (int i = 0; i < 10; i++) {
+            queue.addToQueue(tarEntry(i), EMPTY_DATA, 0, 0);
+            queueBlocked.addToQueue(tarEntry(i), EMPTY_DATA, 0, 0);
+        }
+        queue.flush();
+        queueBlocked.flush();
+
+        assertTrue("The queues should share the concurrency limit. Actual: " + maxUploads.get(),
+                maxUploads.get() <= concurrency.getMax());
+    }
+
     private static RemoteSegmentArchiveEntry tarEntry(long i) {
         return new RemoteSegmentArchiveEntry(0, i, 0, 0, 0, 0, false);
     }
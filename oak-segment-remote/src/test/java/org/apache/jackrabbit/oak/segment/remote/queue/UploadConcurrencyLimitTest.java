@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.segment.remote.queue;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class UploadConcurrencyLimitTest {
+
+    private static final long LATENCY = MILLISECONDS.toNanos(50);
+
+    @Test(expected = IllegalArgumentException.class)
+    public void illegalInitialLimit() {
+        new UploadConcurrencyLimit(5, 1, 4);
+    }
+
+    @Test
+    public void increaseWithBacklog() {
+        UploadConcurrencyLimit limit = new UploadConcurrencyLimit(2, 1, 4);
+        round(limit, LATENCY, true);
+        assertEquals(3, limit.getLimit());
+        round(limit, LATENCY, true);
+        round(limit, LATENCY, true);
+        round(limit, LATENCY, true);
+        assertEquals(4, limit.getLimit());
+    }
+
+    @Test
+    public void keepWithoutBacklog() {
+        UploadConcurrencyLimit limit = new UploadConcurrencyLimit(2, 1, 4);
+        round(limit, LATENCY, false);
+        round(limit, LATENCY, false);
+        assertEquals(2, limit.getLimit());
+    }
+
+    @Test
+    public void decreaseWithLatency() {
+        UploadConcurrencyLimit limit = new UploadConcurrencyLimit(4, 1, 4);
+        for (int k = 0; k < 10; k++) {
+            round(limit, LATENCY, true);
+        }
+        assertEquals(4, limit.getLimit());
+        for (int k = 0; k < 10; k++) {
+            round(limit, 10 * LATENCY, true);
+        }
+        assertTrue(limit.getLimit() < 4);
+    }
+
+    @Test
+    public void halveOnFailure() {
+        UploadConcurrencyLimit limit = new UploadConcurrencyLimit(8, 1, 8);
+        limit.onFailure();
+        assertEquals(4, limit.getLimit());
+        limit.onFailure();
+        limit.onFailure();
+        limit.onFailure();
+        assertEquals(1, limit.getLimit());
+    }
+
+    @Test
+    public void acquireWithinLimit() throws InterruptedException {
+        UploadConcurrencyLimit limit = new UploadConcurrencyLimit(2, 1, 4);
+        limit.acquire();
+        limit.acquire();
+
+        AtomicBoolean acquired = new AtomicBoolean();
+        Thread thread = new Thread(() -> {
+            try {
+                limit.acquire();
+                acquired.set(true);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        thread.start();
+        thread.join(100);
+        assertFalse(acquired.get());
+
+        limit.release();
+        thread.join(1000);
+        assertTrue(acquired.get());
+    }
+
+    private static void round(UploadConcurrencyLimit limit, long latency, boolean backlog) {
+        for (int k = limit.getLimit(); k > 0; k--) {
+            limit.onSuccess(latency, backlog);
+        }
+    }
+}
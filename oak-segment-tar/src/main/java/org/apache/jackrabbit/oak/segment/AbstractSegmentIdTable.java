@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.segment;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.UUID;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Base class for the hash tables of weak references to segment identifiers
+ * used by the {@link SegmentTracker}.
+ */
+abstract class AbstractSegmentIdTable {
+
+    /**
+     * Get the segment id, and reference it in the weak references map. If the
+     * pair of MSB/LSB is not tracked by this table, a new instance of {@link
+     * SegmentId} is created using the provided {@link SegmentIdFactory} and
+     * tracked by this table.
+     *
+     * @param msb   The most significant bits of the {@link SegmentId}.
+     * @param lsb   The least significant bits of the {@link SegmentId}.
+     * @param maker A non-{@code null} instance of {@link SegmentIdFactory}.
+     * @return the segment id
+     */
+    @NotNull
+    abstract SegmentId newSegmentId(long msb, long lsb, SegmentIdFactory maker);
+
+    /**
+     * Returns all segment identifiers that are currently referenced in memory.
+     *
+     * @param ids referenced segment identifiers
+     */
+    abstract void collectReferencedIds(Collection<SegmentId> ids);
+
+    /**
+     * Mark all the segment identifiers in this table whose segment has been
+     * reclaimed by the garbage collector.
+     *
+     * @param reclaimed the reclaimed segments
+     * @param gcInfo    details about the garbage collection that reclaimed
+     *                  the segments
+     */
+    abstract void clearSegmentIdTables(@NotNull Set<UUID> reclaimed, @NotNull String gcInfo);
+
+}
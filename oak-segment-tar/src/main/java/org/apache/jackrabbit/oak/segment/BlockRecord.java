@@ -54,7 +54,12 @@ class BlockRecord extends Record {
             length = size - position;
         }
         if (length > 0) {
-            getSegment().readBytes(getRecordNumber(), position, buffer, offset, length);
+            Segment segment = getSegment();
+            segment.readBytes(getRecordNumber(), position, buffer, offset, length);
+            RecordReadStats stats = segment.getRecordReadStats();
+            if (stats.sample()) {
+                stats.onRead(RecordType.BLOCK, getRecordId().getSegmentId(), false, length);
+            }
         }
         return length;
     }
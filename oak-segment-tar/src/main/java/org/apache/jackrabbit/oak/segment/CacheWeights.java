@@ -124,6 +124,18 @@ public final class CacheWeights {
         }
     }
 
+    public static class MapRecordCacheWeigher implements
+            Weigher<RecordId, MapRecordCache.DecodedMap> {
+
+        @Override
+        public int weigh(@NotNull RecordId key, @NotNull MapRecordCache.DecodedMap value) {
+            int size = LIRS_CACHE_OVERHEAD;
+            size += key.estimateMemoryUsage();
+            size += value.estimateMemoryUsage();
+            return size;
+        }
+    }
+
     public static class ReaderStringCacheWeigher implements
             Weigher<CacheKey, String> {
 
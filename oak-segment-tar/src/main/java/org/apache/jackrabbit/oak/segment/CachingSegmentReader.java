@@ -37,11 +37,12 @@ import org.slf4j.LoggerFactory;
 
 /**
  * This {@code SegmentReader} implementation implements caching for
- * strings and templates. It can also optionally rely on a {@link BlobStore} for resolving blobs.
+ * strings, templates and optionally for the entries of large maps. It can also optionally rely on a {@link BlobStore} for resolving blobs.
  */
 public class CachingSegmentReader implements SegmentReader {
     public static final int DEFAULT_STRING_CACHE_MB = 256;
     public static final int DEFAULT_TEMPLATE_CACHE_MB = 64;
+    public static final int DEFAULT_MAP_RECORD_CACHE_MB = 0;
 
     private static final Logger LOG = LoggerFactory.getLogger(LoggingHook.class.getName() + ".reader");
 
@@ -65,6 +66,15 @@ public class CachingSegmentReader implements SegmentReader {
 
     private final MeterStats readStats;
 
+    @NotNull
+    private final RecordReadStats recordReadStats;
+
+    /**
+     * Cache for decoded map records
+     */
+    @NotNull
+    private final MapRecordCache mapRecordCache;
+
     /**
      * Create a new instance based on the supplied arguments.
      * @param writer          A {@code Supplier} for a the {@code SegmentWriter} used by the segment
@@ -81,12 +91,38 @@ public class CachingSegmentReader implements SegmentReader {
         long stringCacheMB,
         long templateCacheMB,
         MeterStats readStats
+    ) {
+        this(writer, blobStore, stringCacheMB, templateCacheMB, 0, readStats, RecordReadStats.NOOP);
+    }
+
+    /**
+     * Create a new instance based on the supplied arguments.
+     * @param writer          A {@code Supplier} for a the {@code SegmentWriter} used by the segment
+     *                        builders returned from {@link NodeState#builder()} to write ahead changes.
+     *                        {@code writer.get()} must not return {@code null}.
+     * @param blobStore       {@code BlobStore} instance of the underlying {@link SegmentStore}, or
+     *                        {@code null} if none.
+     * @param stringCacheMB   the size of the string cache in MBs or {@code 0} for no cache.
+     * @param templateCacheMB the size of the template cache in MBs or {@code 0} for no cache.
+     * @param mapRecordCacheMB the size of the map record cache in MBs or {@code 0} for no cache.
+     * @param recordReadStats statistics recording the records read by this instance.
+     */
+    public CachingSegmentReader(
+        @NotNull Supplier<SegmentWriter> writer,
+        @Nullable BlobStore blobStore,
+        long stringCacheMB,
+        long templateCacheMB,
+        long mapRecordCacheMB,
+        MeterStats readStats,
+        @NotNull RecordReadStats recordReadStats
     ) {
         this.writer = checkNotNull(writer);
         this.blobStore = blobStore;
         stringCache = new StringCache(stringCacheMB * 1024 * 1024);
         templateCache = new TemplateCache(templateCacheMB * 1024 * 1024);
+        mapRecordCache = new MapRecordCache(mapRecordCacheMB * 1024 * 1024, MapRecordCache.DEFAULT_MIN_SIZE);
         this.readStats = readStats;
+        this.recordReadStats = checkNotNull(recordReadStats);
     }
 
     /**
@@ -98,6 +134,20 @@ public class CachingSegmentReader implements SegmentReader {
         final SegmentId segmentId = id.getSegmentId();
         long msb = segmentId.getMostSignificantBits();
         long lsb = segmentId.getLeastSignificantBits();
+        if (recordReadStats.sample()) {
+            long[] bytes = {-1};
+            String string = stringCache.get(msb, lsb, id.getRecordNumber(), new Function<Integer, String>() {
+                @NotNull
+                @Override
+                public String apply(Integer offset) {
+                    Segment segment = segmentId.getSegment();
+                    bytes[0] = segment.readLength(offset);
+                    return segment.readString(offset);
+                }
+            });
+            recordReadStats.onRead(RecordType.VALUE, segmentId, bytes[0] < 0, Math.max(bytes[0], 0));
+            return string;
+        }
         return stringCache.get(msb, lsb, id.getRecordNumber(), new Function<Integer, String>() {
             @NotNull
             @Override
@@ -110,7 +160,12 @@ public class CachingSegmentReader implements SegmentReader {
     @NotNull
     @Override
     public MapRecord readMap(@NotNull RecordId id) {
-        return new MapRecord(this, id);
+        MapRecord map = new MapRecord(this, id);
+        if (recordReadStats.sample()) {
+            RecordType type = map.isLeaf() ? RecordType.LEAF : RecordType.BRANCH;
+            recordReadStats.onRead(type, id.getSegmentId(), false, 0);
+        }
+        return map;
     }
 
     /**
@@ -122,6 +177,19 @@ public class CachingSegmentReader implements SegmentReader {
         final SegmentId segmentId = id.getSegmentId();
         long msb = segmentId.getMostSignificantBits();
         long lsb = segmentId.getLeastSignificantBits();
+        if (recordReadStats.sample()) {
+            boolean[] hit = {true};
+            Template template = templateCache.get(msb, lsb, id.getRecordNumber(), new Function<Integer, Template>() {
+                @NotNull
+                @Override
+                public Template apply(Integer offset) {
+                    hit[0] = false;
+                    return segmentId.getSegment().readTemplate(offset);
+                }
+            });
+            recordReadStats.onRead(RecordType.TEMPLATE, segmentId, hit[0], 0);
+            return template;
+        }
         return templateCache.get(msb, lsb, id.getRecordNumber(), new Function<Integer, Template>() {
             @NotNull
             @Override
@@ -131,6 +199,16 @@ public class CachingSegmentReader implements SegmentReader {
         });
     }
 
+    /**
+     * Reading of a map entry, using the map record cache for large maps.
+     */
+    @Nullable
+    @Override
+    public RecordId readMapValue(@NotNull RecordId id, @NotNull String key) {
+        MapEntry entry = mapRecordCache.getEntry(readMap(id), key);
+        return entry != null ? entry.getValue() : null;
+    }
+
     private static String safeEncode(String value) {
         try {
             return SafeEncode.safeEncode(value);
@@ -145,6 +223,9 @@ public class CachingSegmentReader implements SegmentReader {
         if (LOG.isTraceEnabled()) {
             LOG.trace("{} n? {}", Thread.currentThread().getId(), id);
         }
+        if (recordReadStats.sample()) {
+            recordReadStats.onRead(RecordType.NODE, id.getSegmentId(), false, 0);
+        }
         return new SegmentNodeState(this, writer, blobStore, id, readStats);
     }
 
@@ -169,6 +250,12 @@ public class CachingSegmentReader implements SegmentReader {
         return new SegmentBlob(blobStore, id);
     }
 
+    @NotNull
+    @Override
+    public RecordReadStats getRecordReadStats() {
+        return recordReadStats;
+    }
+
     @NotNull
     public CacheStats getStringCacheStats() {
         return stringCache.getStats();
@@ -178,4 +265,13 @@ public class CachingSegmentReader implements SegmentReader {
     public CacheStats getTemplateCacheStats() {
         return templateCache.getStats();
     }
+
+    /**
+     * @return  the statistics of the map record cache or {@code null} if the
+     *          cache is disabled.
+     */
+    @Nullable
+    public CacheStats getMapRecordCacheStats() {
+        return mapRecordCache.getStats();
+    }
 }
@@ -18,9 +18,11 @@
 
 package org.apache.jackrabbit.oak.segment;
 
+import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.collect.Lists.newArrayList;
 import static com.google.common.collect.Maps.newHashMap;
 import static com.google.common.collect.Maps.newLinkedHashMap;
+import static org.apache.jackrabbit.oak.commons.PathUtils.concat;
 import static org.apache.jackrabbit.oak.commons.PathUtils.elements;
 import static org.apache.jackrabbit.oak.commons.PathUtils.getName;
 import static org.apache.jackrabbit.oak.commons.PathUtils.getParentPath;
@@ -39,6 +41,7 @@ import org.apache.jackrabbit.oak.segment.file.cancel.Canceller;
 import org.apache.jackrabbit.oak.spi.blob.BlobStore;
 import org.apache.jackrabbit.oak.spi.gc.GCMonitor;
 import org.apache.jackrabbit.oak.spi.state.ChildNodeEntry;
+import org.apache.jackrabbit.oak.spi.state.DefaultNodeStateDiff;
 import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
 import org.apache.jackrabbit.oak.spi.state.NodeState;
 import org.jetbrains.annotations.NotNull;
@@ -53,6 +56,8 @@ import org.jetbrains.annotations.Nullable;
  *     processed and stored.</li>
  *     <li>Caching the compacted checkpoints and root states for deduplication should
  *     the same checkpoint or root state occur again in a later compaction retry cycle.</li>
+ *     <li>Optionally {@link #trackProgress(CompactionCursor) tracking its progress} such
+ *     that a cancelled compaction can be resumed by a later compaction.</li>
  * </ul>
  */
 public class CheckpointCompactor implements Compactor {
@@ -63,11 +68,20 @@ public class CheckpointCompactor implements Compactor {
     private final Map<NodeState, NodeState> cpCache = newHashMap();
 
     @NotNull
-    private final ClassicCompactor compactor;
+    private final Compactor compactor;
+
+    @NotNull
+    private final ClassicCompactor classicCompactor;
+
+    @NotNull
+    private final SegmentReader reader;
 
     @NotNull
     private final NodeWriter nodeWriter;
 
+    @Nullable
+    private CompactionCursor progress;
+
     private interface NodeWriter {
         @NotNull
         SegmentNodeState writeNode(@NotNull NodeState node, @Nullable Buffer stableId) throws IOException;
@@ -88,14 +102,74 @@ public class CheckpointCompactor implements Compactor {
             @NotNull SegmentWriter writer,
             @Nullable BlobStore blobStore,
             @NotNull GCNodeWriteMonitor compactionMonitor) {
+        this(gcListener, reader, writer, blobStore,
+                new ClassicCompactor(reader, writer, blobStore, compactionMonitor));
+    }
+
+    private CheckpointCompactor(
+            @NotNull GCMonitor gcListener,
+            @NotNull SegmentReader reader,
+            @NotNull SegmentWriter writer,
+            @Nullable BlobStore blobStore,
+            @NotNull ClassicCompactor compactor) {
+        this(gcListener, reader, writer, blobStore, compactor, compactor);
+    }
+
+    /**
+     * Create a new instance delegating the compaction of the individual
+     * checkpoints and the root to {@code compactor}.
+     * @param gcListener listener receiving notifications about the garbage collection process
+     * @param reader     segment reader used to read from the segments
+     * @param writer     segment writer used to serialise to segments
+     * @param blobStore  the blob store or {@code null} if none
+     * @param classicCompactor  compactor used to stitch separately compacted
+     *                          child nodes together
+     * @param compactor  compactor used for the checkpoints and the root
+     */
+    protected CheckpointCompactor(
+            @NotNull GCMonitor gcListener,
+            @NotNull SegmentReader reader,
+            @NotNull SegmentWriter writer,
+            @Nullable BlobStore blobStore,
+            @NotNull ClassicCompactor classicCompactor,
+            @NotNull Compactor compactor) {
         this.gcListener = gcListener;
-        this.compactor = new ClassicCompactor(reader, writer, blobStore, compactionMonitor);
+        this.compactor = compactor;
+        this.classicCompactor = classicCompactor;
+        this.reader = reader;
         this.nodeWriter = (node, stableId) -> {
             RecordId nodeId = writer.writeNode(node, stableId);
             return new SegmentNodeState(reader, writer, blobStore, nodeId);
         };
     }
 
+    /**
+     * Record the progress of this compactor in {@code progress}. When
+     * tracking progress the checkpoints and the root are compacted one
+     * top-level child node at the time and an entry is added to
+     * {@code progress} for each compacted child node and each compacted
+     * checkpoint and root. Entries already present in {@code progress}
+     * (e.g. from a previous, cancelled compaction) are used to resume:
+     * instead of compacting the respective node from scratch only its
+     * changes since are compacted onto the previously compacted node.
+     * <p>
+     * The caller is responsible for ensuring that all segments referenced
+     * from {@code progress} are still available.
+     * @param progress  the compaction cursor to resume from and to update
+     */
+    public void trackProgress(@NotNull CompactionCursor progress) {
+        this.progress = checkNotNull(progress);
+    }
+
+    /**
+     * @return  the compaction cursor passed to {@link #trackProgress(CompactionCursor)}
+     *          or {@code null} if progress is not tracked.
+     */
+    @Nullable
+    public CompactionCursor getProgress() {
+        return progress;
+    }
+
     /**
      * Compact {@code uncompacted} on top of an optional {@code base}.
      * @param base         the base state to compact against
@@ -248,7 +322,9 @@ public class CheckpointCompactor implements Compactor {
         gcListener.info("compacting {}.", path);
         NodeState compacted = cpCache.get(after);
         if (compacted == null) {
-            compacted = compactor.compact(before, after, onto, canceller);
+            compacted = progress != null && after instanceof SegmentNodeState
+                ? compactWithProgress(before, (SegmentNodeState) after, onto, path, canceller)
+                : compactor.compact(before, after, onto, canceller);
             if (compacted == null) {
                 return null;
             } else {
@@ -261,4 +337,104 @@ public class CheckpointCompactor implements Compactor {
         }
     }
 
+    private static class Change {
+        final NodeState before;
+        final NodeState after;
+        final NodeState onto;
+
+        Change(@NotNull NodeState before, @NotNull NodeState after, @NotNull NodeState onto) {
+            this.before = before;
+            this.after = after;
+            this.onto = onto;
+        }
+    }
+
+    /**
+     * Compact {@code after} against {@code before} on top of {@code onto} one
+     * child node at the time, recording the progress in {@link #progress}.
+     */
+    @Nullable
+    private SegmentNodeState compactWithProgress(
+        @NotNull NodeState before,
+        @NotNull SegmentNodeState after,
+        @NotNull NodeState onto,
+        @NotNull String path,
+        Canceller canceller
+    ) throws IOException {
+        CompactionCursor progress = checkNotNull(this.progress);
+        CompactionCursor.Entry resumed = progress.get(path);
+        if (resumed != null) {
+            gcListener.info("resuming compaction of {}.", path);
+            SegmentNodeState compacted = rebase(resumed, after, canceller);
+            if (compacted != null) {
+                progress.put(path, after.getRecordId(), compacted.getRecordId());
+            }
+            return compacted;
+        }
+
+        Map<String, SegmentNodeState> compactedChildren = newHashMap();
+        Map<String, Change> changedChildren = newLinkedHashMap();
+        boolean success = after.compareAgainstBaseState(before, new DefaultNodeStateDiff() {
+            @Override
+            public boolean childNodeAdded(String name, NodeState after) {
+                changedChildren.put(name, new Change(EMPTY_NODE, after, EMPTY_NODE));
+                return true;
+            }
+
+            @Override
+            public boolean childNodeChanged(String name, NodeState before, NodeState after) {
+                changedChildren.put(name, new Change(before, after, onto.getChildNode(name)));
+                return true;
+            }
+        });
+        if (!success) {
+            return null;
+        }
+
+        for (Entry<String, Change> child : changedChildren.entrySet()) {
+            String childPath = concat(path, child.getKey());
+            Change change = child.getValue();
+            resumed = progress.get(childPath);
+            SegmentNodeState compacted;
+            if (resumed != null && change.after instanceof SegmentNodeState) {
+                gcListener.info("resuming compaction of {}.", childPath);
+                compacted = rebase(resumed, (SegmentNodeState) change.after, canceller);
+            } else {
+                compacted = compactor.compact(change.before, change.after, change.onto, canceller);
+            }
+            if (compacted == null) {
+                return null;
+            }
+            if (change.after instanceof SegmentNodeState) {
+                RecordId uncompactedId = ((SegmentNodeState) change.after).getRecordId();
+                progress.put(childPath, uncompactedId, compacted.getRecordId());
+            }
+            compactedChildren.put(child.getKey(), compacted);
+        }
+
+        SegmentNodeState compacted = classicCompactor.compact(before, after, onto, canceller, compactedChildren);
+        if (compacted != null) {
+            progress.removeDescendants(path);
+            progress.put(path, after.getRecordId(), compacted.getRecordId());
+        }
+        return compacted;
+    }
+
+    /**
+     * Compact the changes between the uncompacted state of {@code resumed}
+     * and {@code after} onto the compacted state of {@code resumed}.
+     */
+    @Nullable
+    private SegmentNodeState rebase(
+        @NotNull CompactionCursor.Entry resumed,
+        @NotNull SegmentNodeState after,
+        Canceller canceller
+    ) throws IOException {
+        SegmentNodeState compacted = reader.readNode(resumed.getCompacted());
+        if (resumed.getUncompacted().equals(after.getRecordId())) {
+            return compacted;
+        }
+        return compactor.compact(reader.readNode(resumed.getUncompacted()), after, compacted, canceller);
+    }
+
 }
@@ -20,6 +20,7 @@ package org.apache.jackrabbit.oak.segment;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.collect.Lists.newArrayList;
+import static java.util.Collections.emptyMap;
 import static org.apache.jackrabbit.oak.api.Type.BINARIES;
 import static org.apache.jackrabbit.oak.api.Type.BINARY;
 import static org.apache.jackrabbit.oak.plugins.memory.BinaryPropertyState.binaryProperty;
@@ -29,6 +30,7 @@ import static org.apache.jackrabbit.oak.plugins.memory.PropertyStates.createProp
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.jackrabbit.oak.api.Blob;
 import org.apache.jackrabbit.oak.api.PropertyState;
@@ -116,11 +118,33 @@ public class ClassicCompactor implements Compactor {
         @NotNull NodeState after,
         @NotNull NodeState onto,
         Canceller canceller
+    ) throws IOException {
+        return compact(before, after, onto, canceller, emptyMap());
+    }
+
+    /**
+     * Compact the differences between {@code after} and {@code before} on top of
+     * {@code onto} reusing the already compacted child nodes from
+     * {@code compactedChildren} instead of compacting those again.
+     * @param before             the node state to diff against from {@code after}
+     * @param after              the node state diffed against {@code before}
+     * @param onto               the node state compacted onto
+     * @param compactedChildren  compacted child nodes of {@code after} by name
+     * @return                   the compacted node state or {@code null} if cancelled.
+     * @throws IOException
+     */
+    @Nullable
+    SegmentNodeState compact(
+        @NotNull NodeState before,
+        @NotNull NodeState after,
+        @NotNull NodeState onto,
+        Canceller canceller,
+        @NotNull Map<String, SegmentNodeState> compactedChildren
     ) throws IOException {
         checkNotNull(before);
         checkNotNull(after);
         checkNotNull(onto);
-        return new CompactDiff(onto, canceller).diff(before, after);
+        return new CompactDiff(onto, canceller, checkNotNull(compactedChildren)).diff(before, after);
     }
 
     @Nullable
@@ -141,6 +165,9 @@ public class ClassicCompactor implements Compactor {
 
         private final Canceller canceller;
 
+        @NotNull
+        private final Map<String, SegmentNodeState> compactedChildren;
+
         @Nullable
         private IOException exception;
 
@@ -154,10 +181,12 @@ public class ClassicCompactor implements Compactor {
             }
         }
 
-        CompactDiff(@NotNull NodeState base, Canceller canceller) {
+        CompactDiff(@NotNull NodeState base, Canceller canceller,
+                @NotNull Map<String, SegmentNodeState> compactedChildren) {
             this.builder = new MemoryNodeBuilder(checkNotNull(base));
             this.canceller = canceller;
             this.base = base;
+            this.compactedChildren = compactedChildren;
         }
 
         @Nullable
@@ -197,7 +226,10 @@ public class ClassicCompactor implements Compactor {
         @Override
         public boolean childNodeAdded(@NotNull String name, @NotNull NodeState after) {
             try {
-                SegmentNodeState compacted = compact(after, canceller);
+                SegmentNodeState compacted = compactedChildren.get(name);
+                if (compacted == null) {
+                    compacted = compact(after, canceller);
+                }
                 if (compacted != null) {
                     updated();
                     builder.setChildNode(name, compacted);
@@ -214,7 +246,10 @@ public class ClassicCompactor implements Compactor {
         @Override
         public boolean childNodeChanged(@NotNull String name, @NotNull NodeState before, @NotNull NodeState after) {
             try {
-                SegmentNodeState compacted = compact(before, after, base.getChildNode(name), canceller);
+                SegmentNodeState compacted = compactedChildren.get(name);
+                if (compacted == null) {
+                    compacted = compact(before, after, base.getChildNode(name), canceller);
+                }
                 if (compacted != null) {
                     updated();
                     builder.setChildNode(name, compacted);
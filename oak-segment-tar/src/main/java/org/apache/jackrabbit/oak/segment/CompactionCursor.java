@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jackrabbit.oak.segment;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Maps.newLinkedHashMap;
+import static com.google.common.collect.Sets.newLinkedHashSet;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A compaction cursor records the progress of a compaction. For each path
+ * that has been fully compacted it records the id of the uncompacted node
+ * state together with the id of its compacted clone. A later compaction can
+ * use these entries to rebase the changes since onto the compacted clones
+ * instead of compacting the respective subtrees from scratch.
+ * <p>
+ * The string representation of a cursor returned by {@link #toString()} can
+ * be parsed back by {@link #parse(SegmentIdProvider, String)}.
+ */
+public class CompactionCursor {
+
+    private static final String CHARSET = "UTF-8";
+
+    private final Map<String, Entry> entries = newLinkedHashMap();
+
+    /**
+     * A compacted node state and the uncompacted node state it was compacted
+     * from.
+     */
+    public static class Entry {
+
+        @NotNull
+        private final RecordId uncompacted;
+
+        @NotNull
+        private final RecordId compacted;
+
+        Entry(@NotNull RecordId uncompacted, @NotNull RecordId compacted) {
+            this.uncompacted = checkNotNull(uncompacted);
+            this.compacted = checkNotNull(compacted);
+        }
+
+        /**
+         * @return  id of the uncompacted node state
+         */
+        @NotNull
+        public RecordId getUncompacted() {
+            return uncompacted;
+        }
+
+        /**
+         * @return  id of the compacted clone of {@link #getUncompacted()}
+         */
+        @NotNull
+        public RecordId getCompacted() {
+            return compacted;
+        }
+
+        @Override
+        public String toString() {
+            return uncompacted.toString10() + '=' + compacted.toString10();
+        }
+    }
+
+    /**
+     * Record that the node state at {@code path} has been compacted
+     * @param path         path of the node state relative to the super root
+     * @param uncompacted  id of the uncompacted node state
+     * @param compacted    id of the compacted node state
+     */
+    public synchronized void put(@NotNull String path, @NotNull RecordId uncompacted, @NotNull RecordId compacted) {
+        entries.put(checkNotNull(path), new Entry(uncompacted, compacted));
+    }
+
+    /**
+     * @return  the entry for {@code path} or {@code null} if none
+     */
+    @Nullable
+    public synchronized Entry get(@NotNull String path) {
+        return entries.get(path);
+    }
+
+    /**
+     * Remove all entries for descendants of {@code path}.
+     */
+    public synchronized void removeDescendants(@NotNull String path) {
+        Iterator<String> keys = entries.keySet().iterator();
+        while (keys.hasNext()) {
+            if (keys.next().startsWith(path + '/')) {
+                keys.remove();
+            }
+        }
+    }
+
+    /**
+     * @return  {@code true} if no progress has been recorded
+     */
+    public synchronized boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * @return  number of recorded entries
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return  the ids of all the segments referenced from this cursor
+     */
+    @NotNull
+    public synchronized Collection<SegmentId> getSegmentIds() {
+        Set<SegmentId> ids = newLinkedHashSet();
+        for (Entry entry : entries.values()) {
+            ids.add(entry.uncompacted.getSegmentId());
+            ids.add(entry.compacted.getSegmentId());
+        }
+        return ids;
+    }
+
+    /**
+     * Parse the string representation of a cursor as returned by
+     * {@link #toString()}.
+     * @param idProvider  provider of the segment ids of the parsed record ids
+     * @param cursor      string representation of a cursor
+     * @return  the parsed cursor
+     * @throws IllegalArgumentException if {@code cursor} is malformed
+     */
+    @NotNull
+    public static CompactionCursor parse(@NotNull SegmentIdProvider idProvider, @NotNull String cursor) {
+        CompactionCursor result = new CompactionCursor();
+        if (cursor.isEmpty()) {
+            return result;
+        }
+        for (String entry : cursor.split(";")) {
+            String[] items = entry.split("=");
+            if (items.length != 3) {
+                throw new IllegalArgumentException("Bad cursor entry: " + entry);
+            }
+            result.put(decode(items[0]),
+                    RecordId.fromString(idProvider, items[1]),
+                    RecordId.fromString(idProvider, items[2]));
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            if (sb.length() > 0) {
+                sb.append(';');
+            }
+            sb.append(encode(entry.getKey())).append('=').append(entry.getValue());
+        }
+        return sb.toString();
+    }
+
+    private static String encode(String path) {
+        try {
+            return URLEncoder.encode(path, CHARSET);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String decode(String path) {
+        try {
+            return URLDecoder.decode(path, CHARSET);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,332 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.segment;
+
+import static com.google.common.collect.Maps.newHashMapWithExpectedSize;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hash table of weak references to segment identifiers, which can be
+ * accessed concurrently without synchronizing on the table.
+ * <p>
+ * The layout of the table is the same as the one of {@link SegmentIdTable}:
+ * open addressing with linear probing over an array whose size is always a
+ * power of two, indexed by the random identifier bits.
+ * <p>
+ * Looking up an identifier already contained in the table does not acquire
+ * any lock. New entries are added to empty slots by compare-and-set, so
+ * concurrent insertions don't block each other. Only rebuilding the table
+ * (growing it or dropping entries whose referent has been garbage
+ * collected) excludes insertions. A rebuild never modifies the current
+ * array but replaces it with a new one, which contains every entry that was
+ * still reachable: a lookup running concurrently with a rebuild might use
+ * the old array, but any identifier it finds there is also in the new one.
+ */
+public class ConcurrentSegmentIdTable extends AbstractSegmentIdTable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ConcurrentSegmentIdTable.class);
+
+    /**
+     * Insertions acquire the read lock, rebuilds acquire the write lock.
+     * Lookups of existing entries don't acquire any lock.
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * The weak references to segment identifiers. The array is replaced as a
+     * whole when the table is rebuilt.
+     */
+    private volatile AtomicReferenceArray<WeakReference<SegmentId>> references =
+            new AtomicReferenceArray<>(1024);
+
+    /**
+     * The number of used entries (WeakReferences) in this table.
+     */
+    private final AtomicInteger entryCount = new AtomicInteger();
+
+    /**
+     * Whether an entry whose referent has been garbage collected was
+     * encountered since the last rebuild.
+     */
+    private volatile boolean collected;
+
+    /**
+     * The refresh count (for diagnostics and testing).
+     */
+    private volatile int rebuildCount;
+
+    @NotNull
+    @Override
+    SegmentId newSegmentId(long msb, long lsb, SegmentIdFactory maker) {
+        SegmentId id = find(references, msb, lsb);
+
+        if (id != null) {
+            return id;
+        }
+
+        while (true) {
+            Lock insert = lock.readLock();
+            insert.lock();
+            try {
+                id = insert(references, msb, lsb, maker);
+            } finally {
+                insert.unlock();
+            }
+
+            if (id == null || collected || entryCount.get() > references.length() * 0.75) {
+                refresh();
+            }
+
+            if (id != null) {
+                return id;
+            }
+        }
+    }
+
+    @Nullable
+    private static SegmentId find(AtomicReferenceArray<WeakReference<SegmentId>> table, long msb, long lsb) {
+        int mask = table.length() - 1;
+        int index = getIndex(lsb, mask);
+
+        for (int probes = 0; probes <= mask; probes++) {
+            WeakReference<SegmentId> reference = table.get(index);
+
+            if (reference == null) {
+                return null;
+            }
+
+            SegmentId id = reference.get();
+
+            if (id != null
+                    && id.getMostSignificantBits() == msb
+                    && id.getLeastSignificantBits() == lsb) {
+                return id;
+            }
+
+            index = (index + 1) & mask;
+        }
+
+        return null;
+    }
+
+    /**
+     * Find the segment id in the table, or insert it into the first empty
+     * slot of its probe sequence.
+     *
+     * @return the segment id, or {@code null} if the table is full and has
+     * to be rebuilt before the id can be inserted.
+     */
+    @Nullable
+    private SegmentId insert(AtomicReferenceArray<WeakReference<SegmentId>> table, long msb, long lsb, SegmentIdFactory maker) {
+        int mask = table.length() - 1;
+        int index = getIndex(lsb, mask);
+
+        SegmentId created = null;
+        WeakReference<SegmentId> createdReference = null;
+
+        for (int probes = 0; probes <= mask; probes++) {
+            WeakReference<SegmentId> reference = table.get(index);
+
+            if (reference == null) {
+                if (created == null) {
+                    created = maker.newSegmentId(msb, lsb);
+                    createdReference = new WeakReference<>(created);
+                }
+
+                if (table.compareAndSet(index, null, createdReference)) {
+                    entryCount.incrementAndGet();
+                    return created;
+                }
+
+                // Another thread took this slot in the meantime, and it
+                // might have inserted the very same id. Inspect it again.
+                continue;
+            }
+
+            SegmentId id = reference.get();
+
+            if (id != null
+                    && id.getMostSignificantBits() == msb
+                    && id.getLeastSignificantBits() == lsb) {
+                return id;
+            }
+
+            // shouldRefresh if we have a garbage collected entry
+            collected = collected || id == null;
+
+            // open addressing / linear probing
+            index = (index + 1) & mask;
+        }
+
+        return null;
+    }
+
+    @Override
+    void collectReferencedIds(Collection<SegmentId> ids) {
+        ids.addAll(refresh());
+    }
+
+    private Collection<SegmentId> refresh() {
+        Lock rebuild = lock.writeLock();
+        rebuild.lock();
+        try {
+            return doRefresh();
+        } finally {
+            rebuild.unlock();
+        }
+    }
+
+    private Collection<SegmentId> doRefresh() {
+        AtomicReferenceArray<WeakReference<SegmentId>> table = references;
+        int size = table.length();
+        Map<SegmentId, WeakReference<SegmentId>> ids = newHashMapWithExpectedSize(size);
+
+        int emptyReferences = 0;
+        for (int i = 0; i < size; i++) {
+            WeakReference<SegmentId> reference = table.get(i);
+            if (reference != null) {
+                SegmentId id = reference.get();
+                if (id != null) {
+                    ids.put(id, reference);
+                } else {
+                    emptyReferences++;
+                }
+            }
+        }
+
+        if (entryCount.get() != ids.size() + emptyReferences) {
+            // something is wrong, possibly a SegmentId hashcode or equals
+            // bug, or a problem with this hash table algorithm
+            LOG.warn("Unexpected entry count mismatch, expected {} got {}", entryCount.get(), ids.size() + emptyReferences);
+        }
+
+        entryCount.set(ids.size());
+        collected = false;
+
+        while (2 * ids.size() > size) {
+            size *= 2;
+        }
+
+        // we need to re-build the table if the new size is different,
+        // but also if some of the entries were garbage collected. Unlike
+        // SegmentIdTable we can't clear the slots of the current array in
+        // place, as lookups might be probing it concurrently.
+        if (emptyReferences > 0 || size != table.length()) {
+            rebuildCount++;
+
+            AtomicReferenceArray<WeakReference<SegmentId>> rebuilt = new AtomicReferenceArray<>(size);
+            int mask = size - 1;
+
+            for (Map.Entry<SegmentId, WeakReference<SegmentId>> entry : ids.entrySet()) {
+                int index = getIndex(entry.getKey().getLeastSignificantBits(), mask);
+                while (rebuilt.get(index) != null) {
+                    index = (index + 1) & mask;
+                }
+                rebuilt.set(index, entry.getValue());
+            }
+
+            references = rebuilt;
+        }
+
+        return ids.keySet();
+    }
+
+    private static int getIndex(long lsb, int mask) {
+        return ((int) lsb) & mask;
+    }
+
+    @Override
+    void clearSegmentIdTables(@NotNull Set<UUID> reclaimed, @NotNull String gcInfo) {
+        AtomicReferenceArray<WeakReference<SegmentId>> table = references;
+        for (int i = 0; i < table.length(); i++) {
+            WeakReference<SegmentId> reference = table.get(i);
+            if (reference != null) {
+                SegmentId id = reference.get();
+                if (id != null && reclaimed.contains(id.asUUID())) {
+                    id.reclaimed(gcInfo);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the number of map rebuild operations (used for testing and diagnostics).
+     *
+     * @return the rebuild count
+     */
+    int getMapRebuildCount() {
+        return rebuildCount;
+    }
+
+    /**
+     * Get the entry count (used for testing and diagnostics).
+     *
+     * @return the entry count
+     */
+    int getEntryCount() {
+        return entryCount.get();
+    }
+
+    /**
+     * Get the size of the internal map (used for testing and diagnostics).
+     *
+     * @return the map size
+     */
+    int getMapSize() {
+        return references.length();
+    }
+
+    /**
+     * Get the raw list of segment ids (used for testing).
+     *
+     * @return the raw list
+     */
+    List<SegmentId> getRawSegmentIdList() {
+        AtomicReferenceArray<WeakReference<SegmentId>> table = references;
+        List<SegmentId> list = new ArrayList<>();
+        for (int i = 0; i < table.length(); i++) {
+            WeakReference<SegmentId> reference = table.get(i);
+            if (reference != null) {
+                SegmentId id = reference.get();
+                if (id != null) {
+                    list.add(id);
+                }
+            }
+        }
+        return list;
+    }
+
+}
@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.segment;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A probabilistic estimate of the access frequency of items, used by {@link
+ * SegmentCache} to decide whether a new segment should be admitted to the
+ * cache at the expense of an older one.
+ * <p>
+ * This is a count-min sketch of depth 4 with 4 bit counters. Frequencies are
+ * thus capped at 15. In order to favour recent accesses all counters are
+ * halved once the number of recorded accesses reaches a sample size of ten
+ * times the maximum number of items tracked.
+ * <p>
+ * This class is not thread safe in the strict sense: concurrent updates might
+ * get lost. This is acceptable as the frequencies are approximations anyway
+ * and allows recording accesses without any synchronization.
+ */
+class FrequencySketch {
+
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private static final long ONE_MASK = 0x1111111111111111L;
+
+    private final long[] table;
+
+    private final int tableMask;
+
+    private final int sampleSize;
+
+    private int size;
+
+    /**
+     * @param maximumSize the number of items expected to be tracked.
+     */
+    FrequencySketch(int maximumSize) {
+        checkArgument(maximumSize > 0);
+        int capacity = Integer.highestOneBit(Math.min(maximumSize, 1 << 24) - 1) << 1;
+        this.table = new long[Math.max(capacity, 64)];
+        this.tableMask = table.length - 1;
+        this.sampleSize = (int) Math.min(10L * maximumSize, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param hash the hash code of an item
+     * @return the estimated number of times the item was accessed, between
+     * 0 and 15.
+     */
+    int frequency(int hash) {
+        int h = spread(hash);
+        int start = (h & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(h, i);
+            int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * Record an access to an item.
+     *
+     * @param hash the hash code of the item
+     */
+    void increment(int hash) {
+        int h = spread(hash);
+        int start = (h & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(h, i), start + i);
+        }
+        if (added && ++size >= sampleSize) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(int index, int counter) {
+        int offset = counter << 2;
+        long mask = 0xfL << offset;
+        long value = table[index];
+        if ((value & mask) != mask) {
+            table[index] = value + (1L << offset);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Halve all counters and the sample size.
+     */
+    private void reset() {
+        int odd = 0;
+        for (int i = 0; i < table.length; i++) {
+            odd += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size = Math.max(0, (size >>> 1) - (odd >>> 2));
+    }
+
+    private int indexOf(int hash, int depth) {
+        long h = (hash + SEEDS[depth]) * SEEDS[depth];
+        h += h >>> 32;
+        return ((int) h) & tableMask;
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+
+}
@@ -22,6 +22,7 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkElementIndex;
 import static com.google.common.base.Preconditions.checkPositionIndexes;
 import static com.google.common.collect.Lists.newArrayListWithCapacity;
+import static org.apache.jackrabbit.oak.segment.Segment.RECORD_ID_BYTES;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
 
@@ -69,6 +70,7 @@ class ListRecord extends Record {
             int bucketOffset = index % bucketSize;
             Segment segment = getSegment();
             RecordId id = segment.readRecordId(getRecordNumber(), 0, bucketIndex);
+            onBucketRead(segment, 1);
             ListRecord bucket = new ListRecord(
                     id, Math.min(bucketSize, size - bucketIndex * bucketSize));
             return bucket.getEntry(bucketOffset);
@@ -103,11 +105,13 @@ class ListRecord extends Record {
             for (int i = 0; i < count; i++) {
                 ids.add(segment.readRecordId(getRecordNumber(), 0, index + i));
             }
+            onBucketRead(segment, count);
         } else {
             while (count > 0) {
                 int bucketIndex = index / bucketSize;
                 int bucketOffset = index % bucketSize;
                 RecordId id = segment.readRecordId(getRecordNumber(), 0, bucketIndex);
+                onBucketRead(segment, 1);
                 ListRecord bucket = new ListRecord(
                         id, Math.min(bucketSize, size - bucketIndex * bucketSize));
                 int n = Math.min(bucket.size() - bucketOffset, count);
@@ -118,4 +122,11 @@ class ListRecord extends Record {
         }
     }
 
+    private void onBucketRead(Segment segment, int entries) {
+        RecordReadStats stats = segment.getRecordReadStats();
+        if (stats.sample()) {
+            stats.onRead(RecordType.BUCKET, getRecordId().getSegmentId(), false, entries * RECORD_ID_BYTES);
+        }
+    }
+
 }
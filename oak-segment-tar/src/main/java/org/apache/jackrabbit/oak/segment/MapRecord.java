@@ -20,6 +20,7 @@ package org.apache.jackrabbit.oak.segment;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.collect.Iterables.concat;
+import static com.google.common.collect.Lists.newArrayList;
 import static com.google.common.collect.Lists.newArrayListWithCapacity;
 import static java.lang.Integer.bitCount;
 import static java.lang.Integer.highestOneBit;
@@ -31,8 +32,6 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
-import com.google.common.base.Objects;
-import com.google.common.collect.ComparisonChain;
 import org.apache.jackrabbit.oak.spi.state.DefaultNodeStateDiff;
 import org.apache.jackrabbit.oak.spi.state.NodeState;
 import org.apache.jackrabbit.oak.spi.state.NodeStateDiff;
@@ -124,6 +123,11 @@ public class MapRecord extends Record {
         this.reader = checkNotNull(reader);
     }
 
+    @NotNull
+    SegmentReader getReader() {
+        return reader;
+    }
+
     boolean isLeaf() {
         Segment segment = getSegment();
         int head = segment.readInt(getRecordNumber());
@@ -403,6 +407,62 @@ public class MapRecord extends Record {
         return Arrays.asList(entries);
     }
 
+    /**
+     * Consumer of the raw entries of a map.
+     */
+    interface EntryConsumer {
+
+        void accept(int hash, @NotNull RecordId key, @NotNull RecordId value);
+
+    }
+
+    /**
+     * Pass the hash, key and value of each entry of this map to {@code
+     * consumer} in the order of the unsigned hashes. Unlike {@link
+     * #getEntries()} this does not read the keys of the entries.
+     */
+    void forEachEntry(@NotNull EntryConsumer consumer) {
+        forEachEntry(null, null, consumer);
+    }
+
+    private void forEachEntry(RecordId diffKey, RecordId diffValue, EntryConsumer consumer) {
+        Segment segment = getSegment();
+
+        int head = segment.readInt(getRecordNumber());
+        if (isDiff(head)) {
+            RecordId key = segment.readRecordId(getRecordNumber(), 8);
+            RecordId value = segment.readRecordId(getRecordNumber(), 8, 1);
+            RecordId base = segment.readRecordId(getRecordNumber(), 8, 2);
+            reader.readMap(base).forEachEntry(key, value, consumer);
+            return;
+        }
+
+        int size = getSize(head);
+        if (size == 0) {
+            return;
+        }
+
+        int level = getLevel(head);
+        if (isBranch(size, level)) {
+            for (MapRecord bucket : getBucketList(segment)) {
+                bucket.forEachEntry(diffKey, diffValue, consumer);
+            }
+            return;
+        }
+
+        for (int i = 0; i < size; i++) {
+            int hash = segment.readInt(getRecordNumber(), 4 + i * 4);
+            RecordId key = segment.readRecordId(getRecordNumber(), 4 + size * 4, i * 2);
+            RecordId value;
+            if (key.equals(diffKey)) {
+                value = diffValue;
+            } else {
+                value = segment.readRecordId(getRecordNumber(), 4 + size * 4, i * 2 + 1);
+            }
+            consumer.accept(hash, key, value);
+        }
+    }
+
     boolean compare(MapRecord before, final NodeStateDiff diff) {
         if (Record.fastEquals(this, before)) {
             return true;
@@ -496,39 +556,36 @@ public class MapRecord extends Record {
             return compareBranch(before, this, diff);
         }
 
-        Iterator<MapEntry> beforeEntries = before.getEntries().iterator();
-        Iterator<MapEntry> afterEntries = this.getEntries().iterator();
-
-        MapEntry beforeEntry = nextOrNull(beforeEntries);
-        MapEntry afterEntry = nextOrNull(afterEntries);
-        while (beforeEntry != null || afterEntry != null) {
-            int d = compare(beforeEntry, afterEntry);
+        // Merge the entries of both maps in the order of their hashes and
+        // names. Entries with equal keys and values are skipped by comparing
+        // their record ids in place: keys and node states are only read for
+        // the entries that actually changed.
+        EntryCursor beforeCursor = new EntryCursor(before);
+        EntryCursor afterCursor = new EntryCursor(this);
+        while (beforeCursor.hasEntry() || afterCursor.hasEntry()) {
+            int d = compare(beforeCursor, afterCursor);
             if (d < 0) {
-                assert beforeEntry != null;
                 if (!diff.childNodeDeleted(
-                        beforeEntry.getName(), beforeEntry.getNodeState())) {
+                        beforeCursor.getName(), beforeCursor.getNodeState())) {
                     return false;
                 }
-                beforeEntry = nextOrNull(beforeEntries);
+                beforeCursor.next();
             } else if (d == 0) {
-                assert beforeEntry != null;
-                assert afterEntry != null;
-                if (!beforeEntry.getValue().equals(afterEntry.getValue())
+                if (!beforeCursor.valueEquals(afterCursor)
                         && !diff.childNodeChanged(
-                                beforeEntry.getName(),
-                                beforeEntry.getNodeState(),
-                                afterEntry.getNodeState())) {
+                                beforeCursor.getName(),
+                                beforeCursor.getNodeState(),
+                                afterCursor.getNodeState())) {
                     return false;
                 }
-                beforeEntry = nextOrNull(beforeEntries);
-                afterEntry = nextOrNull(afterEntries);
+                beforeCursor.next();
+                afterCursor.next();
             } else {
-                assert afterEntry != null;
                 if (!diff.childNodeAdded(
-                        afterEntry.getName(), afterEntry.getNodeState())) {
+                        afterCursor.getName(), afterCursor.getNodeState())) {
                     return false;
                 }
-                afterEntry = nextOrNull(afterEntries);
+                afterCursor.next();
             }
         }
 
@@ -565,36 +622,53 @@ public class MapRecord extends Record {
      */
     private static boolean compareBranch(
             MapRecord before, MapRecord after, NodeStateDiff diff) {
-        MapRecord[] beforeBuckets = before.getBuckets();
-        MapRecord[] afterBuckets = after.getBuckets();
+        Segment beforeSegment = before.getSegment();
+        Segment afterSegment = after.getSegment();
+        int beforeBitmap = beforeSegment.readInt(before.getRecordNumber(), 4);
+        int afterBitmap = afterSegment.readInt(after.getRecordNumber(), 4);
+        int beforeIds = 0;
+        int afterIds = 0;
         for (int i = 0; i < BUCKETS_PER_LEVEL; i++) {
-            if (Objects.equal(beforeBuckets[i], afterBuckets[i])) {
-                // these buckets are equal (or both empty), so no changes
-            } else if (beforeBuckets[i] == null) {
+            int bit = 1 << i;
+            boolean inBefore = (beforeBitmap & bit) != 0;
+            boolean inAfter = (afterBitmap & bit) != 0;
+            if (inBefore && inAfter) {
+                if (afterSegment.recordIdEquals(
+                        after.getRecordNumber(), 8, afterIds,
+                        beforeSegment, before.getRecordNumber(), 8, beforeIds)) {
+                    // these buckets are equal, so no changes
+                } else {
+                    // both before and after buckets exist; compare recursively
+                    MapRecord beforeBucket = before.reader.readMap(
+                            beforeSegment.readRecordId(before.getRecordNumber(), 8, beforeIds));
+                    MapRecord afterBucket = after.reader.readMap(
+                            afterSegment.readRecordId(after.getRecordNumber(), 8, afterIds));
+                    if (!afterBucket.compare(beforeBucket, diff)) {
+                        return false;
+                    }
+                }
+                beforeIds++;
+                afterIds++;
+            } else if (inAfter) {
                 // before bucket is empty, so all after entries were added
-                MapRecord bucket = afterBuckets[i];
+                MapRecord bucket = after.reader.readMap(
+                        afterSegment.readRecordId(after.getRecordNumber(), 8, afterIds++));
                 for (MapEntry entry : bucket.getEntries()) {
                     if (!diff.childNodeAdded(
                             entry.getName(), entry.getNodeState())) {
                         return false;
                     }
                 }
-            } else if (afterBuckets[i] == null) {
+            } else if (inBefore) {
                 // after bucket is empty, so all before entries were deleted
-                MapRecord bucket = beforeBuckets[i];
+                MapRecord bucket = before.reader.readMap(
+                        beforeSegment.readRecordId(before.getRecordNumber(), 8, beforeIds++));
                 for (MapEntry entry : bucket.getEntries()) {
                     if (!diff.childNodeDeleted(
                             entry.getName(), entry.getNodeState())) {
                         return false;
                     }
                 }
-            } else {
-                // both before and after buckets exist; compare recursively
-                MapRecord beforeBucket = beforeBuckets[i];
-                MapRecord afterBucket = afterBuckets[i];
-                if (!afterBucket.compare(beforeBucket, diff)) {
-                    return false;
-                }
             }
         }
         return true;
@@ -621,29 +695,109 @@ public class MapRecord extends Record {
                 && level < MapRecord.MAX_NUMBER_OF_LEVELS;
     }
 
-    private static int compare(MapEntry before, MapEntry after) {
-        if (before == null) {
-            // A null value signifies the end of the list of entries,
-            // which is why the return value here is a bit counter-intuitive
-            // (null > non-null). The idea is to make a virtual end-of-list
-            // sentinel value appear greater than any normal value.
+    private static int compare(EntryCursor before, EntryCursor after) {
+        if (!before.hasEntry()) {
+            // The end of the list of entries is represented by a virtual
+            // sentinel value, which is greater than any normal value.
+            // This is why the return value here is a bit counter-intuitive.
             return 1;
-        } else if (after == null) {
+        } else if (!after.hasEntry()) {
             return -1;  // see above
-        } else {
-            return ComparisonChain.start()
-                    .compare(before.getHash() & HASH_MASK, after.getHash() & HASH_MASK)
-                    .compare(before.getName(), after.getName())
-                    .result();
         }
+        int d = Long.compare(before.getHash(), after.getHash());
+        if (d != 0 || before.keyEquals(after)) {
+            return d;
+        }
+        return before.getName().compareTo(after.getName());
     }
 
-    private static MapEntry nextOrNull(Iterator<MapEntry> iterator) {
-        if (iterator.hasNext()) {
-            return iterator.next();
-        } else {
-            return null;
+    /**
+     * Cursor over the entries of the leaves of a map in the order of the
+     * unsigned hashes of the entries. The hash, key and value of the current
+     * entry are read from the segment on demand, so that passing over an
+     * entry does not create any objects.
+     */
+    private static class EntryCursor {
+
+        private final SegmentReader reader;
+
+        private final List<MapRecord> leaves = newArrayList();
+
+        private int leaf = -1;
+
+        private Segment segment;
+
+        private int recordNumber;
+
+        private int size;
+
+        private int index;
+
+        EntryCursor(MapRecord map) {
+            this.reader = map.reader;
+            addLeaves(map);
+            nextLeaf();
         }
+
+        private void addLeaves(MapRecord map) {
+            Segment segment = map.getSegment();
+            int head = segment.readInt(map.getRecordNumber());
+            if (isBranch(head)) {
+                for (MapRecord bucket : map.getBucketList(segment)) {
+                    addLeaves(bucket);
+                }
+            } else if (getSize(head) > 0) {
+                leaves.add(map);
+            }
+        }
+
+        private void nextLeaf() {
+            index = 0;
+            if (++leaf < leaves.size()) {
+                MapRecord map = leaves.get(leaf);
+                segment = map.getSegment();
+                recordNumber = map.getRecordNumber();
+                size = getSize(segment.readInt(recordNumber));
+            } else {
+                segment = null;
+                size = 0;
+            }
+        }
+
+        boolean hasEntry() {
+            return index < size;
+        }
+
+        void next() {
+            if (++index >= size) {
+                nextLeaf();
+            }
+        }
+
+        long getHash() {
+            return segment.readInt(recordNumber, 4 + index * 4) & HASH_MASK;
+        }
+
+        boolean keyEquals(EntryCursor that) {
+            return segment.recordIdEquals(
+                    recordNumber, 4 + size * 4, index * 2,
+                    that.segment, that.recordNumber, 4 + that.size * 4, that.index * 2);
+        }
+
+        boolean valueEquals(EntryCursor that) {
+            return segment.recordIdEquals(
+                    recordNumber, 4 + size * 4, index * 2 + 1,
+                    that.segment, that.recordNumber, 4 + that.size * 4, that.index * 2 + 1);
+        }
+
+        String getName() {
+            return reader.readString(segment.readRecordId(recordNumber, 4 + size * 4, index * 2));
+        }
+
+        SegmentNodeState getNodeState() {
+            return reader.readNode(segment.readRecordId(recordNumber, 4 + size * 4, index * 2 + 1));
+        }
+
     }
 
 }
@@ -0,0 +1,302 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.segment;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.apache.jackrabbit.oak.segment.CacheWeights.OBJECT_HEADER_SIZE;
+import static org.apache.jackrabbit.oak.segment.MapEntry.newMapEntry;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.jackrabbit.oak.cache.CacheLIRS;
+import org.apache.jackrabbit.oak.cache.CacheStats;
+import org.apache.jackrabbit.oak.segment.CacheWeights.MapRecordCacheWeigher;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * A cache of decoded {@link MapRecord}s for looking up the entries of large
+ * maps, i.e. the child nodes of nodes with many child nodes.
+ * <p>
+ * Looking up an entry of a map walks its hash trie, which for large maps
+ * spans many records and segments. A decoded map holds the hashes, keys
+ * and values of all entries of a map in primitive arrays sorted by hash,
+ * so that an entry is found by a binary search without any intermediate
+ * objects. Only maps with at least {@link #DEFAULT_MIN_SIZE} entries are
+ * decoded, smaller maps are looked up directly.
+ * <p>
+ * Decoding a map walks all its entries. As every change to a large map
+ * creates a new map record, a map is only decoded once it has been looked
+ * up {@link #DEFAULT_MIN_LOOKUPS} times, which is tracked by a {@link
+ * FrequencySketch}. Before that its entries are looked up directly. A map
+ * that only changes the value of a single entry of its base map (a diff
+ * record) is never decoded itself, lookups of the other entries use the
+ * decoded base map instead. Concurrent lookups of a map that is not yet
+ * cached decode it only once.
+ * <p>
+ * Decoded maps are keyed by the {@link RecordId} of the map. Since records
+ * are immutable, entries never need to be invalidated.
+ */
+public class MapRecordCache {
+
+    /**
+     * Minimum number of entries of a map for it to be decoded and cached
+     */
+    public static final int DEFAULT_MIN_SIZE = Integer.getInteger("oak.segment.mapRecordCache.minSize", 1000);
+
+    /**
+     * Number of lookups of a map after which it is decoded and cached,
+     * between 1 and 15.
+     */
+    public static final int DEFAULT_MIN_LOOKUPS = Integer.getInteger("oak.segment.mapRecordCache.minLookups", 4);
+
+    @NotNull
+    private final MapRecordCacheWeigher weigher = new MapRecordCacheWeigher();
+
+    /**
+     * The decoded maps or {@code null} if the cache is disabled.
+     */
+    @Nullable
+    private final CacheLIRS<RecordId, DecodedMap> cache;
+
+    /**
+     * The number of lookups of the maps not yet cached or {@code null} if
+     * the cache is disabled.
+     */
+    @Nullable
+    private final FrequencySketch lookups;
+
+    private final int minSize;
+
+    private final int minLookups;
+
+    /**
+     * Create a new map record cache.
+     *
+     * @param maxWeight the maximum memory in bytes or {@code 0} to disable the cache.
+     * @param minSize   the minimum number of entries of the maps to cache.
+     */
+    MapRecordCache(long maxWeight, int minSize) {
+        this(maxWeight, minSize, DEFAULT_MIN_LOOKUPS);
+    }
+
+    /**
+     * Create a new map record cache.
+     *
+     * @param maxWeight  the maximum memory in bytes or {@code 0} to disable the cache.
+     * @param minSize    the minimum number of entries of the maps to cache.
+     * @param minLookups the number of lookups of a map after which it is cached.
+     */
+    MapRecordCache(long maxWeight, int minSize, int minLookups) {
+        this.minSize = minSize;
+        this.minLookups = Math.max(1, Math.min(minLookups, 15));
+        if (maxWeight > 0) {
+            int averageWeight = Math.max(minSize, 1) * DecodedMap.ENTRY_SIZE;
+            cache = CacheLIRS.<RecordId, DecodedMap>newBuilder()
+                    .module("Map Record Cache")
+                    .maximumWeight(maxWeight)
+                    .averageWeight(averageWeight)
+                    .weigher(weigher)
+                    .build();
+            lookups = new FrequencySketch((int) Math.max(16, Math.min(maxWeight / averageWeight, 1 << 16)));
+        } else {
+            cache = null;
+            lookups = null;
+        }
+    }
+
+    /**
+     * Look up an entry of a map, decoding and caching the map if it is large
+     * enough.
+     *
+     * @param map  the map
+     * @param name the key of the entry
+     * @return the entry or {@code null} if the map has no such entry.
+     */
+    @Nullable
+    MapEntry getEntry(@NotNull MapRecord map, @NotNull String name) {
+        checkNotNull(name);
+        if (cache == null || lookups == null) {
+            return map.getEntry(name);
+        }
+        if (map.isDiff()) {
+            return getDiffEntry(map, name);
+        }
+        RecordId id = map.getRecordId();
+        DecodedMap decoded = cache.getIfPresent(id);
+        if (decoded == null) {
+            if (map.size() < minSize) {
+                return map.getEntry(name);
+            }
+            int hash = id.hashCode();
+            if (lookups.frequency(hash) + 1 < minLookups) {
+                lookups.increment(hash);
+                return map.getEntry(name);
+            }
+            try {
+                decoded = cache.get(id, () -> DecodedMap.decode(map));
+            } catch (ExecutionException e) {
+                throw new UncheckedExecutionException(e.getCause());
+            }
+        }
+        return decoded.getEntry(map.getReader(), name);
+    }
+
+    /**
+     * Look up an entry of a diff record, which changes the value of a single
+     * entry of its base map. All other entries are looked up in the base map.
+     */
+    @Nullable
+    private MapEntry getDiffEntry(@NotNull MapRecord map, @NotNull String name) {
+        Segment segment = map.getSegment();
+        int recordNumber = map.getRecordNumber();
+        SegmentReader reader = map.getReader();
+        if (MapRecord.getHash(name) == segment.readInt(recordNumber, 4)) {
+            RecordId key = segment.readRecordId(recordNumber, 8);
+            if (name.equals(reader.readString(key))) {
+                RecordId value = segment.readRecordId(recordNumber, 8, 1);
+                return newMapEntry(reader, name, key, value);
+            }
+        }
+        RecordId base = segment.readRecordId(recordNumber, 8, 2);
+        return getEntry(reader.readMap(base), name);
+    }
+
+    @Nullable
+    public CacheStats getStats() {
+        if (cache == null) {
+            return null;
+        }
+        return new CacheStats(cache, "Map Record Cache", weigher, cache.getMaxMemory());
+    }
+
+    /**
+     * Clear the cache.
+     */
+    public void clear() {
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    /**
+     * The entries of a map. The hash of the i-th entry is at {@code hashes[i]},
+     * its key and value at {@code records[4 * i]} to {@code records[4 * i + 3]}
+     * as pairs of an index into {@code segmentIds} and a record number. The
+     * entries are sorted by unsigned hash.
+     */
+    static final class DecodedMap {
+
+        /**
+         * Memory used per entry: its hash and the two record ids.
+         */
+        static final int ENTRY_SIZE = 5 * 4;
+
+        @NotNull
+        private final SegmentId[] segmentIds;
+
+        @NotNull
+        private final int[] hashes;
+
+        @NotNull
+        private final int[] records;
+
+        private DecodedMap(@NotNull SegmentId[] segmentIds, @NotNull int[] hashes, @NotNull int[] records) {
+            this.segmentIds = segmentIds;
+            this.hashes = hashes;
+            this.records = records;
+        }
+
+        @NotNull
+        static DecodedMap decode(@NotNull MapRecord map) {
+            int size = map.size();
+            int[] hashes = new int[size];
+            int[] records = new int[4 * size];
+            Map<SegmentId, Integer> segments = new HashMap<>();
+            int[] count = {0};
+            map.forEachEntry((hash, key, value) -> {
+                int i = count[0]++;
+                hashes[i] = hash;
+                records[4 * i] = segments.computeIfAbsent(key.getSegmentId(), s -> segments.size());
+                records[4 * i + 1] = key.getRecordNumber();
+                records[4 * i + 2] = segments.computeIfAbsent(value.getSegmentId(), s -> segments.size());
+                records[4 * i + 3] = value.getRecordNumber();
+            });
+            SegmentId[] segmentIds = new SegmentId[segments.size()];
+            for (Map.Entry<SegmentId, Integer> entry : segments.entrySet()) {
+                segmentIds[entry.getValue()] = entry.getKey();
+            }
+            if (count[0] < size) {
+                return new DecodedMap(segmentIds, Arrays.copyOf(hashes, count[0]),
+                        Arrays.copyOf(records, 4 * count[0]));
+            }
+            return new DecodedMap(segmentIds, hashes, records);
+        }
+
+        @Nullable
+        MapEntry getEntry(@NotNull SegmentReader reader, @NotNull String name) {
+            int hash = MapRecord.getHash(name);
+            for (int i = lowerBound(hash); i < hashes.length && hashes[i] == hash; i++) {
+                RecordId key = new RecordId(segmentIds[records[4 * i]], records[4 * i + 1]);
+                if (name.equals(reader.readString(key))) {
+                    RecordId value = new RecordId(segmentIds[records[4 * i + 2]], records[4 * i + 3]);
+                    return newMapEntry(reader, name, key, value);
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return the index of the first entry whose hash is not less than
+         * {@code hash}.
+         */
+        private int lowerBound(int hash) {
+            int p = 0;
+            int q = hashes.length;
+            while (p < q) {
+                int i = (p + q) >>> 1;
+                if (Integer.compareUnsigned(hashes[i], hash) < 0) {
+                    p = i + 1;
+                } else {
+                    q = i;
+                }
+            }
+            return p;
+        }
+
+        int size() {
+            return hashes.length;
+        }
+
+        int estimateMemoryUsage() {
+            return OBJECT_HEADER_SIZE + 24
+                    + OBJECT_HEADER_SIZE + 4 + 8 * segmentIds.length
+                    + OBJECT_HEADER_SIZE + 4 + ENTRY_SIZE * hashes.length
+                    + OBJECT_HEADER_SIZE + 4;
+        }
+
+    }
+
+}
@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jackrabbit.oak.segment;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Maps.newHashMap;
+import static com.google.common.collect.Maps.newLinkedHashMap;
+import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.EMPTY_NODE;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.apache.jackrabbit.oak.segment.file.GCNodeWriteMonitor;
+import org.apache.jackrabbit.oak.segment.file.cancel.Canceller;
+import org.apache.jackrabbit.oak.spi.blob.BlobStore;
+import org.apache.jackrabbit.oak.spi.gc.GCMonitor;
+import org.apache.jackrabbit.oak.spi.state.DefaultNodeStateDiff;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * This compactor implementation extends the {@link CheckpointCompactor} by
+ * compacting the checkpoints and the root concurrently. The tree is
+ * partitioned at its top-level and second-level child nodes, which are
+ * compacted on a {@link ForkJoinPool}. The compacted partitions are then
+ * stitched together into their parents.
+ * <p>
+ * The passed {@link SegmentWriter} must be thread safe. When backed by a
+ * {@link SegmentBufferWriterPool} each worker thread writes through its own
+ * {@link SegmentBufferWriter} while all of them share the record caches of
+ * the writer for deduplication.
+ */
+public class ParallelCompactor extends CheckpointCompactor {
+
+    /**
+     * Depth of the tree up to which child nodes are compacted concurrently.
+     */
+    static final int PARTITION_DEPTH =
+            Integer.getInteger("oak.segment.compaction.partitionDepth", 2);
+
+    /**
+     * Create a new instance based on the passed arguments.
+     * @param gcListener listener receiving notifications about the garbage collection process
+     * @param reader     segment reader used to read from the segments
+     * @param writer     thread safe segment writer used to serialise to segments
+     * @param blobStore  the blob store or {@code null} if none
+     * @param compactionMonitor   notification call back for each compacted nodes,
+     *                            properties, and binaries
+     * @param concurrency  number of threads compacting concurrently
+     */
+    public ParallelCompactor(
+            @NotNull GCMonitor gcListener,
+            @NotNull SegmentReader reader,
+            @NotNull SegmentWriter writer,
+            @Nullable BlobStore blobStore,
+            @NotNull GCNodeWriteMonitor compactionMonitor,
+            int concurrency) {
+        this(gcListener, reader, writer, blobStore,
+                new ClassicCompactor(reader, writer, blobStore, compactionMonitor), concurrency);
+    }
+
+    private ParallelCompactor(
+            @NotNull GCMonitor gcListener,
+            @NotNull SegmentReader reader,
+            @NotNull SegmentWriter writer,
+            @Nullable BlobStore blobStore,
+            @NotNull ClassicCompactor compactor,
+            int concurrency) {
+        super(gcListener, reader, writer, blobStore, compactor, new SubtreeCompactor(compactor, concurrency));
+    }
+
+    /**
+     * Compacts a tree by compacting the partitions of the tree concurrently
+     * and stitching the results together.
+     */
+    private static class SubtreeCompactor implements Compactor {
+
+        @NotNull
+        private final ClassicCompactor compactor;
+
+        private final int concurrency;
+
+        SubtreeCompactor(@NotNull ClassicCompactor compactor, int concurrency) {
+            checkArgument(concurrency > 0, "concurrency must be positive");
+            this.compactor = checkNotNull(compactor);
+            this.concurrency = concurrency;
+        }
+
+        @Nullable
+        @Override
+        public SegmentNodeState compact(
+            @NotNull NodeState before,
+            @NotNull NodeState after,
+            @NotNull NodeState onto,
+            Canceller canceller
+        ) throws IOException {
+            ForkJoinPool pool = new ForkJoinPool(concurrency);
+            try {
+                return pool.invoke(new CompactTask(before, after, onto, canceller, 0));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                pool.shutdown();
+            }
+        }
+
+        private class CompactTask extends RecursiveTask<SegmentNodeState> {
+
+            @NotNull
+            private final NodeState before;
+
+            @NotNull
+            private final NodeState after;
+
+            @NotNull
+            private final NodeState onto;
+
+            private final Canceller canceller;
+
+            private final int depth;
+
+            CompactTask(
+                @NotNull NodeState before,
+                @NotNull NodeState after,
+                @NotNull NodeState onto,
+                Canceller canceller,
+                int depth
+            ) {
+                this.before = before;
+                this.after = after;
+                this.onto = onto;
+                this.canceller = canceller;
+                this.depth = depth;
+            }
+
+            @Override
+            protected SegmentNodeState compute() {
+                // Runs in the threads of the pool, which do not inherit the
+                // hint of the compaction thread
+                return SegmentCache.withDoNotCache(this::compactSubtree);
+            }
+
+            private SegmentNodeState compactSubtree() {
+                try {
+                    if (depth >= PARTITION_DEPTH) {
+                        return compactor.compact(before, after, onto, canceller);
+                    }
+
+                    // Mirror the child node handling of ClassicCompactor: added
+                    // nodes are compacted from scratch, changed nodes onto the
+                    // respective child of onto.
+                    Map<String, CompactTask> tasks = newLinkedHashMap();
+                    boolean success = after.compareAgainstBaseState(before, new DefaultNodeStateDiff() {
+                        @Override
+                        public boolean childNodeAdded(String name, NodeState after) {
+                            tasks.put(name, new CompactTask(EMPTY_NODE, after, EMPTY_NODE, canceller, depth + 1));
+                            return !canceller.check().isCancelled();
+                        }
+
+                        @Override
+                        public boolean childNodeChanged(String name, NodeState before, NodeState after) {
+                            tasks.put(name, new CompactTask(before, after, onto.getChildNode(name), canceller, depth + 1));
+                            return !canceller.check().isCancelled();
+                        }
+                    });
+                    if (!success) {
+                        return null;
+                    }
+
+                    invokeAll(tasks.values());
+
+                    Map<String, SegmentNodeState> compactedChildren = newHashMap();
+                    for (Entry<String, CompactTask> task : tasks.entrySet()) {
+                        SegmentNodeState compacted = task.getValue().join();
+                        if (compacted == null) {
+                            return null;
+                        }
+                        compactedChildren.put(task.getKey(), compacted);
+                    }
+
+                    return compactor.compact(before, after, onto, canceller, compactedChildren);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+}
@@ -19,7 +19,11 @@
 
 package org.apache.jackrabbit.oak.segment;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static java.lang.Integer.highestOneBit;
+import static java.lang.Integer.numberOfTrailingZeros;
+import static java.lang.Math.min;
 
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -95,6 +99,29 @@ public abstract class RecordCache<K> implements Cache<K, RecordId> {
         }
     }
 
+    /**
+     * @param size size of the cache
+     * @param weigher   Needed to provide an estimation of the cache weight in memory
+     * @param concurrency  number of independently locked segments the cache is split
+     *                     into. Each segment implements the LRU behaviour for the
+     *                     keys hashing to it. Rounded down to a power of 2 not
+     *                     exceeding {@code size}.
+     * @return  A factory returning {@code RecordCache} instances of the given {@code size}
+     *          when invoked.
+     * @see #newRecordCache(int)
+     */
+    @NotNull
+    public static <T> Supplier<RecordCache<T>> factory(int size, @NotNull Weigher<T, RecordId> weigher, int concurrency) {
+        checkArgument(concurrency > 0);
+        if (size <= 0) {
+            return Empty.emptyFactory();
+        } else if (highestOneBit(min(concurrency, size)) == 1) {
+            return Default.defaultFactory(size, checkNotNull(weigher));
+        } else {
+            return Segmented.segmentedFactory(size, checkNotNull(weigher), concurrency);
+        }
+    }
+
     /**
      * @param size size of the cache
      * @return  A factory returning {@code RecordCache} instances of the given {@code size}
@@ -203,4 +230,83 @@ public abstract class RecordCache<K> implements Cache<K, RecordId> {
             return weight;
         }
     }
+
+    /**
+     * A cache split into a number of {@link Default} caches, which are
+     * locked independently of each other. Keys are assigned to the segments
+     * by their hash code.
+     */
+    private static class Segmented<K> extends RecordCache<K> {
+
+        @NotNull
+        private final Default<K>[] segments;
+
+        private final int segmentShift;
+
+        static final <K> Supplier<RecordCache<K>> segmentedFactory(
+                final int size, @NotNull final Weigher<K, RecordId> weigher, final int concurrency) {
+            return new Supplier<RecordCache<K>>() {
+                @Override
+                public RecordCache<K> get() {
+                    return new Segmented<>(size, checkNotNull(weigher), concurrency);
+                }
+            };
+        }
+
+        @SuppressWarnings("unchecked")
+        Segmented(int size, @NotNull Weigher<K, RecordId> weigher, int concurrency) {
+            int segmentCount = highestOneBit(min(concurrency, size));
+            int segmentSize = (size + segmentCount - 1) / segmentCount;
+            this.segmentShift = 32 - numberOfTrailingZeros(segmentCount);
+            this.segments = new Default[segmentCount];
+            for (int k = 0; k < segmentCount; k++) {
+                segments[k] = new Default<>(segmentSize, weigher);
+            }
+        }
+
+        private Default<K> segment(@NotNull K key) {
+            // a shift by 32 is a no-op in Java, use the single segment directly
+            return segmentShift == 32
+                ? segments[0]
+                : segments[(key.hashCode() * 0x9E3779B9) >>> segmentShift];
+        }
+
+        @Override
+        public void put(@NotNull K key, @NotNull RecordId value) {
+            segment(key).put(key, value);
+        }
+
+        @Override
+        public RecordId get(@NotNull K key) {
+            return segment(key).get(key);
+        }
+
+        @Override
+        public long size() {
+            long size = 0;
+            for (Default<K> segment : segments) {
+                size += segment.size();
+            }
+            return size;
+        }
+
+        @Override
+        public long estimateCurrentWeight() {
+            long weight = 0;
+            for (Default<K> segment : segments) {
+                weight += segment.estimateCurrentWeight();
+            }
+            return weight;
+        }
+
+        @NotNull
+        @Override
+        public CacheStats getStats() {
+            CacheStats stats = new CacheStats(0, 0, 0, 0, 0, 0);
+            for (Default<K> segment : segments) {
+                stats = stats.plus(segment.getStats());
+            }
+            return stats;
+        }
+    }
 }
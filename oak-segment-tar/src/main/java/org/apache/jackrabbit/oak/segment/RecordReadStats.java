@@ -0,0 +1,263 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jackrabbit.oak.segment;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+import org.apache.jackrabbit.oak.stats.MeterStats;
+import org.apache.jackrabbit.oak.stats.StatisticsProvider;
+import org.apache.jackrabbit.oak.stats.StatsOptions;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Sampling statistics about the records read from segments, broken down by
+ * {@link RecordType} and by the GC generation of the segment containing the
+ * record.
+ * <p>
+ * Only one out of {@link #getSampleRate()} reads is recorded. Callers check
+ * {@link #sample()} before determining the details of a read and pass them to
+ * {@link #onRead(RecordType, SegmentId, boolean, long)} only if the read is
+ * sampled, so that reads not sampled cost a single random number. The
+ * recorded values are extrapolated by the sample rate.
+ * <p>
+ * For each record type the following is tracked:
+ * <ul>
+ *     <li>reads: the number of reads of records of that type.</li>
+ *     <li>hits: the number of reads served from a cache, i.e. from the string
+ *     and template caches of {@link CachingSegmentReader}.</li>
+ *     <li>bytes: the number of bytes read from segments where the size of the
+ *     record is known up front, i.e. for value, bucket and block records.</li>
+ * </ul>
+ * The reads are also exposed as {@link MeterStats} named
+ * {@code oak.segment.record-reads.<type>}, {@code oak.segment.record-hits.<type>}
+ * and {@code oak.segment.record-bytes.<type>}.
+ */
+public class RecordReadStats implements RecordReadStatsMBean {
+
+    /**
+     * Default sample rate, one out of this many reads is recorded
+     */
+    public static final int DEFAULT_SAMPLE_RATE = Integer.getInteger("oak.segment.recordReadStats.sampleRate", 100);
+
+    private static final String[] ITEM_NAMES = {"reads", "hits", "bytes"};
+
+    private static final RecordType[] TYPES = RecordType.values();
+
+    /**
+     * Instance not recording any reads
+     */
+    public static final RecordReadStats NOOP = new RecordReadStats(StatisticsProvider.NOOP, 0) {
+        @Override
+        public void setSampleRate(int sampleRate) {
+            // Sampling cannot be enabled for this shared instance
+        }
+    };
+
+    private static class Counters {
+
+        final LongAdder reads = new LongAdder();
+
+        final LongAdder hits = new LongAdder();
+
+        final LongAdder bytes = new LongAdder();
+
+        void add(int weight, boolean hit, long size) {
+            reads.add(weight);
+            if (hit) {
+                hits.add(weight);
+            }
+            bytes.add(weight * size);
+        }
+
+        void reset() {
+            reads.reset();
+            hits.reset();
+            bytes.reset();
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("reads", reads.sum());
+            map.put("hits", hits.sum());
+            map.put("bytes", bytes.sum());
+            return map;
+        }
+    }
+
+    @NotNull
+    private final Counters[] typeCounters = new Counters[TYPES.length];
+
+    @NotNull
+    private final ConcurrentMap<Integer, Counters> generationCounters = new ConcurrentHashMap<>();
+
+    @NotNull
+    private final MeterStats[] readMeters = new MeterStats[TYPES.length];
+
+    @NotNull
+    private final MeterStats[] hitMeters = new MeterStats[TYPES.length];
+
+    @NotNull
+    private final MeterStats[] byteMeters = new MeterStats[TYPES.length];
+
+    private volatile int sampleRate;
+
+    /**
+     * Create a new instance using the passed {@code statisticsProvider} to
+     * expose the sampled reads.
+     * @param statisticsProvider
+     * @param sampleRate  one out of how many reads to sample, or {@code 0} to
+     *                    disable sampling
+     */
+    public RecordReadStats(@NotNull StatisticsProvider statisticsProvider, int sampleRate) {
+        checkArgument(sampleRate >= 0, "sampleRate must not be negative");
+        this.sampleRate = sampleRate;
+        for (RecordType type : TYPES) {
+            String name = type.name().toLowerCase();
+            typeCounters[type.ordinal()] = new Counters();
+            readMeters[type.ordinal()] = statisticsProvider.getMeter("oak.segment.record-reads." + name, StatsOptions.METRICS_ONLY);
+            hitMeters[type.ordinal()] = statisticsProvider.getMeter("oak.segment.record-hits." + name, StatsOptions.METRICS_ONLY);
+            byteMeters[type.ordinal()] = statisticsProvider.getMeter("oak.segment.record-bytes." + name, StatsOptions.METRICS_ONLY);
+        }
+    }
+
+    /**
+     * Determine whether the current read should be sampled.
+     * @return  {@code true} if the read should be passed to
+     *          {@link #onRead(RecordType, SegmentId, boolean, long)}
+     */
+    public boolean sample() {
+        int rate = sampleRate;
+        return rate == 1 || rate > 1 && ThreadLocalRandom.current().nextInt(rate) == 0;
+    }
+
+    /**
+     * Record a sampled read.
+     * @param type       the type of the record read
+     * @param segmentId  the segment containing the record
+     * @param hit        whether the read was served from a cache
+     * @param bytes      the number of bytes read from the segment, or
+     *                   {@code 0} if not known
+     */
+    public void onRead(@NotNull RecordType type, @NotNull SegmentId segmentId, boolean hit, long bytes) {
+        int weight = sampleRate;
+        if (weight == 0) {
+            return;
+        }
+        typeCounters[type.ordinal()].add(weight, hit, bytes);
+        generationCounters
+                .computeIfAbsent(segmentId.getGcGeneration().getGeneration(), generation -> new Counters())
+                .add(weight, hit, bytes);
+        readMeters[type.ordinal()].mark(weight);
+        if (hit) {
+            hitMeters[type.ordinal()].mark(weight);
+        }
+        if (bytes > 0) {
+            byteMeters[type.ordinal()].mark(weight * bytes);
+        }
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public void setSampleRate(int sampleRate) {
+        checkArgument(sampleRate >= 0, "sampleRate must not be negative");
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * @return  the extrapolated number of reads of records of {@code type}
+     */
+    public long getReadCount(@NotNull RecordType type) {
+        return typeCounters[type.ordinal()].reads.sum();
+    }
+
+    /**
+     * @return  the extrapolated number of reads of records of {@code type}
+     *          served from a cache
+     */
+    public long getHitCount(@NotNull RecordType type) {
+        return typeCounters[type.ordinal()].hits.sum();
+    }
+
+    /**
+     * @return  the extrapolated number of bytes read for records of {@code type}
+     */
+    public long getByteCount(@NotNull RecordType type) {
+        return typeCounters[type.ordinal()].bytes.sum();
+    }
+
+    @Override
+    public TabularData getRecordReads() throws OpenDataException {
+        CompositeType rowType = newRowType("recordReads", "type", SimpleType.STRING);
+        TabularDataSupport tabularData = new TabularDataSupport(new TabularType("recordReads",
+                "Record reads per record type", rowType, new String[] {"type"}));
+        for (RecordType type : TYPES) {
+            Map<String, Object> row = typeCounters[type.ordinal()].toMap();
+            row.put("type", type.name());
+            tabularData.put(new CompositeDataSupport(rowType, row));
+        }
+        return tabularData;
+    }
+
+    @Override
+    public TabularData getRecordReadsPerGeneration() throws OpenDataException {
+        CompositeType rowType = newRowType("recordReadsPerGeneration", "generation", SimpleType.INTEGER);
+        TabularDataSupport tabularData = new TabularDataSupport(new TabularType("recordReadsPerGeneration",
+                "Record reads per GC generation", rowType, new String[] {"generation"}));
+        for (Map.Entry<Integer, Counters> entry : generationCounters.entrySet()) {
+            Map<String, Object> row = entry.getValue().toMap();
+            row.put("generation", entry.getKey());
+            tabularData.put(new CompositeDataSupport(rowType, row));
+        }
+        return tabularData;
+    }
+
+    private static CompositeType newRowType(String typeName, String keyName, SimpleType<?> keyType) throws OpenDataException {
+        String[] names = {keyName, ITEM_NAMES[0], ITEM_NAMES[1], ITEM_NAMES[2]};
+        return new CompositeType(typeName, typeName, names, names,
+                new OpenType[] {keyType, SimpleType.LONG, SimpleType.LONG, SimpleType.LONG});
+    }
+
+    @Override
+    public void resetStats() {
+        for (Counters counters : typeCounters) {
+            counters.reset();
+        }
+        generationCounters.clear();
+    }
+
+}
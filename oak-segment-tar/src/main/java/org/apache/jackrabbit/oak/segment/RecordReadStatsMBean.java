@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jackrabbit.oak.segment;
+
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.TabularData;
+
+/**
+ * MBean exposing statistics about the records read from segments, as
+ * collected by {@link RecordReadStats}.
+ */
+public interface RecordReadStatsMBean {
+    String TYPE = "RecordReadStats";
+
+    /**
+     * @return  one out of how many record reads is sampled, or {@code 0} if
+     *          sampling is disabled
+     */
+    int getSampleRate();
+
+    /**
+     * Modifies the sample rate.
+     * @param sampleRate  one out of how many record reads to sample, or
+     *                    {@code 0} to disable sampling
+     */
+    void setSampleRate(int sampleRate);
+
+    /**
+     * @return tabular data of the form <em>&lt;type, reads, hits, bytes&gt;</em>
+     *         for each record type, extrapolated from the sampled reads
+     * @throws OpenDataException if data is not available
+     */
+    TabularData getRecordReads() throws OpenDataException;
+
+    /**
+     * @return tabular data of the form <em>&lt;generation, reads, hits, bytes&gt;</em>
+     *         for each GC generation of the segments read from, extrapolated
+     *         from the sampled reads
+     * @throws OpenDataException if data is not available
+     */
+    TabularData getRecordReadsPerGeneration() throws OpenDataException;
+
+    /**
+     * Resets all statistics.
+     */
+    void resetStats();
+}
@@ -436,6 +436,29 @@ public class Segment {
         return readRecordId(recordNumber, 0, 0);
     }
 
+    /**
+     * Determine whether the record id at the given position in this segment
+     * is equal to the record id at the given position in {@code that}
+     * segment. Equivalent to comparing the results of {@link
+     * #readRecordId(int, int, int)} but without creating {@link RecordId}
+     * instances.
+     */
+    boolean recordIdEquals(
+            int recordNumber, int rawOffset, int recordIdOffset,
+            @NotNull Segment that, int thatRecordNumber, int thatRawOffset, int thatRecordIdOffset) {
+        int offset = recordNumbers.getOffset(recordNumber) + rawOffset + recordIdOffset * RecordIdData.BYTES;
+        int thatOffset = that.recordNumbers.getOffset(thatRecordNumber) + thatRawOffset + thatRecordIdOffset * RecordIdData.BYTES;
+        if (data.readInt(offset + Short.BYTES) != that.data.readInt(thatOffset + Short.BYTES)) {
+            return false;
+        }
+        int reference = data.readShort(offset) & 0xffff;
+        int thatReference = that.data.readShort(thatOffset) & 0xffff;
+        if (this == that && reference == thatReference) {
+            return true;
+        }
+        return dereferenceSegmentId(reference).equals(that.dereferenceSegmentId(thatReference));
+    }
+
     @NotNull
     private SegmentId dereferenceSegmentId(int reference) {
         if (reference == 0) {
@@ -566,6 +589,22 @@ public class Segment {
         data.binDump(stream);
     }
 
+    /**
+     * Returns a read-only view of the content of this segment, as written
+     * by {@link #writeTo(OutputStream)}, without copying it.
+     */
+    public Buffer asReadOnlyBuffer() {
+        return data.asReadOnlyBuffer();
+    }
+
+    /**
+     * The statistics recording the reads of the records of this segment.
+     */
+    @NotNull
+    RecordReadStats getRecordReadStats() {
+        return reader.getRecordReadStats();
+    }
+
     /**
      * Convert an offset into an address.
      * @param offset
@@ -19,7 +19,12 @@
 
 package org.apache.jackrabbit.oak.segment;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 
 import org.apache.jackrabbit.oak.plugins.blob.BlobReferenceRetriever;
 import org.apache.jackrabbit.oak.plugins.blob.ReferenceCollector;
@@ -27,7 +32,8 @@ import org.apache.jackrabbit.oak.segment.file.AbstractFileStore;
 
 /**
  * Implementation of {@link BlobReferenceRetriever} to retrieve blob references from the
- * {@link SegmentTracker}.
+ * {@link SegmentTracker}. The references are collected into a sorted temporary file
+ * without duplicates first, so each reference is passed to the collector only once.
  */
 public class SegmentBlobReferenceRetriever implements BlobReferenceRetriever {
 
@@ -39,7 +45,18 @@ public class SegmentBlobReferenceRetriever implements BlobReferenceRetriever {
 
     @Override
     public void collectReferences(final ReferenceCollector collector) throws IOException {
-        store.collectBlobReferences(s -> collector.addReference(s, null));
+        File references = File.createTempFile("binary-references", ".txt");
+        try {
+            store.collectBlobReferences(references);
+            try (BufferedReader reader = Files.newBufferedReader(references.toPath(), UTF_8)) {
+                String reference;
+                while ((reference = reader.readLine()) != null) {
+                    collector.addReference(reference, null);
+                }
+            }
+        } finally {
+            Files.deleteIfExists(references.toPath());
+        }
     }
 }
 
@@ -23,6 +23,8 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import static org.apache.jackrabbit.oak.segment.CacheWeights.segmentWeight;
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -35,6 +37,7 @@ import com.google.common.cache.RemovalNotification;
 import org.apache.jackrabbit.oak.cache.AbstractCacheStats;
 import org.apache.jackrabbit.oak.segment.CacheWeights.SegmentCacheWeigher;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * A cache for {@link SegmentId#isDataSegmentId() data} {@link Segment}
@@ -55,6 +58,13 @@ public abstract class SegmentCache {
 
     private static final String NAME = "Segment Cache";
 
+    /**
+     * Threads for which this flag is set don't contribute to the access
+     * frequencies of segments and the segments they load are never admitted
+     * to the main area of a scan resistant cache.
+     */
+    private static final ThreadLocal<Boolean> DO_NOT_CACHE = ThreadLocal.withInitial(() -> false);
+
     /**
      * Create a new segment cache of the given size. Returns an always empty
      * cache for {@code cacheSizeMB <= 0}.
@@ -63,13 +73,79 @@ public abstract class SegmentCache {
      */
     @NotNull
     public static SegmentCache newSegmentCache(long cacheSizeMB) {
-        if (cacheSizeMB > 0) {
+        return newSegmentCache(cacheSizeMB, false);
+    }
+
+    /**
+     * Create a new segment cache of the given size. Returns an always empty
+     * cache for {@code cacheSizeMB <= 0}.
+     * <p>
+     * A scan resistant cache admits new segments through a small LRU window
+     * and only moves them into its main area if they are estimated to be
+     * accessed more frequently than the segment they would replace (W-TinyLFU).
+     * A single traversal of the repository thus cannot evict the working set
+     * of frequently accessed segments.
+     *
+     * @param cacheSizeMB   size of the cache in megabytes.
+     * @param scanResistant whether to use frequency based admission.
+     */
+    @NotNull
+    public static SegmentCache newSegmentCache(long cacheSizeMB, boolean scanResistant) {
+        if (cacheSizeMB > 0 && scanResistant) {
+            return new TinyLfuCache(cacheSizeMB);
+        } else if (cacheSizeMB > 0) {
             return new NonEmptyCache(cacheSizeMB);
         } else {
             return new EmptyCache();
         }
     }
 
+    /**
+     * Hint the segment caches that the segments accessed by the current
+     * thread should not be cached at the expense of other segments. Tools
+     * traversing the whole repository should set this hint in order not to
+     * evict the working set of the instance. The hint is only taken into
+     * account by {@link #newSegmentCache(long, boolean) scan resistant}
+     * caches.
+     *
+     * @param doNotCache {@code true} to set the hint, {@code false} to clear
+     *                   it.
+     */
+    public static void setDoNotCache(boolean doNotCache) {
+        if (doNotCache) {
+            DO_NOT_CACHE.set(true);
+        } else {
+            DO_NOT_CACHE.remove();
+        }
+    }
+
+    /**
+     * @return {@code true} iff the current thread has set the hint to not
+     * cache the segments it accesses.
+     * @see #setDoNotCache(boolean)
+     */
+    public static boolean isDoNotCache() {
+        return DO_NOT_CACHE.get();
+    }
+
+    /**
+     * Run {@code task} with the hint to not cache the segments it accesses
+     * set for the current thread, and restore the previous hint afterwards.
+     *
+     * @param task the task to run.
+     * @return the result of {@code task}.
+     * @see #setDoNotCache(boolean)
+     */
+    public static <T> T withDoNotCache(@NotNull Supplier<T> task) {
+        boolean doNotCache = isDoNotCache();
+        setDoNotCache(true);
+        try {
+            return task.get();
+        } finally {
+            setDoNotCache(doNotCache);
+        }
+    }
+
     /**
      * Retrieve an segment from the cache or load it and cache it if not yet in
      * the cache.
@@ -109,6 +185,19 @@ public abstract class SegmentCache {
      */
     public abstract void recordHit();
 
+    /**
+     * Record an access to the memoised segment of {@code id} in this cache's
+     * underlying statistics. The default implementation is equivalent to
+     * {@link #recordHit()}.
+     *
+     * See {@code SegmentId#onAccess}
+     *
+     * @param id the id of the accessed segment
+     */
+    public void recordAccess(@NotNull SegmentId id) {
+        recordHit();
+    }
+
     private static class NonEmptyCache extends SegmentCache {
 
         /**
@@ -215,6 +304,367 @@ public abstract class SegmentCache {
         }
     }
 
+    /**
+     * A cache using W-TinyLFU as its eviction policy. New segments enter a
+     * small admission window. Segments evicted from the window compete for
+     * admission to the main area, which is a segmented LRU consisting of a
+     * probation and a protected queue. A segment is only admitted if its
+     * access frequency, as estimated by a {@link FrequencySketch}, is higher
+     * than the one of the segment that would be evicted in its place.
+     * <p>
+     * Most accesses to segments hit the segment memoised in its id and are
+     * only reported to this cache through {@link #recordAccess(SegmentId)}.
+     * These accesses are recorded without taking any lock, by updating the
+     * frequency sketch and by flagging the respective entry. Flagged entries
+     * are given a second chance when they would otherwise be evicted or
+     * demoted.
+     */
+    private static class TinyLfuCache extends SegmentCache {
+
+        /**
+         * Percentage of the cache weight used by the admission window
+         */
+        private static final int WINDOW_PERCENTAGE = 1;
+
+        /**
+         * Percentage of the weight of the main area used by the protected queue
+         */
+        private static final int PROTECTED_PERCENTAGE = 80;
+
+        /**
+         * Weight of an average segment, used to size the frequency sketch
+         */
+        private static final int AVERAGE_SEGMENT_WEIGHT = 64 * 1024;
+
+        @NotNull
+        private final ConcurrentMap<SegmentId, Node> nodes = new ConcurrentHashMap<>();
+
+        @NotNull
+        private final FrequencySketch sketch;
+
+        @NotNull
+        private final AdmissionStats stats;
+
+        private final long windowMaximum;
+
+        private final long mainMaximum;
+
+        private final long protectedMaximum;
+
+        // The following queues are guarded by this instance
+
+        private final Queue window = new Queue();
+
+        private final Queue probation = new Queue();
+
+        private final Queue protectedQueue = new Queue();
+
+        /**
+         * Create a new cache of the given size.
+         *
+         * @param cacheSizeMB size of the cache in megabytes.
+         */
+        private TinyLfuCache(long cacheSizeMB) {
+            long maximumWeight = cacheSizeMB * 1024 * 1024;
+            this.windowMaximum = Math.max(1, maximumWeight * WINDOW_PERCENTAGE / 100);
+            this.mainMaximum = maximumWeight - windowMaximum;
+            this.protectedMaximum = mainMaximum * PROTECTED_PERCENTAGE / 100;
+            this.sketch = new FrequencySketch((int) Math.max(1, Math.min(
+                    maximumWeight / AVERAGE_SEGMENT_WEIGHT, Integer.MAX_VALUE)));
+            this.stats = new AdmissionStats(NAME, maximumWeight, () -> (long) nodes.size());
+        }
+
+        @Override
+        @NotNull
+        public Segment getSegment(@NotNull SegmentId id, @NotNull Callable<Segment> loader) throws ExecutionException {
+            if (id.isDataSegmentId()) {
+                Node node = nodes.get(id);
+                if (node != null) {
+                    return node.segment;
+                }
+                try {
+                    long t0 = System.nanoTime();
+                    Segment segment = loader.call();
+                    stats.loadSuccessCount.incrementAndGet();
+                    stats.loadTime.addAndGet(System.nanoTime() - t0);
+                    stats.missCount.incrementAndGet();
+                    add(id, segment, !isDoNotCache());
+                    return segment;
+                } catch (Exception e) {
+                    stats.loadExceptionCount.incrementAndGet();
+                    throw new ExecutionException(e);
+                }
+            } else {
+                try {
+                    return loader.call();
+                } catch (Exception e) {
+                    throw new ExecutionException(e);
+                }
+            }
+        }
+
+        @Override
+        public void putSegment(@NotNull Segment segment) {
+            SegmentId id = segment.getSegmentId();
+            if (id.isDataSegmentId()) {
+                // Written segments are admitted regardless of the hint: the
+                // segments written by compaction are the new head state
+                add(id, segment, true);
+            }
+        }
+
+        private void add(@NotNull SegmentId id, @NotNull Segment segment, boolean admit) {
+            if (admit) {
+                sketch.increment(id.hashCode());
+            }
+
+            // Same as for NonEmptyCache.putSegment(): call loaded and update
+            // the current weight *before* putting the segment into the cache
+            // as it could be evicted right away.
+            Node node = new Node(id, segment, segmentWeight(segment), admit);
+            id.loaded(segment);
+            stats.currentWeight.addAndGet(node.weight);
+
+            synchronized (this) {
+                Node previous = nodes.put(id, node);
+                if (previous != null) {
+                    // The id already memoises the new segment, don't unload it
+                    previous.queue.remove(previous);
+                    stats.currentWeight.addAndGet(-previous.weight);
+                }
+                window.addLast(node);
+                evictFromWindow();
+            }
+        }
+
+        /**
+         * Move entries from the window to the main area until the window is
+         * within its bounds again. Each entry moved must be admitted by the
+         * main area or is evicted.
+         */
+        private void evictFromWindow() {
+            int chances = window.count;
+            while (window.weight > windowMaximum) {
+                Node candidate = window.first();
+                if (candidate.accessed && chances-- > 0) {
+                    candidate.accessed = false;
+                    window.remove(candidate);
+                    window.addLast(candidate);
+                } else {
+                    window.remove(candidate);
+                    admit(candidate);
+                }
+            }
+        }
+
+        private void admit(@NotNull Node candidate) {
+            if (!candidate.admit || candidate.weight > mainMaximum) {
+                reject(candidate);
+                return;
+            }
+
+            if (probation.weight + protectedQueue.weight + candidate.weight > mainMaximum) {
+                Node victim = victim();
+                if (victim != null && frequency(candidate) <= frequency(victim)) {
+                    reject(candidate);
+                    return;
+                }
+            }
+
+            stats.admissionCount.incrementAndGet();
+            probation.addLast(candidate);
+            while (probation.weight + protectedQueue.weight > mainMaximum) {
+                evict(victim());
+            }
+        }
+
+        private int frequency(@NotNull Node node) {
+            return sketch.frequency(node.id.hashCode());
+        }
+
+        /**
+         * @return the entry of the main area that should be evicted next, or
+         * {@code null} if the main area is empty. Accessed entries of the
+         * probation queue are promoted to the protected queue on the way.
+         */
+        @Nullable
+        private Node victim() {
+            int chances = probation.count;
+            while (probation.count > 0) {
+                Node node = probation.first();
+                if (node.accessed && chances-- > 0) {
+                    node.accessed = false;
+                    probation.remove(node);
+                    protectedQueue.addLast(node);
+                    demote();
+                } else {
+                    return node;
+                }
+            }
+            return protectedQueue.first();
+        }
+
+        /**
+         * Move entries from the protected queue to the probation queue until
+         * the protected queue is within its bounds again.
+         */
+        private void demote() {
+            int chances = protectedQueue.count;
+            while (protectedQueue.weight > protectedMaximum) {
+                Node node = protectedQueue.first();
+                protectedQueue.remove(node);
+                if (node.accessed && chances-- > 0) {
+                    node.accessed = false;
+                    protectedQueue.addLast(node);
+                } else {
+                    probation.addLast(node);
+                }
+            }
+        }
+
+        private void reject(@NotNull Node node) {
+            stats.rejectionCount.incrementAndGet();
+            evict(node);
+        }
+
+        private void evict(@NotNull Node node) {
+            if (node.queue != null) {
+                node.queue.remove(node);
+            }
+            if (nodes.remove(node.id, node)) {
+                stats.evictionCount.incrementAndGet();
+                stats.currentWeight.addAndGet(-node.weight);
+                node.id.unloaded();
+            }
+        }
+
+        @Override
+        public synchronized void clear() {
+            for (Queue queue : new Queue[] {window, probation, protectedQueue}) {
+                while (queue.count > 0) {
+                    evict(queue.first());
+                }
+            }
+        }
+
+        @Override
+        @NotNull
+        public AbstractCacheStats getCacheStats() {
+            return stats;
+        }
+
+        @Override
+        public void recordHit() {
+            stats.hitCount.incrementAndGet();
+        }
+
+        @Override
+        public void recordAccess(@NotNull SegmentId id) {
+            stats.hitCount.incrementAndGet();
+            if (!isDoNotCache()) {
+                sketch.increment(id.hashCode());
+                Node node = nodes.get(id);
+                if (node != null && !node.accessed) {
+                    node.accessed = true;
+                }
+            }
+        }
+
+        /**
+         * An entry of the cache, linked into one of its queues.
+         */
+        private static class Node {
+
+            @NotNull
+            final SegmentId id;
+
+            @NotNull
+            final Segment segment;
+
+            final int weight;
+
+            /**
+             * Whether this entry may be admitted to the main area
+             */
+            final boolean admit;
+
+            /**
+             * Set when the segment is accessed, cleared when the entry is
+             * given its second chance.
+             */
+            volatile boolean accessed;
+
+            @Nullable
+            Queue queue;
+
+            @Nullable
+            Node previous;
+
+            @Nullable
+            Node next;
+
+            Node(@NotNull SegmentId id, @NotNull Segment segment, int weight, boolean admit) {
+                this.id = id;
+                this.segment = segment;
+                this.weight = weight;
+                this.admit = admit;
+            }
+        }
+
+        /**
+         * A doubly linked list of entries keeping track of their total weight.
+         */
+        private static class Queue {
+
+            @Nullable
+            private Node first;
+
+            @Nullable
+            private Node last;
+
+            long weight;
+
+            int count;
+
+            @Nullable
+            Node first() {
+                return first;
+            }
+
+            void addLast(@NotNull Node node) {
+                node.queue = this;
+                node.previous = last;
+                node.next = null;
+                if (last == null) {
+                    first = node;
+                } else {
+                    last.next = node;
+                }
+                last = node;
+                weight += node.weight;
+                count++;
+            }
+
+            void remove(@NotNull Node node) {
+                if (node.previous == null) {
+                    first = node.next;
+                } else {
+                    node.previous.next = node.next;
+                }
+                if (node.next == null) {
+                    last = node.previous;
+                } else {
+                    node.next.previous = node.previous;
+                }
+                node.queue = null;
+                node.previous = null;
+                node.next = null;
+                weight -= node.weight;
+                count--;
+            }
+        }
+    }
+
     /** An always empty cache */
     private static class EmptyCache extends SegmentCache {
         private final Stats stats = new Stats(NAME, 0, () -> 0L);
@@ -322,4 +772,40 @@ public abstract class SegmentCache {
             return currentWeight.get();
         }
     }
+
+    /**
+     * Statistics of a cache with frequency based admission, additionally
+     * tracking how many segments were admitted to or rejected from the main
+     * area of the cache.
+     */
+    private static class AdmissionStats extends Stats implements SegmentCacheStatsMBean {
+
+        @NotNull
+        final AtomicLong admissionCount = new AtomicLong();
+
+        @NotNull
+        final AtomicLong rejectionCount = new AtomicLong();
+
+        AdmissionStats(@NotNull String name, long maximumWeight, @NotNull Supplier<Long> elementCount) {
+            super(name, maximumWeight, elementCount);
+        }
+
+        @Override
+        public long getAdmissionCount() {
+            return admissionCount.get();
+        }
+
+        @Override
+        public long getRejectionCount() {
+            return rejectionCount.get();
+        }
+
+        @Override
+        public String cacheInfoAsString() {
+            String info = super.cacheInfoAsString();
+            return info.substring(0, info.length() - 1) +
+                    ", admissionCount=" + getAdmissionCount() +
+                    ", rejectionCount=" + getRejectionCount() + "}";
+        }
+    }
 }
@@ -0,0 +1,39 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jackrabbit.oak.segment;
+
+import org.apache.jackrabbit.oak.api.jmx.CacheStatsMBean;
+
+/**
+ * MBean exposing the statistics of a {@link SegmentCache} with frequency
+ * based admission.
+ */
+public interface SegmentCacheStatsMBean extends CacheStatsMBean {
+
+    /**
+     * @return  the number of segments admitted to the main area of the cache
+     */
+    long getAdmissionCount();
+
+    /**
+     * @return  the number of segments rejected from the main area of the
+     *          cache, either by their frequency or because they were loaded
+     *          by a scan
+     */
+    long getRejectionCount();
+}
@@ -37,7 +37,7 @@ import org.slf4j.LoggerFactory;
 /**
  * Hash table of weak references to segment identifiers.
  */
-public class SegmentIdTable {
+public class SegmentIdTable extends AbstractSegmentIdTable {
 
     /**
      * The list of weak references to segment identifiers that are currently
@@ -87,6 +87,7 @@ public class SegmentIdTable {
      * @return the segment id
      */
     @NotNull
+    @Override
     synchronized SegmentId newSegmentId(long msb, long lsb, SegmentIdFactory maker) {
         int index = getIndex(lsb);
         boolean shouldRefresh = false;
@@ -124,6 +125,7 @@ public class SegmentIdTable {
      *
      * @param ids referenced segment identifiers
      */
+    @Override
     void collectReferencedIds(Collection<SegmentId> ids) {
         ids.addAll(refresh());
     }
@@ -194,6 +196,7 @@ public class SegmentIdTable {
         return ((int) lsb) & (references.size() - 1);
     }
 
+    @Override
     synchronized void clearSegmentIdTables(@NotNull Set<UUID> reclaimed, @NotNull String gcInfo) {
         for (WeakReference<SegmentId> reference : references) {
             if (reference != null) {
@@ -129,8 +129,11 @@ public class SegmentNodeState extends Record implements NodeState {
     }
 
     MapRecord getChildNodeMap() {
-        Segment segment = getSegment();
-        return reader.readMap(segment.readRecordId(getRecordNumber(), 0, 2));
+        return reader.readMap(getChildNodeMapId());
+    }
+
+    private RecordId getChildNodeMapId() {
+        return getSegment().readRecordId(getRecordNumber(), 0, 2);
     }
 
     @NotNull
@@ -438,7 +441,7 @@ public class SegmentNodeState extends Record implements NodeState {
         if (childName == Template.ZERO_CHILD_NODES) {
             return false;
         } else if (childName == Template.MANY_CHILD_NODES) {
-            return getChildNodeMap().getEntry(name) != null;
+            return reader.readMapValue(getChildNodeMapId(), name) != null;
         } else {
             return childName.equals(name);
         }
@@ -449,9 +452,9 @@ public class SegmentNodeState extends Record implements NodeState {
         readStats.mark();
         String childName = getTemplate().getChildName();
         if (childName == Template.MANY_CHILD_NODES) {
-            MapEntry child = getChildNodeMap().getEntry(name);
-            if (child != null) {
-                return child.getNodeState();
+            RecordId childNodeId = reader.readMapValue(getChildNodeMapId(), name);
+            if (childNodeId != null) {
+                return reader.readNode(childNodeId);
             }
         } else if (childName != Template.ZERO_CHILD_NODES
                 && childName.equals(name)) {
@@ -514,29 +517,49 @@ public class SegmentNodeState extends Record implements NodeState {
         Template afterTemplate = getTemplate();
         RecordId afterId = getRecordId();
 
+        // Nodes sharing their template have the same type properties
+        // and property names and types
+        boolean sameTemplate = getTemplateId().equals(that.getTemplateId());
+
         // Compare type properties
-        if (!compareProperties(
-                beforeTemplate.getPrimaryType(), afterTemplate.getPrimaryType(),
-                diff)) {
-            return false;
-        }
-        if (!compareProperties(
-                beforeTemplate.getMixinTypes(), afterTemplate.getMixinTypes(),
-                diff)) {
-            return false;
+        if (!sameTemplate) {
+            if (!compareProperties(
+                    beforeTemplate.getPrimaryType(), afterTemplate.getPrimaryType(),
+                    diff)) {
+                return false;
+            }
+            if (!compareProperties(
+                    beforeTemplate.getMixinTypes(), afterTemplate.getMixinTypes(),
+                    diff)) {
+                return false;
+            }
         }
 
-        // Compare other properties, leveraging the ordering
+        // Compare other properties, leveraging the ordering. Properties with
+        // the same template and value record are skipped without reading them.
         int beforeIndex = 0;
         int afterIndex = 0;
         PropertyTemplate[] beforeProperties =
                 beforeTemplate.getPropertyTemplates();
         PropertyTemplate[] afterProperties =
                 afterTemplate.getPropertyTemplates();
+        ListRecord beforeList = beforeProperties.length > 0
+                ? beforeTemplate.getPropertyList(beforeId)
+                : null;
+        ListRecord afterList = afterProperties.length > 0
+                ? afterTemplate.getPropertyList(afterId)
+                : null;
+        if (sameTemplate && afterList != null
+                && afterList.getRecordId().equals(beforeList.getRecordId())) {
+            // shortcut: the property lists are the same record
+            beforeIndex = beforeProperties.length;
+            afterIndex = afterProperties.length;
+        }
         while (beforeIndex < beforeProperties.length
                 && afterIndex < afterProperties.length) {
-            int d = Integer.valueOf(afterProperties[afterIndex].hashCode())
-                    .compareTo(beforeProperties[beforeIndex].hashCode());
+            int d = Integer.compare(
+                    afterProperties[afterIndex].hashCode(),
+                    beforeProperties[beforeIndex].hashCode());
             if (d == 0) {
                 d = afterProperties[afterIndex].getName().compareTo(
                         beforeProperties[beforeIndex].getName());
@@ -545,15 +568,21 @@ public class SegmentNodeState extends Record implements NodeState {
             PropertyState afterProperty = null;
             if (d < 0) {
                 afterProperty =
-                        afterTemplate.getProperty(afterId, afterIndex++);
+                        afterTemplate.getProperty(afterList, afterIndex++);
             } else if (d > 0) {
                 beforeProperty =
-                        beforeTemplate.getProperty(beforeId, beforeIndex++);
+                        beforeTemplate.getProperty(beforeList, beforeIndex++);
+            } else if (afterProperties[afterIndex].equals(beforeProperties[beforeIndex])
+                    && afterList.getEntry(afterIndex).equals(beforeList.getEntry(beforeIndex))) {
+                // same name, type and value record, so no changes
+                afterIndex++;
+                beforeIndex++;
+                continue;
             } else {
                 afterProperty =
-                        afterTemplate.getProperty(afterId, afterIndex++);
+                        afterTemplate.getProperty(afterList, afterIndex++);
                 beforeProperty =
-                        beforeTemplate.getProperty(beforeId, beforeIndex++);
+                        beforeTemplate.getProperty(beforeList, beforeIndex++);
             }
             if (!compareProperties(beforeProperty, afterProperty, diff)) {
                 return false;
@@ -561,13 +590,13 @@ public class SegmentNodeState extends Record implements NodeState {
         }
         while (afterIndex < afterProperties.length) {
             if (!diff.propertyAdded(
-                    afterTemplate.getProperty(afterId, afterIndex++))) {
+                    afterTemplate.getProperty(afterList, afterIndex++))) {
                 return false;
             }
         }
         while (beforeIndex < beforeProperties.length) {
             PropertyState beforeProperty =
-                    beforeTemplate.getProperty(beforeId, beforeIndex++);
+                    beforeTemplate.getProperty(beforeList, beforeIndex++);
             if (!diff.propertyDeleted(beforeProperty)) {
                 return false;
             }
@@ -585,6 +614,10 @@ public class SegmentNodeState extends Record implements NodeState {
                     }
                 }
             }
+        } else if (afterChildName.equals(beforeChildName)
+                && getSegment().recordIdEquals(getRecordNumber(), 0, 2,
+                        that.getSegment(), that.getRecordNumber(), 0, 2)) {
+            // the same child node or child node map record, so no changes
         } else if (afterChildName != Template.MANY_CHILD_NODES) {
             NodeState afterNode =
                     afterTemplate.getChildNode(afterChildName, afterId);
@@ -37,6 +37,7 @@ import org.apache.jackrabbit.oak.api.PropertyState;
 import org.apache.jackrabbit.oak.plugins.blob.BlobStoreBlob;
 import org.apache.jackrabbit.oak.segment.scheduler.Commit;
 import org.apache.jackrabbit.oak.segment.scheduler.LockBasedScheduler;
+import org.apache.jackrabbit.oak.segment.scheduler.OptimisticScheduler;
 import org.apache.jackrabbit.oak.segment.scheduler.Scheduler;
 import org.apache.jackrabbit.oak.spi.blob.BlobStore;
 import org.apache.jackrabbit.oak.spi.commit.CommitHook;
@@ -81,6 +82,8 @@ public class SegmentNodeStore implements NodeStore, Observable {
         
         private boolean dispatchChanges = true;
 
+        private boolean optimisticCommits = Boolean.getBoolean("oak.segmentNodeStore.optimisticCommits");
+
         @NotNull
         private StatisticsProvider statsProvider = StatisticsProvider.NOOP;
 
@@ -104,6 +107,18 @@ public class SegmentNodeStore implements NodeStore, Observable {
             return this;
         }
         
+        /**
+         * Let concurrent commits run their commit hooks in parallel and
+         * only serialise updating the head state. See {@link OptimisticScheduler}.
+         * @param optimisticCommits
+         * @return this instance
+         */
+        @NotNull
+        public SegmentNodeStoreBuilder withOptimisticCommits(boolean optimisticCommits) {
+            this.optimisticCommits = optimisticCommits;
+            return this;
+        }
+
         /**
          * {@link StatisticsProvider} for collecting statistics related to SegmentStore
          * @param statisticsProvider
@@ -143,6 +158,7 @@ public class SegmentNodeStore implements NodeStore, Observable {
         public String toString() {
             return "SegmentNodeStoreBuilder{" +
                     getString(blobStore) +
+                    ", optimisticCommits=" + optimisticCommits +
                     '}';
         }
     }
@@ -178,9 +194,15 @@ public class SegmentNodeStore implements NodeStore, Observable {
         this.writer = builder.writer;
         this.blobStore = builder.blobStore;
         this.stats = new SegmentNodeStoreStats(builder.statsProvider);
-        this.scheduler = LockBasedScheduler.builder(builder.revisions, builder.reader, stats)
-                .dispatchChanges(builder.dispatchChanges)
-                .build();
+        if (builder.optimisticCommits) {
+            this.scheduler = OptimisticScheduler.builder(builder.revisions, builder.reader, stats)
+                    .dispatchChanges(builder.dispatchChanges)
+                    .build();
+        } else {
+            this.scheduler = LockBasedScheduler.builder(builder.revisions, builder.reader, stats)
+                    .dispatchChanges(builder.dispatchChanges)
+                    .build();
+        }
         this.loggingHook = builder.loggingHook;
     }
 
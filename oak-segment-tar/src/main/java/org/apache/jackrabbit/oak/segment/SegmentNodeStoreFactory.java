@@ -20,6 +20,7 @@ import static com.google.common.base.Strings.isNullOrEmpty;
 import static org.apache.jackrabbit.oak.commons.IOUtils.closeQuietly;
 import static org.apache.jackrabbit.oak.osgi.OsgiUtil.lookupConfigurationThenFramework;
 import static org.apache.jackrabbit.oak.segment.CachingSegmentReader.DEFAULT_STRING_CACHE_MB;
+import static org.apache.jackrabbit.oak.segment.CachingSegmentReader.DEFAULT_MAP_RECORD_CACHE_MB;
 import static org.apache.jackrabbit.oak.segment.CachingSegmentReader.DEFAULT_TEMPLATE_CACHE_MB;
 import static org.apache.jackrabbit.oak.segment.SegmentCache.DEFAULT_SEGMENT_CACHE_MB;
 import static org.apache.jackrabbit.oak.segment.WriterCacheManager.DEFAULT_NODE_CACHE_SIZE_OSGi;
@@ -141,6 +142,13 @@ public class SegmentNodeStoreFactory {
         )
         int templateCache_size() default DEFAULT_TEMPLATE_CACHE_MB;
 
+        @AttributeDefinition(
+            name = "Map record cache size (MB)",
+            description = "Cache size for storing the decoded child node maps of nodes with many child nodes " +
+                "in megabytes. Default value is '" + DEFAULT_MAP_RECORD_CACHE_MB + "', which disables the cache."
+        )
+        int mapRecordCache_size() default DEFAULT_MAP_RECORD_CACHE_MB;
+
         @AttributeDefinition(
             name = "String deduplication cache size (#items)",
             description = "Maximum number of strings to keep in the deduplication cache. " +
@@ -515,6 +523,11 @@ public class SegmentNodeStoreFactory {
                 return getCacheSize("templateCache.size", configuration.templateCache_size());
             }
 
+            @Override
+            public int getMapRecordCacheSize() {
+                return getCacheSize("mapRecordCache.size", configuration.mapRecordCache_size());
+            }
+
             @Override
             public int getStringDeduplicationCacheSize() {
                 return getCacheSize("stringDeduplicationCache.size", configuration.stringDeduplicationCache_size());
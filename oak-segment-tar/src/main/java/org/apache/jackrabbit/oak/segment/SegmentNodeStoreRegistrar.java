@@ -129,6 +129,8 @@ class SegmentNodeStoreRegistrar {
 
         int getTemplateCacheSize();
 
+        int getMapRecordCacheSize();
+
         int getStringDeduplicationCacheSize();
 
         int getTemplateDeduplicationCacheSize();
@@ -227,6 +229,7 @@ class SegmentNodeStoreRegistrar {
             .withSegmentCacheSize(cfg.getSegmentCacheSize())
             .withStringCacheSize(cfg.getStringCacheSize())
             .withTemplateCacheSize(cfg.getTemplateCacheSize())
+            .withMapRecordCacheSize(cfg.getMapRecordCacheSize())
             .withStringDeduplicationCacheSize(cfg.getStringDeduplicationCacheSize())
             .withTemplateDeduplicationCacheSize(cfg.getTemplateDeduplicationCacheSize())
             .withNodeDeduplicationCacheSize(cfg.getNodeDeduplicationCacheSize())
@@ -286,12 +289,31 @@ class SegmentNodeStoreRegistrar {
         // Expose stats about the segment cache
 
         CacheStatsMBean segmentCacheStats = store.getSegmentCacheStats();
-        registerCloseable(registerMBean(
-            CacheStatsMBean.class,
-            segmentCacheStats,
-            CacheStats.TYPE,
-            segmentCacheStats.getName()
-        ));
+        if (segmentCacheStats instanceof SegmentCacheStatsMBean) {
+            registerCloseable(registerMBean(
+                SegmentCacheStatsMBean.class,
+                (SegmentCacheStatsMBean) segmentCacheStats,
+                CacheStats.TYPE,
+                segmentCacheStats.getName()
+            ));
+        } else {
+            registerCloseable(registerMBean(
+                CacheStatsMBean.class,
+                segmentCacheStats,
+                CacheStats.TYPE,
+                segmentCacheStats.getName()
+            ));
+        }
+
+        CacheStatsMBean offHeapSegmentCacheStats = store.getOffHeapSegmentCacheStats();
+        if (offHeapSegmentCacheStats != null) {
+            registerCloseable(registerMBean(
+                CacheStatsMBean.class,
+                offHeapSegmentCacheStats,
+                CacheStats.TYPE,
+                offHeapSegmentCacheStats.getName()
+            ));
+        }
 
         // Expose stats about the string and template caches
 
@@ -311,6 +333,25 @@ class SegmentNodeStoreRegistrar {
             templateCacheStats.getName()
         ));
 
+        CacheStatsMBean mapRecordCacheStats = store.getMapRecordCacheStats();
+        if (mapRecordCacheStats != null) {
+            registerCloseable(registerMBean(
+                CacheStatsMBean.class,
+                mapRecordCacheStats,
+                CacheStats.TYPE,
+                mapRecordCacheStats.getName()
+            ));
+        }
+
+        // Expose stats about the records read from segments
+
+        registerCloseable(registerMBean(
+            RecordReadStatsMBean.class,
+            store.getRecordReadStats(),
+            RecordReadStatsMBean.TYPE,
+            "Segment record reads"
+        ));
+
         WriterCacheManager cacheManager = builder.getCacheManager();
         CacheStatsMBean stringDeduplicationCacheStats = cacheManager.getStringCacheStats();
         if (stringDeduplicationCacheStats != null) {
@@ -22,6 +22,7 @@ package org.apache.jackrabbit.oak.segment;
 import static com.google.common.base.Strings.isNullOrEmpty;
 import static org.apache.jackrabbit.oak.commons.IOUtils.closeQuietly;
 import static org.apache.jackrabbit.oak.segment.CachingSegmentReader.DEFAULT_STRING_CACHE_MB;
+import static org.apache.jackrabbit.oak.segment.CachingSegmentReader.DEFAULT_MAP_RECORD_CACHE_MB;
 import static org.apache.jackrabbit.oak.segment.CachingSegmentReader.DEFAULT_TEMPLATE_CACHE_MB;
 import static org.apache.jackrabbit.oak.segment.SegmentCache.DEFAULT_SEGMENT_CACHE_MB;
 import static org.apache.jackrabbit.oak.segment.WriterCacheManager.DEFAULT_NODE_CACHE_SIZE_OSGi;
@@ -139,6 +140,13 @@ public class SegmentNodeStoreService {
         )
         int templateCache_size() default DEFAULT_TEMPLATE_CACHE_MB;
 
+        @AttributeDefinition(
+            name = "Map record cache size (MB)",
+            description = "Cache size for storing the decoded child node maps of nodes with many child nodes " +
+                "in megabytes. Default value is '" + DEFAULT_MAP_RECORD_CACHE_MB + "', which disables the cache."
+        )
+        int mapRecordCache_size() default DEFAULT_MAP_RECORD_CACHE_MB;
+
         @AttributeDefinition(
             name = "String deduplication cache size (#items)",
             description = "Maximum number of strings to keep in the deduplication cache. " +
@@ -452,6 +460,11 @@ public class SegmentNodeStoreService {
                 return configuration.templateCache_size();
             }
 
+            @Override
+            public int getMapRecordCacheSize() {
+                return getCacheSize("mapRecordCache.size", configuration.mapRecordCache_size());
+            }
+
             @Override
             public int getStringDeduplicationCacheSize() {
                 Integer size = Integer.getInteger("stringDeduplicationCache.size");
@@ -20,6 +20,7 @@
 package org.apache.jackrabbit.oak.segment;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * Instances of {@code SegmentReader} are responsible for reading records from segments.
@@ -85,4 +86,25 @@ public interface SegmentReader {
      */
     @NotNull
     SegmentBlob readBlob(@NotNull RecordId id);
+
+    /**
+     * Read the value of the entry with the given {@code key} of the map
+     * identified by {@code id}.
+     * @return  the value or {@code null} if the map does not contain the key
+     * @throws SegmentNotFoundException  see class comment for exception semantics
+     */
+    @Nullable
+    default RecordId readMapValue(@NotNull RecordId id, @NotNull String key) {
+        MapEntry entry = readMap(id).getEntry(key);
+        return entry != null ? entry.getValue() : null;
+    }
+
+    /**
+     * The statistics about the records read through this reader and from
+     * the segments it reads from.
+     */
+    @NotNull
+    default RecordReadStats getRecordReadStats() {
+        return RecordReadStats.NOOP;
+    }
 }
@@ -60,7 +60,7 @@ public class SegmentTracker implements SegmentIdProvider {
      * to the matching identifiers.
      */
     @NotNull
-    private final SegmentIdTable[] tables = new SegmentIdTable[32];
+    private final AbstractSegmentIdTable[] tables = new AbstractSegmentIdTable[32];
 
     /**
      * Number of segment tracked since this tracker was instantiated
@@ -72,9 +72,28 @@ public class SegmentTracker implements SegmentIdProvider {
     private final SegmentIdFactory segmentIdFactory;
 
     public SegmentTracker(@NotNull SegmentIdFactory segmentIdFactory) {
+        this(segmentIdFactory, false);
+    }
+
+    /**
+     * Create a new tracker.
+     *
+     * @param segmentIdFactory   factory for the {@link SegmentId} instances
+     *                           tracked by this instance.
+     * @param concurrentIdTables {@code true} to track the segment identifiers
+     *                           in {@link ConcurrentSegmentIdTable}s, which
+     *                           resolve identifiers without locking. {@code
+     *                           false} to use the synchronized {@link
+     *                           SegmentIdTable}s.
+     */
+    public SegmentTracker(@NotNull SegmentIdFactory segmentIdFactory, boolean concurrentIdTables) {
         this.segmentIdFactory = checkNotNull(segmentIdFactory);
         for (int i = 0; i < tables.length; i++) {
-            tables[i] = new SegmentIdTable();
+            if (concurrentIdTables) {
+                tables[i] = new ConcurrentSegmentIdTable();
+            } else {
+                tables[i] = new SegmentIdTable();
+            }
         }
     }
 
@@ -90,7 +109,7 @@ public class SegmentTracker implements SegmentIdProvider {
      */
     public synchronized Set<SegmentId> getReferencedSegmentIds() {
         Set<SegmentId> ids = newHashSet();
-        for (SegmentIdTable table : tables) {
+        for (AbstractSegmentIdTable table : tables) {
             table.collectReferencedIds(ids);
         }
         return ids;
@@ -142,7 +161,7 @@ public class SegmentTracker implements SegmentIdProvider {
     }
 
     public synchronized void clearSegmentIdTables(@NotNull Set<UUID> reclaimed, @NotNull String gcInfo) {
-        for (SegmentIdTable table : tables) {
+        for (AbstractSegmentIdTable table : tables) {
             table.clearSegmentIdTables(reclaimed, gcInfo);
         }
     }
@@ -191,6 +191,20 @@ public class Template {
 
     SegmentPropertyState getProperty(RecordId recordId, int index) {
         checkElementIndex(index, properties.length);
+        return getProperty(getPropertyList(recordId), index);
+    }
+
+    SegmentPropertyState getProperty(ListRecord propertyList, int index) {
+        return reader.readProperty(propertyList.getEntry(index), properties[index]);
+    }
+
+    /**
+     * Returns the list of the record ids of the properties of the node
+     * identified by {@code recordId}. This template must have at least
+     * one property template.
+     */
+    ListRecord getPropertyList(RecordId recordId) {
+        checkState(properties.length > 0);
         Segment segment = checkNotNull(recordId).getSegment();
 
         int offset = 2 * RECORD_ID_BYTES;
@@ -198,9 +212,7 @@ public class Template {
             offset += RECORD_ID_BYTES;
         }
         RecordId lid = segment.readRecordId(recordId.getRecordNumber(), offset);
-        ListRecord props = new ListRecord(lid, properties.length);
-        RecordId rid = props.getEntry(index);
-        return reader.readProperty(rid, properties[index]);
+        return new ListRecord(lid, properties.length);
     }
 
     MapRecord getChildNodeMap(RecordId recordId) {
@@ -33,6 +33,7 @@ import com.google.common.base.Function;
 import com.google.common.base.Predicate;
 import com.google.common.base.Supplier;
 import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
 import org.apache.jackrabbit.oak.api.jmx.CacheStatsMBean;
 import org.apache.jackrabbit.oak.segment.file.PriorityCache;
 import org.apache.jackrabbit.oak.stats.StatisticsProvider;
@@ -84,6 +85,14 @@ public abstract class WriterCacheManager {
     public static final int DEFAULT_NODE_CACHE_SIZE = getInteger(
             "oak.tar.nodeCacheSize", DEFAULT_NODE_CACHE_SIZE_OSGi);
 
+    /**
+     * Default number of independently locked segments of the string, template
+     * and node caches. Splitting the caches reduces the contention between
+     * concurrent writers.
+     */
+    public static final int DEFAULT_CACHE_CONCURRENCY = getInteger(
+            "oak.tar.cacheConcurrency", 16);
+
     /**
      * @return  cache for string records of the given {@code generation} and {@code operation}.
      */
@@ -250,15 +259,19 @@ public abstract class WriterCacheManager {
         }
 
         /**
-         * New instance using the default factories {@link RecordCache#factory(int)}
-         * and {@link PriorityCache#factory(int)} with the sizes
+         * New instance using the default factories {@link RecordCache#factory(int, Weigher, int)}
+         * and {@link PriorityCache#factory(int, Weigher, int)} with the sizes
          * {@link #DEFAULT_STRING_CACHE_SIZE}, {@link #DEFAULT_TEMPLATE_CACHE_SIZE}
-         * and {@link #DEFAULT_NODE_CACHE_SIZE}.
+         * and {@link #DEFAULT_NODE_CACHE_SIZE} and a concurrency of
+         * {@link #DEFAULT_CACHE_CONCURRENCY}.
          */
         public Default() {
-            this(RecordCache.<String>factory(DEFAULT_STRING_CACHE_SIZE),
-                 RecordCache.<Template>factory(DEFAULT_TEMPLATE_CACHE_SIZE),
-                 PriorityCache.<String, RecordId>factory(DEFAULT_NODE_CACHE_SIZE));
+            this(RecordCache.<String>factory(DEFAULT_STRING_CACHE_SIZE,
+                         CacheWeights.<String, RecordId>noopWeigher(), DEFAULT_CACHE_CONCURRENCY),
+                 RecordCache.<Template>factory(DEFAULT_TEMPLATE_CACHE_SIZE,
+                         CacheWeights.<Template, RecordId>noopWeigher(), DEFAULT_CACHE_CONCURRENCY),
+                 PriorityCache.<String, RecordId>factory(DEFAULT_NODE_CACHE_SIZE,
+                         CacheWeights.<String, RecordId>noopWeigher(), DEFAULT_CACHE_CONCURRENCY));
         }
 
         private static class Generations<T> implements Iterable<T> {
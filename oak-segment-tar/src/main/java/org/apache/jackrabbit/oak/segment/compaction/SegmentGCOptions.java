@@ -55,7 +55,13 @@ public class SegmentGCOptions {
         /**
          * Checkpoints aware compaction implementation
          */
-        CHECKPOINT_COMPACTOR("diff");
+        CHECKPOINT_COMPACTOR("diff"),
+
+        /**
+         * Checkpoints aware compaction implementation compacting subtrees
+         * concurrently. See {@link #getConcurrency()}.
+         */
+        PARALLEL_COMPACTOR("parallel");
 
         private final String description;
 
@@ -69,6 +75,8 @@ public class SegmentGCOptions {
                 return CLASSIC_COMPACTOR;
             case "diff":
                 return CHECKPOINT_COMPACTOR;
+            case "parallel":
+                return PARALLEL_COMPACTOR;
             default:
                 throw new IllegalArgumentException("Unrecongnized compactor type " + description);
             }
@@ -119,6 +127,11 @@ public class SegmentGCOptions {
      */
     public static final int MEMORY_THRESHOLD_DEFAULT = 15;
 
+    /**
+     * Default value for {@link #getConcurrency()}
+     */
+    public static final int CONCURRENCY_DEFAULT = Runtime.getRuntime().availableProcessors();
+
     private boolean paused = PAUSE_DEFAULT;
 
     /**
@@ -151,6 +164,14 @@ public class SegmentGCOptions {
 
     private CompactorType compactorType = CompactorType.CHECKPOINT_COMPACTOR;
 
+    private int concurrency = CONCURRENCY_DEFAULT;
+
+    /**
+     * Flag controlling whether the progress of a cancelled compaction is
+     * persisted so that a later compaction can resume from it.
+     */
+    private boolean resumable = Boolean.getBoolean("oak.segment.compaction.resumable");
+
     public SegmentGCOptions(boolean paused, int retryCount, int forceTimeout) {
         this.paused = paused;
         this.retryCount = retryCount;
@@ -275,6 +296,8 @@ public class SegmentGCOptions {
                     "offline=" + offline +
                     ", retainedGenerations=" + retainedGenerations +
                     ", compactorType=" + compactorType +
+                    ", concurrency=" + concurrency +
+                    ", resumable=" + resumable +
                     "}";
         } else {
             return getClass().getSimpleName() + "{" +
@@ -286,6 +309,8 @@ public class SegmentGCOptions {
                     ", retainedGenerations=" + retainedGenerations +
                     ", gcType=" + gcType +
                     ", compactorType=" + compactorType +
+                    ", concurrency=" + concurrency +
+                    ", resumable=" + resumable +
                     "}";
         }
     }
@@ -398,4 +423,45 @@ public class SegmentGCOptions {
         this.compactorType = compactorType;
         return this;
     }
+
+    /**
+     * @return the number of threads used for compacting subtrees when the
+     * compactor type is {@link CompactorType#PARALLEL_COMPACTOR}.
+     */
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * Sets the number of threads used for compacting subtrees when the
+     * compactor type is {@link CompactorType#PARALLEL_COMPACTOR}.
+     * @param concurrency  number of threads
+     * @return this instance
+     */
+    public SegmentGCOptions setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+        return this;
+    }
+
+    /**
+     * @return {@code true} if the progress of a cancelled compaction is
+     * persisted so that the next compaction can resume from it.
+     */
+    public boolean isResumable() {
+        return resumable;
+    }
+
+    /**
+     * Enables persisting the progress of a cancelled compaction in the gc
+     * journal so that the next compaction can resume from it instead of
+     * starting from scratch. Only supported by the checkpoint aware compactor
+     * types. Segments written by a cancelled compaction are retained until
+     * that compaction has been completed.
+     * @param resumable
+     * @return this instance
+     */
+    public SegmentGCOptions setResumable(boolean resumable) {
+        this.resumable = resumable;
+        return this;
+    }
 }
@@ -117,6 +117,13 @@ public interface SegmentData {
 
     void binDump(OutputStream stream) throws IOException;
 
+    /**
+     * Returns a read-only view of the content of this segment. The content
+     * is not copied and the position and limit of the returned buffer are
+     * independent of this instance.
+     */
+    Buffer asReadOnlyBuffer();
+
     int estimateMemoryUsage();
 
 }
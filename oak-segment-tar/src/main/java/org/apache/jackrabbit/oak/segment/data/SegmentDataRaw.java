@@ -49,6 +49,11 @@ class SegmentDataRaw implements SegmentData {
         SegmentDataUtils.binDump(buffer, stream);
     }
 
+    @Override
+    public Buffer asReadOnlyBuffer() {
+        return buffer.asReadOnlyBuffer();
+    }
+
     @Override
     public int size() {
         return buffer.remaining();
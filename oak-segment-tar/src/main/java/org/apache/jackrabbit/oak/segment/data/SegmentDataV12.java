@@ -251,6 +251,11 @@ class SegmentDataV12 implements SegmentData {
         SegmentDataUtils.binDump(buffer, stream);
     }
 
+    @Override
+    public Buffer asReadOnlyBuffer() {
+        return buffer.asReadOnlyBuffer();
+    }
+
     @Override
     public int estimateMemoryUsage() {
         return SegmentDataUtils.estimateMemoryUsage(buffer);
@@ -31,18 +31,25 @@ import com.google.common.base.Function;
 
 import org.apache.jackrabbit.oak.segment.CheckpointCompactor;
 import org.apache.jackrabbit.oak.segment.ClassicCompactor;
+import org.apache.jackrabbit.oak.segment.CompactionCursor;
 import org.apache.jackrabbit.oak.segment.Compactor;
+import org.apache.jackrabbit.oak.segment.ParallelCompactor;
 import org.apache.jackrabbit.oak.segment.RecordId;
+import org.apache.jackrabbit.oak.segment.SegmentCache;
+import org.apache.jackrabbit.oak.segment.SegmentId;
 import org.apache.jackrabbit.oak.segment.SegmentNodeState;
 import org.apache.jackrabbit.oak.segment.SegmentWriter;
 import org.apache.jackrabbit.oak.segment.compaction.SegmentGCOptions.CompactorType;
 import org.apache.jackrabbit.oak.segment.compaction.SegmentGCOptions.GCType;
+import org.apache.jackrabbit.oak.segment.file.GCJournal.GCProgressEntry;
 import org.apache.jackrabbit.oak.segment.file.cancel.Cancellation;
 import org.apache.jackrabbit.oak.segment.file.cancel.Canceller;
 import org.apache.jackrabbit.oak.segment.file.tar.GCGeneration;
 import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
+import java.util.Date;
 
 abstract class AbstractCompactionStrategy implements CompactionStrategy {
 
@@ -73,9 +80,65 @@ abstract class AbstractCompactionStrategy implements CompactionStrategy {
 
     private static CompactionResult compactionAborted(Context context, GCGeneration generation) {
         context.getGCListener().compactionFailed(generation);
+        if (readProgress(context, generation) != null) {
+            context.getGCListener().info("retaining segments of generation {} for resuming compaction", generation);
+            return CompactionResult.partial(getGcGeneration(context), generation, context.getGCCount());
+        }
         return CompactionResult.aborted(getGcGeneration(context), generation, context.getGCCount());
     }
 
+    /**
+     * Read the persisted progress of a previous, cancelled compaction to
+     * {@code generation}.
+     * @return  the progress or {@code null} if resuming is disabled, if there is no
+     *          such progress or if it refers to segments that do not exist any more.
+     */
+    @Nullable
+    private static GCProgressEntry readProgress(Context context, GCGeneration generation) {
+        if (!context.getGCOptions().isResumable()) {
+            return null;
+        }
+        GCProgressEntry progress = context.getGCJournal().readProgress();
+        if (progress == null || !progress.getGcGeneration().equals(generation)) {
+            return null;
+        }
+        try {
+            CompactionCursor cursor = CompactionCursor.parse(context.getSegmentTracker(), progress.getCursor());
+            for (SegmentId id : cursor.getSegmentIds()) {
+                if (!context.getTarFiles().containsSegment(id.getMostSignificantBits(), id.getLeastSignificantBits())) {
+                    context.getGCListener().warn("ignoring compaction progress referencing missing segment {}", id);
+                    return null;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            context.getGCListener().warn("ignoring malformed compaction progress {}", progress.getCursor());
+            return null;
+        }
+        return progress;
+    }
+
+    /**
+     * Persist the progress of a cancelled compaction to {@code generation} such
+     * that the next compaction to the same generation can resume from it.
+     */
+    private static void persistProgress(
+        Context context,
+        GCGeneration generation,
+        SegmentWriter writer,
+        @Nullable CompactionCursor progress,
+        long resumedNodes
+    ) throws IOException {
+        if (progress == null || progress.isEmpty()) {
+            return;
+        }
+        writer.flush();
+        context.getFlusher().flush();
+        long nodes = resumedNodes + context.getCompactionMonitor().getCompactedNodes();
+        context.getGCJournal().persistProgress(generation, nodes, progress.toString());
+        context.getGCListener().info("persisted compaction progress: {} compacted nodes, {} cursor entries",
+            nodes, progress.size());
+    }
+
     private static SegmentNodeState forceCompact(
         Context context,
         NodeState base,
@@ -119,6 +182,12 @@ abstract class AbstractCompactionStrategy implements CompactionStrategy {
     }
 
     final CompactionResult compact(Context context, NodeState base) {
+        // Compaction reads the whole repository, which must not evict the
+        // working set from scan resistant segment caches
+        return SegmentCache.withDoNotCache(() -> doCompact(context, base));
+    }
+
+    private CompactionResult doCompact(Context context, NodeState base) {
         context.getGCListener().info("running {} compaction", formatCompactionType(getCompactionType()));
 
         GCGeneration nextGeneration = nextGeneration(getGcGeneration(context));
@@ -144,10 +213,26 @@ abstract class AbstractCompactionStrategy implements CompactionStrategy {
 
             Compactor compactor = newCompactor(context, writer);
 
+            CompactionCursor progress = null;
+            long resumedNodes = 0;
+            if (context.getGCOptions().isResumable() && compactor instanceof CheckpointCompactor) {
+                GCProgressEntry previous = readProgress(context, nextGeneration);
+                if (previous == null) {
+                    progress = new CompactionCursor();
+                } else {
+                    progress = CompactionCursor.parse(context.getSegmentTracker(), previous.getCursor());
+                    resumedNodes = previous.getNodes();
+                    context.getGCListener().info("resuming compaction cancelled at {} after compacting {} nodes",
+                        new Date(previous.getTs()), resumedNodes);
+                }
+                ((CheckpointCompactor) compactor).trackProgress(progress);
+            }
+
             SegmentNodeState head = getHead(context);
             SegmentNodeState compacted = compactor.compact(base, head, base, compactionCanceller);
             if (compacted == null) {
                 context.getGCListener().warn("compaction cancelled: {}.", compactionCanceller.check().getReason().orElse("unknown reason"));
+                persistProgress(context, nextGeneration, writer, progress, resumedNodes);
                 return compactionAborted(context, nextGeneration);
             }
 
@@ -173,6 +258,7 @@ abstract class AbstractCompactionStrategy implements CompactionStrategy {
                 compacted = compactor.compact(previousHead, head, compacted, compactionCanceller);
                 if (compacted == null) {
                     context.getGCListener().warn("compaction cancelled: {}.", compactionCanceller.check().getReason().orElse("unknown reason"));
+                    persistProgress(context, nextGeneration, writer, progress, resumedNodes);
                     return compactionAborted(context, nextGeneration);
                 }
 
@@ -224,6 +310,7 @@ abstract class AbstractCompactionStrategy implements CompactionStrategy {
                 return compactionSucceeded(context, nextGeneration, compacted.getRecordId());
             } else {
                 context.getGCListener().info("compaction failed after {}, and {} cycles", watch, cycles);
+                persistProgress(context, nextGeneration, writer, progress, resumedNodes);
                 return compactionAborted(context, nextGeneration);
             }
         } catch (InterruptedException e) {
@@ -242,6 +329,9 @@ abstract class AbstractCompactionStrategy implements CompactionStrategy {
         case CHECKPOINT_COMPACTOR:
             return new CheckpointCompactor(context.getGCListener(), context.getSegmentReader(), writer,
                     context.getBlobStore(), context.getCompactionMonitor());
+        case PARALLEL_COMPACTOR:
+            return new ParallelCompactor(context.getGCListener(), context.getSegmentReader(), writer,
+                    context.getBlobStore(), context.getCompactionMonitor(), context.getGCOptions().getConcurrency());
         case CLASSIC_COMPACTOR:
             return new ClassicCompactor(context.getSegmentReader(), writer, context.getBlobStore(),
                     context.getCompactionMonitor());
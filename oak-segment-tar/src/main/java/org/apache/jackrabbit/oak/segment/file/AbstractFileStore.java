@@ -32,6 +32,7 @@ import java.util.function.Consumer;
 import org.apache.jackrabbit.oak.api.jmx.CacheStatsMBean;
 import org.apache.jackrabbit.oak.commons.Buffer;
 import org.apache.jackrabbit.oak.segment.CachingSegmentReader;
+import org.apache.jackrabbit.oak.segment.RecordReadStats;
 import org.apache.jackrabbit.oak.segment.RecordType;
 import org.apache.jackrabbit.oak.segment.Revisions;
 import org.apache.jackrabbit.oak.segment.Segment;
@@ -48,6 +49,7 @@ import org.apache.jackrabbit.oak.segment.SegmentReader;
 import org.apache.jackrabbit.oak.segment.SegmentStore;
 import org.apache.jackrabbit.oak.segment.SegmentTracker;
 import org.apache.jackrabbit.oak.segment.SegmentWriter;
+import org.apache.jackrabbit.oak.segment.file.tar.BinaryReferencesCollector;
 import org.apache.jackrabbit.oak.segment.file.tar.EntryRecovery;
 import org.apache.jackrabbit.oak.segment.file.tar.GCGeneration;
 import org.apache.jackrabbit.oak.segment.file.tar.TarFiles;
@@ -115,6 +117,15 @@ public abstract class AbstractFileStore implements SegmentStore, Closeable {
     @NotNull
     final SegmentCache segmentCache;
 
+    @Nullable
+    final OffHeapSegmentCache offHeapSegmentCache;
+
+    @Nullable
+    final SegmentPrefetcher segmentPrefetcher;
+
+    @NotNull
+    final BinaryReferencesCollector binaryReferencesCollector;
+
     final TarRecovery recovery = new TarRecovery() {
 
         @Override
@@ -136,17 +147,25 @@ public abstract class AbstractFileStore implements SegmentStore, Closeable {
         this.tracker = new SegmentTracker(new SegmentIdFactory() {
             @Override @NotNull
             public SegmentId newSegmentId(long msb, long lsb) {
-                return new SegmentId(AbstractFileStore.this, msb, lsb, segmentCache::recordHit);
+                return new SegmentId(AbstractFileStore.this, msb, lsb, AbstractFileStore.this::onAccess);
             }
-        });
+        }, builder.getConcurrentSegmentIdTables());
         this.blobStore = builder.getBlobStore();
-        this.segmentCache = newSegmentCache(builder.getSegmentCacheSize());
+        this.segmentCache = newSegmentCache(builder.getSegmentCacheSize(), builder.getScanResistantSegmentCache());
+        this.offHeapSegmentCache = builder.getOffHeapSegmentCache();
+        this.segmentPrefetcher = newSegmentPrefetcher(builder);
+        this.binaryReferencesCollector = new BinaryReferencesCollector(
+            builder.getBinaryReferencesCacheDirectory(),
+            builder.getBinaryReferencesThreads()
+        );
         this.segmentReader = new CachingSegmentReader(
             this::getWriter,
             blobStore,
             builder.getStringCacheSize(),
             builder.getTemplateCacheSize(),
-            builder.getStatsProvider().getMeter("oak.segment.reads", StatsOptions.DEFAULT)
+            builder.getMapRecordCacheSize(),
+            builder.getStatsProvider().getMeter("oak.segment.reads", StatsOptions.DEFAULT),
+            new RecordReadStats(builder.getStatsProvider(), RecordReadStats.DEFAULT_SAMPLE_RATE)
         );
         this.memoryMapping = builder.getMemoryMapping();
         this.offHeapAccess = builder.getOffHeapAccess();
@@ -155,6 +174,22 @@ public abstract class AbstractFileStore implements SegmentStore, Closeable {
         this.segmentBufferMonitor = new SegmentBufferMonitor(builder.getStatsProvider());
     }
 
+    @Nullable
+    private SegmentPrefetcher newSegmentPrefetcher(FileStoreBuilder builder) {
+        if (builder.getSegmentPrefetchThreads() == 0 || builder.getSegmentCacheSize() == 0) {
+            return null;
+        }
+        return new SegmentPrefetcher(tracker, segmentCache, builder.getSegmentPrefetchThreads(),
+                builder.getSegmentPrefetchDepth(), builder.getStatsProvider());
+    }
+
+    private void onAccess(SegmentId id) {
+        segmentCache.recordAccess(id);
+        if (segmentPrefetcher != null) {
+            segmentPrefetcher.onAccess(id);
+        }
+    }
+
     static SegmentNotFoundException asSegmentNotFoundException(Exception e, SegmentId id) {
         if (e.getCause() instanceof SegmentNotFoundException) {
             return (SegmentNotFoundException) e.getCause();
@@ -167,6 +202,23 @@ public abstract class AbstractFileStore implements SegmentStore, Closeable {
         return segmentCache.getCacheStats();
     }
 
+    /**
+     * @return the statistics of the off-heap segment cache or {@code null} if
+     * this store doesn't have one.
+     */
+    @Nullable
+    public CacheStatsMBean getOffHeapSegmentCacheStats() {
+        return offHeapSegmentCache == null ? null : offHeapSegmentCache.getCacheStats();
+    }
+
+    /**
+     * @return the number of bytes of direct memory held by the off-heap
+     * segment cache of this store.
+     */
+    long getOffHeapSegmentCacheWeight() {
+        return offHeapSegmentCache == null ? 0 : offHeapSegmentCache.getCurrentWeight();
+    }
+
     @NotNull
     public CacheStatsMBean getStringCacheStats() {
         return segmentReader.getStringCacheStats();
@@ -177,6 +229,20 @@ public abstract class AbstractFileStore implements SegmentStore, Closeable {
         return segmentReader.getTemplateCacheStats();
     }
 
+    /**
+     * @return  the statistics of the map record cache or {@code null} if the
+     *          cache is disabled.
+     */
+    @Nullable
+    public CacheStatsMBean getMapRecordCacheStats() {
+        return segmentReader.getMapRecordCacheStats();
+    }
+
+    @NotNull
+    public RecordReadStats getRecordReadStats() {
+        return segmentReader.getRecordReadStats();
+    }
+
     @NotNull
     public abstract SegmentWriter getWriter();
 
@@ -291,6 +357,20 @@ public abstract class AbstractFileStore implements SegmentStore, Closeable {
         return new Segment(tracker, segmentReader, id, buffer);
     }
 
+    /**
+     * Load a segment on a segment cache miss. In contrast to {@link
+     * #readSegmentUncached(TarFiles, SegmentId)} this also schedules
+     * prefetching the segments referenced by the loaded segment if
+     * prefetching is enabled.
+     */
+    Segment loadSegment(TarFiles tarFiles, SegmentId id) {
+        Segment segment = readSegmentUncached(tarFiles, id);
+        if (segmentPrefetcher != null) {
+            segmentPrefetcher.onLoad(segment, referencedId -> readSegmentUncached(tarFiles, referencedId));
+        }
+        return segment;
+    }
+
     /**
      * Finds all external blob references that are currently accessible
      * in this repository and adds them to the given collector. Useful
@@ -304,4 +384,16 @@ public abstract class AbstractFileStore implements SegmentStore, Closeable {
      * @param collector  reference collector called back for each blob reference found
      */
     public abstract void collectBlobReferences(Consumer<String> collector) throws IOException;
+
+    /**
+     * Finds all external blob references that are currently accessible
+     * in this repository and writes them to {@code references}, one per
+     * line, sorted and without duplicates. The references of the TAR files
+     * are loaded in parallel and cached as configured by {@link
+     * FileStoreBuilder#withBinaryReferencesCollection(int, File)}.
+     * <p>
+     * The same caveats as for {@link #collectBlobReferences(Consumer)} apply.
+     * @param references  file receiving the blob references
+     */
+    public abstract void collectBlobReferences(@NotNull File references) throws IOException;
 }
@@ -113,6 +113,10 @@ abstract class AbstractGarbageCollectionStrategy implements GarbageCollectionStr
                 context.getGCListener().info("estimation started");
                 context.getGCListener().updateStatus(ESTIMATION.message());
 
+                if (context.getGCOptions().isResumable()) {
+                    estimationStrategy = new PartialCompactionEstimationStrategy(estimationStrategy);
+                }
+
                 PrintableStopwatch watch = PrintableStopwatch.createStarted();
                 EstimationResult estimation = estimationStrategy.estimate(newEstimationStrategyContext(context));
                 sufficientEstimatedGain = estimation.isGcNeeded();
@@ -173,6 +177,11 @@ abstract class AbstractGarbageCollectionStrategy implements GarbageCollectionStr
                 return context.getGCJournal();
             }
 
+            @Override
+            public GCGeneration getGcGeneration() {
+                return AbstractGarbageCollectionStrategy.this.getGcGeneration(context);
+            }
+
         };
     }
 
@@ -265,6 +274,11 @@ abstract class AbstractGarbageCollectionStrategy implements GarbageCollectionStr
                 return context.getSegmentCache();
             }
 
+            @Override
+            public OffHeapSegmentCache getOffHeapSegmentCache() {
+                return context.getOffHeapSegmentCache();
+            }
+
             @Override
             public SegmentTracker getSegmentTracker() {
                 return context.getSegmentTracker();
@@ -131,6 +131,9 @@ class CleanupFirstCompactionStrategy implements CompactionStrategy {
         }
 
         context.getSegmentTracker().clearSegmentIdTables(cleanupResult.getReclaimedSegmentIds(), "[pre-compaction cleanup]");
+        if (parentContext.getOffHeapSegmentCache() != null) {
+            parentContext.getOffHeapSegmentCache().invalidate(cleanupResult.getReclaimedSegmentIds());
+        }
         context.getGCListener().info("cleanup marking files for deletion: {}", toFileNames(cleanupResult.getRemovableFiles()));
 
         long finalSize = context.getTarFiles().size();
@@ -37,6 +37,11 @@ interface CleanupStrategy {
 
         SegmentCache getSegmentCache();
 
+        /**
+         * @return the off-heap segment cache or {@code null} if there is none.
+         */
+        OffHeapSegmentCache getOffHeapSegmentCache();
+
         SegmentTracker getSegmentTracker();
 
         FileStoreStats getFileStoreStats();
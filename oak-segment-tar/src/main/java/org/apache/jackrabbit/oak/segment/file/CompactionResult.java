@@ -29,7 +29,7 @@ import org.jetbrains.annotations.NotNull;
 
 /**
  * Instances of this class represent the result from a compaction. Either
- * succeeded, aborted or skipped.
+ * succeeded, aborted, partial or skipped.
  */
 abstract class CompactionResult {
 
@@ -103,6 +103,49 @@ abstract class CompactionResult {
         };
     }
 
+    /**
+     * Result of an aborted compaction whose progress has been persisted for
+     * resuming it later. Unlike {@link #aborted(GCGeneration, GCGeneration, int)}
+     * the segments of the failed generation are retained.
+     *
+     * @param currentGeneration the current generation of the store
+     * @param failedGeneration  the generation that compaction attempted to
+     *                          create
+     */
+    static CompactionResult partial(
+        @NotNull GCGeneration currentGeneration,
+        @NotNull final GCGeneration failedGeneration,
+        int gcCount
+    ) {
+        return new CompactionResult(currentGeneration, gcCount) {
+
+            @Override
+            Predicate<GCGeneration> reclaimer() {
+                return new Predicate<GCGeneration>() {
+
+                    @Override
+                    public boolean apply(GCGeneration generation) {
+                        return false;
+                    }
+
+                    @Override
+                    public String toString() {
+                        return String.format(
+                            "(none, retaining generation %d.%d for resuming compaction)",
+                            failedGeneration.getGeneration(),
+                            failedGeneration.getFullGeneration()
+                        );
+                    }
+                };
+            }
+
+            @Override
+            boolean isSuccess() {
+                return false;
+            }
+        };
+    }
+
     /**
      * Result serving as a placeholder for a compaction that was skipped.
      *
@@ -57,6 +57,9 @@ class DefaultCleanupStrategy implements CleanupStrategy {
             context.getGCListener().info("cleanup interrupted");
         }
         context.getSegmentTracker().clearSegmentIdTables(cleanupResult.getReclaimedSegmentIds(), context.getSegmentEvictionReason());
+        if (context.getOffHeapSegmentCache() != null) {
+            context.getOffHeapSegmentCache().invalidate(cleanupResult.getReclaimedSegmentIds());
+        }
         context.getGCListener().info("cleanup marking files for deletion: {}", toFileNames(cleanupResult.getRemovableFiles()));
 
         long finalSize = size(context);
@@ -19,6 +19,8 @@
 
 package org.apache.jackrabbit.oak.segment.file;
 
+import org.apache.jackrabbit.oak.segment.file.tar.GCGeneration;
+
 interface EstimationStrategy {
 
     interface Context {
@@ -29,6 +31,8 @@ interface EstimationStrategy {
 
         GCJournal getGCJournal();
 
+        GCGeneration getGcGeneration();
+
     }
 
     EstimationResult estimate(Context context);
@@ -19,15 +19,18 @@
 package org.apache.jackrabbit.oak.segment.file;
 
 import static java.lang.String.format;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.MINUTES;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.apache.jackrabbit.oak.commons.IOUtils.humanReadableByteCount;
 import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.EMPTY_NODE;
 import static org.apache.jackrabbit.oak.segment.DefaultSegmentWriterBuilder.defaultSegmentWriterBuilder;
+import static org.apache.jackrabbit.oak.segment.compaction.SegmentGCOptions.CompactorType.PARALLEL_COMPACTOR;
 import static org.apache.jackrabbit.oak.segment.file.PrintableBytes.newPrintableBytes;
 import static org.apache.jackrabbit.oak.stats.StatsOptions.DEFAULT;
 import static org.apache.jackrabbit.oak.stats.StatsOptions.METRICS_ONLY;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.Set;
 import java.util.UUID;
@@ -40,6 +43,7 @@ import com.google.common.io.Closer;
 import com.google.common.util.concurrent.UncheckedExecutionException;
 
 import org.apache.jackrabbit.oak.commons.Buffer;
+import org.apache.jackrabbit.oak.segment.DefaultSegmentWriterBuilder;
 import org.apache.jackrabbit.oak.segment.RecordId;
 import org.apache.jackrabbit.oak.segment.Segment;
 import org.apache.jackrabbit.oak.segment.SegmentId;
@@ -137,6 +141,11 @@ public class FileStore extends AbstractFileStore {
 
     private final boolean eagerSegmentCaching;
 
+    /**
+     * Coalesces concurrent calls to {@link #flush()}
+     */
+    private final GroupCommitFlusher groupCommit;
+
     FileStore(final FileStoreBuilder builder) throws InvalidFileStoreVersionException, IOException {
         super(builder);
 
@@ -167,7 +176,8 @@ public class FileStore extends AbstractFileStore {
                 .withMaxFileSize(builder.getMaxFileSize() * MB)
                 .withPersistence(builder.getPersistence())
                 .withReaderCountStats(readerCountStats)
-                .withSegmentCountStats(segmentCountStats);
+                .withSegmentCountStats(segmentCountStats)
+                .withSegmentLocationIndex(builder.getSegmentLocationIndex());
 
         this.tarFiles = tarFilesBuilder.build();
         long size = this.tarFiles.size();
@@ -187,6 +197,7 @@ public class FileStore extends AbstractFileStore {
             () -> revisions,
             getBlobStore(),
             segmentCache,
+            offHeapSegmentCache,
             segmentWriter,
             stats,
             Canceller.newCanceller()
@@ -194,16 +205,24 @@ public class FileStore extends AbstractFileStore {
                 .withCondition("not enough memory", () -> !sufficientMemory.get())
                 .withCondition("FileStore is shutting down", shutDown::isShutDown),
             this::flush,
-            generation ->
-                defaultSegmentWriterBuilder("c")
+            generation -> {
+                DefaultSegmentWriterBuilder writerBuilder = defaultSegmentWriterBuilder("c")
                     .with(builder.getCacheManager().withAccessTracking("COMPACT", statsProvider))
-                    .withGeneration(generation)
-                    .withoutWriterPool()
-                    .build(this)
+                    .withGeneration(generation);
+                // The parallel compactor writes concurrently from its worker threads
+                if (builder.getGcOptions().getCompactorType() == PARALLEL_COMPACTOR) {
+                    writerBuilder.withWriterPool();
+                } else {
+                    writerBuilder.withoutWriterPool();
+                }
+                return writerBuilder.build(this);
+            }
         );
 
         this.snfeListener = builder.getSnfeListener();
         this.eagerSegmentCaching = builder.getEagerSegmentCaching();
+        this.groupCommit = new GroupCommitFlusher(this::doFlush,
+                MILLISECONDS.toNanos(builder.getGroupCommitDelay()), builder.getGroupCommitBytes(), stats);
 
         TimerStats flushTimer = statsProvider.getTimer("oak.segment.flush", METRICS_ONLY);
         fileStoreScheduler.scheduleWithFixedDelay(format("TarMK flush [%s]", directory), 5, SECONDS, () -> {
@@ -335,11 +354,12 @@ public class FileStore extends AbstractFileStore {
     }
 
     /**
-     * Flush all pending changes
+     * Flush all pending changes. Concurrent calls are coalesced into a single
+     * flush, see {@link FileStoreBuilder#withGroupCommit(int, long)}.
      */
     public void flush() throws IOException {
         try (ShutDownCloser ignored = shutDown.keepAlive()) {
-            doFlush();
+            groupCommit.flush();
         }
     }
 
@@ -439,6 +459,13 @@ public class FileStore extends AbstractFileStore {
         }
     }
 
+    @Override
+    public void collectBlobReferences(@NotNull File references) throws IOException {
+        try (ShutDownCloser ignored = shutDown.keepAlive()) {
+            garbageCollector.collectBlobReferences(references, binaryReferencesCollector);
+        }
+    }
+
     /**
      * Cancel a running revision garbage collection compaction process as soon as possible.
      * Does nothing if gc is not running.
@@ -469,6 +496,9 @@ public class FileStore extends AbstractFileStore {
             // avoid deadlocks by closing (and joining) the background
             // thread before acquiring the synchronization lock
             fileStoreScheduler.close();
+            if (segmentPrefetcher != null) {
+                segmentPrefetcher.close();
+            }
 
             try {
                 doFlush();
@@ -480,6 +510,9 @@ public class FileStore extends AbstractFileStore {
             closer.register(repositoryLock::unlock);
             closer.register(tarFiles) ;
             closer.register(revisions);
+            if (offHeapSegmentCache != null) {
+                closer.register(offHeapSegmentCache);
+            }
 
             closeAndLogOnFail(closer);
         }
@@ -502,7 +535,7 @@ public class FileStore extends AbstractFileStore {
     @NotNull
     public Segment readSegment(final SegmentId id) {
         try (ShutDownCloser ignored = shutDown.keepAlive()) {
-            return segmentCache.getSegment(id, () -> readSegmentUncached(tarFiles, id));
+            return segmentCache.getSegment(id, () -> loadSegment(tarFiles, id));
         } catch (ExecutionException | UncheckedExecutionException e) {
             if (e.getCause() instanceof RepositoryNotReachableException) {
                 RepositoryNotReachableException re = (RepositoryNotReachableException) e.getCause();
@@ -561,6 +594,7 @@ public class FileStore extends AbstractFileStore {
                 references,
                 binaryReferences
             );
+            groupCommit.written(length);
 
             // Keep this data segment in memory as it's likely to be accessed soon.
             if (!eagerSegmentCaching && segment != null) {
@@ -22,11 +22,16 @@ package org.apache.jackrabbit.oak.segment.file;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.collect.Sets.newHashSet;
+import static com.google.common.base.Preconditions.checkArgument;
 import static java.lang.Boolean.getBoolean;
+import static java.lang.Integer.getInteger;
+import static java.lang.Long.getLong;
 import static org.apache.jackrabbit.oak.segment.CachingSegmentReader.DEFAULT_STRING_CACHE_MB;
+import static org.apache.jackrabbit.oak.segment.CachingSegmentReader.DEFAULT_MAP_RECORD_CACHE_MB;
 import static org.apache.jackrabbit.oak.segment.CachingSegmentReader.DEFAULT_TEMPLATE_CACHE_MB;
 import static org.apache.jackrabbit.oak.segment.SegmentCache.DEFAULT_SEGMENT_CACHE_MB;
 import static org.apache.jackrabbit.oak.segment.SegmentNotFoundExceptionListener.LOG_SNFE;
+import static org.apache.jackrabbit.oak.segment.WriterCacheManager.DEFAULT_CACHE_CONCURRENCY;
 import static org.apache.jackrabbit.oak.segment.WriterCacheManager.DEFAULT_NODE_CACHE_SIZE;
 import static org.apache.jackrabbit.oak.segment.WriterCacheManager.DEFAULT_STRING_CACHE_SIZE;
 import static org.apache.jackrabbit.oak.segment.WriterCacheManager.DEFAULT_TEMPLATE_CACHE_SIZE;
@@ -45,10 +50,12 @@ import org.apache.jackrabbit.oak.segment.SegmentNotFoundExceptionListener;
 import org.apache.jackrabbit.oak.segment.WriterCacheManager;
 import org.apache.jackrabbit.oak.segment.compaction.SegmentGCOptions;
 import org.apache.jackrabbit.oak.segment.file.proc.Proc.Backend;
+import org.apache.jackrabbit.oak.segment.file.tar.BinaryReferencesCollector;
 import org.apache.jackrabbit.oak.segment.file.tar.GCGeneration;
 import org.apache.jackrabbit.oak.segment.file.tar.TarPersistence;
 import org.apache.jackrabbit.oak.segment.spi.monitor.*;
 import org.apache.jackrabbit.oak.segment.spi.persistence.SegmentNodeStorePersistence;
+import org.apache.jackrabbit.oak.segment.spi.persistence.persistentcache.CachingPersistence;
 import org.apache.jackrabbit.oak.segment.tool.iotrace.IOTraceLogWriter;
 import org.apache.jackrabbit.oak.segment.tool.iotrace.IOTraceMonitor;
 import org.apache.jackrabbit.oak.spi.blob.BlobStore;
@@ -72,6 +79,14 @@ public class FileStoreBuilder {
 
     public static final int DEFAULT_MAX_FILE_SIZE = 256;
 
+    private static final int MB = 1024 * 1024;
+
+    /**
+     * The largest memory mapping window in MB: a window is a single mapped
+     * {@code Buffer}, which cannot exceed 2 GB.
+     */
+    private static final int MAX_MEMORY_MAPPING_WINDOW_SIZE = Integer.MAX_VALUE / MB;
+
     @NotNull
     private final File directory;
 
@@ -82,10 +97,19 @@ public class FileStoreBuilder {
 
     private int segmentCacheSize = DEFAULT_SEGMENT_CACHE_MB;
 
+    private boolean scanResistantSegmentCache = getBoolean("oak.segment.scanResistantSegmentCache");
+
+    private int offHeapSegmentCacheSize = getInteger("oak.segment.offHeapSegmentCacheSize", 0);
+
+    @Nullable
+    private OffHeapSegmentCache offHeapSegmentCache;
+
     private int stringCacheSize = DEFAULT_STRING_CACHE_MB;
 
     private int templateCacheSize = DEFAULT_TEMPLATE_CACHE_MB;
 
+    private int mapRecordCacheSize = DEFAULT_MAP_RECORD_CACHE_MB;
+
     private int stringDeduplicationCacheSize = DEFAULT_STRING_CACHE_SIZE;
 
     private int templateDeduplicationCacheSize = DEFAULT_TEMPLATE_CACHE_SIZE;
@@ -96,6 +120,29 @@ public class FileStoreBuilder {
 
     private boolean offHeapAccess = getBoolean("access.off.heap");
 
+    private boolean concurrentSegmentIdTables = getBoolean("oak.segment.concurrentSegmentIdTables");
+
+    private boolean positionalReads = getBoolean("oak.segment.positionalReads");
+
+    private boolean segmentLocationIndex = getBoolean("oak.segment.segmentLocationIndex");
+
+    private int memoryMappingWindowSize = getInteger("oak.segment.memoryMappingWindowSize", 0);
+
+    private int memoryMappingSoftBudget = getInteger("oak.segment.memoryMappingSoftBudget", Integer.MAX_VALUE);
+
+    private int groupCommitDelay = getInteger("oak.segment.groupCommitDelay", 0);
+
+    private long groupCommitBytes = getLong("oak.segment.groupCommitBytes", 0);
+
+    private int segmentPrefetchThreads = getInteger("oak.segment.prefetch.threads", 0);
+
+    private int segmentPrefetchDepth = getInteger("oak.segment.prefetch.depth", 1);
+
+    private int binaryReferencesThreads = BinaryReferencesCollector.DEFAULT_THREADS;
+
+    @Nullable
+    private File binaryReferencesCacheDirectory;
+
     private SegmentNodeStorePersistence persistence;
 
     @NotNull
@@ -156,7 +203,6 @@ public class FileStoreBuilder {
     private FileStoreBuilder(@NotNull File directory) {
         this.directory = checkNotNull(directory);
         this.gcListener.registerGCMonitor(new LoggingGCMonitor(LOG));
-        this.persistence = new TarPersistence(directory);
     }
 
     /**
@@ -195,6 +241,40 @@ public class FileStoreBuilder {
         return this;
     }
 
+    /**
+     * Size of the off-heap segment cache in MB. The off-heap segment cache
+     * keeps the raw content of segments in direct memory, below the on-heap
+     * segment cache. This allows caching many segments without increasing
+     * the size of the heap. {@code 0} disables the off-heap segment cache.
+     * The off-heap segment cache is only used with the default TAR
+     * persistence, custom persistences are not wrapped.
+     *
+     * @param offHeapSegmentCacheSize None negative cache size
+     * @return this instance
+     */
+    @NotNull
+    public FileStoreBuilder withOffHeapSegmentCacheSize(int offHeapSegmentCacheSize) {
+        checkArgument(offHeapSegmentCacheSize >= 0, "offHeapSegmentCacheSize must not be negative");
+        this.offHeapSegmentCacheSize = offHeapSegmentCacheSize;
+        return this;
+    }
+
+    /**
+     * Turn frequency based admission for the segment cache on or off. When
+     * turned on, segments are only admitted to the segment cache at the
+     * expense of more frequently accessed ones, so that a traversal of the
+     * repository doesn't evict the working set of the instance.
+     *
+     * @param scanResistantSegmentCache
+     * @return this instance
+     * @see org.apache.jackrabbit.oak.segment.SegmentCache#setDoNotCache(boolean)
+     */
+    @NotNull
+    public FileStoreBuilder withScanResistantSegmentCache(boolean scanResistantSegmentCache) {
+        this.scanResistantSegmentCache = scanResistantSegmentCache;
+        return this;
+    }
+
     /**
      * Size of the string cache in MB.
      *
@@ -219,6 +299,21 @@ public class FileStoreBuilder {
         return this;
     }
 
+    /**
+     * Size of the map record cache in MB. This cache keeps the decoded child
+     * node maps of nodes with many child nodes for faster child node lookups.
+     *
+     * @param mapRecordCacheSize None negative cache size, {@code 0} disables
+     *                           the cache.
+     * @return this instance
+     */
+    @NotNull
+    public FileStoreBuilder withMapRecordCacheSize(int mapRecordCacheSize) {
+        checkArgument(mapRecordCacheSize >= 0, "mapRecordCacheSize must not be negative");
+        this.mapRecordCacheSize = mapRecordCacheSize;
+        return this;
+    }
+
     /**
      * Number of items to keep in the string deduplication cache
      *
@@ -279,6 +374,147 @@ public class FileStoreBuilder {
         return this;
     }
 
+    /**
+     * Turn lock-free positional reads on or off. When turned on, tar files
+     * that are not memory mapped are read through positional reads that are
+     * not synchronized, so that concurrent readers of the same tar file do
+     * not block each other.
+     *
+     * @param positionalReads
+     * @return this instance
+     */
+    @NotNull
+    public FileStoreBuilder withPositionalReads(boolean positionalReads) {
+        this.positionalReads = positionalReads;
+        return this;
+    }
+
+    /**
+     * Turn the segment location index on or off. When turned on, the store
+     * keeps track of the tar file containing each segment in memory. Reading
+     * a segment then no longer needs to probe the index of each tar file in
+     * turn, which reduces the cost of segment cache misses in stores with
+     * many tar files at the expense of about 30 bytes of heap per segment.
+     *
+     * @param segmentLocationIndex
+     * @return this instance
+     */
+    @NotNull
+    public FileStoreBuilder withSegmentLocationIndex(boolean segmentLocationIndex) {
+        this.segmentLocationIndex = segmentLocationIndex;
+        return this;
+    }
+
+    /**
+     * Memory map tar files lazily in windows instead of mapping each tar file
+     * as a whole. This only has an effect when memory mapping is turned on.
+     * Windows are only mapped while the total size of the windows in use
+     * stays below {@code softMaxMappedMB}: reads that cannot be served by a
+     * mapped window fall back to lock-free positional reads.
+     * <p>
+     * This is a soft budget. An evicted window is only unmapped once the
+     * garbage collector reclaims its buffer, so the mapped address space can
+     * temporarily exceed the budget by the evicted windows not reclaimed yet.
+     *
+     * @param windowSizeMB    size of a window in MB, or {@code 0} to map tar
+     *                        files as a whole. Must be less than 2048.
+     * @param softMaxMappedMB soft maximum size in MB of all windows in use.
+     * @return this instance
+     */
+    @NotNull
+    public FileStoreBuilder withMemoryMappingWindows(int windowSizeMB, int softMaxMappedMB) {
+        checkArgument(windowSizeMB >= 0, "windowSizeMB must not be negative");
+        checkArgument(windowSizeMB <= MAX_MEMORY_MAPPING_WINDOW_SIZE,
+                "windowSizeMB must not exceed %s", MAX_MEMORY_MAPPING_WINDOW_SIZE);
+        checkArgument(softMaxMappedMB >= 0, "softMaxMappedMB must not be negative");
+        this.memoryMappingWindowSize = windowSizeMB;
+        this.memoryMappingSoftBudget = softMaxMappedMB;
+        return this;
+    }
+
+    /**
+     * Configure group commit. Concurrent calls to {@link FileStore#flush()}
+     * are always coalesced into a single flush of the segments and the
+     * journal to disk. Additionally the thread performing the flush waits up
+     * to {@code maxDelayMillis} for further flush requests to join, unless
+     * more than {@code maxBytes} have been written since the last flush. This
+     * trades a bounded increase in flush latency for fewer fsync calls under
+     * heavy concurrent writes.
+     *
+     * @param maxDelayMillis  maximum time in milliseconds a flush is delayed to
+     *                        coalesce it with other flushes, or {@code 0} to
+     *                        flush right away.
+     * @param maxBytes        number of bytes written after which a delayed
+     *                        flush proceeds right away, or {@code 0} for no limit.
+     * @return this instance
+     */
+    @NotNull
+    public FileStoreBuilder withGroupCommit(int maxDelayMillis, long maxBytes) {
+        checkArgument(maxDelayMillis >= 0, "maxDelayMillis must not be negative");
+        checkArgument(maxBytes >= 0, "maxBytes must not be negative");
+        this.groupCommitDelay = maxDelayMillis;
+        this.groupCommitBytes = maxBytes;
+        return this;
+    }
+
+    /**
+     * Configure prefetching of segments. When enabled each miss of the
+     * segment cache asynchronously loads the segments referenced from the
+     * missed segment into the segment cache. This speeds up traversals of
+     * large subtrees, in particular with remote persistence. Prefetching
+     * is disabled by default and has no effect when the segment cache is
+     * disabled.
+     *
+     * @param threads  number of threads loading segments, or {@code 0} to
+     *                 disable prefetching.
+     * @param depth    number of levels of segment references to prefetch.
+     * @return this instance
+     */
+    @NotNull
+    public FileStoreBuilder withSegmentPrefetch(int threads, int depth) {
+        checkArgument(threads >= 0, "threads must not be negative");
+        checkArgument(depth > 0, "depth must be positive");
+        this.segmentPrefetchThreads = threads;
+        this.segmentPrefetchDepth = depth;
+        return this;
+    }
+
+    /**
+     * Configure the collection of binary references through {@link
+     * AbstractFileStore#collectBlobReferences(File)}. The binary references
+     * of the TAR files are loaded in parallel. With a cache directory they
+     * are additionally kept per TAR file, so that subsequent collections
+     * only need to load the references of TAR files added in between.
+     *
+     * @param threads         number of threads loading binary references
+     * @param cacheDirectory  directory for caching binary references or
+     *                        {@code null} to disable caching, which is the
+     *                        default.
+     * @return this instance
+     */
+    @NotNull
+    public FileStoreBuilder withBinaryReferencesCollection(int threads, @Nullable File cacheDirectory) {
+        checkArgument(threads > 0, "threads must be positive");
+        this.binaryReferencesThreads = threads;
+        this.binaryReferencesCacheDirectory = cacheDirectory;
+        return this;
+    }
+
+    /**
+     * Turn lock-free segment id tables on or off. When turned on, the {@link
+     * org.apache.jackrabbit.oak.segment.SegmentTracker} of the store resolves
+     * segment identifiers without synchronizing on its tables, which reduces
+     * contention between many concurrent readers.
+     *
+     * @param concurrentSegmentIdTables
+     * @return this instance
+     */
+    @NotNull
+    public FileStoreBuilder withConcurrentSegmentIdTables(boolean concurrentSegmentIdTables) {
+        this.concurrentSegmentIdTables = concurrentSegmentIdTables;
+        return this;
+    }
+
     /**
      * Set memory mapping to the default value based on OS properties
      *
@@ -398,7 +634,7 @@ public class FileStoreBuilder {
     }
 
     public Backend buildProcBackend(AbstractFileStore fileStore) throws IOException {
-        return new FileStoreProcBackend(fileStore, persistence);
+        return new FileStoreProcBackend(fileStore, getPersistence());
     }
 
     /**
@@ -423,7 +659,8 @@ public class FileStoreBuilder {
         checkState(!built, "Cannot re-use builder");
         built = true;
         directory.mkdirs();
-        TarRevisions revisions = new TarRevisions(persistence);
+        initOffHeapSegmentCache();
+        TarRevisions revisions = new TarRevisions(getPersistence());
         LOG.info("Creating file store {}", this);
         FileStore store;
         try {
@@ -463,7 +700,8 @@ public class FileStoreBuilder {
         checkState(directory.exists() && directory.isDirectory(),
                 "%s does not exist or is not a directory", directory);
         built = true;
-        ReadOnlyRevisions revisions = new ReadOnlyRevisions(persistence);
+        initOffHeapSegmentCache();
+        ReadOnlyRevisions revisions = new ReadOnlyRevisions(getPersistence());
         LOG.info("Creating file store {}", this);
         ReadOnlyFileStore store;
         try {
@@ -498,6 +736,10 @@ public class FileStoreBuilder {
         return segmentCacheSize;
     }
 
+    boolean getScanResistantSegmentCache() {
+        return scanResistantSegmentCache;
+    }
+
     int getStringCacheSize() {
         return stringCacheSize;
     }
@@ -506,6 +748,10 @@ public class FileStoreBuilder {
         return templateCacheSize;
     }
 
+    int getMapRecordCacheSize() {
+        return mapRecordCacheSize;
+    }
+
     boolean getMemoryMapping() {
         return memoryMapping;
     }
@@ -514,6 +760,51 @@ public class FileStoreBuilder {
         return offHeapAccess;
     }
 
+    boolean getConcurrentSegmentIdTables() {
+        return concurrentSegmentIdTables;
+    }
+
+    boolean getPositionalReads() {
+        return positionalReads;
+    }
+
+    boolean getSegmentLocationIndex() {
+        return segmentLocationIndex;
+    }
+
+    int getMemoryMappingWindowSize() {
+        return memoryMappingWindowSize;
+    }
+
+    int getMemoryMappingSoftBudget() {
+        return memoryMappingSoftBudget;
+    }
+
+    int getGroupCommitDelay() {
+        return groupCommitDelay;
+    }
+
+    long getGroupCommitBytes() {
+        return groupCommitBytes;
+    }
+
+    int getSegmentPrefetchThreads() {
+        return segmentPrefetchThreads;
+    }
+
+    int getSegmentPrefetchDepth() {
+        return segmentPrefetchDepth;
+    }
+
+    int getBinaryReferencesThreads() {
+        return binaryReferencesThreads;
+    }
+
+    @Nullable
+    File getBinaryReferencesCacheDirectory() {
+        return binaryReferencesCacheDirectory;
+    }
+
     @NotNull
     GCListener getGcListener() {
         return gcListener;
@@ -535,9 +826,46 @@ public class FileStoreBuilder {
     }
 
     SegmentNodeStorePersistence getPersistence() {
+        if (persistence == null) {
+            // The window size may come from a system property, which is not
+            // validated by withMemoryMappingWindows()
+            checkState(memoryMappingWindowSize <= MAX_MEMORY_MAPPING_WINDOW_SIZE,
+                    "memoryMappingWindowSize must not exceed %s MB", MAX_MEMORY_MAPPING_WINDOW_SIZE);
+            persistence = new TarPersistence(directory, positionalReads,
+                    memoryMappingWindowSize * MB, memoryMappingSoftBudget * (long) MB);
+        }
         return persistence;
     }
 
+    /**
+     * Wrap the persistence in a {@link CachingPersistence} backed by the
+     * off-heap segment cache, if one is configured. Only the TAR persistence
+     * is wrapped: custom persistences, like the remote ones, come with
+     * their own caching.
+     */
+    private void initOffHeapSegmentCache() {
+        if (offHeapSegmentCacheSize <= 0) {
+            return;
+        }
+        SegmentNodeStorePersistence p = getPersistence();
+        if (!(p instanceof TarPersistence)) {
+            LOG.warn("The off-heap segment cache is only used with the TAR persistence, ignoring it for {}", p.getClass().getName());
+            return;
+        }
+        offHeapSegmentCache = new OffHeapSegmentCache(offHeapSegmentCacheSize);
+        persistence = new CachingPersistence(offHeapSegmentCache, p);
+    }
+
+    /**
+     * @return the off-heap segment cache of the store or {@code null} if
+     * the store doesn't have one.
+     * @see #withOffHeapSegmentCacheSize(int)
+     */
+    @Nullable
+    OffHeapSegmentCache getOffHeapSegmentCache() {
+        return offHeapSegmentCache;
+    }
+
     /**
      * @return creates or returns the {@code WriterCacheManager} this builder passes or
      * passed to the store on {@link #build()}.
@@ -583,13 +911,27 @@ public class FileStoreBuilder {
                 ", blobStore=" + blobStore +
                 ", maxFileSize=" + maxFileSize +
                 ", segmentCacheSize=" + segmentCacheSize +
+                ", scanResistantSegmentCache=" + scanResistantSegmentCache +
+                ", offHeapSegmentCacheSize=" + offHeapSegmentCacheSize +
                 ", stringCacheSize=" + stringCacheSize +
                 ", templateCacheSize=" + templateCacheSize +
+                ", mapRecordCacheSize=" + mapRecordCacheSize +
                 ", stringDeduplicationCacheSize=" + stringDeduplicationCacheSize +
                 ", templateDeduplicationCacheSize=" + templateDeduplicationCacheSize +
                 ", nodeDeduplicationCacheSize=" + nodeDeduplicationCacheSize +
                 ", memoryMapping=" + memoryMapping +
                 ", offHeapAccess=" + offHeapAccess +
+                ", concurrentSegmentIdTables=" + concurrentSegmentIdTables +
+                ", positionalReads=" + positionalReads +
+                ", segmentLocationIndex=" + segmentLocationIndex +
+                ", memoryMappingWindowSize=" + memoryMappingWindowSize +
+                ", memoryMappingSoftBudget=" + memoryMappingSoftBudget +
+                ", groupCommitDelay=" + groupCommitDelay +
+                ", groupCommitBytes=" + groupCommitBytes +
+                ", segmentPrefetchThreads=" + segmentPrefetchThreads +
+                ", segmentPrefetchDepth=" + segmentPrefetchDepth +
+                ", binaryReferencesThreads=" + binaryReferencesThreads +
+                ", binaryReferencesCacheDirectory=" + binaryReferencesCacheDirectory +
                 ", gcOptions=" + gcOptions +
                 '}';
     }
@@ -599,9 +941,9 @@ public class FileStoreBuilder {
                 int stringCacheSize,
                 int templateCacheSize,
                 int nodeCacheSize) {
-            super(RecordCache.factory(stringCacheSize, new StringCacheWeigher()),
-                    RecordCache.factory(templateCacheSize, new TemplateCacheWeigher()),
-                    PriorityCache.factory(nodeCacheSize, new NodeCacheWeigher()));
+            super(RecordCache.factory(stringCacheSize, new StringCacheWeigher(), DEFAULT_CACHE_CONCURRENCY),
+                    RecordCache.factory(templateCacheSize, new TemplateCacheWeigher(), DEFAULT_CACHE_CONCURRENCY),
+                    PriorityCache.factory(nodeCacheSize, new NodeCacheWeigher(), DEFAULT_CACHE_CONCURRENCY));
         }
 
         void evictOldGeneration(final int newGeneration) {
@@ -21,6 +21,8 @@ package org.apache.jackrabbit.oak.segment.file;
 
 import static org.apache.jackrabbit.stats.TimeSeriesStatsUtil.asCompositeData;
 
+import java.util.concurrent.TimeUnit;
+
 import javax.management.openmbean.CompositeData;
 
 import org.apache.jackrabbit.api.stats.TimeSeries;
@@ -30,15 +32,21 @@ import org.apache.jackrabbit.oak.segment.SegmentNotFoundException;
 import org.apache.jackrabbit.oak.segment.SegmentNotFoundExceptionListener;
 import org.apache.jackrabbit.oak.segment.spi.monitor.FileStoreMonitor;
 import org.apache.jackrabbit.oak.stats.CounterStats;
+import org.apache.jackrabbit.oak.stats.HistogramStats;
 import org.apache.jackrabbit.oak.stats.MeterStats;
 import org.apache.jackrabbit.oak.stats.StatisticsProvider;
 import org.apache.jackrabbit.oak.stats.StatsOptions;
+import org.apache.jackrabbit.oak.stats.TimerStats;
 import org.jetbrains.annotations.NotNull;
 
 public class FileStoreStats implements FileStoreStatsMBean, FileStoreMonitor, SegmentNotFoundExceptionListener {
     public static final String SEGMENT_REPO_SIZE = "SEGMENT_REPO_SIZE";
     public static final String SEGMENT_WRITES = "SEGMENT_WRITES";
     public static final String JOURNAL_WRITES = "JOURNAL_WRITES";
+    public static final String FLUSH_LATENCY = "SEGMENT_FLUSH_LATENCY";
+    public static final String FLUSH_BATCH_SIZE = "SEGMENT_FLUSH_BATCH_SIZE";
+    public static final String FLUSH_COUNT = "SEGMENT_FLUSH_COUNT";
+    public static final String FLUSH_REQUEST_COUNT = "SEGMENT_FLUSH_REQUEST_COUNT";
     private static final String SNFE_COUNT = "SNFE_COUNT";
 
     private final StatisticsProvider statisticsProvider;
@@ -47,6 +55,10 @@ public class FileStoreStats implements FileStoreStatsMBean, FileStoreMonitor, Se
     private final CounterStats repoSize;
     private final MeterStats journalWriteStats;
     private final CounterStats snfeCountStats;
+    private final TimerStats flushLatency;
+    private final HistogramStats flushBatchSize;
+    private final CounterStats flushCount;
+    private final CounterStats flushRequestCount;
 
     public FileStoreStats(StatisticsProvider statisticsProvider, FileStore store, long initialSize) {
         this.statisticsProvider = statisticsProvider;
@@ -55,6 +67,10 @@ public class FileStoreStats implements FileStoreStatsMBean, FileStoreMonitor, Se
         this.repoSize = statisticsProvider.getCounterStats(SEGMENT_REPO_SIZE, StatsOptions.DEFAULT);
         this.journalWriteStats = statisticsProvider.getMeter(JOURNAL_WRITES, StatsOptions.DEFAULT);
         this.snfeCountStats = statisticsProvider.getCounterStats(SNFE_COUNT, StatsOptions.DEFAULT);
+        this.flushLatency = statisticsProvider.getTimer(FLUSH_LATENCY, StatsOptions.METRICS_ONLY);
+        this.flushBatchSize = statisticsProvider.getHistogram(FLUSH_BATCH_SIZE, StatsOptions.METRICS_ONLY);
+        this.flushCount = statisticsProvider.getCounterStats(FLUSH_COUNT, StatsOptions.DEFAULT);
+        this.flushRequestCount = statisticsProvider.getCounterStats(FLUSH_REQUEST_COUNT, StatsOptions.DEFAULT);
         repoSize.inc(initialSize);
     }
 
@@ -86,6 +102,20 @@ public class FileStoreStats implements FileStoreStatsMBean, FileStoreMonitor, Se
         journalWriteStats.mark();
     }
 
+    /**
+     * Notification of a flush of the store (including the fsync of the tar
+     * file and the journal) serving {@code requests} flush requests.
+     *
+     * @param latency   time the flush took in nanoseconds
+     * @param requests  number of flush requests coalesced into this flush
+     */
+    void flushed(long latency, long requests) {
+        flushLatency.update(latency, TimeUnit.NANOSECONDS);
+        flushBatchSize.update(requests);
+        flushCount.inc();
+        flushRequestCount.inc(requests);
+    }
+
     //~--------------------------------< FileStoreStatsMBean >
 
     @Override
@@ -118,9 +148,11 @@ public class FileStoreStats implements FileStoreStatsMBean, FileStoreMonitor, Se
     @Override
     public String fileStoreInfoAsString() {
         return String.format("Segment store size : %s%n" +
-                "Number of tar files : %d",
+                "Number of tar files : %d%n" +
+                "Off-heap segment cache size : %s",
                 IOUtils.humanReadableByteCount(getApproximateSize()),
-                getTarFileCount());
+                getTarFileCount(),
+                IOUtils.humanReadableByteCount(getOffHeapSegmentCacheSize()));
     }
 
     @Override
@@ -133,6 +165,21 @@ public class FileStoreStats implements FileStoreStatsMBean, FileStoreMonitor, Se
         return asCompositeData(getTimeSeries(JOURNAL_WRITES), JOURNAL_WRITES);
     }
 
+    @Override
+    public long getOffHeapSegmentCacheSize() {
+        return store.getOffHeapSegmentCacheWeight();
+    }
+
+    @Override
+    public long getFlushCount() {
+        return flushCount.getCount();
+    }
+
+    @Override
+    public long getFlushRequestCount() {
+        return flushRequestCount.getCount();
+    }
+
     private TimeSeries getTimeSeries(String name) {
         return statisticsProvider.getStats().getTimeSeries(name, true);
     }
@@ -58,4 +58,20 @@ public interface FileStoreStatsMBean {
      * @return  time series of the writes to journal
      */
     CompositeData getJournalWriteStatsAsCompositeData();
+
+    /**
+     * @return  number of bytes of direct memory used by the off-heap segment cache
+     */
+    long getOffHeapSegmentCacheSize();
+
+    /**
+     * @return  number of flushes performed
+     */
+    long getFlushCount();
+
+    /**
+     * @return  number of flush requests, including those that were coalesced
+     *          into the flushes counted by {@link #getFlushCount()}
+     */
+    long getFlushRequestCount();
 }
@@ -41,11 +41,20 @@ import org.slf4j.LoggerFactory;
  * operation in the {@code gc.log} file with the format:
  * 'repoSize, reclaimedSize, timestamp, gc generation, gc full generation (since Oak 1.8),
  * number of nodes compacted, root id (since Oak 1.8)'.
+ * <p>
+ * Additionally the progress of a cancelled, resumable compaction is persisted
+ * in lines repeating the fields of the latest entry, followed by the fields
+ * 'partial, gc generation, gc full generation, timestamp, number of nodes
+ * compacted, compaction cursor'. Readers parsing the leading fields of a line
+ * thus see the latest entry again. These lines are ignored by {@link #read()}
+ * and {@link #readAll()}.
  */
 public class GCJournal {
 
     private static final Logger LOG = LoggerFactory.getLogger(GCJournal.class);
 
+    private static final String PARTIAL = "partial";
+
     private final GCJournalFile journalFile;
 
     private GCJournalEntry latest;
@@ -84,12 +93,32 @@ public class GCJournal {
         }
     }
 
+    /**
+     * Persists the progress of a cancelled compaction towards
+     * {@code gcGeneration} such that a later compaction can resume from it.
+     *
+     * @param gcGeneration  gc generation the cancelled compaction was compacting to
+     * @param nodes         number of nodes compacted so far
+     * @param cursor        string representation of the compaction cursor
+     */
+    public synchronized void persistProgress(
+            @NotNull GCGeneration gcGeneration, long nodes, @NotNull String cursor
+    ) {
+        GCProgressEntry progress = new GCProgressEntry(
+                gcGeneration, System.currentTimeMillis(), nodes, checkNotNull(cursor));
+        try {
+            journalFile.writeLine(read() + "," + progress);
+        } catch (IOException e) {
+            LOG.error("Error writing gc journal", e);
+        }
+    }
+
     /**
      * Returns the latest entry available
      */
     public synchronized GCJournalEntry read() {
         if (latest == null) {
-            List<String> all = readLines();
+            List<String> all = readEntryLines();
             if (all.isEmpty()) {
                 latest = GCJournalEntry.EMPTY;
             } else {
@@ -105,12 +134,48 @@ public class GCJournal {
      */
     public synchronized Collection<GCJournalEntry> readAll() {
         List<GCJournalEntry> all = new ArrayList<GCJournalEntry>();
-        for (String l : readLines()) {
+        for (String l : readEntryLines()) {
             all.add(GCJournalEntry.fromString(l));
         }
         return all;
     }
 
+    /**
+     * Returns the progress of the latest cancelled compaction if that
+     * compaction has not been superseded by a successful compaction to the
+     * same or a later generation since.
+     *
+     * @return the latest progress entry or {@code null} if none
+     */
+    @Nullable
+    public synchronized GCProgressEntry readProgress() {
+        GCProgressEntry progress = null;
+        for (String line : readLines()) {
+            if (isProgress(line)) {
+                progress = GCProgressEntry.fromString(line);
+            }
+        }
+        if (progress != null && progress.getGcGeneration().compareWith(read().getGcGeneration()) <= 0) {
+            return null;
+        }
+        return progress;
+    }
+
+    private static boolean isProgress(String line) {
+        String[] items = line.split(",", GCJournalEntry.FIELDS + 2);
+        return items.length > GCJournalEntry.FIELDS && PARTIAL.equals(items[GCJournalEntry.FIELDS]);
+    }
+
+    private List<String> readEntryLines() {
+        List<String> lines = new ArrayList<String>();
+        for (String line : readLines()) {
+            if (!isProgress(line)) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
     private List<String> readLines() {
         try {
             return journalFile.readLines();
@@ -120,11 +185,94 @@ public class GCJournal {
         return new ArrayList<String>();
     }
 
+    /**
+     * The progress of a cancelled compaction
+     */
+    public static class GCProgressEntry {
+
+        @NotNull
+        private final GCGeneration gcGeneration;
+
+        private final long ts;
+
+        private final long nodes;
+
+        @NotNull
+        private final String cursor;
+
+        public GCProgressEntry(@NotNull GCGeneration gcGeneration, long ts, long nodes, @NotNull String cursor) {
+            this.gcGeneration = gcGeneration;
+            this.ts = ts;
+            this.nodes = nodes;
+            this.cursor = cursor;
+        }
+
+        @Override
+        public String toString() {
+            return Joiner.on(",").join(
+                    PARTIAL,
+                    gcGeneration.getGeneration(),
+                    gcGeneration.getFullGeneration(),
+                    ts,
+                    nodes,
+                    cursor
+            );
+        }
+
+        static GCProgressEntry fromString(String in) {
+            // skip the fields of the latest entry
+            int index = GCJournalEntry.FIELDS;
+            String[] items = in.split(",", index + 6);
+            int generation = GCJournalEntry.parseInt(items, index + 1);
+            int fullGeneration = GCJournalEntry.parseInt(items, index + 2);
+            long ts = GCJournalEntry.parseLong(items, index + 3);
+            long nodes = GCJournalEntry.parseLong(items, index + 4);
+            String cursor = GCJournalEntry.parseString(items, index + 5);
+            return new GCProgressEntry(newGCGeneration(generation, fullGeneration, true),
+                    ts, nodes, cursor == null ? "" : cursor);
+        }
+
+        /**
+         * Returns the gc generation the cancelled compaction was compacting to
+         */
+        @NotNull
+        public GCGeneration getGcGeneration() {
+            return gcGeneration;
+        }
+
+        /**
+         * Returns the timestamp
+         */
+        public long getTs() {
+            return ts;
+        }
+
+        /**
+         * Returns the number of nodes compacted before the compaction was cancelled
+         */
+        public long getNodes() {
+            return nodes;
+        }
+
+        /**
+         * Returns the string representation of the compaction cursor
+         */
+        @NotNull
+        public String getCursor() {
+            return cursor;
+        }
+    }
+
     public static class GCJournalEntry {
 
         static final GCJournalEntry EMPTY = new GCJournalEntry(
                 -1, -1, -1, GCGeneration.NULL, -1, RecordId.NULL.toString10());
 
+        /**
+         * Number of fields of an entry since Oak 1.8
+         */
+        static final int FIELDS = 7;
+
         private final long repoSize;
 
         private final long reclaimedSize;
@@ -172,8 +320,8 @@ public class GCJournal {
             long ts = parseLong(items, index++);
             int generation = parseInt(items, index++);
             int fullGeneration;
-            if (items.length == 7) {
-                // gc.log from Oak 1.8 onward
+            if (items.length >= FIELDS) {
+                // gc.log from Oak 1.8 onward, possibly followed by more fields
                 fullGeneration = parseInt(items, index++);
             } else {
                 // gc.log from Oak 1.6
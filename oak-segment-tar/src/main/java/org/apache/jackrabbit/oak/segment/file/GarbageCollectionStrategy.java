@@ -82,6 +82,11 @@ interface GarbageCollectionStrategy {
 
         SegmentCache getSegmentCache();
 
+        /**
+         * @return the off-heap segment cache or {@code null} if there is none.
+         */
+        OffHeapSegmentCache getOffHeapSegmentCache();
+
         FileStoreStats getFileStoreStats();
 
         SegmentReader getSegmentReader();
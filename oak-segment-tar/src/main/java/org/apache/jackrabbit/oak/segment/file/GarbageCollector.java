@@ -23,6 +23,7 @@ import static java.lang.Integer.getInteger;
 import static org.apache.jackrabbit.oak.segment.compaction.SegmentGCOptions.GCType.FULL;
 import static org.apache.jackrabbit.oak.segment.file.Reclaimers.newOldReclaimer;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -38,6 +39,7 @@ import org.apache.jackrabbit.oak.segment.SegmentWriter;
 import org.apache.jackrabbit.oak.segment.compaction.SegmentGCOptions;
 import org.apache.jackrabbit.oak.segment.file.GarbageCollectionStrategy.SuccessfulGarbageCollectionListener;
 import org.apache.jackrabbit.oak.segment.file.cancel.Canceller;
+import org.apache.jackrabbit.oak.segment.file.tar.BinaryReferencesCollector;
 import org.apache.jackrabbit.oak.segment.file.tar.GCGeneration;
 import org.apache.jackrabbit.oak.segment.file.tar.TarFiles;
 import org.apache.jackrabbit.oak.spi.blob.BlobStore;
@@ -86,6 +88,8 @@ class GarbageCollector {
 
     private final SegmentCache segmentCache;
 
+    private final OffHeapSegmentCache offHeapSegmentCache;
+
     private final SegmentWriter segmentWriter;
 
     private final FileStoreStats stats;
@@ -126,6 +130,7 @@ class GarbageCollector {
         Supplier<Revisions> revisionsSupplier,
         BlobStore blobStore,
         SegmentCache segmentCache,
+        OffHeapSegmentCache offHeapSegmentCache,
         SegmentWriter segmentWriter,
         FileStoreStats stats,
         Canceller canceller,
@@ -143,6 +148,7 @@ class GarbageCollector {
         this.revisionsSupplier = revisionsSupplier;
         this.blobStore = blobStore;
         this.segmentCache = segmentCache;
+        this.offHeapSegmentCache = offHeapSegmentCache;
         this.segmentWriter = segmentWriter;
         this.stats = stats;
         this.cancel = canceller.withCondition("cancelled by user", () -> cancelRequested);
@@ -262,6 +268,11 @@ class GarbageCollector {
                 return segmentCache;
             }
 
+            @Override
+            public OffHeapSegmentCache getOffHeapSegmentCache() {
+                return offHeapSegmentCache;
+            }
+
             @Override
             public FileStoreStats getFileStoreStats() {
                 return stats;
@@ -324,6 +335,21 @@ class GarbageCollector {
             newOldReclaimer(lastCompactionType, getGcGeneration(), gcOptions.getRetainedGenerations()));
     }
 
+    /**
+     * Finds all external blob references that are currently accessible in
+     * this repository and writes them sorted and without duplicates to
+     * {@code references}.
+     *
+     * @param references file receiving the blob references
+     * @param collector  collector loading the references of the TAR files
+     */
+    synchronized void collectBlobReferences(File references, BinaryReferencesCollector collector) throws IOException {
+        segmentWriter.flush();
+        tarFiles.collectBlobReferences(references,
+            newOldReclaimer(lastCompactionType, getGcGeneration(), gcOptions.getRetainedGenerations()),
+            collector);
+    }
+
     void cancel() {
         cancelRequested = true;
     }
@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jackrabbit.oak.segment.file;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A {@link Flusher} coalescing concurrent flush requests into a single flush
+ * of the underlying {@code Flusher} (group commit). A call to {@link #flush()}
+ * returns once a flush of the underlying {@code Flusher} has completed that
+ * started after the call was made. Thus callers get the same durability
+ * guarantees as when calling the underlying {@code Flusher} directly, while
+ * all callers arriving during a flush are served by the next single flush.
+ * <p>
+ * Optionally the thread performing a flush waits up to {@code maxDelay}
+ * nanoseconds for further requests to join the batch. The wait ends early once
+ * more than {@code maxBytes} have been {@link #written(long) written} since the
+ * last flush. These two values bound the additional latency and the amount of
+ * data at risk introduced by batching.
+ */
+class GroupCommitFlusher implements Flusher {
+
+    @NotNull
+    private final Flusher delegate;
+
+    private final long maxDelay;
+
+    private final long maxBytes;
+
+    @NotNull
+    private final FileStoreStats stats;
+
+    private final AtomicLong unflushedBytes = new AtomicLong();
+
+    /**
+     * Number of flush requests received so far. Guarded by {@code this}.
+     */
+    private long requested;
+
+    /**
+     * Number of the last flush request known to be covered by a completed
+     * flush. Guarded by {@code this}.
+     */
+    private long completed;
+
+    /**
+     * Whether a flush is in progress. Guarded by {@code this}.
+     */
+    private boolean flushing;
+
+    /**
+     * @param delegate  the {@code Flusher} to coalesce flushes for
+     * @param maxDelay  maximum time in nanoseconds to wait for further flush
+     *                  requests to join a batch. {@code 0} to flush right away.
+     * @param maxBytes  number of bytes written after which a batch is flushed
+     *                  without waiting any longer. {@code 0} for no limit.
+     * @param stats     statistics receiving the latency and the size of each
+     *                  batch
+     */
+    GroupCommitFlusher(@NotNull Flusher delegate, long maxDelay, long maxBytes, @NotNull FileStoreStats stats) {
+        this.delegate = delegate;
+        this.maxDelay = maxDelay;
+        this.maxBytes = maxBytes > 0 ? maxBytes : Long.MAX_VALUE;
+        this.stats = stats;
+    }
+
+    /**
+     * Notify this instance about {@code bytes} written that will become
+     * durable with the next flush.
+     */
+    void written(long bytes) {
+        long unflushed = unflushedBytes.addAndGet(bytes);
+        if (unflushed >= maxBytes && unflushed - bytes < maxBytes) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        synchronized (this) {
+            long request = ++requested;
+            boolean interrupted = false;
+            try {
+                while (flushing && completed < request) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (completed >= request) {
+                return;
+            }
+            flushing = true;
+        }
+
+        long batch = -1;
+        try {
+            awaitBatch();
+            long first;
+            synchronized (this) {
+                first = completed;
+                batch = requested;
+            }
+            unflushedBytes.set(0);
+            long start = System.nanoTime();
+            delegate.flush();
+            stats.flushed(System.nanoTime() - start, batch - first);
+        } catch (IOException | RuntimeException e) {
+            batch = -1;
+            throw e;
+        } finally {
+            synchronized (this) {
+                flushing = false;
+                if (batch > completed) {
+                    completed = batch;
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Wait for further flush requests to join the current batch until either
+     * {@link #maxDelay} expired or {@link #maxBytes} have been written.
+     */
+    private void awaitBatch() {
+        if (maxDelay <= 0) {
+            return;
+        }
+        long deadline = System.nanoTime() + maxDelay;
+        synchronized (this) {
+            long remaining = maxDelay;
+            while (unflushedBytes.get() < maxBytes && remaining > 0) {
+                try {
+                    NANOSECONDS.timedWait(this, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                remaining = deadline - System.nanoTime();
+            }
+        }
+    }
+
+}
@@ -21,6 +21,8 @@ package org.apache.jackrabbit.oak.segment.file;
 import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 import java.io.File;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.jackrabbit.oak.segment.spi.monitor.IOMonitorAdapter;
 import org.apache.jackrabbit.oak.stats.MeterStats;
@@ -39,6 +41,9 @@ import org.jetbrains.annotations.NotNull;
  *          a meter metrics for the number of bytes written to tar files</li>
  *     <li>{@link #OAK_SEGMENT_SEGMENT_READ_TIME}:
  *          a timer metrics for the time spent reading from tar files</li>
+ *     <li>{@link #OAK_SEGMENT_SEGMENT_READ_TIME}{@code .<accessMode>}:
+ *          a timer metrics for the time spent reading from tar files accessed
+ *          in the given mode (e.g. {@code mapped} or {@code positional})</li>
  *     <li>{@link #OAK_SEGMENT_SEGMENT_WRITE_TIME}:
  *          a timer metrics for the time spent writing to tar files</li>
  * </ul>
@@ -54,7 +59,12 @@ public class MetricsIOMonitor extends IOMonitorAdapter {
     private final TimerStats segmentReadTime;
     private final TimerStats segmentWriteTime;
 
+    private final ConcurrentMap<String, TimerStats> segmentReadTimeByMode = new ConcurrentHashMap<>();
+
+    private final StatisticsProvider statisticsProvider;
+
     public MetricsIOMonitor(@NotNull StatisticsProvider statisticsProvider) {
+        this.statisticsProvider = statisticsProvider;
         segmentReadBytes = statisticsProvider.getMeter(
                 OAK_SEGMENT_SEGMENT_READ_BYTES, StatsOptions.METRICS_ONLY);
         segmentWriteBytes = statisticsProvider.getMeter(
@@ -71,6 +81,14 @@ public class MetricsIOMonitor extends IOMonitorAdapter {
         segmentReadTime.update(elapsed, NANOSECONDS);
     }
 
+    @Override
+    public void afterSegmentRead(File file, long msb, long lsb, int length, long elapsed, String accessMode) {
+        afterSegmentRead(file, msb, lsb, length, elapsed);
+        segmentReadTimeByMode.computeIfAbsent(accessMode, mode -> statisticsProvider.getTimer(
+                OAK_SEGMENT_SEGMENT_READ_TIME + "." + mode, StatsOptions.METRICS_ONLY))
+                .update(elapsed, NANOSECONDS);
+    }
+
     @Override
     public void afterSegmentWrite(File file, long msb, long lsb, int length, long elapsed) {
         segmentWriteBytes.mark(length);
@@ -20,6 +20,7 @@ package org.apache.jackrabbit.oak.segment.file;
 
 import org.apache.jackrabbit.oak.segment.spi.monitor.RemoteStoreMonitorAdapter;
 import org.apache.jackrabbit.oak.stats.CounterStats;
+import org.apache.jackrabbit.oak.stats.HistogramStats;
 import org.apache.jackrabbit.oak.stats.StatisticsProvider;
 import org.apache.jackrabbit.oak.stats.StatsOptions;
 import org.apache.jackrabbit.oak.stats.TimerStats;
@@ -31,15 +32,24 @@ public class MetricsRemoteStoreMonitor extends RemoteStoreMonitorAdapter {
     public static final String REQUEST_COUNT = "REQUEST_COUNT";
     public static final String REQUEST_ERROR = "REQUEST_ERROR";
     public static final String REQUEST_DURATION = "REQUEST_DURATION";
+    public static final String SEGMENT_UPLOAD_QUEUE_SIZE = "SEGMENT_UPLOAD_QUEUE_SIZE";
+    public static final String SEGMENT_UPLOAD_DURATION = "SEGMENT_UPLOAD_DURATION";
+    public static final String SEGMENT_UPLOAD_ERROR = "SEGMENT_UPLOAD_ERROR";
 
     private final CounterStats requestCountStats;
     private final CounterStats requestErrorStats;
     private final TimerStats requestDurationStats;
+    private final HistogramStats segmentUploadQueueSizeStats;
+    private final TimerStats segmentUploadDurationStats;
+    private final CounterStats segmentUploadErrorStats;
 
     public MetricsRemoteStoreMonitor(@NotNull StatisticsProvider statisticsProvider) {
         requestCountStats = statisticsProvider.getCounterStats(REQUEST_COUNT, StatsOptions.DEFAULT);
         requestErrorStats = statisticsProvider.getCounterStats(REQUEST_ERROR, StatsOptions.DEFAULT);
         requestDurationStats = statisticsProvider.getTimer(REQUEST_DURATION, StatsOptions.METRICS_ONLY);
+        segmentUploadQueueSizeStats = statisticsProvider.getHistogram(SEGMENT_UPLOAD_QUEUE_SIZE, StatsOptions.METRICS_ONLY);
+        segmentUploadDurationStats = statisticsProvider.getTimer(SEGMENT_UPLOAD_DURATION, StatsOptions.METRICS_ONLY);
+        segmentUploadErrorStats = statisticsProvider.getCounterStats(SEGMENT_UPLOAD_ERROR, StatsOptions.DEFAULT);
     }
 
     @Override
@@ -55,4 +65,19 @@ public class MetricsRemoteStoreMonitor extends RemoteStoreMonitorAdapter {
     public void requestDuration(long duration, TimeUnit timeUnit) {
         requestDurationStats.update(duration, timeUnit);
     }
+
+    @Override
+    public void segmentUploadQueueSize(int size) {
+        segmentUploadQueueSizeStats.update(size);
+    }
+
+    @Override
+    public void segmentUploadDuration(long duration, TimeUnit timeUnit) {
+        segmentUploadDurationStats.update(duration, timeUnit);
+    }
+
+    @Override
+    public void segmentUploadError() {
+        segmentUploadErrorStats.inc();
+    }
 }
@@ -0,0 +1,324 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.segment.file;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.Closeable;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalNotification;
+import org.apache.jackrabbit.oak.cache.AbstractCacheStats;
+import org.apache.jackrabbit.oak.commons.Buffer;
+import org.apache.jackrabbit.oak.commons.DirectMemorySlab;
+import org.apache.jackrabbit.oak.segment.spi.RepositoryNotReachableException;
+import org.apache.jackrabbit.oak.segment.spi.persistence.persistentcache.PersistentCache;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A cache for the raw content of segments, kept in direct memory. This cache
+ * is a second tier below the on-heap {@link
+ * org.apache.jackrabbit.oak.segment.SegmentCache}, which only needs to hold
+ * the segments that are currently in use. It is plugged between the segment
+ * store and its persistence through a {@link
+ * org.apache.jackrabbit.oak.segment.spi.persistence.persistentcache.CachingPersistence}.
+ * <p>
+ * Segments are stored in the blocks of a {@link DirectMemorySlab} of the
+ * size of this cache. The blocks of evicted segments are reused for other
+ * segments, so the direct memory used by this cache never exceeds its size
+ * and is not left to the garbage collector. The weight of this cache is the
+ * size of the blocks in use.
+ * <p>
+ * Segments read from this cache are copies of the cached content, not views
+ * of the slab. A segment outlives its eviction from this cache for as long
+ * as it is referenced, e.g. by the on-heap segment cache, and the buffers
+ * derived from a view of a chunk reference the chunk rather than the view.
+ * The blocks of a view could therefore be handed to another segment while
+ * the view is still read. The copies are made in direct memory, like the
+ * segments read by persistences with off-heap access, so that a hit does
+ * not move the segment content back onto the heap. Like those reads, each
+ * hit allocates a direct buffer that is reclaimed by the garbage collector.
+ * <p>
+ * Segments reclaimed by a cleanup must be removed with {@link
+ * #invalidate(Set)}, so that reads of reclaimed segments fail as they would
+ * without this cache.
+ */
+public class OffHeapSegmentCache implements PersistentCache, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(OffHeapSegmentCache.class);
+
+    public static final String NAME = "Segment Off-Heap Cache";
+
+    /**
+     * The size of the blocks of the slab in bytes.
+     */
+    private static final int BLOCK_SIZE = 1024;
+
+    private final long maximumWeight;
+
+    private final DirectMemorySlab slab;
+
+    private final Cache<UUID, Entry> cache;
+
+    private final Stats stats = new Stats();
+
+    private volatile boolean closed;
+
+    /**
+     * @param cacheSizeMB maximum size of the cached segments in megabytes.
+     */
+    public OffHeapSegmentCache(int cacheSizeMB) {
+        checkArgument(cacheSizeMB > 0, "cacheSizeMB must be strictly positive");
+        this.maximumWeight = cacheSizeMB * 1024L * 1024L;
+        this.slab = new DirectMemorySlab(maximumWeight, BLOCK_SIZE);
+        // Segments are stored in the slab before they are added to the cache,
+        // which only then evicts other segments. Leave some headroom for
+        // segments written concurrently.
+        this.cache = CacheBuilder.newBuilder()
+                .concurrencyLevel(16)
+                .maximumWeight(maximumWeight - maximumWeight / 8)
+                .weigher((UUID id, Entry entry) -> entry.getWeight())
+                .removalListener(this::onRemove)
+                .build();
+    }
+
+    private void onRemove(@NotNull RemovalNotification<UUID, Entry> notification) {
+        if (notification.wasEvicted()) {
+            stats.evictionCount.incrementAndGet();
+        }
+        Entry entry = notification.getValue();
+        if (entry != null) {
+            entry.free();
+        }
+    }
+
+    @Override
+    @Nullable
+    public Buffer readSegment(long msb, long lsb, @NotNull Callable<Buffer> loader) {
+        UUID id = new UUID(msb, lsb);
+        Entry entry = cache.getIfPresent(id);
+        if (entry != null) {
+            Buffer segment = entry.read();
+            if (segment != null) {
+                stats.hitCount.incrementAndGet();
+                return segment;
+            }
+        }
+        stats.missCount.incrementAndGet();
+
+        long start = System.nanoTime();
+        try {
+            Buffer segment = loader.call();
+            if (segment != null) {
+                stats.loaded(System.nanoTime() - start, true);
+                writeSegment(msb, lsb, segment);
+            }
+            return segment;
+        } catch (RepositoryNotReachableException e) {
+            stats.loaded(System.nanoTime() - start, false);
+            throw e;
+        } catch (Exception e) {
+            log.error("Exception while loading segment {}", id, e);
+            stats.loaded(System.nanoTime() - start, false);
+            return null;
+        }
+    }
+
+    @Override
+    public boolean containsSegment(long msb, long lsb) {
+        return cache.asMap().containsKey(new UUID(msb, lsb));
+    }
+
+    @Override
+    public void writeSegment(long msb, long lsb, Buffer buffer) {
+        int length = buffer.remaining();
+        int[] blocks = slab.allocate(length);
+        if (blocks == null) {
+            return;
+        }
+        Entry entry = new Entry(blocks, length);
+        if (!slab.write(blocks, buffer)) {
+            return;
+        }
+        UUID id = new UUID(msb, lsb);
+        cache.put(id, entry);
+        if (closed) {
+            cache.invalidate(id);
+        }
+    }
+
+    /**
+     * Remove the given segments from this cache.
+     *
+     * @param ids the identifiers of the segments to remove.
+     */
+    public void invalidate(@NotNull Set<UUID> ids) {
+        cache.invalidateAll(ids);
+    }
+
+    @Override
+    public void cleanUp() {
+        cache.cleanUp();
+    }
+
+    /**
+     * @return Statistics for this cache.
+     */
+    @NotNull
+    public AbstractCacheStats getCacheStats() {
+        return stats;
+    }
+
+    /**
+     * @return the number of bytes of direct memory held by this cache.
+     */
+    public long getCurrentWeight() {
+        return slab.getUsedMemory();
+    }
+
+    /**
+     * @return the maximum number of bytes of direct memory held by this cache.
+     */
+    public long getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    /**
+     * Remove all segments and drop the direct memory of this cache.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        cache.invalidateAll();
+        slab.close();
+    }
+
+    /**
+     * The blocks holding the content of a cached segment.
+     */
+    private class Entry {
+
+        private final int[] blocks;
+
+        private final int length;
+
+        private boolean freed;
+
+        Entry(int[] blocks, int length) {
+            this.blocks = blocks;
+            this.length = length;
+        }
+
+        int getWeight() {
+            return blocks.length * BLOCK_SIZE;
+        }
+
+        /**
+         * @return a copy of the segment in direct memory or {@code null} if
+         * the entry was freed.
+         */
+        @Nullable
+        Buffer read() {
+            // The lock only guards the copy against a concurrent eviction
+            Buffer segment = Buffer.allocateDirect(length);
+            synchronized (this) {
+                if (freed || !slab.read(blocks, length, segment)) {
+                    return null;
+                }
+            }
+            segment.flip();
+            return segment;
+        }
+
+        synchronized void free() {
+            if (!freed) {
+                freed = true;
+                slab.release(blocks);
+            }
+        }
+
+    }
+
+    private class Stats extends AbstractCacheStats {
+
+        private final AtomicLong hitCount = new AtomicLong();
+
+        private final AtomicLong missCount = new AtomicLong();
+
+        private final AtomicLong loadSuccessCount = new AtomicLong();
+
+        private final AtomicLong loadExceptionCount = new AtomicLong();
+
+        private final AtomicLong loadTime = new AtomicLong();
+
+        private final AtomicLong evictionCount = new AtomicLong();
+
+        Stats() {
+            super(NAME);
+        }
+
+        void loaded(long time, boolean successful) {
+            if (successful) {
+                loadSuccessCount.incrementAndGet();
+            } else {
+                loadExceptionCount.incrementAndGet();
+            }
+            loadTime.addAndGet(time);
+        }
+
+        @Override
+        protected CacheStats getCurrentStats() {
+            return new CacheStats(
+                    hitCount.get(),
+                    missCount.get(),
+                    loadSuccessCount.get(),
+                    loadExceptionCount.get(),
+                    loadTime.get(),
+                    evictionCount.get()
+            );
+        }
+
+        @Override
+        public long getElementCount() {
+            return cache.size();
+        }
+
+        @Override
+        public long getMaxTotalWeight() {
+            return maximumWeight;
+        }
+
+        @Override
+        public long estimateCurrentWeight() {
+            return getCurrentWeight();
+        }
+
+    }
+
+}
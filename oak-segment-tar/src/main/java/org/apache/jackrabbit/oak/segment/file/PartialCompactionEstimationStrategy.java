@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.segment.file;
+
+import static java.lang.String.format;
+
+import org.apache.jackrabbit.oak.segment.file.GCJournal.GCProgressEntry;
+import org.apache.jackrabbit.oak.segment.file.tar.GCGeneration;
+
+/**
+ * An {@link EstimationStrategy} that takes the progress of a previously
+ * cancelled compaction into account. Garbage collection is deemed necessary
+ * when such progress is pending for the generation following the current
+ * one such that the cancelled compaction gets resumed. Otherwise, e.g. when
+ * the head moved to another generation since, the progress cannot be resumed
+ * and the estimation is delegated to the wrapped strategy.
+ */
+class PartialCompactionEstimationStrategy implements EstimationStrategy {
+
+    private final EstimationStrategy delegate;
+
+    PartialCompactionEstimationStrategy(EstimationStrategy delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public EstimationResult estimate(Context context) {
+        GCProgressEntry progress = context.getGCJournal().readProgress();
+        if (progress == null || !isPending(progress, context.getGcGeneration())) {
+            return delegate.estimate(context);
+        }
+        return new EstimationResult(true, format(
+            "A compaction to generation %s was cancelled after compacting %d nodes, " +
+                "so running garbage collection to resume it",
+            progress.getGcGeneration(),
+            progress.getNodes()
+        ));
+    }
+
+    /**
+     * The progress can only be resumed by a compaction to the same generation,
+     * which is the next full or tail generation of the current one.
+     */
+    private static boolean isPending(GCProgressEntry progress, GCGeneration current) {
+        GCGeneration generation = progress.getGcGeneration();
+        return generation.equals(current.nextFull()) || generation.equals(current.nextTail());
+    }
+
+}
@@ -22,9 +22,11 @@ package org.apache.jackrabbit.oak.segment.file;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static java.lang.Integer.bitCount;
+import static java.lang.Integer.highestOneBit;
 import static java.lang.Integer.numberOfTrailingZeros;
 import static java.lang.Long.numberOfLeadingZeros;
 import static java.lang.Math.max;
+import static java.lang.Math.min;
 import static java.util.Arrays.fill;
 
 import org.apache.jackrabbit.oak.segment.CacheWeights;
@@ -52,26 +54,17 @@ import com.google.common.cache.Weigher;
  * This cache uses rehashing to resolve clashes. The number of rehashes is configurable. When
  * a clash cannot be resolved by rehashing the given number of times the put operation fails.
  * <p>
+ * The cache can be split into a number of segments, each guarded by its own lock, so that
+ * concurrent accesses to different segments don't contend with each other. Mappings are
+ * assigned to segments by the hash code of their keys.
+ * <p>
  * This cache is thread safe.
  * @param <K>  type of the keys
  * @param <V>  type of the values
  */
 public class PriorityCache<K, V> {
-    private final int rehash;
-    private final Entry<?,?>[] entries;
-    private final int[] costs = new int[256];
-    private final int[] evictions = new int[256];
-
-    private long hitCount;
-    private long missCount;
-    private long loadCount;
-    private long loadExceptionCount;
-    private long evictionCount;
-    private long size;
-
-    @NotNull
-    private final Weigher<K, V> weigher;
-    private long weight = 0;
+    private final Segment<K, V>[] segments;
+    private final int segmentShift;
 
     /**
      * Static factory for creating new {@code PriorityCache} instances.
@@ -79,12 +72,26 @@ public class PriorityCache<K, V> {
      * @return  a new {@code PriorityCache} instance of the given {@code size}.
      */
     public static <K, V> Supplier<PriorityCache<K, V>> factory(final int size, @NotNull final Weigher<K, V> weigher) {
+        return factory(size, weigher, 1);
+    }
+
+    /**
+     * Static factory for creating new {@code PriorityCache} instances.
+     * @param size         size of the cache. Must be a power of 2.
+     * @param weigher      Needed to provide an estimation of the cache weight in memory
+     * @param concurrency  number of independently locked segments. Rounded down to a
+     *                     power of 2 not exceeding {@code size}.
+     * @return  a new {@code PriorityCache} instance of the given {@code size}.
+     */
+    public static <K, V> Supplier<PriorityCache<K, V>> factory(
+            final int size, @NotNull final Weigher<K, V> weigher, final int concurrency) {
         checkArgument(bitCount(size) == 1);
+        checkArgument(concurrency > 0);
         checkNotNull(weigher);
         return new Supplier<PriorityCache<K, V>>() {
             @Override
             public PriorityCache<K, V> get() {
-                return new PriorityCache<>(size, weigher);
+                return new PriorityCache<>(size, 31 - numberOfTrailingZeros(size), weigher, concurrency);
             }
         };
     }
@@ -156,13 +163,32 @@ public class PriorityCache<K, V> {
      * @param weigher   Needed to provide an estimation of the cache weight in memory
      */
     public PriorityCache(int size, int rehash, @NotNull Weigher<K, V> weigher) {
+        this(size, rehash, weigher, 1);
+    }
+
+    /**
+     * Create a new instance of the given {@code size}. {@code rehash} specifies the number
+     * of rehashes to resolve a clash.
+     * @param size         Size of the cache. Must be a power of {@code 2}.
+     * @param rehash       Number of rehashes. Must be greater or equal to {@code 0} and
+     *                     smaller than {@code 32 - numberOfTrailingZeros(size)}.
+     * @param weigher      Needed to provide an estimation of the cache weight in memory
+     * @param concurrency  Number of independently locked segments. Rounded down to a
+     *                     power of {@code 2} not exceeding {@code size}.
+     */
+    @SuppressWarnings("unchecked")
+    public PriorityCache(int size, int rehash, @NotNull Weigher<K, V> weigher, int concurrency) {
         checkArgument(bitCount(size) == 1);
         checkArgument(rehash >= 0);
         checkArgument(rehash < 32 - numberOfTrailingZeros(size));
-        this.rehash = rehash;
-        entries = new Entry<?,?>[size];
-        fill(entries, Entry.NULL);
-        this.weigher = checkNotNull(weigher);
+        checkArgument(concurrency > 0);
+        checkNotNull(weigher);
+        int segmentCount = min(highestOneBit(concurrency), size);
+        this.segmentShift = 32 - numberOfTrailingZeros(segmentCount);
+        this.segments = new Segment[segmentCount];
+        for (int k = 0; k < segmentCount; k++) {
+            segments[k] = new Segment<>(size / segmentCount, rehash, weigher);
+        }
     }
 
     /**
@@ -178,14 +204,22 @@ public class PriorityCache<K, V> {
         this(size, 31 - numberOfTrailingZeros(size));
     }
 
-    private int project(int hashCode, int iteration) {
-        return (hashCode >> iteration) & (entries.length - 1);
+    private Segment<K, V> segment(int hashCode) {
+        // Pick the segment from the upper bits of the scrambled hash code as
+        // the lower bits of the hash code determine the slot within the segment.
+        return segmentShift == 32
+            ? segments[0]
+            : segments[(hashCode * 0x9E3779B9) >>> segmentShift];
     }
 
     /**
      * @return  the number of mappings in this cache.
      */
     public long size() {
+        long size = 0;
+        for (Segment<K, V> segment : segments) {
+            size += segment.size;
+        }
         return size;
     }
 
@@ -197,63 +231,9 @@ public class PriorityCache<K, V> {
      * @param initialCost    the initial cost associated with this mapping
      * @return  {@code true} if the mapping has been added, {@code false} otherwise.
      */
-    public synchronized boolean put(@NotNull K key, @NotNull V value, int generation, byte initialCost) {
+    public boolean put(@NotNull K key, @NotNull V value, int generation, byte initialCost) {
         int hashCode = key.hashCode();
-        byte cheapest = initialCost;
-        int index = -1;
-        boolean eviction = false;
-        for (int k = 0; k <= rehash; k++) {
-            int i = project(hashCode, k);
-            Entry<?, ?> entry = entries[i];
-            if (entry == Entry.NULL) {
-                // Empty slot -> use this index
-                index = i;
-                eviction = false;
-                break;
-            } else if (entry.generation <= generation && key.equals(entry.key)) {
-                // Key exists and generation is greater or equal -> use this index and boost the cost
-                index = i;
-                initialCost = entry.cost;
-                if (initialCost < Byte.MAX_VALUE) {
-                    initialCost++;
-                }
-                eviction = false;
-                break;
-            } else if (entry.generation < generation) {
-                // Old generation -> use this index
-                index = i;
-                eviction = false;
-                break;
-            } else if (entry.cost < cheapest) {
-                // Candidate slot, keep on searching for even cheaper slots
-                cheapest = entry.cost;
-                index = i;
-                eviction = true;
-            }
-        }
-
-        if (index >= 0) {
-            Entry<?, ?> old = entries[index];
-            Entry<?, ?> newE = new Entry<>(key, value, generation, initialCost);
-            entries[index] = newE;
-            loadCount++;
-            costs[initialCost - Byte.MIN_VALUE]++;
-            if (old != Entry.NULL) {
-                costs[old.cost - Byte.MIN_VALUE]--;
-                if (eviction) {
-                    evictions[old.cost - Byte.MIN_VALUE]++;
-                    evictionCount++;
-                }
-                weight -= weighEntry(old);
-            } else {
-                size++;
-            }
-            weight += weighEntry(newE);
-            return true;
-        } else {
-            loadExceptionCount++;
-            return false;
-        }
+        return segment(hashCode).put(hashCode, key, value, generation, initialCost);
     }
 
     /**
@@ -263,25 +243,10 @@ public class PriorityCache<K, V> {
      * @return  the mapping for {@code key} and {@code generation} or {@code null} if this
      *          cache does not contain such a mapping.
      */
-    @SuppressWarnings("unchecked")
     @Nullable
-    public synchronized V get(@NotNull K key, int generation) {
+    public V get(@NotNull K key, int generation) {
         int hashCode = key.hashCode();
-        for (int k = 0; k <= rehash; k++) {
-            int i = project(hashCode, k);
-            Entry<?, ?> entry = entries[i];
-            if (generation == entry.generation && key.equals(entry.key)) {
-                if (entry.cost < Byte.MAX_VALUE) {
-                    costs[entry.cost - Byte.MIN_VALUE]--;
-                    entry.cost++;
-                    costs[entry.cost - Byte.MIN_VALUE]++;
-                }
-                hitCount++;
-                return (V) entry.value;
-            }
-        }
-        missCount++;
-        return null;
+        return segment(hashCode).get(hashCode, key, generation);
     }
 
     /**
@@ -289,24 +254,19 @@ public class PriorityCache<K, V> {
      * passed {@code purge} predicate.
      * @param purge
      */
-    public synchronized void purgeGenerations(@NotNull Predicate<Integer> purge) {
-        for (int i = 0; i < entries.length; i++) {
-            Entry<?, ?> entry = entries[i];
-            if (entry != Entry.NULL && purge.apply(entry.generation)) {
-                entries[i] = Entry.NULL;
-                size--;
-                weight -= weighEntry(entry);
-            }
+    public void purgeGenerations(@NotNull Predicate<Integer> purge) {
+        for (Segment<K, V> segment : segments) {
+            segment.purgeGenerations(purge);
         }
     }
 
-    @SuppressWarnings("unchecked")
-    private int weighEntry(Entry<?, ?> entry) {
-        return weigher.weigh((K) entry.key, (V) entry.value);
-    }
-
     @Override
-    public synchronized String toString() {
+    public String toString() {
+        int[] costs = new int[256];
+        int[] evictions = new int[256];
+        for (Segment<K, V> segment : segments) {
+            segment.accumulate(costs, evictions);
+        }
         return "PriorityCache" +
             "{ costs=" + toString(costs) +
             ", evictions=" + toString(evictions) + " }";
@@ -329,11 +289,157 @@ public class PriorityCache<K, V> {
      */
     @NotNull
     public CacheStats getStats() {
-        return new CacheStats(hitCount, missCount, loadCount, loadExceptionCount, 0, evictionCount);
+        CacheStats stats = new CacheStats(0, 0, 0, 0, 0, 0);
+        for (Segment<K, V> segment : segments) {
+            stats = stats.plus(segment.getStats());
+        }
+        return stats;
     }
 
     public long estimateCurrentWeight() {
+        long weight = 0;
+        for (Segment<K, V> segment : segments) {
+            weight += segment.weight;
+        }
         return weight;
     }
 
+    /**
+     * A segment of the cache holding the mappings whose keys hash to it.
+     * All accesses to a segment's mappings are guarded by its monitor.
+     */
+    private static class Segment<K, V> {
+        private final int rehash;
+        private final Entry<?,?>[] entries;
+        private final int[] costs = new int[256];
+        private final int[] evictions = new int[256];
+
+        private long hitCount;
+        private long missCount;
+        private long loadCount;
+        private long loadExceptionCount;
+        private long evictionCount;
+        private long size;
+
+        @NotNull
+        private final Weigher<K, V> weigher;
+        private long weight = 0;
+
+        Segment(int size, int rehash, @NotNull Weigher<K, V> weigher) {
+            this.rehash = rehash;
+            entries = new Entry<?,?>[size];
+            fill(entries, Entry.NULL);
+            this.weigher = weigher;
+        }
+
+        private int project(int hashCode, int iteration) {
+            return (hashCode >> iteration) & (entries.length - 1);
+        }
+
+        synchronized boolean put(int hashCode, @NotNull K key, @NotNull V value, int generation, byte initialCost) {
+            byte cheapest = initialCost;
+            int index = -1;
+            boolean eviction = false;
+            for (int k = 0; k <= rehash; k++) {
+                int i = project(hashCode, k);
+                Entry<?, ?> entry = entries[i];
+                if (entry == Entry.NULL) {
+                    // Empty slot -> use this index
+                    index = i;
+                    eviction = false;
+                    break;
+                } else if (entry.generation <= generation && key.equals(entry.key)) {
+                    // Key exists and generation is greater or equal -> use this index and boost the cost
+                    index = i;
+                    initialCost = entry.cost;
+                    if (initialCost < Byte.MAX_VALUE) {
+                        initialCost++;
+                    }
+                    eviction = false;
+                    break;
+                } else if (entry.generation < generation) {
+                    // Old generation -> use this index
+                    index = i;
+                    eviction = false;
+                    break;
+                } else if (entry.cost < cheapest) {
+                    // Candidate slot, keep on searching for even cheaper slots
+                    cheapest = entry.cost;
+                    index = i;
+                    eviction = true;
+                }
+            }
+
+            if (index >= 0) {
+                Entry<?, ?> old = entries[index];
+                Entry<?, ?> newE = new Entry<>(key, value, generation, initialCost);
+                entries[index] = newE;
+                loadCount++;
+                costs[initialCost - Byte.MIN_VALUE]++;
+                if (old != Entry.NULL) {
+                    costs[old.cost - Byte.MIN_VALUE]--;
+                    if (eviction) {
+                        evictions[old.cost - Byte.MIN_VALUE]++;
+                        evictionCount++;
+                    }
+                    weight -= weighEntry(old);
+                } else {
+                    size++;
+                }
+                weight += weighEntry(newE);
+                return true;
+            } else {
+                loadExceptionCount++;
+                return false;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        @Nullable
+        synchronized V get(int hashCode, @NotNull K key, int generation) {
+            for (int k = 0; k <= rehash; k++) {
+                int i = project(hashCode, k);
+                Entry<?, ?> entry = entries[i];
+                if (generation == entry.generation && key.equals(entry.key)) {
+                    if (entry.cost < Byte.MAX_VALUE) {
+                        costs[entry.cost - Byte.MIN_VALUE]--;
+                        entry.cost++;
+                        costs[entry.cost - Byte.MIN_VALUE]++;
+                    }
+                    hitCount++;
+                    return (V) entry.value;
+                }
+            }
+            missCount++;
+            return null;
+        }
+
+        synchronized void purgeGenerations(@NotNull Predicate<Integer> purge) {
+            for (int i = 0; i < entries.length; i++) {
+                Entry<?, ?> entry = entries[i];
+                if (entry != Entry.NULL && purge.apply(entry.generation)) {
+                    entries[i] = Entry.NULL;
+                    size--;
+                    weight -= weighEntry(entry);
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private int weighEntry(Entry<?, ?> entry) {
+            return weigher.weigh((K) entry.key, (V) entry.value);
+        }
+
+        synchronized void accumulate(int[] costs, int[] evictions) {
+            for (int i = 0; i < costs.length; i++) {
+                costs[i] += this.costs[i];
+                evictions[i] += this.evictions[i];
+            }
+        }
+
+        synchronized CacheStats getStats() {
+            return new CacheStats(hitCount, missCount, loadCount, loadExceptionCount, 0, evictionCount);
+        }
+    }
+
 }
@@ -21,6 +21,7 @@ package org.apache.jackrabbit.oak.segment.file;
 import static org.apache.jackrabbit.oak.segment.DefaultSegmentWriterBuilder.defaultSegmentWriterBuilder;
 import static org.apache.jackrabbit.oak.segment.file.Reclaimers.newOldReclaimer;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
@@ -77,6 +78,7 @@ public class ReadOnlyFileStore extends AbstractFileStore {
                 .withMemoryMapping(memoryMapping)
                 .withReadOnly()
                 .withPersistence(builder.getPersistence())
+                .withSegmentLocationIndex(builder.getSegmentLocationIndex())
                 .build();
 
         writer = defaultSegmentWriterBuilder("read-only").withoutCache().build(this);
@@ -122,7 +124,7 @@ public class ReadOnlyFileStore extends AbstractFileStore {
             return segmentCache.getSegment(id, new Callable<Segment>() {
                 @Override
                 public Segment call() throws Exception {
-                    return readSegmentUncached(tarFiles, id);
+                    return loadSegment(tarFiles, id);
                 }
             });
         } catch (ExecutionException | UncheckedExecutionException e) {
@@ -132,9 +134,15 @@ public class ReadOnlyFileStore extends AbstractFileStore {
 
     @Override
     public void close() {
+        if (segmentPrefetcher != null) {
+            segmentPrefetcher.close();
+        }
         Closer closer = Closer.create();
         closer.register(tarFiles);
         closer.register(revisions);
+        if (offHeapSegmentCache != null) {
+            closer.register(offHeapSegmentCache);
+        }
         closeAndLogOnFail(closer);
         System.gc(); // for any memory-mappings that are no longer used
         log.info("TarMK closed: {}", directory);
@@ -178,4 +186,11 @@ public class ReadOnlyFileStore extends AbstractFileStore {
         tarFiles.collectBlobReferences(collector,
             newOldReclaimer(SegmentGCOptions.GCType.FULL, revisions.getHead().getSegmentId().getGcGeneration(), gcRetainedGenerations));
     }
+
+    @Override
+    public void collectBlobReferences(@NotNull File references) throws IOException {
+        tarFiles.collectBlobReferences(references,
+            newOldReclaimer(SegmentGCOptions.GCType.FULL, revisions.getHead().getSegmentId().getGcGeneration(), gcRetainedGenerations),
+            binaryReferencesCollector);
+    }
 }
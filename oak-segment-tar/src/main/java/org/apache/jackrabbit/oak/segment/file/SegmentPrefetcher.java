@@ -0,0 +1,250 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jackrabbit.oak.segment.file;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.lang.Thread.currentThread;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.io.Closeable;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.Function;
+
+import com.google.common.cache.CacheBuilder;
+import org.apache.jackrabbit.core.data.util.NamedThreadFactory;
+import org.apache.jackrabbit.oak.segment.Segment;
+import org.apache.jackrabbit.oak.segment.SegmentCache;
+import org.apache.jackrabbit.oak.segment.SegmentId;
+import org.apache.jackrabbit.oak.segment.SegmentIdProvider;
+import org.apache.jackrabbit.oak.stats.MeterStats;
+import org.apache.jackrabbit.oak.stats.StatisticsProvider;
+import org.apache.jackrabbit.oak.stats.StatsOptions;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A segment prefetcher asynchronously loads the segments referenced by a
+ * segment that has just been read from disk into the {@link SegmentCache}.
+ * Traversals of large subtrees tend to follow these references shortly after,
+ * so prefetching them saves a round trip to the persistence on each of the
+ * following cache misses. This is especially relevant with remote
+ * persistence implementations.
+ * <p>
+ * Segments are loaded by a bounded number of threads from a bounded queue.
+ * When the queue is full further prefetch requests are dropped. With a
+ * {@code depth} greater than one the references of prefetched segments are
+ * prefetched in turn up to that depth.
+ * <p>
+ * The number of prefetched segments and the number of those which were
+ * subsequently accessed are tracked through the passed
+ * {@link StatisticsProvider}. Their ratio is the hit rate of the prefetcher
+ * and should be used to tune the depth.
+ */
+class SegmentPrefetcher implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(SegmentPrefetcher.class);
+
+    /**
+     * Maximum number of prefetch requests waiting for a thread.
+     */
+    static final int QUEUE_SIZE = Integer.getInteger("oak.segment.prefetch.queueSize", 1024);
+
+    /**
+     * Maximum number of prefetched segments tracked for computing the hit
+     * rate. Segments that have not been accessed by the time they fall out
+     * of this window are not counted as hits.
+     */
+    private static final int MAX_TRACKED = 16384;
+
+    static final String PREFETCH_COUNT = "oak.segment.prefetch.count";
+
+    static final String PREFETCH_HIT_COUNT = "oak.segment.prefetch.hits";
+
+    static final String PREFETCH_DROP_COUNT = "oak.segment.prefetch.dropped";
+
+    private enum State {
+        SCHEDULED, LOADED
+    }
+
+    @NotNull
+    private final SegmentIdProvider idProvider;
+
+    @NotNull
+    private final SegmentCache segmentCache;
+
+    private final int depth;
+
+    @NotNull
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Ids of the segments that are either scheduled for prefetching or have
+     * been prefetched but not been accessed yet.
+     */
+    @NotNull
+    private final ConcurrentMap<SegmentId, State> prefetched = CacheBuilder.newBuilder()
+            .concurrencyLevel(16)
+            .maximumSize(MAX_TRACKED)
+            .<SegmentId, State>build()
+            .asMap();
+
+    @NotNull
+    private final MeterStats prefetchCount;
+
+    @NotNull
+    private final MeterStats hitCount;
+
+    @NotNull
+    private final MeterStats dropCount;
+
+    /**
+     * Create a new instance
+     * @param idProvider          provider for the ids of referenced segments
+     * @param segmentCache        cache to load prefetched segments into
+     * @param threads             number of threads loading segments
+     * @param depth               number of levels of references to follow
+     * @param statisticsProvider  provider for the prefetch metrics
+     */
+    SegmentPrefetcher(
+            @NotNull SegmentIdProvider idProvider,
+            @NotNull SegmentCache segmentCache,
+            int threads,
+            int depth,
+            @NotNull StatisticsProvider statisticsProvider) {
+        checkArgument(threads > 0, "threads must be positive");
+        checkArgument(depth > 0, "depth must be positive");
+        this.idProvider = checkNotNull(idProvider);
+        this.segmentCache = checkNotNull(segmentCache);
+        this.depth = depth;
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, SECONDS,
+                new ArrayBlockingQueue<>(QUEUE_SIZE), new NamedThreadFactory("segment-prefetch"));
+        this.executor.allowCoreThreadTimeOut(true);
+        this.prefetchCount = statisticsProvider.getMeter(PREFETCH_COUNT, StatsOptions.DEFAULT);
+        this.hitCount = statisticsProvider.getMeter(PREFETCH_HIT_COUNT, StatsOptions.DEFAULT);
+        this.dropCount = statisticsProvider.getMeter(PREFETCH_DROP_COUNT, StatsOptions.DEFAULT);
+    }
+
+    /**
+     * Schedule prefetching the data segments referenced by {@code segment}.
+     * This method should be called whenever a segment has been loaded
+     * because of a cache miss.
+     * @param segment  the segment that has just been loaded
+     * @param loader   function loading a segment from the persistence
+     */
+    void onLoad(@NotNull Segment segment, @NotNull Function<SegmentId, Segment> loader) {
+        schedule(segment, loader, 1);
+    }
+
+    /**
+     * Notify this prefetcher that the segment with the given id has been
+     * accessed.
+     * @param id  id of the accessed segment
+     */
+    void onAccess(@NotNull SegmentId id) {
+        if (!prefetched.isEmpty() && prefetched.remove(id, State.LOADED)) {
+            hitCount.mark();
+        }
+    }
+
+    private void schedule(Segment segment, Function<SegmentId, Segment> loader, int level) {
+        int count = segment.getReferencedSegmentIdCount();
+        for (int k = 0; k < count; k++) {
+            UUID uuid = segment.getReferencedSegmentId(k);
+            SegmentId id = idProvider.newSegmentId(
+                    uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+            if (!id.isDataSegmentId() || prefetched.putIfAbsent(id, State.SCHEDULED) != null) {
+                continue;
+            }
+            try {
+                executor.execute(() -> load(id, loader, level));
+            } catch (RejectedExecutionException e) {
+                prefetched.remove(id, State.SCHEDULED);
+                dropCount.mark();
+            }
+        }
+    }
+
+    private void load(SegmentId id, Function<SegmentId, Segment> loader, int level) {
+        boolean[] loaded = {false};
+        try {
+            Segment segment = segmentCache.getSegment(id, () -> {
+                loaded[0] = true;
+                return loader.apply(id);
+            });
+            if (!loaded[0]) {
+                // Someone else has been faster
+                prefetched.remove(id, State.SCHEDULED);
+                return;
+            }
+            prefetchCount.mark();
+            prefetched.replace(id, State.SCHEDULED, State.LOADED);
+            if (level < depth) {
+                schedule(segment, loader, level + 1);
+            }
+        } catch (ExecutionException | RuntimeException e) {
+            prefetched.remove(id, State.SCHEDULED);
+            log.debug("Unable to prefetch segment {}", id, e);
+        }
+    }
+
+    /**
+     * @return  number of segments loaded by this prefetcher
+     */
+    long getPrefetchCount() {
+        return prefetchCount.getCount();
+    }
+
+    /**
+     * @return  number of prefetched segments that have subsequently been accessed
+     */
+    long getHitCount() {
+        return hitCount.getCount();
+    }
+
+    /**
+     * @return  number of prefetch requests dropped because the queue was full
+     */
+    long getDropCount() {
+        return dropCount.getCount();
+    }
+
+    /**
+     * Discard all pending prefetch requests and wait for the ones in progress
+     * to complete.
+     */
+    @Override
+    public void close() {
+        executor.getQueue().clear();
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(60, SECONDS)) {
+                log.warn("Timeout waiting for segment prefetching to complete");
+            }
+        } catch (InterruptedException e) {
+            log.warn("Interrupted while waiting for segment prefetching to complete");
+            currentThread().interrupt();
+        }
+    }
+}
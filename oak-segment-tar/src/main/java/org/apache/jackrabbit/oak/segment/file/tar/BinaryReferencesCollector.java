@@ -0,0 +1,317 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jackrabbit.oak.segment.file.tar;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.Lists.newArrayList;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.jackrabbit.oak.segment.file.tar.GCGeneration.newGCGeneration;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.base.Predicate;
+import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.core.data.util.NamedThreadFactory;
+import org.apache.jackrabbit.oak.commons.sort.ExternalSort;
+import org.apache.jackrabbit.oak.segment.file.tar.binaries.BinaryReferencesIndex;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A binary references collector loads the binary references of TAR files in
+ * parallel and merges them into a single sorted file without duplicates.
+ * <p>
+ * The references of each TAR file are grouped by the GC generation of the
+ * segments they are contained in, so that the references of the generations
+ * to be skipped can be discarded without inspecting them. With a cache
+ * directory these groups are kept per TAR file across invocations: as TAR
+ * files are immutable only the TAR files added since the last invocation
+ * need to be read. Entries of TAR files that no longer exist are removed
+ * from the cache on each invocation.
+ */
+public class BinaryReferencesCollector {
+
+    private static final Logger log = LoggerFactory.getLogger(BinaryReferencesCollector.class);
+
+    /**
+     * Default number of threads loading the binary references of TAR files.
+     */
+    public static final int DEFAULT_THREADS = Integer.getInteger("oak.segment.binaryReferences.threads",
+            Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Maximum number of files merged at once.
+     */
+    static final int MERGE_FAN_IN = Integer.getInteger("oak.segment.binaryReferences.mergeFanIn", 256);
+
+    private static final Pattern GENERATION_FILE_NAME = Pattern.compile("(\\d+)-(\\d+)-([01])\\.refs");
+
+    @Nullable
+    private final File cacheDirectory;
+
+    private final int threads;
+
+    /**
+     * Create a new instance
+     * @param cacheDirectory  directory for caching the references of the TAR
+     *                        files or {@code null} for no caching
+     * @param threads         number of threads loading and merging references
+     */
+    public BinaryReferencesCollector(@Nullable File cacheDirectory, int threads) {
+        checkArgument(threads > 0, "threads must be positive");
+        this.cacheDirectory = cacheDirectory;
+        this.threads = threads;
+    }
+
+    /**
+     * Collect the binary references of {@code readers} into {@code target}.
+     * @param readers         the TAR files to collect the references from
+     * @param skipGeneration  predicate determining the generations whose
+     *                        references are to be skipped
+     * @param target          file receiving the sorted references, one per line
+     */
+    void collect(
+            @NotNull Iterable<TarReader> readers,
+            @NotNull Predicate<GCGeneration> skipGeneration,
+            @NotNull File target
+    ) throws IOException {
+        List<TarReader> tars = newArrayList(readers);
+        File parent = cacheDirectory != null ? cacheDirectory : target.getAbsoluteFile().getParentFile();
+        Files.createDirectories(parent.toPath());
+        File work = Files.createTempDirectory(parent.toPath(), "collect-").toFile();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new NamedThreadFactory("binary-references"));
+        try {
+            List<Callable<List<File>>> loads = new ArrayList<>(tars.size());
+            for (TarReader tar : tars) {
+                loads.add(() -> load(tar, skipGeneration, work));
+            }
+            List<File> files = new ArrayList<>();
+            for (List<File> loaded : invokeAll(executor, loads)) {
+                files.addAll(loaded);
+            }
+            merge(executor, files, target, work);
+            if (cacheDirectory != null) {
+                sweep(tars);
+            }
+        } finally {
+            executor.shutdownNow();
+            FileUtils.deleteQuietly(work);
+        }
+    }
+
+    /**
+     * Load the references of {@code tar} and return a sorted file for each
+     * generation not skipped. The returned files are placed in {@code work}
+     * and are owned by the caller.
+     */
+    private List<File> load(TarReader tar, Predicate<GCGeneration> skipGeneration, File work) throws IOException {
+        File generations = cacheDirectory != null ? loadCached(tar, work) : null;
+        boolean cached = generations != null;
+        if (!cached) {
+            generations = new File(work, tar.getFileName());
+            write(tar.getBinaryReferences(), generations);
+        }
+
+        List<File> files = new ArrayList<>();
+        File[] generationFiles = generations.listFiles();
+        if (generationFiles == null) {
+            return files;
+        }
+        for (File file : generationFiles) {
+            Matcher matcher = GENERATION_FILE_NAME.matcher(file.getName());
+            if (!matcher.matches()) {
+                continue;
+            }
+            GCGeneration generation = newGCGeneration(
+                    Integer.parseInt(matcher.group(1)),
+                    Integer.parseInt(matcher.group(2)),
+                    "1".equals(matcher.group(3)));
+            if (skipGeneration.apply(generation)) {
+                continue;
+            }
+            if (cached) {
+                files.add(link(file, new File(work, tar.getFileName() + "-" + file.getName())));
+            } else {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Return the cached references of {@code tar}, loading them into the
+     * cache first if necessary. The cache entry of a TAR file is only
+     * created once its references have been loaded successfully.
+     * @return  the cached references or {@code null} if they are not
+     *          available.
+     */
+    private File loadCached(TarReader tar, File work) throws IOException {
+        File cached = new File(cacheDirectory, getCacheEntryName(tar));
+        if (cached.isDirectory()) {
+            return cached;
+        }
+        BinaryReferencesIndex index = tar.getBinaryReferences();
+        if (index == null) {
+            // Don't cache failures to load the index
+            return null;
+        }
+        File part = new File(work, getCacheEntryName(tar) + ".part");
+        write(index, part);
+        try {
+            Files.move(part.toPath(), cached.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Unable to cache the binary references of {}", tar.getFileName(), e);
+            FileUtils.deleteQuietly(part);
+            return null;
+        }
+        return cached;
+    }
+
+    private static void write(@Nullable BinaryReferencesIndex index, File directory) throws IOException {
+        Files.createDirectories(directory.toPath());
+        if (index == null) {
+            return;
+        }
+        Map<GCGeneration, Set<String>> references = new HashMap<>();
+        index.forEach((generation, full, compacted, segment, reference) ->
+                references.computeIfAbsent(newGCGeneration(generation, full, compacted), g -> new TreeSet<>())
+                        .add(reference));
+        for (Map.Entry<GCGeneration, Set<String>> entry : references.entrySet()) {
+            GCGeneration generation = entry.getKey();
+            String name = generation.getGeneration() + "-" + generation.getFullGeneration() + "-"
+                    + (generation.isCompacted() ? "1" : "0") + ".refs";
+            try (BufferedWriter writer = Files.newBufferedWriter(new File(directory, name).toPath(), UTF_8)) {
+                for (String reference : entry.getValue()) {
+                    writer.write(reference);
+                    writer.newLine();
+                }
+            }
+        }
+    }
+
+    /**
+     * Merge {@code files} into {@code target} removing duplicates. The files
+     * are merged in rounds of at most {@link #MERGE_FAN_IN} files each. The
+     * merged files are deleted.
+     */
+    private static void merge(ExecutorService executor, List<File> files, File target, File work) throws IOException {
+        while (files.size() > MERGE_FAN_IN) {
+            List<Callable<File>> merges = new ArrayList<>();
+            for (int k = 0; k < files.size(); k += MERGE_FAN_IN) {
+                List<File> batch = files.subList(k, Math.min(files.size(), k + MERGE_FAN_IN));
+                merges.add(() -> {
+                    File merged = File.createTempFile("merge-", ".refs", work);
+                    ExternalSort.mergeSortedFiles(batch, merged, ExternalSort.defaultcomparator, UTF_8, true);
+                    return merged;
+                });
+            }
+            files = invokeAll(executor, merges);
+        }
+        ExternalSort.mergeSortedFiles(files, target, ExternalSort.defaultcomparator, UTF_8, true);
+    }
+
+    /**
+     * Remove the cache entries of TAR files not contained in {@code tars}.
+     */
+    private void sweep(List<TarReader> tars) {
+        Set<String> entries = new HashSet<>();
+        for (TarReader tar : tars) {
+            entries.add(getCacheEntryName(tar));
+        }
+        File[] cached = cacheDirectory.listFiles();
+        if (cached == null) {
+            return;
+        }
+        for (File file : cached) {
+            if (file.isDirectory() && !file.getName().startsWith("collect-") && !entries.contains(file.getName())) {
+                FileUtils.deleteQuietly(file);
+            }
+        }
+    }
+
+    /**
+     * The name of the cache entry of a TAR file includes its size, to guard
+     * against reusing a cache directory for a different repository with TAR
+     * files of the same names.
+     */
+    private static String getCacheEntryName(TarReader tar) {
+        return tar.getFileName() + "." + tar.size();
+    }
+
+    /**
+     * Link {@code file} to {@code link} so that merging, which deletes its
+     * input files, leaves the cached file in place. Falls back to copying
+     * where links are not supported.
+     */
+    private static File link(File file, File link) throws IOException {
+        try {
+            Files.createLink(link.toPath(), file.toPath());
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(file.toPath(), link.toPath());
+        }
+        return link;
+    }
+
+    private static <T> List<T> invokeAll(ExecutorService executor, List<Callable<T>> tasks) throws IOException {
+        List<Future<T>> futures = new ArrayList<>(tasks.size());
+        for (Callable<T> task : tasks) {
+            futures.add(executor.submit(task));
+        }
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while collecting binary references");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return results;
+    }
+}
@@ -25,6 +25,11 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.channels.FileChannel;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.apache.jackrabbit.oak.commons.Buffer;
 
@@ -34,8 +39,23 @@ import org.apache.jackrabbit.oak.commons.Buffer;
  */
 abstract class FileAccess {
 
+    static final String MAPPED = "mapped";
+
+    static final String WINDOWED = "windowed";
+
+    static final String POSITIONAL = "positional";
+
+    static final String RANDOM = "random";
+
     abstract boolean isMemoryMapped();
 
+    /**
+     * @return the name of the mode used to access the file, as reported to
+     * {@link org.apache.jackrabbit.oak.segment.spi.monitor.IOMonitor#afterSegmentRead(java.io.File,
+     * long, long, int, long, String)}.
+     */
+    abstract String getAccessMode();
+
     abstract int length() throws IOException;
 
     abstract Buffer read(int position, int length) throws IOException;
@@ -63,6 +83,11 @@ abstract class FileAccess {
             return true;
         }
 
+        @Override
+        String getAccessMode() {
+            return MAPPED;
+        }
+
         @Override
         public int length() {
             return buffer.remaining();
@@ -102,6 +127,11 @@ abstract class FileAccess {
             return false;
         }
 
+        @Override
+        String getAccessMode() {
+            return RANDOM;
+        }
+
         @Override
         public synchronized int length() throws IOException {
             long length = file.length();
@@ -147,4 +177,386 @@ abstract class FileAccess {
         }
     }
 
+    /**
+     * The implementation that uses positional reads on the file channel. Reads
+     * are not synchronized: {@link FileChannel#read(java.nio.ByteBuffer, long)}
+     * does not depend on the position of the channel and can be safely issued
+     * by many threads at the same time.
+     */
+    static class Positional extends FileAccess {
+
+        private final RandomAccessFile file;
+
+        protected final FileChannel channel;
+
+        Positional(RandomAccessFile file) {
+            this.file = file;
+            this.channel = file.getChannel();
+        }
+
+        @Override
+        boolean isMemoryMapped() {
+            return false;
+        }
+
+        @Override
+        String getAccessMode() {
+            return POSITIONAL;
+        }
+
+        @Override
+        public int length() throws IOException {
+            long length = channel.size();
+            checkState(length < Integer.MAX_VALUE);
+            return (int) length;
+        }
+
+        @Override
+        public Buffer read(int position, int length) throws IOException {
+            return readFully(allocate(length), channel, position, length);
+        }
+
+        Buffer allocate(int length) {
+            return Buffer.allocate(length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            file.close();
+        }
+
+    }
+
+    /**
+     * The implementation that uses positional reads on the file channel (reads
+     * are not synchronized) and off heap access.
+     */
+    static class PositionalOffHeap extends Positional {
+
+        PositionalOffHeap(RandomAccessFile file) {
+            super(file);
+        }
+
+        @Override
+        Buffer allocate(int length) {
+            return Buffer.allocateDirect(length);
+        }
+
+    }
+
+    /**
+     * The implementation that maps the file lazily in fixed size windows.
+     * Windows are only mapped as long as the shared {@link MappingBudget}
+     * allows it. Once the budget is exhausted, windows that are read
+     * repeatedly replace windows that were not read recently. Reads that
+     * cannot be served from a mapped window, either because the window is not
+     * mapped or because they span two windows, fall back to unsynchronized
+     * positional reads.
+     * <p>
+     * Entries are copied out of the mapped windows. Handing out slices of a
+     * window would keep it reachable, and thus mapped, for as long as any
+     * segment read from it is in use.
+     */
+    static class Windowed extends Positional {
+
+        private final int windowSize;
+
+        private final MappingBudget budget;
+
+        private final int length;
+
+        private volatile AtomicReferenceArray<MappedWindow> windows;
+
+        /**
+         * The windows that could not be mapped when they were last read,
+         * guarded by {@code this}.
+         */
+        private final BitSet missed = new BitSet();
+
+        Windowed(RandomAccessFile file, int windowSize, MappingBudget budget) throws IOException {
+            super(file);
+            checkState(windowSize > 0);
+            this.windowSize = windowSize;
+            this.budget = budget;
+            this.length = super.length();
+            this.windows = new AtomicReferenceArray<>((int) ((length + (long) windowSize - 1) / windowSize));
+        }
+
+        @Override
+        boolean isMemoryMapped() {
+            return true;
+        }
+
+        @Override
+        String getAccessMode() {
+            return WINDOWED;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public Buffer read(int position, int length) throws IOException {
+            int index = position / windowSize;
+            int offset = position - index * windowSize;
+            if (offset + length <= windowSize) {
+                Buffer window = window(index);
+                if (window != null) {
+                    Buffer source = window.duplicate();
+                    source.position(offset);
+                    source.limit(offset + length);
+                    Buffer entry = allocate(length);
+                    entry.put(source);
+                    entry.flip();
+                    return entry;
+                }
+            }
+            return super.read(position, length);
+        }
+
+        /**
+         * @return whether the window containing the given position is mapped.
+         */
+        boolean isMapped(int position) {
+            AtomicReferenceArray<MappedWindow> windows = this.windows;
+            return windows != null && windows.get(position / windowSize) != null;
+        }
+
+        /**
+         * Return the window with the given index, mapping it first if needed.
+         * Returns {@code null} if the window could not be mapped within the
+         * limits of the budget.
+         */
+        private Buffer window(int index) {
+            AtomicReferenceArray<MappedWindow> windows = this.windows;
+            if (windows == null) {
+                return null;
+            }
+            MappedWindow window = windows.get(index);
+            if (window != null) {
+                window.access();
+                return window.buffer;
+            }
+            return map(index);
+        }
+
+        /**
+         * Map the window with the given index. When the budget is exhausted,
+         * the window is only mapped if it was read before, so that a single
+         * pass over cold data doesn't replace the mapped windows. Mapping is
+         * synchronized with {@link #close()}, so that no window is mapped
+         * after this instance is closed.
+         */
+        private synchronized Buffer map(int index) {
+            AtomicReferenceArray<MappedWindow> windows = this.windows;
+            if (windows == null) {
+                return null;
+            }
+            MappedWindow window = windows.get(index);
+            if (window != null) {
+                // Another thread mapped the same window concurrently
+                return window.buffer;
+            }
+            long start = (long) index * windowSize;
+            long size = Math.min(windowSize, length - start);
+            if (!budget.reserve(size, missed.get(index))) {
+                missed.set(index);
+                return null;
+            }
+            Buffer buffer;
+            try {
+                buffer = Buffer.map(channel, READ_ONLY, start, size);
+            } catch (IOException e) {
+                // Running out of virtual memory is not fatal, the read falls
+                // back to a positional read.
+                budget.release(size);
+                return null;
+            }
+            missed.clear(index);
+            window = new MappedWindow(this, index, buffer, size);
+            windows.set(index, window);
+            budget.add(window);
+            return buffer;
+        }
+
+        /**
+         * Drop the given window if it is still mapped. Called by the budget
+         * when the window is evicted.
+         */
+        void unmap(MappedWindow window) {
+            AtomicReferenceArray<MappedWindow> windows = this.windows;
+            if (windows != null) {
+                windows.compareAndSet(window.index, window, null);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            synchronized (this) {
+                AtomicReferenceArray<MappedWindow> windows = this.windows;
+                this.windows = null;
+                if (windows != null) {
+                    for (int i = 0; i < windows.length(); i++) {
+                        MappedWindow window = windows.getAndSet(i, null);
+                        if (window != null) {
+                            budget.remove(window);
+                        }
+                    }
+                }
+            }
+            super.close();
+        }
+
+    }
+
+    /**
+     * A window mapped by a {@link Windowed} file access. The buffer of a
+     * window is only referenced by its file access and by reads copying from
+     * it, so that the window is unmapped by the first garbage collection after
+     * it is evicted. Windows are not unmapped explicitly, as a concurrent read
+     * from an unmapped buffer would crash the JVM.
+     */
+    static class MappedWindow {
+
+        private final Windowed owner;
+
+        private final int index;
+
+        private final Buffer buffer;
+
+        private final long size;
+
+        /**
+         * Whether the window was read since the clock of the budget last
+         * passed it.
+         */
+        private volatile boolean accessed;
+
+        MappedWindow(Windowed owner, int index, Buffer buffer, long size) {
+            this.owner = owner;
+            this.index = index;
+            this.buffer = buffer;
+            this.size = size;
+        }
+
+        void access() {
+            if (!accessed) {
+                accessed = true;
+            }
+        }
+
+    }
+
+    /**
+     * A soft bound on the amount of bytes memory mapped by the {@link
+     * Windowed} file accesses sharing an instance of this class. When the
+     * budget is exhausted, mapped windows are evicted with the clock
+     * algorithm: windows read since they were last considered for eviction
+     * get a second chance, the others are dropped.
+     * <p>
+     * The budget only accounts for the windows in use. Evicted windows stay
+     * mapped until the garbage collector reclaims their buffers, so the
+     * mapped address space may temporarily exceed the budget.
+     */
+    static class MappingBudget {
+
+        private final long maxMappedBytes;
+
+        /**
+         * The number of bytes of the registered windows and of the windows
+         * being mapped, guarded by {@code this}.
+         */
+        private long mappedBytes;
+
+        /**
+         * The registered windows in clock order, guarded by {@code this}.
+         */
+        private final Set<MappedWindow> windows = new LinkedHashSet<>();
+
+        MappingBudget(long maxMappedBytes) {
+            this.maxMappedBytes = maxMappedBytes;
+        }
+
+        /**
+         * Reserve {@code size} bytes for a window about to be mapped.
+         *
+         * @param size  the size of the window.
+         * @param evict whether mapped windows not read recently may be
+         *              evicted to make room for the window.
+         * @return {@code true} if the bytes were reserved, {@code false} if
+         * there was not enough room.
+         */
+        synchronized boolean reserve(long size, boolean evict) {
+            if (size > maxMappedBytes) {
+                return false;
+            }
+            if (evict) {
+                // Every window is passed at most twice: once to clear its
+                // accessed flag and once to evict it
+                int steps = 2 * windows.size();
+                while (mappedBytes + size > maxMappedBytes && steps-- > 0) {
+                    Iterator<MappedWindow> it = windows.iterator();
+                    MappedWindow window = it.next();
+                    it.remove();
+                    if (window.accessed) {
+                        window.accessed = false;
+                        windows.add(window);
+                    } else {
+                        window.owner.unmap(window);
+                        mappedBytes -= window.size;
+                    }
+                }
+            }
+            if (mappedBytes + size > maxMappedBytes) {
+                return false;
+            }
+            mappedBytes += size;
+            return true;
+        }
+
+        /**
+         * Release bytes reserved for a window that could not be mapped.
+         */
+        synchronized void release(long size) {
+            mappedBytes -= size;
+        }
+
+        /**
+         * Register a window mapped with previously reserved bytes, making it
+         * a candidate for eviction.
+         */
+        synchronized void add(MappedWindow window) {
+            windows.add(window);
+        }
+
+        /**
+         * Remove a window when its file is closed, unless it was evicted
+         * already.
+         */
+        synchronized void remove(MappedWindow window) {
+            if (windows.remove(window)) {
+                mappedBytes -= window.size;
+            }
+        }
+
+        synchronized long getMappedBytes() {
+            return mappedBytes;
+        }
+
+        long getMaxMappedBytes() {
+            return maxMappedBytes;
+        }
+
+    }
+
+    private static Buffer readFully(Buffer entry, FileChannel channel, int position, int length) throws IOException {
+        if (entry.readFully(channel, position) < length) {
+            throw new EOFException();
+        }
+        entry.flip();
+        return entry;
+    }
+
 }
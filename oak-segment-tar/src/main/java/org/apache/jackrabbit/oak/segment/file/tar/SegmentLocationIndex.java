@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jackrabbit.oak.segment.file.tar;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A compact hash table mapping segment identifiers to the index number of
+ * the TAR file containing the respective segment. The table uses open
+ * addressing with linear probing over primitive arrays, which takes about
+ * 30 bytes per segment.
+ * <p>
+ * This class is not thread safe. {@link TarFiles} guards all accesses with
+ * its read write lock.
+ */
+class SegmentLocationIndex {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private long[] msbs;
+
+    private long[] lsbs;
+
+    /**
+     * The index number of the TAR file plus one, {@code 0} marks an empty slot.
+     */
+    private int[] tars;
+
+    private int size;
+
+    SegmentLocationIndex() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    private void allocate(int capacity) {
+        msbs = new long[capacity];
+        lsbs = new long[capacity];
+        tars = new int[capacity];
+        size = 0;
+    }
+
+    private static int hash(long msb, long lsb) {
+        long h = (msb ^ lsb) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private int slot(long msb, long lsb) {
+        int mask = tars.length - 1;
+        int slot = hash(msb, lsb) & mask;
+        while (tars[slot] != 0 && (msbs[slot] != msb || lsbs[slot] != lsb)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Map a segment to a TAR file, replacing any previous mapping of the
+     * segment.
+     * @param msb  most significant bits of the segment identifier
+     * @param lsb  least significant bits of the segment identifier
+     * @param tar  index number of the TAR file containing the segment
+     */
+    void put(long msb, long lsb, int tar) {
+        checkArgument(tar >= 0, "tar must not be negative");
+        if (4 * (size + 1) > 3 * tars.length) {
+            grow();
+        }
+        int slot = slot(msb, lsb);
+        if (tars[slot] == 0) {
+            msbs[slot] = msb;
+            lsbs[slot] = lsb;
+            size++;
+        }
+        tars[slot] = tar + 1;
+    }
+
+    /**
+     * @return  the index number of the TAR file containing the segment or
+     *          {@code -1} if the segment is not mapped.
+     */
+    int get(long msb, long lsb) {
+        return tars[slot(msb, lsb)] - 1;
+    }
+
+    /**
+     * Remove the mapping of a segment if it is mapped to the given TAR file.
+     * @return  {@code true} if the mapping was removed
+     */
+    boolean remove(long msb, long lsb, int tar) {
+        int slot = slot(msb, lsb);
+        if (tars[slot] != tar + 1) {
+            return false;
+        }
+
+        // Backward shift deletion: move subsequent entries of the same probe
+        // sequence into the hole so lookups never stop at it prematurely.
+        int mask = tars.length - 1;
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (tars[next] != 0) {
+            int home = hash(msbs[next], lsbs[next]) & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                msbs[hole] = msbs[next];
+                lsbs[hole] = lsbs[next];
+                tars[hole] = tars[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        tars[hole] = 0;
+        size--;
+        return true;
+    }
+
+    /**
+     * @return  the number of mapped segments
+     */
+    int size() {
+        return size;
+    }
+
+    private void grow() {
+        long[] oldMsbs = msbs;
+        long[] oldLsbs = lsbs;
+        int[] oldTars = tars;
+        allocate(2 * oldTars.length);
+        for (int k = 0; k < oldTars.length; k++) {
+            if (oldTars[k] != 0) {
+                int slot = slot(oldMsbs[k], oldLsbs[k]);
+                msbs[slot] = oldMsbs[k];
+                lsbs[slot] = oldLsbs[k];
+                tars[slot] = oldTars[k];
+                size++;
+            }
+        }
+    }
+}
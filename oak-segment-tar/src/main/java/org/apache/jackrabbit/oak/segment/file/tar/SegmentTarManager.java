@@ -19,6 +19,7 @@
 package org.apache.jackrabbit.oak.segment.file.tar;
 
 import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.base.Preconditions.checkArgument;
 import static org.apache.jackrabbit.oak.commons.Buffer.wrap;
 import static org.apache.jackrabbit.oak.segment.file.tar.TarConstants.BLOCK_SIZE;
 
@@ -69,13 +70,40 @@ public class SegmentTarManager implements SegmentArchiveManager {
 
     private final boolean offHeapAccess;
 
+    private final boolean positionalReads;
+
+    private final int mappingWindowSize;
+
+    private final FileAccess.MappingBudget mappingBudget;
+
     public SegmentTarManager(File segmentstoreDir, FileStoreMonitor fileStoreMonitor, IOMonitor ioMonitor, boolean memoryMapping,
             boolean offHeapAccess) {
+        this(segmentstoreDir, fileStoreMonitor, ioMonitor, memoryMapping, offHeapAccess, false, 0, null);
+    }
+
+    /**
+     * @param positionalReads   read from the tar files through unsynchronized
+     *                          positional reads instead of synchronized ones
+     *                          when the files are not memory mapped.
+     * @param mappingWindowSize if positive and {@code memoryMapping} is
+     *                          enabled, the tar files are memory mapped lazily
+     *                          in windows of this many bytes instead of being
+     *                          mapped as a whole.
+     * @param mappingBudget     bounds the number of bytes mapped by all the
+     *                          windows. Must not be {@code null} if {@code
+     *                          mappingWindowSize} is positive.
+     */
+    SegmentTarManager(File segmentstoreDir, FileStoreMonitor fileStoreMonitor, IOMonitor ioMonitor, boolean memoryMapping,
+            boolean offHeapAccess, boolean positionalReads, int mappingWindowSize, FileAccess.MappingBudget mappingBudget) {
+        checkArgument(mappingWindowSize <= 0 || mappingBudget != null, "mappingBudget");
         this.segmentstoreDir = segmentstoreDir;
         this.fileStoreMonitor = fileStoreMonitor;
         this.ioMonitor = ioMonitor;
         this.memoryMapping = memoryMapping;
         this.offHeapAccess = offHeapAccess;
+        this.positionalReads = positionalReads;
+        this.mappingWindowSize = mappingWindowSize;
+        this.mappingBudget = mappingBudget;
     }
 
     @Override
@@ -95,6 +123,12 @@ public class SegmentTarManager implements SegmentArchiveManager {
             } else {
                 if (memoryMapping) {
                     try {
+                        if (mappingWindowSize > 0) {
+                            FileAccess windowed = new FileAccess.Windowed(access, mappingWindowSize, mappingBudget);
+                            // windows are mapped lazily, the file must stay open
+                            access = null;
+                            return new SegmentTarReader(file, windowed, index, ioMonitor);
+                        }
                         FileAccess mapped = new FileAccess.Mapped(access);
                         return new SegmentTarReader(file, mapped, index, ioMonitor);
                     } catch (IOException e) {
@@ -109,7 +143,11 @@ public class SegmentTarManager implements SegmentArchiveManager {
                 }
 
                 FileAccess random = null;
-                if (offHeapAccess) {
+                if (positionalReads && offHeapAccess) {
+                    random = new FileAccess.PositionalOffHeap(access);
+                } else if (positionalReads) {
+                    random = new FileAccess.Positional(access);
+                } else if (offHeapAccess) {
                     random = new FileAccess.RandomOffHeap(access);
                 } else {
                     random = new FileAccess.Random(access);
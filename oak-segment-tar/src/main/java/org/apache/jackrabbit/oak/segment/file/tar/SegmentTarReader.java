@@ -82,7 +82,7 @@ public class SegmentTarReader implements SegmentArchiveReader {
         Stopwatch stopwatch = Stopwatch.createStarted();
         Buffer buffer = access.read(indexEntry.getPosition(), indexEntry.getLength());
         long elapsed = stopwatch.elapsed(TimeUnit.NANOSECONDS);
-        ioMonitor.afterSegmentRead(file, msb, lsb, indexEntry.getLength(), elapsed);
+        ioMonitor.afterSegmentRead(file, msb, lsb, indexEntry.getLength(), elapsed, access.getAccessMode());
         return buffer;
     }
 
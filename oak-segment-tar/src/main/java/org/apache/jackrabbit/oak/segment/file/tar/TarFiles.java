@@ -60,6 +60,7 @@ import org.apache.jackrabbit.oak.segment.spi.persistence.SegmentNodeStorePersist
 import org.apache.jackrabbit.oak.stats.CounterStats;
 import org.apache.jackrabbit.oak.stats.NoopStats;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -136,6 +137,8 @@ public class TarFiles implements Closeable {
 
         private CounterStats segmentCountStats = NoopStats.INSTANCE;
 
+        private boolean segmentLocationIndex;
+
         private Builder() {
             // Prevent external instantiation.
         }
@@ -201,6 +204,18 @@ public class TarFiles implements Closeable {
             return this;
         }
 
+        /**
+         * Turn the segment location index on or off. When turned on, {@link
+         * TarFiles} keeps track of the TAR file containing each segment in
+         * memory. Lookups of segments then no longer need to probe the index
+         * of each TAR file in turn, which reduces the cost of lookups in
+         * stores with many TAR files.
+         */
+        public Builder withSegmentLocationIndex(boolean segmentLocationIndex) {
+            this.segmentLocationIndex = segmentLocationIndex;
+            return this;
+        }
+
         public TarFiles build() throws IOException {
             checkState(directory != null, "Directory not specified");
             checkState(tarRecovery != null, "TAR recovery strategy not specified");
@@ -369,6 +384,21 @@ public class TarFiles implements Closeable {
      */
     private final CounterStats segmentCount;
 
+    /**
+     * Maps the segments of the TAR readers to the index number of the TAR
+     * file containing them, or {@code null} if the segment location index is
+     * turned off. Its access is protected by {@link #lock}.
+     */
+    @Nullable
+    private final SegmentLocationIndex locations;
+
+    /**
+     * Maps the index numbers of the TAR files to the TAR readers in {@link
+     * #readers}. Only maintained together with {@link #locations}. Its access
+     * is protected by {@link #lock}.
+     */
+    private final Map<Integer, TarReader> readersByIndex = new HashMap<>();
+
     private static int getSegmentCount(TarReader reader) {
         return reader.getEntries().length;
     }
@@ -378,6 +408,7 @@ public class TarFiles implements Closeable {
         archiveManager = builder.buildArchiveManager();
         readerCount = builder.readerCountStats;
         segmentCount = builder.segmentCountStats;
+        locations = builder.segmentLocationIndex ? new SegmentLocationIndex() : null;
 
         Map<Integer, Map<Character, String>> map = collectFiles(archiveManager);
         Integer[] indices = map.keySet().toArray(new Integer[map.size()]);
@@ -397,6 +428,7 @@ public class TarFiles implements Closeable {
             }
             segmentCount.inc(getSegmentCount(r));
             readers = new Node(r, readers);
+            indexReader(r);
             readerCount.inc();
         }
         if (builder.readOnly) {
@@ -548,6 +580,9 @@ public class TarFiles implements Closeable {
                     return true;
                 }
             }
+            if (locations != null) {
+                return locate(msb, lsb) != null;
+            }
             head = readers;
         } finally {
             lock.readLock().unlock();
@@ -564,6 +599,7 @@ public class TarFiles implements Closeable {
     public Buffer readSegment(long msb, long lsb) {
         try {
             Node head;
+            TarReader located = null;
 
             lock.readLock().lock();
             try {
@@ -573,11 +609,18 @@ public class TarFiles implements Closeable {
                         return b;
                     }
                 }
+                if (locations != null) {
+                    located = locate(msb, lsb);
+                }
                 head = readers;
             } finally {
                 lock.readLock().unlock();
             }
 
+            if (locations != null) {
+                return located == null ? null : located.readEntry(msb, lsb);
+            }
+
             for (TarReader reader : iterable(head)) {
                 Buffer b = reader.readEntry(msb, lsb);
                 if (b != null) {
@@ -591,6 +634,132 @@ public class TarFiles implements Closeable {
         return null;
     }
 
+    private static int getIndex(TarReader reader) {
+        Matcher matcher = FILE_NAME_PATTERN.matcher(reader.getFileName());
+        checkState(matcher.matches(), "Unexpected TAR file name %s", reader.getFileName());
+        return Integer.parseInt(matcher.group(2));
+    }
+
+    /**
+     * Find the TAR reader containing a segment through the segment location
+     * index. This method must be invoked while holding {@link #lock} and
+     * only if the segment location index is turned on.
+     *
+     * @return the TAR reader containing the segment or {@code null} if none.
+     */
+    @Nullable
+    private TarReader locate(long msb, long lsb) {
+        int index = locations.get(msb, lsb);
+        return index < 0 ? null : readersByIndex.get(index);
+    }
+
+    /**
+     * Add the segments of a TAR reader to the segment location index. This
+     * method must be invoked while holding {@link #lock} in write mode.
+     */
+    private void indexReader(TarReader reader) {
+        if (locations == null) {
+            return;
+        }
+        int index = getIndex(reader);
+        readersByIndex.put(index, reader);
+        for (UUID id : reader.getUUIDs()) {
+            locations.put(id.getMostSignificantBits(), id.getLeastSignificantBits(), index);
+        }
+    }
+
+    /**
+     * Find the most recent TAR reader still containing each of the segments
+     * swept from the segment location index by a cleanup. Duplicated
+     * segments in older TAR files are only swept if rewriting those files is
+     * worth it, so they may outlive the segments they duplicate. This method
+     * only reads immutable lists of TAR readers and should be invoked
+     * without holding {@link #lock}.
+     *
+     * @param closeables the swept TAR readers.
+     * @param cleaned    the TAR readers replacing the swept ones.
+     * @param swept      the TAR readers remaining after the cleanup.
+     * @return the index numbers of the TAR readers still containing swept
+     * segments, by segment identifier.
+     */
+    private Map<UUID, Integer> locateDuplicates(Node closeables, Map<TarReader, TarReader> cleaned, Node swept) {
+        Map<UUID, Integer> duplicates = newHashMap();
+        if (locations == null) {
+            return duplicates;
+        }
+
+        Map<UUID, Integer> removed = newHashMap();
+        for (TarReader closeable : iterable(closeables)) {
+            int index = getIndex(closeable);
+            TarReader replacement = cleaned.get(closeable);
+            Set<UUID> retained = replacement == null ? emptySet() : replacement.getUUIDs();
+            for (UUID id : closeable.getUUIDs()) {
+                if (!retained.contains(id)) {
+                    removed.merge(id, index, Math::max);
+                }
+            }
+        }
+
+        // Only TAR readers older than the one a segment was swept from can
+        // replace its mapping. The TAR readers are in descending index
+        // order, so the first one containing a segment is the most recent.
+
+        for (TarReader reader : iterable(swept)) {
+            if (removed.isEmpty()) {
+                break;
+            }
+            int index = getIndex(reader);
+            Iterator<Entry<UUID, Integer>> it = removed.entrySet().iterator();
+            while (it.hasNext()) {
+                Entry<UUID, Integer> entry = it.next();
+                UUID id = entry.getKey();
+                if (entry.getValue() > index && reader.containsEntry(id.getMostSignificantBits(), id.getLeastSignificantBits())) {
+                    duplicates.put(id, index);
+                    it.remove();
+                }
+            }
+        }
+        return duplicates;
+    }
+
+    /**
+     * Remove the segments of a swept TAR reader from the segment location
+     * index. A segment still contained in an older TAR reader is mapped to
+     * that reader instead. This method must be invoked while holding {@link
+     * #lock} in write mode.
+     *
+     * @param reader      the swept TAR reader.
+     * @param replacement the TAR reader with the same index number, which
+     *                    replaces {@code reader}, or {@code null} if none.
+     * @param duplicates  the index numbers of the TAR readers still
+     *                    containing swept segments, as returned by {@link
+     *                    #locateDuplicates(Node, Map, Node)}.
+     */
+    private void unindexReader(TarReader reader, @Nullable TarReader replacement, Map<UUID, Integer> duplicates) {
+        if (locations == null) {
+            return;
+        }
+        int index = getIndex(reader);
+        Set<UUID> retained = emptySet();
+        if (replacement == null) {
+            readersByIndex.remove(index);
+        } else {
+            readersByIndex.put(index, replacement);
+            retained = replacement.getUUIDs();
+        }
+        for (UUID id : reader.getUUIDs()) {
+            long msb = id.getMostSignificantBits();
+            long lsb = id.getLeastSignificantBits();
+            if (retained.contains(id) || !locations.remove(msb, lsb, index)) {
+                continue;
+            }
+            Integer duplicate = duplicates.get(id);
+            if (duplicate != null) {
+                locations.put(msb, lsb, duplicate);
+            }
+        }
+    }
+
     public void writeSegment(UUID id, byte[] buffer, int offset, int length, GCGeneration generation, Set<UUID> references, Set<String> binaryReferences) throws IOException {
         lock.writeLock().lock();
         try {
@@ -637,6 +806,7 @@ public class TarFiles implements Closeable {
         }
         TarReader reader = TarReader.open(writer.getFileName(), archiveManager);
         readers = new Node(reader, readers);
+        indexReader(reader);
         segmentCount.inc(getSegmentCount(reader));
         readerCount.inc();
         writer = newWriter;
@@ -759,6 +929,8 @@ public class TarFiles implements Closeable {
 
             swept = reverse(swept);
 
+            Map<UUID, Integer> duplicates = locateDuplicates(closeables, cleaned, swept);
+
             // Following is a compare-and-set operation. We based the
             // computation of `swept` of a specific value of `readers`. If
             // `readers` is still the same as the one we started with, we just
@@ -769,6 +941,9 @@ public class TarFiles implements Closeable {
             try {
                 if (readers == head) {
                     readers = swept;
+                    for (TarReader closeable : iterable(closeables)) {
+                        unindexReader(closeable, cleaned.get(closeable), duplicates);
+                    }
                     break;
                 } else {
                     head = readers;
@@ -803,20 +978,42 @@ public class TarFiles implements Closeable {
     }
 
     public void collectBlobReferences(Consumer<String> collector, Predicate<GCGeneration> reclaim) throws IOException {
-        Node head;
+        for (TarReader reader : iterable(newWriterForCollection())) {
+            reader.collectBlobReferences(collector, reclaim);
+        }
+    }
+
+    /**
+     * Collect the binary references of all TAR files into {@code references}
+     * sorted and without duplicates.
+     * @param references  file receiving the references, one per line
+     * @param reclaim     predicate determining the generations whose
+     *                    references are to be skipped
+     * @param collector   collector loading the references in parallel
+     */
+    public void collectBlobReferences(
+            @NotNull File references,
+            @NotNull Predicate<GCGeneration> reclaim,
+            @NotNull BinaryReferencesCollector collector
+    ) throws IOException {
+        collector.collect(iterable(newWriterForCollection()), reclaim, references);
+    }
+
+    /**
+     * Start a new TAR writer so the binary references of all segments
+     * written so far are contained in the TAR readers.
+     * @return  the head of the list of TAR readers
+     */
+    private Node newWriterForCollection() throws IOException {
         lock.writeLock().lock();
         try {
             if (writer != null) {
                 internalNewWriter();
             }
-            head = readers;
+            return readers;
         } finally {
             lock.writeLock().unlock();
         }
-
-        for (TarReader reader : iterable(head)) {
-            reader.collectBlobReferences(collector, reclaim);
-        }
     }
 
     public Iterable<UUID> getSegmentIds() {
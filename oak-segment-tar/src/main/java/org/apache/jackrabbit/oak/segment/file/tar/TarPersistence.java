@@ -52,19 +52,55 @@ public class TarPersistence implements SegmentNodeStorePersistence {
 
     private final File journal;
 
+    private final boolean positionalReads;
+
+    private final int mappingWindowSize;
+
+    private final FileAccess.MappingBudget mappingBudget;
+
     public TarPersistence(File directory) {
         this(directory, new File(directory, JOURNAL_FILE_NAME));
     }
 
     public TarPersistence(File directory, File journal) {
+        this(directory, journal, false, 0, 0);
+    }
+
+    /**
+     * Create a new instance reading from the tar files with the given access
+     * options. These options complement the {@code memoryMapping} and {@code
+     * offHeapAccess} flags passed to {@link #createArchiveManager(boolean,
+     * boolean, IOMonitor, FileStoreMonitor, RemoteStoreMonitor)}.
+     *
+     * @param directory         the directory containing the tar files
+     * @param positionalReads   read from tar files that are not memory mapped
+     *                          without synchronizing concurrent readers
+     * @param mappingWindowSize if positive, tar files are memory mapped lazily
+     *                          in windows of this many bytes instead of being
+     *                          mapped as a whole
+     * @param softMaxMappedBytes soft maximum number of bytes of all windows
+     *                          in use. Reads that cannot be served by a
+     *                          mapped window fall back to positional reads.
+     *                          Evicted windows are only unmapped by the
+     *                          garbage collector and are not accounted for.
+     */
+    public TarPersistence(File directory, boolean positionalReads, int mappingWindowSize, long softMaxMappedBytes) {
+        this(directory, new File(directory, JOURNAL_FILE_NAME), positionalReads, mappingWindowSize, softMaxMappedBytes);
+    }
+
+    private TarPersistence(File directory, File journal, boolean positionalReads, int mappingWindowSize, long softMaxMappedBytes) {
         this.directory = directory;
         this.journal = journal;
+        this.positionalReads = positionalReads;
+        this.mappingWindowSize = mappingWindowSize;
+        this.mappingBudget = new FileAccess.MappingBudget(softMaxMappedBytes);
     }
 
     @Override
     public SegmentArchiveManager createArchiveManager(boolean memoryMapping, boolean offHeapAccess, IOMonitor ioMonitor,
                                                       FileStoreMonitor fileStoreMonitor, RemoteStoreMonitor remoteStoreMonitor) {
-        return new SegmentTarManager(directory, fileStoreMonitor, ioMonitor, memoryMapping, offHeapAccess);
+        return new SegmentTarManager(directory, fileStoreMonitor, ioMonitor, memoryMapping, offHeapAccess,
+                positionalReads, mappingWindowSize, mappingBudget);
     }
 
     @Override
@@ -38,6 +38,7 @@ import org.apache.jackrabbit.oak.api.Blob;
 import org.apache.jackrabbit.oak.api.PropertyState;
 import org.apache.jackrabbit.oak.api.Type;
 import org.apache.jackrabbit.oak.segment.SegmentBlob;
+import org.apache.jackrabbit.oak.segment.SegmentCache;
 import org.apache.jackrabbit.oak.segment.SegmentNodeStore;
 import org.apache.jackrabbit.oak.segment.SegmentNodeStoreBuilders;
 import org.apache.jackrabbit.oak.segment.SegmentNotFoundException;
@@ -347,6 +348,21 @@ public class ConsistencyChecker {
         Set<String> paths,
         boolean binaries,
         Integer revisionsCount
+    ) {
+        // Traversing the revisions must not evict the working set from scan
+        // resistant segment caches
+        return SegmentCache.withDoNotCache(() ->
+            doCheckConsistency(store, journal, head, checkpoints, paths, binaries, revisionsCount));
+    }
+
+    private ConsistencyCheckResult doCheckConsistency(
+        ReadOnlyFileStore store,
+        Iterator<JournalEntry> journal,
+        boolean head,
+        Set<String> checkpoints,
+        Set<String> paths,
+        boolean binaries,
+        Integer revisionsCount
     ) {
         List<PathToCheck> headPaths = new ArrayList<>();
         Map<String, List<PathToCheck>> checkpointPaths = new HashMap<>();
@@ -69,9 +69,9 @@ public class LockBasedScheduler implements Scheduler {
         @NotNull
         private final SegmentNodeStoreStats stats;
 
-        private boolean dispatchChanges = true;
+        boolean dispatchChanges = true;
 
-        private LockBasedSchedulerBuilder(@NotNull Revisions revisions, @NotNull SegmentReader reader,
+        LockBasedSchedulerBuilder(@NotNull Revisions revisions, @NotNull SegmentReader reader,
                 @NotNull SegmentNodeStoreStats stats) {
             this.revisions = revisions;
             this.reader = reader;
@@ -141,29 +141,29 @@ public class LockBasedScheduler implements Scheduler {
      * single local commit is allowed at a time. When such a commit is in
      * progress, no external updates will be seen.
      */
-    private final Semaphore commitSemaphore = new Semaphore(1, COMMIT_FAIR_LOCK);
+    final Semaphore commitSemaphore = new Semaphore(1, COMMIT_FAIR_LOCK);
 
     @NotNull
-    private final SegmentReader reader;
+    final SegmentReader reader;
 
     @NotNull
-    private final Revisions revisions;
+    final Revisions revisions;
 
     protected final AtomicReference<SegmentNodeState> head;
 
-    private final SegmentNodeStoreStats stats;
+    final SegmentNodeStoreStats stats;
     
-    private final Histogram commitTimeHistogram = new Histogram(new UniformReservoir());
+    final Histogram commitTimeHistogram = new Histogram(new UniformReservoir());
     
     private final Random random = new Random();
 
-    private final CommitSemaphoreLogging commitSemaphoreLogging = new CommitSemaphoreLogging();
+    final CommitSemaphoreLogging commitSemaphoreLogging = new CommitSemaphoreLogging();
 
     /*
      * Logging of commits that are either blocked for longer than COMMIT_WAIT_WARN_MILLIS
      * or on a commit that crossed the gc boundary. See OAK-8071.
      */
-    private class CommitSemaphoreLogging {
+    class CommitSemaphoreLogging {
 
         @Nullable
         private volatile Commit commit;
@@ -236,7 +236,7 @@ public class LockBasedScheduler implements Scheduler {
      * @param dispatchChanges
      *            if set to true the changes would also be dispatched
      */
-    private void refreshHead(boolean dispatchChanges) {
+    void refreshHead(boolean dispatchChanges) {
         SegmentNodeState state = reader.readHeadState(revisions);
         if (!state.getRecordId().equals(head.get().getRecordId())) {
             head.set(state);
@@ -287,7 +287,7 @@ public class LockBasedScheduler implements Scheduler {
         }
     }
 
-    private NodeState execute(Commit commit) throws CommitFailedException, InterruptedException {
+    NodeState execute(Commit commit) throws CommitFailedException, InterruptedException {
         // only do the merge if there are some changes to commit
         if (commit.hasChanges()) {
             long start = System.nanoTime();
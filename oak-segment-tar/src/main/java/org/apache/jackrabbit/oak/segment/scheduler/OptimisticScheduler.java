@@ -0,0 +1,321 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jackrabbit.oak.segment.scheduler;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.lang.Thread.currentThread;
+import static org.apache.jackrabbit.oak.commons.PathUtils.concat;
+import static org.apache.jackrabbit.oak.commons.PathUtils.denotesRoot;
+import static org.apache.jackrabbit.oak.commons.PathUtils.getParentPath;
+
+import java.io.Closeable;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.jackrabbit.oak.api.CommitFailedException;
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.segment.Revisions;
+import org.apache.jackrabbit.oak.segment.SegmentNodeState;
+import org.apache.jackrabbit.oak.segment.SegmentNodeStoreStats;
+import org.apache.jackrabbit.oak.segment.SegmentOverflowException;
+import org.apache.jackrabbit.oak.segment.SegmentReader;
+import org.apache.jackrabbit.oak.spi.commit.ChangeDispatcher;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.Observable;
+import org.apache.jackrabbit.oak.spi.commit.Observer;
+import org.apache.jackrabbit.oak.spi.state.DefaultNodeStateDiff;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link Scheduler} that allows multiple writers to run their commit hooks
+ * concurrently. Each commit is applied optimistically against the current
+ * head state outside of the commit lock. Only publishing the resulting state
+ * through {@link Revisions#setHead(org.apache.jackrabbit.oak.segment.RecordId,
+ * org.apache.jackrabbit.oak.segment.RecordId, Revisions.Option...)} is
+ * serialised. When the head moved in the meanwhile the commit is rebased onto
+ * the new head and its hooks are run again. Commits touching disjoint subtrees
+ * therefore rebase cleanly, while conflicting commits fail in the rebase just
+ * like they would with the {@link LockBasedScheduler}.
+ * <p>
+ * A commit is only rebased when the concurrent changes are disjoint from its
+ * own changes, including the changes of its hooks. Otherwise and after a
+ * configurable number of failed attempts a commit falls back to the
+ * pessimistic, fully serialised execution of the {@code LockBasedScheduler}
+ * so that it is guaranteed to make progress under high contention.
+ */
+public class OptimisticScheduler extends LockBasedScheduler {
+
+    public static class OptimisticSchedulerBuilder extends LockBasedSchedulerBuilder {
+        private int maxAttempts = MAX_ATTEMPTS;
+
+        private OptimisticSchedulerBuilder(@NotNull Revisions revisions, @NotNull SegmentReader reader,
+                @NotNull SegmentNodeStoreStats stats) {
+            super(revisions, reader, stats);
+        }
+
+        @NotNull
+        @Override
+        public OptimisticSchedulerBuilder dispatchChanges(boolean dispatchChanges) {
+            super.dispatchChanges(dispatchChanges);
+            return this;
+        }
+
+        /**
+         * Number of optimistic attempts before a commit falls back to
+         * executing while holding the commit lock.
+         * @param maxAttempts  number of attempts, must be non negative
+         * @return this instance
+         */
+        @NotNull
+        public OptimisticSchedulerBuilder withMaxAttempts(int maxAttempts) {
+            checkArgument(maxAttempts >= 0);
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        @NotNull
+        @Override
+        public OptimisticScheduler build() {
+            if (dispatchChanges) {
+                return new ObservableOptimisticScheduler(this);
+            } else {
+                return new OptimisticScheduler(this);
+            }
+        }
+    }
+
+    public static OptimisticSchedulerBuilder builder(@NotNull Revisions revisions, @NotNull SegmentReader reader,
+            @NotNull SegmentNodeStoreStats stats) {
+        return new OptimisticSchedulerBuilder(checkNotNull(revisions), checkNotNull(reader), checkNotNull(stats));
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(OptimisticScheduler.class);
+
+    /**
+     * Default number of optimistic attempts of a commit before falling back
+     * to the pessimistic execution.
+     */
+    private static final int MAX_ATTEMPTS = Integer
+            .getInteger("oak.scheduler.optimistic.maxAttempts", 5);
+
+    /**
+     * Maximum number of changed paths of a commit compared against the
+     * concurrent changes. Larger commits are considered to conflict.
+     */
+    private static final int MAX_CHANGED_PATHS = Integer
+            .getInteger("oak.scheduler.optimistic.maxChangedPaths", 1000);
+
+    private final int maxAttempts;
+
+    public OptimisticScheduler(OptimisticSchedulerBuilder builder) {
+        super(builder);
+        this.maxAttempts = builder.maxAttempts;
+    }
+
+    @Override
+    public NodeState schedule(@NotNull Commit commit, SchedulerOption... schedulingOptions)
+            throws CommitFailedException {
+        try {
+            long queuedTime = System.nanoTime();
+            stats.onCommitQueued(currentThread(), commit::getGCGeneration);
+
+            long beforeCommitTime = System.nanoTime();
+            SegmentNodeState merged = commit.hasChanges()
+                ? executeOptimistically(commit, queuedTime)
+                : null;
+
+            if (merged == null) {
+                commitSemaphoreLogging.warnOnBlockingCommit();
+                commitSemaphore.acquire();
+                commitSemaphoreLogging.commitStarted(commit);
+                try {
+                    stats.onCommitDequeued(currentThread(), System.nanoTime() - queuedTime);
+                    beforeCommitTime = System.nanoTime();
+                    merged = (SegmentNodeState) execute(commit);
+                } finally {
+                    commitSemaphoreLogging.commitEnded();
+                    commitSemaphore.release();
+                }
+            }
+            commit.applied(merged);
+
+            long afterCommitTime = System.nanoTime();
+            commitTimeHistogram.update(afterCommitTime - beforeCommitTime);
+            stats.onCommit(currentThread(), afterCommitTime - beforeCommitTime);
+
+            return merged;
+        } catch (InterruptedException e) {
+            currentThread().interrupt();
+            throw new CommitFailedException("Segment", 2, "Merge interrupted", e);
+        } catch (SegmentOverflowException e) {
+            throw new CommitFailedException("Segment", 3, "Merge failed", e);
+        }
+    }
+
+    /**
+     * Apply {@code commit} to the current head state without holding the
+     * commit lock and try to publish the result.
+     *
+     * @return the merged root state or {@code null} if the commit could not
+     *         be published within {@link #maxAttempts} attempts.
+     */
+    @Nullable
+    private SegmentNodeState executeOptimistically(Commit commit, long queuedTime)
+            throws CommitFailedException, InterruptedException {
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            SegmentNodeState before = reader.readHeadState(revisions);
+            SegmentNodeState after = commit.apply(before);
+
+            commitSemaphore.acquire();
+            try {
+                // Dispatch external changes before publishing this commit and
+                // make sure no other commit got in between
+                refreshHead(true);
+                if (head.get().getRecordId().equals(before.getRecordId())
+                        && revisions.setHead(before.getRecordId(), after.getRecordId())) {
+                    stats.onCommitDequeued(currentThread(), System.nanoTime() - queuedTime);
+                    head.set(after);
+                    contentChanged(after.getChildNode(ROOT), commit.info());
+                    return (SegmentNodeState) after.getChildNode(ROOT);
+                }
+            } finally {
+                commitSemaphore.release();
+            }
+
+            if (overlaps(before, after, head.get())) {
+                log.debug("Scheduler detected conflicting concurrent commits. Falling back to " +
+                        "serialised execution after {} attempts", attempt);
+                return null;
+            }
+            log.debug("Scheduler detected concurrent commits. Rebasing after {} attempts", attempt);
+        }
+
+        log.debug("Commit could not be applied optimistically after {} attempts. Falling back to " +
+                "serialised execution", maxAttempts);
+        return null;
+    }
+
+    /**
+     * Check whether the changes from {@code base} to {@code ours} and to
+     * {@code theirs} overlap, i.e. whether a node changed by one of them is
+     * the same as, an ancestor of or a descendant of a node changed by the
+     * other one. Added and removed nodes count as changes of the whole
+     * subtree.
+     *
+     * @return {@code true} if the changes overlap or are too many to compare.
+     */
+    static boolean overlaps(NodeState base, NodeState ours, NodeState theirs) {
+        Set<String> ourPaths = new HashSet<>();
+        Set<String> theirPaths = new HashSet<>();
+        if (!ours.compareAgainstBaseState(base, new ChangedPaths(ourPaths, "/"))
+                || !theirs.compareAgainstBaseState(base, new ChangedPaths(theirPaths, "/"))) {
+            return true;
+        }
+        return containsAncestorOrSelf(ourPaths, theirPaths) || containsAncestorOrSelf(theirPaths, ourPaths);
+    }
+
+    private static boolean containsAncestorOrSelf(Set<String> ancestors, Set<String> paths) {
+        for (String path : paths) {
+            while (true) {
+                if (ancestors.contains(path)) {
+                    return true;
+                }
+                if (denotesRoot(path)) {
+                    break;
+                }
+                path = getParentPath(path);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Collects the paths of the nodes whose properties changed and of the
+     * added and removed nodes. Aborts once more than {@link
+     * #MAX_CHANGED_PATHS} paths are collected.
+     */
+    private static class ChangedPaths extends DefaultNodeStateDiff {
+        private final Set<String> paths;
+
+        private final String path;
+
+        ChangedPaths(Set<String> paths, String path) {
+            this.paths = paths;
+            this.path = path;
+        }
+
+        private boolean add(String path) {
+            paths.add(path);
+            return paths.size() <= MAX_CHANGED_PATHS;
+        }
+
+        @Override
+        public boolean propertyAdded(PropertyState after) {
+            return add(path);
+        }
+
+        @Override
+        public boolean propertyChanged(PropertyState before, PropertyState after) {
+            return add(path);
+        }
+
+        @Override
+        public boolean propertyDeleted(PropertyState before) {
+            return add(path);
+        }
+
+        @Override
+        public boolean childNodeAdded(String name, NodeState after) {
+            return add(concat(path, name));
+        }
+
+        @Override
+        public boolean childNodeChanged(String name, NodeState before, NodeState after) {
+            return after.compareAgainstBaseState(before, new ChangedPaths(paths, concat(path, name)));
+        }
+
+        @Override
+        public boolean childNodeDeleted(String name, NodeState before) {
+            return add(concat(path, name));
+        }
+    }
+
+    private static class ObservableOptimisticScheduler extends OptimisticScheduler implements Observable {
+        private final ChangeDispatcher changeDispatcher;
+
+        public ObservableOptimisticScheduler(OptimisticSchedulerBuilder builder) {
+            super(builder);
+            this.changeDispatcher = new ChangeDispatcher(head.get().getChildNode(ROOT));
+        }
+
+        @Override
+        protected void contentChanged(NodeState root, CommitInfo info) {
+            changeDispatcher.contentChanged(root, info);
+        }
+
+        @Override
+        public Closeable addObserver(Observer observer) {
+            return changeDispatcher.addObserver(observer);
+        }
+    }
+}
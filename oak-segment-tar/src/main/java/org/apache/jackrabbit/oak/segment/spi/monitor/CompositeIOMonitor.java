@@ -76,6 +76,12 @@ public class CompositeIOMonitor implements IOMonitor {
            ioMonitor.afterSegmentRead(file, msb, lsb, length, elapsed));
     }
 
+    @Override
+    public void afterSegmentRead(File file, long msb, long lsb, int length, long elapsed, String accessMode) {
+        ioMonitors.forEach(ioMonitor ->
+           ioMonitor.afterSegmentRead(file, msb, lsb, length, elapsed, accessMode));
+    }
+
     @Override
     public void beforeSegmentWrite(File file, long msb, long lsb, int length) {
         ioMonitors.forEach(ioMonitor ->
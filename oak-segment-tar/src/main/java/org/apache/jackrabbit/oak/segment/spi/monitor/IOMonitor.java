@@ -47,6 +47,24 @@ public interface IOMonitor {
      */
     void afterSegmentRead(File file, long msb, long lsb, int length, long elapsed);
 
+    /**
+     * Called after a segment is read from the file system, when the caller
+     * is able to tell how the segment was accessed (e.g. memory mapped or
+     * through positional reads). This is called only in case of successful
+     * operations. The default implementation delegates to {@link
+     * #afterSegmentRead(File, long, long, int, long)}.
+     *
+     * @param file       File containing the segment.
+     * @param msb        Most significant bits of the segment ID.
+     * @param lsb        Least significant bits of the segment ID.
+     * @param length     Size of the segment.
+     * @param elapsed    Time spent by the read operation, in nanoseconds.
+     * @param accessMode Name of the mode used to access the file.
+     */
+    default void afterSegmentRead(File file, long msb, long lsb, int length, long elapsed, String accessMode) {
+        afterSegmentRead(file, msb, lsb, length, elapsed);
+    }
+
     /**
      * Called before a segment is written to the file system.
      *
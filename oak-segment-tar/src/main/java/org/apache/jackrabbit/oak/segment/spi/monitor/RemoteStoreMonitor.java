@@ -28,4 +28,31 @@ public interface RemoteStoreMonitor {
 
     public void requestDuration(long duration, TimeUnit timeUnit);
 
+    /**
+     * Called before a segment is added to the queue of segments waiting to
+     * be uploaded to the remote store.
+     *
+     * @param size Number of segments in the queue.
+     */
+    default void segmentUploadQueueSize(int size) {
+        // Intentionally left blank
+    }
+
+    /**
+     * Called after segments have been uploaded to the remote store.
+     *
+     * @param duration Time spent by the upload.
+     * @param timeUnit Unit of {@code duration}.
+     */
+    default void segmentUploadDuration(long duration, TimeUnit timeUnit) {
+        // Intentionally left blank
+    }
+
+    /**
+     * Called after uploading segments to the remote store failed.
+     */
+    default void segmentUploadError() {
+        // Intentionally left blank
+    }
+
 }
@@ -19,6 +19,11 @@ package org.apache.jackrabbit.oak.segment.standby.client;
 
 import java.io.File;
 import java.io.InputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.TimeUnit;
@@ -171,6 +176,29 @@ class StandbyClient implements AutoCloseable {
         return response.getSegmentData();
     }
 
+    /**
+     * Sends a request for a segment without waiting for the response. The
+     * response has to be collected later via {@link #pollSegment()}. This
+     * allows to keep more than one request in flight on the channel.
+     *
+     * @param segmentId the identifier of the segment to request.
+     */
+    void requestSegment(String segmentId) {
+        channel.writeAndFlush(new GetSegmentRequest(clientId, segmentId));
+    }
+
+    /**
+     * Waits for the next segment response previously requested via {@link
+     * #requestSegment(String)}.
+     *
+     * @return the next segment response, or {@code null} if no response was
+     * received within the read timeout.
+     */
+    @Nullable
+    GetSegmentResponse pollSegment() throws InterruptedException {
+        return segmentQueue.poll(readTimeoutMs, TimeUnit.MILLISECONDS);
+    }
+
     @Nullable
     InputStream getBlob(String blobId) throws InterruptedException {
         channel.writeAndFlush(new GetBlobRequest(clientId, blobId));
@@ -197,6 +225,44 @@ class StandbyClient implements AutoCloseable {
         return response.getReferences();
     }
 
+    /**
+     * Requests the references of multiple segments at once. All the requests
+     * are written to the channel before waiting for the first response, so
+     * that a batch costs a single network round trip.
+     *
+     * @param segmentIds the identifiers of the segments whose references
+     *                   should be fetched.
+     * @return a map from segment identifiers to their references. Segments
+     * whose references were not received within the read timeout are not
+     * contained in the map.
+     */
+    Map<String, Iterable<String>> getReferences(Collection<String> segmentIds) throws InterruptedException {
+        for (String segmentId : segmentIds) {
+            channel.write(new GetReferencesRequest(clientId, segmentId));
+        }
+
+        channel.flush();
+
+        Set<String> pending = new HashSet<>(segmentIds);
+        Map<String, Iterable<String>> references = new HashMap<>();
+
+        while (!pending.isEmpty()) {
+            GetReferencesResponse response = referencesQueue.poll(readTimeoutMs, TimeUnit.MILLISECONDS);
+
+            if (response == null) {
+                break;
+            }
+
+            if (pending.remove(response.getSegmentId())) {
+                references.put(response.getSegmentId(), response.getReferences());
+            } else {
+                log.debug("Discarding unexpected references of segment {}", response.getSegmentId());
+            }
+        }
+
+        return references;
+    }
+
     public int getReadTimeoutMs() {
         return readTimeoutMs;
     }
@@ -47,6 +47,15 @@ public final class StandbyClientSync implements ClientStandbyStatusMBean, Runnab
 
     public static final String CLIENT_ID_PROPERTY_NAME = "standbyID";
 
+    /**
+     * Maximum number of segment and references requests the client keeps in
+     * flight while catching up with the primary. The default of {@code 1}
+     * fetches one segment per round trip.
+     */
+    public static final String PIPELINE_WINDOW_PROPERTY_NAME = "oak.standby.client.pipelineWindow";
+
+    private static final int DEFAULT_PIPELINE_WINDOW = Integer.getInteger(PIPELINE_WINDOW_PROPERTY_NAME, 1);
+
     private static final Logger log = LoggerFactory.getLogger(StandbyClientSync.class);
 
     private static final AtomicInteger standbyRunCounter = new AtomicInteger();
@@ -96,6 +105,10 @@ public final class StandbyClientSync implements ClientStandbyStatusMBean, Runnab
     }
 
     public StandbyClientSync(String host, int port, FileStore store, boolean secure, int readTimeoutMs, boolean autoClean, File spoolFolder) {
+        this(host, port, store, secure, readTimeoutMs, autoClean, spoolFolder, DEFAULT_PIPELINE_WINDOW);
+    }
+
+    public StandbyClientSync(String host, int port, FileStore store, boolean secure, int readTimeoutMs, boolean autoClean, File spoolFolder, int pipelineWindow) {
         this.state = STATUS_INITIALIZING;
         this.lastSuccessfulRequest = -1;
         this.syncStartTimestamp = -1;
@@ -109,7 +122,7 @@ public final class StandbyClientSync implements ClientStandbyStatusMBean, Runnab
         this.fileStore = store;
         this.observer = new CommunicationObserver(clientId());
         this.group = new NioEventLoopGroup(0, new NamedThreadFactory("standby"));
-        this.execution = new StandbyClientSyncExecution(fileStore, () -> running);
+        this.execution = new StandbyClientSyncExecution(fileStore, () -> running, pipelineWindow);
         this.spoolFolder = spoolFolder;
         try {
             ManagementFactory.getPlatformMBeanServer().registerMBean(new StandardMBean(this, ClientStandbyStatusMBean.class), new ObjectName(this.getMBeanName()));
@@ -17,14 +17,21 @@
 
 package org.apache.jackrabbit.oak.segment.standby.client;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
 import com.google.common.base.Stopwatch;
 import com.google.common.base.Supplier;
+import com.google.common.collect.Lists;
 import org.apache.jackrabbit.oak.segment.RecordId;
 import org.apache.jackrabbit.oak.segment.SegmentId;
 import org.apache.jackrabbit.oak.segment.SegmentIdProvider;
@@ -32,6 +39,7 @@ import org.apache.jackrabbit.oak.segment.SegmentNodeBuilder;
 import org.apache.jackrabbit.oak.segment.SegmentNodeState;
 import org.apache.jackrabbit.oak.segment.SegmentNotFoundException;
 import org.apache.jackrabbit.oak.segment.file.FileStore;
+import org.apache.jackrabbit.oak.segment.standby.codec.GetSegmentResponse;
 import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -52,10 +60,22 @@ class StandbyClientSyncExecution {
 
     private final Supplier<Boolean> running;
 
+    /**
+     * Maximum number of requests kept in flight when fetching segments and
+     * their references from the primary.
+     */
+    private final int pipelineWindow;
+
     StandbyClientSyncExecution(FileStore store, Supplier<Boolean> running) {
+        this(store, running, 1);
+    }
+
+    StandbyClientSyncExecution(FileStore store, Supplier<Boolean> running, int pipelineWindow) {
+        checkArgument(pipelineWindow > 0, "pipelineWindow must be positive");
         this.store = store;
         this.idProvider = store.getSegmentIdProvider();
         this.running = running;
+        this.pipelineWindow = pipelineWindow;
     }
 
     void execute(StandbyClient client) throws Exception {
@@ -105,25 +125,76 @@ class StandbyClientSyncExecution {
     }
 
     private void copySegmentHierarchyFromPrimary(StandbyClient client, UUID segmentId) throws Exception {
+        Map<UUID, List<UUID>> graph = readReferenceGraph(client, segmentId);
+
         Set<UUID> visited = new HashSet<>();
         List<UUID> bulk = new LinkedList<>();
         List<UUID> data = new LinkedList<>();
 
-        deriveTopologicalOrder(client, segmentId, visited, data, bulk);
+        deriveTopologicalOrder(graph, segmentId, visited, data, bulk);
+
+        copySegmentsFromPrimary(client, bulk, "bulk");
+        copySegmentsFromPrimary(client, data, "data");
+    }
 
-        for (UUID id : bulk) {
-            log.info("Copying bulk segment {} from primary", id);
-            copySegmentFromPrimary(client, id);
+    /**
+     * Traverses the graph of the segments missing locally, starting from
+     * {@code root}. Every level of the graph is explored by requesting the
+     * references of up to {@link #pipelineWindow} segments in a single
+     * round trip.
+     *
+     * @return a map from every missing data segment to the missing segments
+     * it references.
+     */
+    private Map<UUID, List<UUID>> readReferenceGraph(StandbyClient client, UUID root) throws Exception {
+        Map<UUID, List<UUID>> graph = new HashMap<>();
+        Set<UUID> visited = new HashSet<>();
+        List<UUID> pending = new ArrayList<>();
+
+        visited.add(root);
+
+        if (isDataSegment(root) && !isLocal(root)) {
+            pending.add(root);
         }
 
-        for (UUID id : data) {
-            log.info("Copying data segment {} from primary", id);
-            copySegmentFromPrimary(client, id);
+        while (!pending.isEmpty()) {
+            List<UUID> next = new ArrayList<>();
+
+            for (List<UUID> batch : Lists.partition(pending, pipelineWindow)) {
+                Map<String, Iterable<String>> references = readReferences(client, batch);
+
+                for (UUID id : batch) {
+                    log.debug("Inspecting segment {}", id);
+
+                    List<UUID> missing = new ArrayList<>();
+
+                    for (String s : references.get(id.toString())) {
+                        UUID referenced = UUID.fromString(s);
+                        log.debug("Found reference from {} to {}", id, referenced);
+
+                        if (isLocal(referenced)) {
+                            continue;
+                        }
+
+                        missing.add(referenced);
+
+                        if (visited.add(referenced) && isDataSegment(referenced)) {
+                            next.add(referenced);
+                        }
+                    }
+
+                    graph.put(id, missing);
+                }
+            }
+
+            pending = next;
         }
+
+        return graph;
     }
 
-    private void deriveTopologicalOrder(StandbyClient client, UUID id, Set<UUID> visited, List<UUID> data, List<UUID> bulk) throws Exception {
-        if (visited.contains(id) || isLocal(id)) {
+    private static void deriveTopologicalOrder(Map<UUID, List<UUID>> graph, UUID id, Set<UUID> visited, List<UUID> data, List<UUID> bulk) {
+        if (visited.contains(id)) {
             return;
         }
 
@@ -131,32 +202,46 @@ class StandbyClientSyncExecution {
         // to add each data segment to the data list only
         // after all its references were already added
 
-        log.debug("Inspecting segment {}", id);
         visited.add(id);
 
-        if (SegmentId.isDataSegmentId(id.getLeastSignificantBits())) {
-            for (String s : readReferences(client, id)) {
-                UUID referenced = UUID.fromString(s);
-                log.debug("Found reference from {} to {}", id, referenced);
-                deriveTopologicalOrder(client, referenced, visited, data, bulk);
+        List<UUID> references = graph.get(id);
+
+        if (references == null) {
+            if (!isDataSegment(id)) {
+                bulk.add(id);
             }
+            return;
+        }
 
-            data.add(id);
-        } else {
-            bulk.add(id);
+        for (UUID referenced : references) {
+            deriveTopologicalOrder(graph, referenced, visited, data, bulk);
         }
+
+        data.add(id);
     }
 
-    private Iterable<String> readReferences(StandbyClient client, UUID id) throws InterruptedException {
-        Iterable<String> references = client.getReferences(id.toString());
+    private Map<String, Iterable<String>> readReferences(StandbyClient client, List<UUID> ids) throws InterruptedException {
+        List<String> segmentIds = new ArrayList<>(ids.size());
 
-        if (references == null) {
-            throw new IllegalStateException(String.format("Unable to read references of segment %s from primary", id));
+        for (UUID id : ids) {
+            segmentIds.add(id.toString());
+        }
+
+        Map<String, Iterable<String>> references = client.getReferences(segmentIds);
+
+        for (String segmentId : segmentIds) {
+            if (!references.containsKey(segmentId)) {
+                throw new IllegalStateException(String.format("Unable to read references of segment %s from primary", segmentId));
+            }
         }
 
         return references;
     }
 
+    private static boolean isDataSegment(UUID id) {
+        return SegmentId.isDataSegmentId(id.getLeastSignificantBits());
+    }
+
     private boolean isLocal(UUID id) {
         return store.containsSegment(idProvider.newSegmentId(
                 id.getMostSignificantBits(),
@@ -164,13 +249,55 @@ class StandbyClientSyncExecution {
         ));
     }
 
-    private void copySegmentFromPrimary(StandbyClient client, UUID uuid) throws Exception {
-        byte[] data = client.getSegment(uuid.toString());
+    /**
+     * Copies the given segments from the primary in the order they are
+     * listed. Up to {@link #pipelineWindow} requests are kept in flight, so
+     * that the next segments are transferred while the current one is
+     * written to the local store.
+     */
+    private void copySegmentsFromPrimary(StandbyClient client, List<UUID> ids, String type) throws Exception {
+        Iterator<UUID> requests = ids.iterator();
+
+        for (int i = 0; i < pipelineWindow && requests.hasNext(); i++) {
+            client.requestSegment(requests.next().toString());
+        }
+
+        Map<String, byte[]> received = new HashMap<>();
+
+        for (UUID id : ids) {
+            byte[] data = readSegment(client, id, received);
+
+            if (requests.hasNext()) {
+                client.requestSegment(requests.next().toString());
+            }
+
+            log.info("Copying {} segment {} from primary", type, id);
+            writeSegment(id, data);
+        }
+    }
+
+    private static byte[] readSegment(StandbyClient client, UUID id, Map<String, byte[]> received) throws InterruptedException {
+        String segmentId = id.toString();
+        byte[] data = received.remove(segmentId);
+
+        while (data == null) {
+            GetSegmentResponse response = client.pollSegment();
 
-        if (data == null) {
-            throw new IllegalStateException("Unable to read segment " + uuid);
+            if (response == null) {
+                throw new IllegalStateException("Unable to read segment " + id);
+            }
+
+            if (segmentId.equals(response.getSegmentId())) {
+                data = response.getSegmentData();
+            } else {
+                received.put(response.getSegmentId(), response.getSegmentData());
+            }
         }
 
+        return data;
+    }
+
+    private void writeSegment(UUID uuid, byte[] data) throws Exception {
         long msb = uuid.getMostSignificantBits();
         long lsb = uuid.getLeastSignificantBits();
         SegmentId segmentId = idProvider.newSegmentId(msb, lsb);
@@ -178,4 +305,3 @@ class StandbyClientSyncExecution {
     }
 
 }
-
@@ -31,11 +31,17 @@ import io.netty.handler.stream.ChunkedInput;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Streams a blob in chunks. The content of each chunk is read from the blob
+ * stream straight into a pooled buffer, which is sent together with a
+ * separate buffer for the header of the chunk without further copies.
+ */
 public class ChunkedBlobStream implements ChunkedInput<ByteBuf> {
     private static final Logger log = LoggerFactory.getLogger(ChunkedBlobStream.class);
 
     private final String clientId;
     private final String blobId;
+    private final byte[] blobIdBytes;
     private final long length;
     private final PushbackInputStream in;
     private final int chunkSize;
@@ -59,6 +65,7 @@ public class ChunkedBlobStream implements ChunkedInput<ByteBuf> {
     public ChunkedBlobStream(String clientId, String blobId, long length, InputStream in, int chunkSize) {
         this.clientId = clientId;
         this.blobId = blobId;
+        this.blobIdBytes = blobId.getBytes();
         this.length = length;
 
         if (in == null) {
@@ -117,48 +124,48 @@ public class ChunkedBlobStream implements ChunkedInput<ByteBuf> {
         }
 
         boolean release = true;
-        ByteBuf decorated = allocator.buffer();
+        ByteBuf buffer = allocator.heapBuffer(chunkSize, chunkSize);
 
         try {
-            ByteBuf buffer = allocator.buffer();
             int written = buffer.writeBytes(in, chunkSize);
-            decorated = decorateRawBuffer(allocator, buffer);
+            ByteBuf decorated = decorateRawBuffer(allocator, buffer);
+            release = false;
 
             offset += written;
             log.debug("Sending chunk {}/{} of size {} from blob {} to client {}", roundDiv(offset, chunkSize),
                     roundDiv(length, chunkSize), written, blobId, clientId);
 
-            release = false;
             return decorated;
         } finally {
             if (release) {
-                decorated.release();
+                buffer.release();
             }
         }
     }
 
+    /**
+     * Prepends the header of a blob chunk to {@code buffer} without copying
+     * its content. The returned buffer takes ownership of {@code buffer}.
+     */
     private ByteBuf decorateRawBuffer(ByteBufAllocator allocator, ByteBuf buffer) {
-        byte[] data = new byte[buffer.readableBytes()];
-        buffer.readBytes(data);
-        buffer.release();
-
-        byte mask = createMask(data.length);
+        int dataLength = buffer.readableBytes();
+        byte mask = createMask(dataLength);
         Hasher hasher = Hashing.murmur3_32().newHasher();
-        long hash = hasher.putByte(mask).putLong(length).putBytes(data).hash().padToLong();
-
-        byte[] blobIdBytes = blobId.getBytes();
-
-        ByteBuf out = allocator.buffer();
-        out.writeInt(1 + 1 + 8 + 4 + blobIdBytes.length + 8 + data.length);
-        out.writeByte(Messages.HEADER_BLOB);
-        out.writeByte(mask);
-        out.writeLong(length);
-        out.writeInt(blobIdBytes.length);
-        out.writeBytes(blobIdBytes);
-        out.writeLong(hash);
-        out.writeBytes(data);
-
-        return out;
+        hasher.putByte(mask).putLong(length);
+        hasher.putBytes(buffer.array(), buffer.arrayOffset() + buffer.readerIndex(), dataLength);
+        long hash = hasher.hash().padToLong();
+
+        int headerLength = 4 + 1 + 1 + 8 + 4 + blobIdBytes.length + 8;
+        ByteBuf header = allocator.buffer(headerLength, headerLength);
+        header.writeInt(headerLength - 4 + dataLength);
+        header.writeByte(Messages.HEADER_BLOB);
+        header.writeByte(mask);
+        header.writeLong(length);
+        header.writeInt(blobIdBytes.length);
+        header.writeBytes(blobIdBytes);
+        header.writeLong(hash);
+
+        return allocator.compositeBuffer(2).addComponents(true, header, buffer);
     }
 
     private byte createMask(int bytesRead) {
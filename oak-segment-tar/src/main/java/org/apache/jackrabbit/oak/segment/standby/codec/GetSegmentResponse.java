@@ -17,20 +17,36 @@
 
 package org.apache.jackrabbit.oak.segment.standby.codec;
 
+import org.apache.jackrabbit.oak.commons.Buffer;
+
 public class GetSegmentResponse {
 
     private final String clientId;
 
     private final String segmentId;
 
-    private final byte[] segmentData;
+    private final Buffer segmentBuffer;
+
+    private byte[] segmentData;
 
     public GetSegmentResponse(String clientId, String segmentId, byte[] segmentData) {
         this.clientId = clientId;
         this.segmentId = segmentId;
+        this.segmentBuffer = Buffer.wrap(segmentData);
         this.segmentData = segmentData;
     }
 
+    /**
+     * Create a response serving the content of {@code segmentBuffer}. The
+     * content is not copied: it is written to the channel straight from
+     * {@code segmentBuffer}, which must not be modified afterwards.
+     */
+    public GetSegmentResponse(String clientId, String segmentId, Buffer segmentBuffer) {
+        this.clientId = clientId;
+        this.segmentId = segmentId;
+        this.segmentBuffer = segmentBuffer;
+    }
+
     public String getClientId() {
         return clientId;
     }
@@ -39,8 +55,29 @@ public class GetSegmentResponse {
         return segmentId;
     }
 
+    /**
+     * The content of the segment. For responses created from a {@link Buffer}
+     * this copies the content on first access.
+     */
     public byte[] getSegmentData() {
+        if (segmentData == null) {
+            byte[] data = new byte[segmentBuffer.remaining()];
+            segmentBuffer.duplicate().get(data);
+            segmentData = data;
+        }
         return segmentData;
     }
 
+    /**
+     * A view of the content of the segment that shares the content of this
+     * response but has its own position and limit.
+     */
+    public Buffer getSegmentBuffer() {
+        return segmentBuffer.duplicate();
+    }
+
+    public int getSegmentLength() {
+        return segmentBuffer.remaining();
+    }
+
 }
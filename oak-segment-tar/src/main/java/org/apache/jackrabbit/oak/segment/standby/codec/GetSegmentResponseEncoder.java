@@ -17,20 +17,27 @@
 
 package org.apache.jackrabbit.oak.segment.standby.codec;
 
+import java.util.List;
 import java.util.UUID;
 
 import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.MessageToByteEncoder;
+import io.netty.handler.codec.MessageToMessageEncoder;
+import org.apache.jackrabbit.oak.commons.Buffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Encodes a 'get segment' response.
+ * <p>
+ * The content of the segment is not copied. The encoded message is a
+ * composite of a small buffer holding the headers and of a read-only view of
+ * the buffer of the response, which is hashed in place.
  */
-public class GetSegmentResponseEncoder extends MessageToByteEncoder<GetSegmentResponse> {
+public class GetSegmentResponseEncoder extends MessageToMessageEncoder<GetSegmentResponse> {
 
     private static final Logger log = LoggerFactory.getLogger(GetSegmentResponseEncoder.class);
 
@@ -38,25 +45,50 @@ public class GetSegmentResponseEncoder extends MessageToByteEncoder<GetSegmentRe
 
     private static final int EXTRA_HEADERS_WO_SIZE = EXTRA_HEADERS_LEN - 4;
 
+    private static final int HASH_CHUNK_SIZE = 8192;
+
+    /**
+     * Scratch space for hashing content that is not backed by an accessible
+     * array. Encoders are not shared between channels, so this is confined to
+     * the event loop of a single channel.
+     */
+    private byte[] hashChunk;
+
     @Override
-    protected void encode(ChannelHandlerContext ctx, GetSegmentResponse msg, ByteBuf out) throws Exception {
+    protected void encode(ChannelHandlerContext ctx, GetSegmentResponse msg, List<Object> out) throws Exception {
         log.debug("Sending segment {} to client {}", msg.getSegmentId(), msg.getClientId());
-        encode(msg.getSegmentId(), msg.getSegmentData(), out);
+        ByteBuf data = Unpooled.wrappedBuffer(msg.getSegmentBuffer().toByteBuffer());
+        ByteBuf headers = ctx.alloc().buffer(EXTRA_HEADERS_LEN, EXTRA_HEADERS_LEN);
+        encode(msg.getSegmentId(), data, headers);
+        out.add(Unpooled.wrappedBuffer(headers, data));
     }
 
-    private static void encode(String segmentId, byte[] data, ByteBuf out) {
+    private void encode(String segmentId, ByteBuf data, ByteBuf out) {
         UUID id = UUID.fromString(segmentId);
 
-        Hasher hasher = Hashing.murmur3_32().newHasher();
-        long hash = hasher.putBytes(data).hash().padToLong();
-
-        int len = data.length + EXTRA_HEADERS_WO_SIZE;
+        int len = data.readableBytes() + EXTRA_HEADERS_WO_SIZE;
         out.writeInt(len);
         out.writeByte(Messages.HEADER_SEGMENT);
         out.writeLong(id.getMostSignificantBits());
         out.writeLong(id.getLeastSignificantBits());
-        out.writeLong(hash);
-        out.writeBytes(data);
+        out.writeLong(hash(data, data.readerIndex(), data.readableBytes()));
+    }
+
+    private long hash(ByteBuf buffer, int index, int length) {
+        Hasher hasher = Hashing.murmur3_32().newHasher();
+        if (buffer.hasArray()) {
+            hasher.putBytes(buffer.array(), buffer.arrayOffset() + index, length);
+        } else {
+            if (hashChunk == null) {
+                hashChunk = new byte[HASH_CHUNK_SIZE];
+            }
+            for (int k = 0; k < length; k += hashChunk.length) {
+                int n = Math.min(hashChunk.length, length - k);
+                buffer.getBytes(index + k, hashChunk, 0, n);
+                hasher.putBytes(hashChunk, 0, n);
+            }
+        }
+        return hasher.hash().padToLong();
     }
 
 }
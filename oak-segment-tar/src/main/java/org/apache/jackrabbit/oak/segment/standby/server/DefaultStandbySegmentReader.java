@@ -17,20 +17,14 @@
 
 package org.apache.jackrabbit.oak.segment.standby.server;
 
-import java.io.IOException;
 import java.util.UUID;
 
-import org.apache.commons.io.output.ByteArrayOutputStream;
-import org.apache.jackrabbit.oak.segment.Segment;
+import org.apache.jackrabbit.oak.commons.Buffer;
 import org.apache.jackrabbit.oak.segment.SegmentId;
 import org.apache.jackrabbit.oak.segment.file.FileStore;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 class DefaultStandbySegmentReader implements StandbySegmentReader {
 
-    private static final Logger log = LoggerFactory.getLogger(DefaultStandbySegmentReader.class);
-
     private final FileStore store;
 
     DefaultStandbySegmentReader(FileStore store) {
@@ -38,23 +32,18 @@ class DefaultStandbySegmentReader implements StandbySegmentReader {
     }
 
     @Override
-    public byte[] readSegment(String id) {
+    public Buffer readSegment(String id) {
         UUID uuid = UUID.fromString(id);
         long msb = uuid.getMostSignificantBits();
         long lsb = uuid.getLeastSignificantBits();
         SegmentId segmentId = store.getSegmentIdProvider().newSegmentId(msb, lsb);
 
         if (store.containsSegment(segmentId)) {
-            Segment segment = store.readSegment(segmentId);
-            try (ByteArrayOutputStream stream = new ByteArrayOutputStream()) {
-                segment.writeTo(stream);
-                return stream.toByteArray();
-            } catch (IOException e) {
-                log.warn("Error while reading segment content", e);
-                return null;
-            }
+            // Serve the segment buffer as is, the encoder copies it straight
+            // into the outbound buffer without an intermediate byte[]
+            return store.readSegment(segmentId).asReadOnlyBuffer();
         }
-        
+
         return null;
     }
 
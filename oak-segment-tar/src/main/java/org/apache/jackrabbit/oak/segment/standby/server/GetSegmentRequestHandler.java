@@ -19,6 +19,7 @@ package org.apache.jackrabbit.oak.segment.standby.server;
 
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
+import org.apache.jackrabbit.oak.commons.Buffer;
 import org.apache.jackrabbit.oak.segment.standby.codec.GetSegmentRequest;
 import org.apache.jackrabbit.oak.segment.standby.codec.GetSegmentResponse;
 import org.slf4j.Logger;
@@ -38,7 +39,7 @@ class GetSegmentRequestHandler extends SimpleChannelInboundHandler<GetSegmentReq
     protected void channelRead0(ChannelHandlerContext ctx, GetSegmentRequest msg) throws Exception {
         log.debug("Reading segment {} for client {}", msg.getSegmentId(), msg.getClientId());
 
-        byte[] data = reader.readSegment(msg.getSegmentId());
+        Buffer data = reader.readSegment(msg.getSegmentId());
 
         if (data == null) {
             log.debug("Segment {} not found, discarding request from client {}", msg.getSegmentId(), msg.getClientId());
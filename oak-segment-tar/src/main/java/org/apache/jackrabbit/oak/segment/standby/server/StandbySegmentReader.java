@@ -17,8 +17,17 @@
 
 package org.apache.jackrabbit.oak.segment.standby.server;
 
+import org.apache.jackrabbit.oak.commons.Buffer;
+
 interface StandbySegmentReader {
 
-    byte[] readSegment(String segmentId);
+    /**
+     * Read the content of a segment.
+     * @param segmentId the identifier of the segment
+     * @return a buffer over the content of the segment, or {@code null} if the
+     * segment is not available. The buffer may share its content with the
+     * segment and must not be modified.
+     */
+    Buffer readSegment(String segmentId);
 
 }
@@ -37,6 +37,7 @@ import java.util.concurrent.TimeUnit;
 
 import com.google.common.base.Stopwatch;
 import org.apache.jackrabbit.oak.segment.SegmentCache;
+import org.apache.jackrabbit.oak.segment.compaction.SegmentGCOptions;
 import org.apache.jackrabbit.oak.segment.compaction.SegmentGCOptions.CompactorType;
 import org.apache.jackrabbit.oak.segment.spi.persistence.JournalFile;
 import org.apache.jackrabbit.oak.segment.spi.persistence.JournalFileWriter;
@@ -80,6 +81,8 @@ public class Compact {
 
         private CompactorType compactorType = CompactorType.CHECKPOINT_COMPACTOR;
 
+        private int concurrency = SegmentGCOptions.CONCURRENCY_DEFAULT;
+
         private Builder() {
             // Prevent external instantiation.
         }
@@ -173,6 +176,18 @@ public class Compact {
             return this;
         }
 
+        /**
+         * The number of threads to be used by the "parallel" compactor. If not
+         * specified it defaults to the number of available processors.
+         * @param concurrency the number of threads
+         * @return this builder
+         */
+        public Builder withConcurrency(int concurrency) {
+            checkArgument(concurrency > 0, "concurrency must be positive");
+            this.concurrency = concurrency;
+            return this;
+        }
+
         /**
          * Create an executable version of the {@link Compact} command.
          *
@@ -267,6 +282,8 @@ public class Compact {
 
     private final CompactorType compactorType;
 
+    private final int concurrency;
+
     private Compact(Builder builder) {
         this.path = builder.path;
         this.journal = new File(builder.path, "journal.log");
@@ -275,6 +292,7 @@ public class Compact {
         this.strictVersionCheck = !builder.force;
         this.gcLogInterval = builder.gcLogInterval;
         this.compactorType = builder.compactorType;
+        this.concurrency = builder.concurrency;
     }
 
     public int run() {
@@ -330,7 +348,8 @@ public class Compact {
             .withGCOptions(defaultGCOptions()
                 .setOffline()
                 .setGCLogInterval(gcLogInterval)
-                .setCompactorType(compactorType));
+                .setCompactorType(compactorType)
+                .setConcurrency(concurrency));
         if (fileAccessMode.memoryMapped != null) {
             builder.withMemoryMapping(fileAccessMode.memoryMapped);
         }
@@ -26,20 +26,24 @@ import static org.apache.jackrabbit.oak.segment.CheckpointCompactorTestUtils.ass
 import static org.apache.jackrabbit.oak.segment.CheckpointCompactorTestUtils.checkGeneration;
 import static org.apache.jackrabbit.oak.segment.CheckpointCompactorTestUtils.createCompactor;
 import static org.apache.jackrabbit.oak.segment.CheckpointCompactorTestUtils.getCheckpoint;
+import static org.apache.jackrabbit.oak.segment.DefaultSegmentWriterBuilder.defaultSegmentWriterBuilder;
 import static org.apache.jackrabbit.oak.segment.file.FileStoreBuilder.fileStoreBuilder;
 import static org.apache.jackrabbit.oak.segment.file.tar.GCGeneration.newGCGeneration;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
 
 import org.apache.jackrabbit.oak.segment.file.FileStore;
+import org.apache.jackrabbit.oak.segment.file.GCNodeWriteMonitor;
 import org.apache.jackrabbit.oak.segment.file.InvalidFileStoreVersionException;
 import org.apache.jackrabbit.oak.segment.file.cancel.Canceller;
 import org.apache.jackrabbit.oak.segment.file.tar.GCGeneration;
+import org.apache.jackrabbit.oak.spi.gc.GCMonitor;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
@@ -113,4 +117,64 @@ public class CheckpointCompactorTest {
         assertSameRecord(getCheckpoint(compacted1, cp2), getCheckpoint(compacted2, cp2));
         assertSameRecord(getCheckpoint(compacted2, cp4), compacted2.getChildNode("root"));
     }
+
+    @Test
+    public void testResumeCompaction() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            addTestContent("n" + i, nodeStore, 42);
+        }
+        String cp = nodeStore.checkpoint(DAYS.toMillis(1));
+        addTestContent("n5", nodeStore, 42);
+        SegmentNodeState uncompacted = fileStore.getHead();
+
+        // Cancel the compaction after the first three child nodes of the checkpoint
+        CompactionCursor progress = new CompactionCursor();
+        compactor.trackProgress(progress);
+        Canceller cancelled = Canceller.newCanceller().withCondition("cancelled", () -> progress.size() >= 3);
+        assertNull(compactor.compact(EMPTY_NODE, uncompacted, EMPTY_NODE, cancelled));
+        assertEquals(3, progress.size());
+
+        // Child nodes are compacted in the order of the diff, which is not
+        // necessarily the order in which they have been added
+        String compactedChild = null;
+        for (int i = 0; i < 5 && compactedChild == null; i++) {
+            if (progress.get("checkpoints/" + cp + "/root/n" + i) != null) {
+                compactedChild = "n" + i;
+            }
+        }
+        assertNotNull(compactedChild);
+
+        // Resume from the persisted form of the progress
+        CompactionCursor resumed = CompactionCursor.parse(fileStore.getSegmentIdProvider(), progress.toString());
+        assertEquals(progress.toString(), resumed.toString());
+        GCNodeWriteMonitor resumedMonitor = new GCNodeWriteMonitor(-1, GCMonitor.EMPTY);
+        CheckpointCompactor resumedCompactor = newCompactor(resumedMonitor);
+        resumedCompactor.trackProgress(resumed);
+        SegmentNodeState compacted = resumedCompactor.compact(EMPTY_NODE, uncompacted, EMPTY_NODE, Canceller.newCanceller());
+        assertNotNull(compacted);
+        checkGeneration(compacted, compactedGeneration);
+        assertEquals(uncompacted, compacted);
+        assertSameStableId(getCheckpoint(uncompacted, cp), getCheckpoint(compacted, cp));
+        assertSameRecord(
+            fileStore.getReader().readNode(progress.get("checkpoints/" + cp + "/root/" + compactedChild).getCompacted()),
+            getCheckpoint(compacted, cp).getChildNode(compactedChild));
+
+        // Only the entries for the checkpoint and the root remain
+        assertEquals(2, resumed.size());
+        assertNotNull(resumed.get("checkpoints/" + cp + "/root"));
+        assertNotNull(resumed.get("root"));
+
+        // The resumed compaction did not compact the already compacted nodes again
+        GCNodeWriteMonitor fullMonitor = new GCNodeWriteMonitor(-1, GCMonitor.EMPTY);
+        assertNotNull(newCompactor(fullMonitor).compact(EMPTY_NODE, uncompacted, EMPTY_NODE, Canceller.newCanceller()));
+        assertTrue(resumedMonitor.getCompactedNodes() < fullMonitor.getCompactedNodes());
+    }
+
+    private CheckpointCompactor newCompactor(GCNodeWriteMonitor compactionMonitor) {
+        SegmentWriter writer = defaultSegmentWriterBuilder("r")
+                .withGeneration(compactedGeneration)
+                .build(fileStore);
+        return new CheckpointCompactor(GCMonitor.EMPTY, fileStore.getReader(), writer,
+                fileStore.getBlobStore(), compactionMonitor);
+    }
 }
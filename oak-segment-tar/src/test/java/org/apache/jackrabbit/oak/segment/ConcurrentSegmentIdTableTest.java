@@ -0,0 +1,216 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.segment;
+
+import static com.google.common.collect.Sets.newHashSet;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.jackrabbit.oak.segment.memory.MemoryStore;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+public class ConcurrentSegmentIdTableTest {
+
+    private static SegmentIdFactory newSegmentIdMaker() throws IOException {
+        final SegmentStore store = new MemoryStore();
+        return new SegmentIdFactory() {
+
+            @NotNull
+            @Override
+            public SegmentId newSegmentId(long msb, long lsb) {
+                return new SegmentId(store, msb, lsb);
+            }
+
+        };
+    }
+
+    @Test
+    public void growTable() throws IOException {
+        SegmentIdFactory maker = newSegmentIdMaker();
+        ConcurrentSegmentIdTable tbl = new ConcurrentSegmentIdTable();
+
+        List<SegmentId> refs = new ArrayList<>();
+        for (int i = 0; i < 16 * 1024; i++) {
+            refs.add(tbl.newSegmentId(i, i, maker));
+        }
+        assertEquals(16 * 1024, tbl.getEntryCount());
+        assertEquals(16 * 2048, tbl.getMapSize());
+        assertEquals(5, tbl.getMapRebuildCount());
+
+        for (SegmentId id : refs) {
+            assertSame(id, tbl.newSegmentId(id.getMostSignificantBits(), id.getLeastSignificantBits(), maker));
+        }
+        assertEquals(16 * 1024, tbl.getEntryCount());
+        assertEquals(5, tbl.getMapRebuildCount());
+    }
+
+    @Test
+    public void justHashCollisions() throws IOException {
+        SegmentIdFactory maker = newSegmentIdMaker();
+        ConcurrentSegmentIdTable tbl = new ConcurrentSegmentIdTable();
+
+        List<SegmentId> refs = new ArrayList<>();
+        int originalCount = 1024;
+        for (int i = 0; i < originalCount; i++) {
+            // modulo 128 to ensure we have conflicts
+            refs.add(tbl.newSegmentId(i, i % 128, maker));
+        }
+        assertEquals(originalCount, tbl.getEntryCount());
+        assertEquals(1, tbl.getMapRebuildCount());
+
+        List<SegmentId> refs2 = new ArrayList<>();
+        tbl.collectReferencedIds(refs2);
+        assertEquals(refs.size(), refs2.size());
+
+        assertEquals(originalCount, tbl.getEntryCount());
+        assertEquals(1, tbl.getMapRebuildCount());
+    }
+
+    @Test
+    public void clearTable() throws IOException {
+        SegmentIdFactory maker = newSegmentIdMaker();
+        ConcurrentSegmentIdTable tbl = new ConcurrentSegmentIdTable();
+
+        List<SegmentId> refs = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            refs.add(tbl.newSegmentId(i, i % 2, maker));
+        }
+
+        Set<UUID> reclaimed = newHashSet();
+        for (SegmentId id : refs) {
+            if (id.getMostSignificantBits() < 4) {
+                reclaimed.add(id.asUUID());
+            }
+        }
+
+        tbl.clearSegmentIdTables(reclaimed, "TestGcInfo");
+
+        for (SegmentId id : refs) {
+            if (id.getMostSignificantBits() < 4) {
+                assertEquals("TestGcInfo", id.getGcInfo());
+            } else {
+                assertNull(id.getGcInfo());
+            }
+        }
+    }
+
+    @Test
+    public void gc() throws IOException {
+        SegmentIdFactory maker = newSegmentIdMaker();
+        ConcurrentSegmentIdTable tbl = new ConcurrentSegmentIdTable();
+
+        List<SegmentId> refs = new ArrayList<>();
+        int originalCount = 1024;
+        for (int i = 0; i < originalCount; i++) {
+            // modulo 128 to ensure we have conflicts
+            refs.add(tbl.newSegmentId(i, i % 128, maker));
+        }
+        assertEquals(originalCount, tbl.getEntryCount());
+
+        for (int i = 0; i < refs.size() / 2; i++) {
+            // remove the first entries, so that inserting new entries
+            // probes over the garbage collected ones
+            refs.remove(0);
+        }
+        for (int gcCalls = 0;; gcCalls++) {
+            // needed here, so some entries can be garbage collected
+            System.gc();
+
+            for (SegmentId id : refs) {
+                long msb = id.getMostSignificantBits();
+                long lsb = id.getLeastSignificantBits();
+                assertSame(id, tbl.newSegmentId(msb, lsb, maker));
+            }
+
+            // inserting new entries detects that entries were garbage
+            // collected and rebuilds the table without them
+            for (int i = 0; i < 10; i++) {
+                tbl.newSegmentId(i, i, maker);
+            }
+
+            if (tbl.getEntryCount() < originalCount) {
+                break;
+            } else if (gcCalls > 10) {
+                fail("No entries were garbage collected after 10 times System.gc()");
+            }
+        }
+
+        for (SegmentId id : refs) {
+            assertSame(id, tbl.newSegmentId(id.getMostSignificantBits(), id.getLeastSignificantBits(), maker));
+        }
+    }
+
+    @Test
+    public void concurrentNewSegmentId() throws Exception {
+        final SegmentIdFactory maker = newSegmentIdMaker();
+        final ConcurrentSegmentIdTable tbl = new ConcurrentSegmentIdTable();
+        final int threads = 8;
+        final int count = 16 * 1024;
+        final CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<List<SegmentId>>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(new Callable<List<SegmentId>>() {
+
+                    @Override
+                    public List<SegmentId> call() throws Exception {
+                        start.await();
+                        List<SegmentId> ids = new ArrayList<>(count);
+                        for (int i = 0; i < count; i++) {
+                            // modulo 64 to ensure we have conflicts
+                            ids.add(tbl.newSegmentId(i, i % 64, maker));
+                        }
+                        return ids;
+                    }
+
+                }));
+            }
+            start.countDown();
+
+            List<SegmentId> expected = futures.get(0).get();
+            for (Future<List<SegmentId>> future : futures) {
+                List<SegmentId> actual = future.get();
+                for (int i = 0; i < count; i++) {
+                    assertSame(expected.get(i), actual.get(i));
+                }
+            }
+            assertEquals(count, tbl.getEntryCount());
+            assertEquals(count, tbl.getRawSegmentIdList().size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.segment;
+
+import static org.apache.jackrabbit.oak.api.Type.LONG;
+import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.EMPTY_NODE;
+import static org.apache.jackrabbit.oak.segment.file.FileStoreBuilder.fileStoreBuilder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.jackrabbit.oak.api.jmx.CacheStatsMBean;
+import org.apache.jackrabbit.oak.segment.file.FileStore;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MapRecordCacheTest {
+
+    private static final int CHILD_COUNT = 2 * MapRecordCache.DEFAULT_MIN_SIZE;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder(new File("target"));
+
+    private FileStore store;
+
+    @Before
+    public void setup() throws Exception {
+        store = fileStoreBuilder(folder.getRoot()).withMapRecordCacheSize(16).build();
+    }
+
+    @After
+    public void tearDown() {
+        store.close();
+    }
+
+    private SegmentNodeState write(NodeState state) throws IOException {
+        RecordId id = store.getWriter().writeNode(state);
+        store.getWriter().flush();
+        return store.getReader().readNode(id);
+    }
+
+    private SegmentNodeState writeFlatNode() throws IOException {
+        NodeBuilder builder = EMPTY_NODE.builder();
+        for (int i = 0; i < CHILD_COUNT; i++) {
+            builder.child("child-" + i).setProperty("index", i);
+        }
+        return write(builder.getNodeState());
+    }
+
+    @Test
+    public void lookupChildNodes() throws IOException {
+        SegmentNodeState node = writeFlatNode();
+        for (int i = 0; i < CHILD_COUNT; i++) {
+            assertTrue(node.hasChildNode("child-" + i));
+            assertEquals(i, node.getChildNode("child-" + i).getProperty("index").getValue(LONG).intValue());
+        }
+        assertFalse(node.hasChildNode("child-" + CHILD_COUNT));
+        assertFalse(node.getChildNode("child-" + CHILD_COUNT).exists());
+
+        CacheStatsMBean stats = store.getMapRecordCacheStats();
+        assertNotNull(stats);
+        assertEquals(1, stats.getElementCount());
+        assertTrue(stats.getHitCount() >= 2 * CHILD_COUNT - MapRecordCache.DEFAULT_MIN_LOOKUPS);
+    }
+
+    @Test
+    public void mapsAreDecodedAfterRepeatedLookups() throws IOException {
+        SegmentNodeState node = writeFlatNode();
+        CacheStatsMBean stats = store.getMapRecordCacheStats();
+        for (int i = 1; i < MapRecordCache.DEFAULT_MIN_LOOKUPS; i++) {
+            assertTrue(node.hasChildNode("child-" + i));
+            assertEquals(0, stats.getElementCount());
+        }
+        assertTrue(node.hasChildNode("child-0"));
+        assertEquals(1, stats.getElementCount());
+    }
+
+    @Test
+    public void lookupChildNodesOfDiffMap() throws IOException {
+        SegmentNodeState base = writeFlatNode();
+        NodeBuilder builder = base.builder();
+        builder.child("child-42").setProperty("index", -1);
+        SegmentNodeState node = write(builder.getNodeState());
+
+        assertTrue(node.getChildNodeMap().isDiff());
+        assertEquals(-1, node.getChildNode("child-42").getProperty("index").getValue(LONG).intValue());
+        for (int i = 0; i < CHILD_COUNT; i++) {
+            assertTrue(node.hasChildNode("child-" + i));
+        }
+        assertEquals(42, base.getChildNode("child-42").getProperty("index").getValue(LONG).intValue());
+
+        // the diff record uses the decoded base map
+        CacheStatsMBean stats = store.getMapRecordCacheStats();
+        assertEquals(1, stats.getElementCount());
+    }
+
+    @Test
+    public void decodedMapMatchesMapRecord() throws IOException {
+        SegmentNodeState node = writeFlatNode();
+        MapRecord map = node.getChildNodeMap();
+        MapRecordCache.DecodedMap decoded = MapRecordCache.DecodedMap.decode(map);
+        assertEquals(map.size(), decoded.size());
+        for (int i = 0; i <= CHILD_COUNT; i++) {
+            String name = "child-" + i;
+            MapEntry expected = map.getEntry(name);
+            MapEntry actual = decoded.getEntry(store.getReader(), name);
+            if (expected == null) {
+                assertNull(actual);
+            } else {
+                assertEquals(expected.getKey(), actual.getKey());
+                assertEquals(expected.getValue(), actual.getValue());
+            }
+        }
+    }
+
+    @Test
+    public void smallMapsAreNotCached() throws IOException {
+        NodeBuilder builder = EMPTY_NODE.builder();
+        for (int i = 0; i < 100; i++) {
+            builder.child("child-" + i);
+        }
+        SegmentNodeState node = write(builder.getNodeState());
+        assertTrue(node.hasChildNode("child-1"));
+        assertEquals(0, store.getMapRecordCacheStats().getElementCount());
+    }
+
+    @Test
+    public void disabledCache() throws Exception {
+        try (FileStore disabled = fileStoreBuilder(folder.newFolder()).build()) {
+            assertNull(disabled.getMapRecordCacheStats());
+        }
+    }
+
+}
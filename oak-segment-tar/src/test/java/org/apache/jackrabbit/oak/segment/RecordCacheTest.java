@@ -24,6 +24,7 @@ import static org.apache.jackrabbit.oak.segment.RecordCache.newRecordCache;
 import static org.apache.jackrabbit.oak.segment.TestUtils.newRecordId;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.util.Map;
@@ -86,4 +87,55 @@ public class RecordCacheTest {
         }
     }
 
+    @Test
+    public void segmentedCache() {
+        RecordCache<String> cache = RecordCache.<String>factory(
+                100, CacheWeights.<String, RecordId>noopWeigher(), 4).get();
+        Map<String, RecordId> keys = newLinkedHashMap();
+        for (int k = 0; k < 20; k++) {
+            String key = "key-" + k;
+            RecordId value = newRecordId(idProvider, rnd);
+            keys.put(key, value);
+            cache.put(key, value);
+        }
+
+        for (Entry<String, RecordId> entry : keys.entrySet()) {
+            assertEquals(entry.getKey() + " should be in the cache",
+                    entry.getValue(), cache.get(entry.getKey()));
+        }
+        assertNull(cache.get("any"));
+
+        assertEquals(20, cache.size());
+        assertEquals(20, cache.getStats().hitCount());
+        assertEquals(1, cache.getStats().missCount());
+        assertEquals(20, cache.getStats().loadCount());
+    }
+
+    @Test
+    public void segmentedCacheEviction() {
+        RecordCache<String> cache = RecordCache.<String>factory(
+                16, CacheWeights.<String, RecordId>noopWeigher(), 4).get();
+        for (int k = 0; k < 1000; k++) {
+            cache.put("key-" + k, newRecordId(idProvider, rnd));
+        }
+
+        assertTrue(cache.size() <= 16);
+        assertEquals(1000, cache.size() + cache.getStats().evictionCount());
+    }
+
+    @Test
+    public void segmentedCacheSmallerThanConcurrency() {
+        RecordCache<String> cache = RecordCache.<String>factory(
+                3, CacheWeights.<String, RecordId>noopWeigher(), 16).get();
+        for (int k = 0; k < 100; k++) {
+            String key = "key-" + k;
+            RecordId value = newRecordId(idProvider, rnd);
+            cache.put(key, value);
+            assertEquals(value, cache.get(key));
+        }
+
+        // two segments of two entries each
+        assertTrue(cache.size() <= 4);
+        assertEquals(100, cache.size() + cache.getStats().evictionCount());
+    }
 }
@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jackrabbit.oak.segment;
+
+import static com.google.common.base.Strings.repeat;
+import static org.apache.jackrabbit.oak.api.Type.STRING;
+import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.EMPTY_NODE;
+import static org.apache.jackrabbit.oak.segment.file.FileStoreBuilder.fileStoreBuilder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.IOException;
+
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.apache.jackrabbit.oak.segment.file.FileStore;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.stats.StatisticsProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RecordReadStatsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder(new File("target"));
+
+    private FileStore store;
+
+    private RecordReadStats stats;
+
+    @Before
+    public void setup() throws Exception {
+        store = fileStoreBuilder(folder.getRoot()).build();
+        stats = store.getRecordReadStats();
+        stats.setSampleRate(1);
+    }
+
+    @After
+    public void tearDown() {
+        store.close();
+    }
+
+    private SegmentNodeState writeNode(String value) throws IOException {
+        NodeBuilder builder = EMPTY_NODE.builder();
+        builder.setProperty("p", value);
+        RecordId id = store.getWriter().writeNode(builder.getNodeState());
+        store.getWriter().flush();
+        stats.resetStats();
+        return store.getReader().readNode(id);
+    }
+
+    @Test
+    public void recordNodeReads() throws IOException {
+        writeNode("v");
+        assertEquals(1, stats.getReadCount(RecordType.NODE));
+        assertEquals(0, stats.getHitCount(RecordType.NODE));
+    }
+
+    @Test
+    public void recordStringCacheHitsAndMisses() throws IOException {
+        SegmentNodeState node = writeNode("value");
+        node.getProperty("p");
+        stats.resetStats();
+
+        assertEquals("value", node.getProperty("p").getValue(STRING));
+        assertEquals("value", node.getProperty("p").getValue(STRING));
+        assertEquals(2, stats.getReadCount(RecordType.VALUE));
+        assertEquals(1, stats.getHitCount(RecordType.VALUE));
+        assertEquals(5, stats.getByteCount(RecordType.VALUE));
+    }
+
+    @Test
+    public void recordBlockAndBucketReads() throws IOException {
+        String value = repeat("x", Segment.MEDIUM_LIMIT + 1);
+        SegmentNodeState node = writeNode(value);
+        node.getProperty("p");
+        stats.resetStats();
+
+        assertEquals(value, node.getProperty("p").getValue(STRING));
+        assertEquals(value.length(), stats.getByteCount(RecordType.BLOCK));
+        assertEquals(1, stats.getReadCount(RecordType.BUCKET));
+    }
+
+    @Test
+    public void extrapolateBySampleRate() throws IOException {
+        SegmentNodeState node = writeNode("v");
+        stats.setSampleRate(10);
+        stats.onRead(RecordType.TEMPLATE, node.getRecordId().getSegmentId(), true, 0);
+        assertEquals(10, stats.getReadCount(RecordType.TEMPLATE));
+        assertEquals(10, stats.getHitCount(RecordType.TEMPLATE));
+    }
+
+    @Test
+    public void disabledSampling() {
+        RecordReadStats disabled = new RecordReadStats(StatisticsProvider.NOOP, 0);
+        for (int k = 0; k < 100; k++) {
+            assertFalse(disabled.sample());
+        }
+        RecordReadStats.NOOP.setSampleRate(1);
+        assertEquals(0, RecordReadStats.NOOP.getSampleRate());
+    }
+
+    @Test
+    public void tabularData() throws Exception {
+        writeNode("v");
+
+        TabularData reads = stats.getRecordReads();
+        assertEquals(RecordType.values().length, reads.size());
+        CompositeData nodeReads = reads.get(new Object[] {RecordType.NODE.name()});
+        assertEquals(1L, nodeReads.get("reads"));
+
+        TabularData generations = stats.getRecordReadsPerGeneration();
+        assertEquals(1, generations.size());
+        CompositeData generationReads = generations.get(new Object[] {0});
+        assertEquals(1L, generationReads.get("reads"));
+    }
+
+}
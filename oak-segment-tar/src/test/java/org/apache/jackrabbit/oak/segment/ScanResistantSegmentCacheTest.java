@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.segment;
+
+import static org.apache.jackrabbit.oak.segment.SegmentCache.newSegmentCache;
+import static org.apache.jackrabbit.oak.segment.SegmentStore.EMPTY_STORE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.jackrabbit.oak.cache.AbstractCacheStats;
+import org.junit.After;
+import org.junit.Test;
+
+public class ScanResistantSegmentCacheTest {
+
+    private final SegmentCache cache = newSegmentCache(1, true);
+
+    private int segmentCount;
+
+    @After
+    public void tearDown() {
+        SegmentCache.setDoNotCache(false);
+    }
+
+    private SegmentId newSegmentId() {
+        return new SegmentId(EMPTY_STORE, ++segmentCount, 0xa000000000000000L + segmentCount, cache::recordAccess);
+    }
+
+    private static Segment newSegment(SegmentId id, int size) {
+        Segment segment = mock(Segment.class);
+        when(segment.getSegmentId()).thenReturn(id);
+        when(segment.estimateMemoryUsage()).thenReturn(size);
+        return segment;
+    }
+
+    private List<SegmentId> load(int count, int size) throws ExecutionException {
+        List<SegmentId> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            SegmentId id = newSegmentId();
+            Segment segment = newSegment(id, size);
+            assertEquals(segment, cache.getSegment(id, () -> segment));
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    @Test
+    public void putTest() throws ExecutionException {
+        SegmentId id = newSegmentId();
+        Segment segment = newSegment(id, 1);
+        cache.putSegment(segment);
+
+        assertEquals(segment, id.getSegment());
+        assertEquals(segment, cache.getSegment(id, () -> {
+            throw new AssertionError("Segment should be cached");
+        }));
+
+        cache.clear();
+        try {
+            id.getSegment();
+            throw new AssertionError("Segment should be evicted");
+        } catch (SegmentNotFoundException expected) {}
+    }
+
+    @Test
+    public void scanDoesNotEvictHotSegments() throws ExecutionException {
+        List<SegmentId> hot = load(5, 100_000);
+        for (int i = 0; i < 5; i++) {
+            for (SegmentId id : hot) {
+                id.getSegment();
+            }
+        }
+
+        // A scan through many segments loaded only once
+        load(100, 100_000);
+
+        // Memoised hot segments are still in the cache
+        for (SegmentId id : hot) {
+            id.getSegment();
+        }
+
+        AbstractCacheStats stats = cache.getCacheStats();
+        assertEquals(10, stats.getElementCount());
+        assertTrue(stats.estimateCurrentWeight() <= stats.getMaxTotalWeight());
+        assertEquals(95, stats.getEvictionCount());
+        assertEquals(10, ((SegmentCacheStatsMBean) stats).getAdmissionCount());
+        assertEquals(95, ((SegmentCacheStatsMBean) stats).getRejectionCount());
+    }
+
+    @Test
+    public void doNotCacheHint() throws ExecutionException {
+        load(10, 100_000);
+        long elements = cache.getCacheStats().getElementCount();
+
+        SegmentCache.setDoNotCache(true);
+        List<SegmentId> scanned = load(100, 1000);
+        SegmentCache.setDoNotCache(false);
+
+        // Segments loaded with the hint set only go through the window
+        assertTrue(cache.getCacheStats().getElementCount() <= elements + 10);
+        SegmentCacheStatsMBean stats = (SegmentCacheStatsMBean) cache.getCacheStats();
+        assertEquals(10, stats.getAdmissionCount());
+        assertEquals(90, stats.getRejectionCount());
+
+        // The most recently loaded ones are still available from the window
+        scanned.get(scanned.size() - 1).getSegment();
+    }
+
+    @Test
+    public void writtenSegmentsIgnoreDoNotCacheHint() {
+        List<SegmentId> written = SegmentCache.withDoNotCache(() -> {
+            List<SegmentId> ids = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                SegmentId id = newSegmentId();
+                cache.putSegment(newSegment(id, 100_000));
+                ids.add(id);
+            }
+            return ids;
+        });
+        assertFalse(SegmentCache.isDoNotCache());
+
+        // Segments written with the hint set are admitted to the main area
+        SegmentCacheStatsMBean stats = (SegmentCacheStatsMBean) cache.getCacheStats();
+        assertEquals(5, stats.getAdmissionCount());
+        assertEquals(0, stats.getRejectionCount());
+        for (SegmentId id : written) {
+            id.getSegment();
+        }
+    }
+
+}
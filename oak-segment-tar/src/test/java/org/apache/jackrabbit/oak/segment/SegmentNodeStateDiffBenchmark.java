@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.segment;
+
+import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.EMPTY_NODE;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.segment.memory.MemoryStore;
+import org.apache.jackrabbit.oak.spi.state.AbstractNodeState;
+import org.apache.jackrabbit.oak.spi.state.DefaultNodeStateDiff;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+
+/**
+ * Measures the time and the heap allocated by {@link
+ * SegmentNodeState#compareAgainstBaseState(NodeState, org.apache.jackrabbit.oak.spi.state.NodeStateDiff)}
+ * for a large flat tree and a deep tree with few changes. The generic
+ * comparison of {@link AbstractNodeState}, which materialises all properties
+ * and child node entries, serves as the baseline.
+ */
+public class SegmentNodeStateDiffBenchmark {
+
+    private static final int FLAT_CHILDREN = Integer.getInteger("flatChildren", 100000);
+
+    private static final int DEEP_WIDTH = Integer.getInteger("deepWidth", 10);
+
+    private static final int DEEP_DEPTH = Integer.getInteger("deepDepth", 4);
+
+    private static final int CHANGES = Integer.getInteger("changes", 100);
+
+    private static final int ITERATIONS = Integer.getInteger("iterations", 20);
+
+    public static void main(String... args) throws IOException {
+        MemoryStore store = new MemoryStore();
+        RecordId id = store.getWriter().writeNode(EMPTY_NODE);
+        NodeState empty = new SegmentNodeState(store.getReader(), store.getWriter(), store.getBlobStore(), id);
+        Random random = new Random(42);
+
+        NodeBuilder flat = empty.builder();
+        for (int i = 0; i < FLAT_CHILDREN; i++) {
+            flat.child("node-" + i).setProperty("p", i);
+        }
+        NodeState flatBefore = flat.getNodeState();
+        for (int i = 0; i < CHANGES; i++) {
+            flat.child("node-" + random.nextInt(FLAT_CHILDREN)).setProperty("p", -i);
+        }
+        NodeState flatAfter = flat.getNodeState();
+
+        NodeBuilder deep = empty.builder();
+        createTree(deep, DEEP_DEPTH);
+        NodeState deepBefore = deep.getNodeState();
+        for (int i = 0; i < CHANGES; i++) {
+            NodeBuilder node = deep;
+            for (int k = 0; k < DEEP_DEPTH; k++) {
+                node = node.child("c" + random.nextInt(DEEP_WIDTH));
+            }
+            node.setProperty("p", -i);
+        }
+        NodeState deepAfter = deep.getNodeState();
+
+        System.out.printf("%6s %8s %14s %14s %10s%n", "tree", "diff", "us/op", "bytes/op", "changes");
+        for (int round = 0; round < 3; round++) {
+            run("flat", flatBefore, flatAfter);
+            run("deep", deepBefore, deepAfter);
+        }
+    }
+
+    private static void createTree(NodeBuilder node, int depth) {
+        node.setProperty("p", depth);
+        node.setProperty("q", "value-" + depth);
+        if (depth > 0) {
+            for (int i = 0; i < DEEP_WIDTH; i++) {
+                createTree(node.child("c" + i), depth - 1);
+            }
+        }
+    }
+
+    private static void run(String tree, NodeState before, NodeState after) {
+        for (boolean generic : new boolean[] {true, false}) {
+            CountingDiff diff = new CountingDiff(generic);
+            long bytes = allocatedBytes();
+            long t0 = System.nanoTime();
+            for (int k = 0; k < ITERATIONS; k++) {
+                diff.compare(before, after);
+            }
+            long nanos = System.nanoTime() - t0;
+            bytes = allocatedBytes() - bytes;
+            System.out.printf("%6s %8s %14d %14d %10d%n", tree, generic ? "generic" : "segment",
+                    nanos / ITERATIONS / 1000, bytes / ITERATIONS, diff.changes / ITERATIONS);
+        }
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    /**
+     * Descends into all changed child nodes and counts the changed
+     * properties.
+     */
+    private static class CountingDiff extends DefaultNodeStateDiff {
+
+        private final boolean generic;
+
+        private long changes;
+
+        CountingDiff(boolean generic) {
+            this.generic = generic;
+        }
+
+        boolean compare(NodeState before, NodeState after) {
+            if (generic) {
+                return AbstractNodeState.compareAgainstBaseState(after, before, this);
+            } else {
+                return after.compareAgainstBaseState(before, this);
+            }
+        }
+
+        @Override
+        public boolean propertyChanged(PropertyState before, PropertyState after) {
+            changes++;
+            return true;
+        }
+
+        @Override
+        public boolean childNodeChanged(String name, NodeState before, NodeState after) {
+            return compare(before, after);
+        }
+
+    }
+
+}
@@ -0,0 +1,246 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.segment;
+
+import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.EMPTY_NODE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.segment.memory.MemoryStore;
+import org.apache.jackrabbit.oak.spi.state.AbstractNodeState;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.apache.jackrabbit.oak.spi.state.NodeStateDiff;
+import org.junit.Test;
+
+/**
+ * Test case comparing the changes reported by segment node state comparisons
+ * with the ones reported by the generic comparison of node states.
+ */
+public class SegmentNodeStateDiffTest {
+
+    private final NodeBuilder builder;
+
+    public SegmentNodeStateDiffTest() throws IOException {
+        MemoryStore store = new MemoryStore();
+        RecordId id = store.getWriter().writeNode(EMPTY_NODE);
+        SegmentNodeState node = new SegmentNodeState(store.getReader(), store.getWriter(), store.getBlobStore(), id);
+        builder = node.builder();
+    }
+
+    @Test
+    public void flatTree() {
+        Random random = new Random(42);
+        for (int i = 0; i < 5000; i++) {
+            builder.child("node-" + i).setProperty("p", i);
+        }
+        NodeState before = builder.getNodeState();
+
+        for (int i = 0; i < 100; i++) {
+            int k = random.nextInt(6000);
+            switch (random.nextInt(3)) {
+                case 0:
+                    builder.child("node-" + k).setProperty("p", -k);
+                    break;
+                case 1:
+                    builder.child("node-" + k).remove();
+                    break;
+                default:
+                    builder.child("added-" + k);
+            }
+        }
+        NodeState after = builder.getNodeState();
+
+        assertSameChanges(before, after);
+        assertSameChanges(after, before);
+    }
+
+    @Test
+    public void deepTree() {
+        Random random = new Random(42);
+        List<String> paths = new ArrayList<>();
+        createTree(builder, "", 4, 6, paths);
+        NodeState before = builder.getNodeState();
+
+        for (int i = 0; i < 50; i++) {
+            NodeBuilder node = getBuilder(paths.get(random.nextInt(paths.size())));
+            switch (random.nextInt(4)) {
+                case 0:
+                    node.setProperty("p", random.nextInt());
+                    break;
+                case 1:
+                    node.removeProperty("q");
+                    break;
+                case 2:
+                    node.child("added-" + i).setProperty("p", i);
+                    break;
+                default:
+                    node.remove();
+            }
+        }
+        NodeState after = builder.getNodeState();
+
+        assertSameChanges(before, after);
+        assertSameChanges(after, before);
+    }
+
+    @Test
+    public void propertyTypeChanged() {
+        builder.setProperty("a", "value");
+        builder.setProperty("b", "value");
+        NodeState before = builder.getNodeState();
+
+        builder.setProperty("a", "value", Type.NAME);
+        NodeState after = builder.getNodeState();
+
+        Set<String> changes = assertSameChanges(before, after);
+        assertEquals(1, changes.size());
+        assertTrue(changes.contains("^/a"));
+    }
+
+    @Test
+    public void singleChildNode() {
+        builder.child("a").setProperty("p", 1);
+        NodeState before = builder.getNodeState();
+
+        builder.setProperty("q", 2);
+        NodeState after = builder.getNodeState();
+        assertEquals(1, assertSameChanges(before, after).size());
+
+        builder.child("a").setProperty("p", 2);
+        NodeState changed = builder.getNodeState();
+        assertTrue(assertSameChanges(after, changed).contains("^/a/p"));
+    }
+
+    @Test
+    public void abortDiff() {
+        for (int i = 0; i < 100; i++) {
+            builder.child("node-" + i);
+        }
+        NodeState before = builder.getNodeState();
+        for (int i = 0; i < 100; i += 10) {
+            builder.child("node-" + i).remove();
+        }
+        NodeState after = builder.getNodeState();
+
+        int[] calls = {0};
+        assertFalse(after.compareAgainstBaseState(before, new RecordingDiff("", new TreeSet<>(), false) {
+            @Override
+            public boolean childNodeDeleted(String name, NodeState before) {
+                return ++calls[0] < 3;
+            }
+        }));
+        assertEquals(3, calls[0]);
+    }
+
+    private static void createTree(NodeBuilder node, String path, int depth, int width, List<String> paths) {
+        node.setProperty("q", path);
+        paths.add(path);
+        if (depth > 0) {
+            for (int i = 0; i < width; i++) {
+                createTree(node.child("c" + i), path + "/c" + i, depth - 1, width, paths);
+            }
+        }
+    }
+
+    private NodeBuilder getBuilder(String path) {
+        NodeBuilder node = builder;
+        for (String name : path.split("/")) {
+            if (!name.isEmpty()) {
+                node = node.getChildNode(name);
+            }
+        }
+        return node;
+    }
+
+    private static Set<String> assertSameChanges(NodeState before, NodeState after) {
+        Set<String> expected = new TreeSet<>();
+        AbstractNodeState.compareAgainstBaseState(after, before, new RecordingDiff("", expected, true));
+        Set<String> actual = new TreeSet<>();
+        assertTrue(after.compareAgainstBaseState(before, new RecordingDiff("", actual, false)));
+        assertEquals(expected, actual);
+        return actual;
+    }
+
+    /**
+     * Records the paths of all property and child node changes of a tree,
+     * optionally using the generic comparison of node states.
+     */
+    private static class RecordingDiff implements NodeStateDiff {
+
+        private final String path;
+
+        private final Set<String> changes;
+
+        private final boolean generic;
+
+        RecordingDiff(String path, Set<String> changes, boolean generic) {
+            this.path = path;
+            this.changes = changes;
+            this.generic = generic;
+        }
+
+        @Override
+        public boolean propertyAdded(PropertyState after) {
+            return changes.add("+" + path + "/" + after.getName());
+        }
+
+        @Override
+        public boolean propertyChanged(PropertyState before, PropertyState after) {
+            return changes.add("^" + path + "/" + after.getName());
+        }
+
+        @Override
+        public boolean propertyDeleted(PropertyState before) {
+            return changes.add("-" + path + "/" + before.getName());
+        }
+
+        @Override
+        public boolean childNodeAdded(String name, NodeState after) {
+            return changes.add("+" + path + "/" + name);
+        }
+
+        @Override
+        public boolean childNodeChanged(String name, NodeState before, NodeState after) {
+            RecordingDiff diff = new RecordingDiff(path + "/" + name, changes, generic);
+            if (generic) {
+                return AbstractNodeState.compareAgainstBaseState(after, before, diff);
+            } else {
+                return after.compareAgainstBaseState(before, diff);
+            }
+        }
+
+        @Override
+        public boolean childNodeDeleted(String name, NodeState before) {
+            return changes.add("-" + path + "/" + name);
+        }
+
+    }
+
+}
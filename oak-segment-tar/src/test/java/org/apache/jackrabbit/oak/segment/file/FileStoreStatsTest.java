@@ -21,6 +21,7 @@ package org.apache.jackrabbit.oak.segment.file;
 
 import static org.apache.jackrabbit.oak.segment.file.FileStoreBuilder.fileStoreBuilder;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 
 import java.io.File;
@@ -86,4 +87,53 @@ public class FileStoreStatsTest {
 
         assertEquals(10, stats.getJournalWriteStatsAsCount());
     }
+
+    @Test
+    public void testOffHeapSegmentCacheSize() throws Exception {
+        File directory = segmentFolder.newFolder();
+        try (FileStore fileStore = fileStoreBuilder(directory).build()) {
+            SegmentNodeStore nodeStore = SegmentNodeStoreBuilders.builder(fileStore).build();
+            NodeBuilder root = nodeStore.getRoot().builder();
+            root.setProperty("foo", "bar");
+            nodeStore.merge(root, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        }
+
+        StatisticsProvider statsProvider = new DefaultStatisticsProvider(executor);
+        try (FileStore fileStore = fileStoreBuilder(directory)
+                .withStatisticsProvider(statsProvider)
+                .withSegmentCacheSize(0)
+                .withOffHeapSegmentCacheSize(1)
+                .build()) {
+            FileStoreStats stats = fileStore.getStats();
+
+            // Without an on-heap segment cache, segments of the existing tar
+            // files are read through the off-heap segment cache
+            SegmentNodeStore nodeStore = SegmentNodeStoreBuilders.builder(fileStore).build();
+            assertEquals("bar", nodeStore.getRoot().getString("foo"));
+            assertTrue(stats.getOffHeapSegmentCacheSize() > 0);
+            assertTrue(fileStore.getOffHeapSegmentCacheStats().getElementCount() > 0);
+        }
+    }
+
+    @Test
+    public void testFlushStats() throws Exception {
+        StatisticsProvider statsProvider = new DefaultStatisticsProvider(executor);
+        try (FileStore fileStore = fileStoreBuilder(segmentFolder.newFolder())
+                .withStatisticsProvider(statsProvider)
+                .build()) {
+            FileStoreStats stats = fileStore.getStats();
+            SegmentNodeStore nodeStore = SegmentNodeStoreBuilders.builder(fileStore).build();
+
+            for (int i = 0; i < 10; i++) {
+                NodeBuilder root = nodeStore.getRoot().builder();
+                root.setProperty("count", i);
+                nodeStore.merge(root, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+
+                fileStore.flush();
+            }
+
+            assertEquals(10, stats.getFlushCount());
+            assertEquals(10, stats.getFlushRequestCount());
+        }
+    }
 }
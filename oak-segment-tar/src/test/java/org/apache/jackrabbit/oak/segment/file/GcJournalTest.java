@@ -22,6 +22,8 @@ package org.apache.jackrabbit.oak.segment.file;
 import static com.google.common.collect.Lists.newArrayList;
 import static org.apache.jackrabbit.oak.segment.file.tar.GCGeneration.newGCGeneration;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 
 import java.io.File;
 import java.io.FileOutputStream;
@@ -36,6 +38,7 @@ import org.apache.jackrabbit.oak.segment.RecordId;
 import org.apache.jackrabbit.oak.segment.spi.persistence.GCJournalFile;
 import org.apache.jackrabbit.oak.segment.spi.persistence.SegmentNodeStorePersistence;
 import org.apache.jackrabbit.oak.segment.file.GCJournal.GCJournalEntry;
+import org.apache.jackrabbit.oak.segment.file.GCJournal.GCProgressEntry;
 import org.apache.jackrabbit.oak.segment.file.tar.TarPersistence;
 import org.junit.Rule;
 import org.junit.Test;
@@ -145,6 +148,42 @@ public class GcJournalTest {
         assertEquals("bar", entry.getRoot());
     }
 
+    @Test
+    public void testPersistProgress() throws Exception {
+        GCJournal gc = new GCJournal(getPersistence().getGCJournalFile());
+        gc.persist(0, 100, newGCGeneration(1, 1, false), 50, "root1");
+        assertNull(gc.readProgress());
+
+        gc.persistProgress(newGCGeneration(2, 1, true), 20, "cursor1");
+        GCJournal in = new GCJournal(getPersistence().getGCJournalFile());
+        GCProgressEntry progress = in.readProgress();
+        assertNotNull(progress);
+        assertEquals(newGCGeneration(2, 1, true), progress.getGcGeneration());
+        assertEquals(20, progress.getNodes());
+        assertEquals("cursor1", progress.getCursor());
+
+        // Progress entries are not regular entries
+        assertEquals(1, in.readAll().size());
+        assertEquals("root1", in.read().getRoot());
+
+        // Progress entries start with the fields of the latest entry
+        List<String> lines = getPersistence().getGCJournalFile().readLines();
+        assertEquals(in.read(), GCJournalEntry.fromString(lines.get(lines.size() - 1)));
+
+        // The latest progress entry wins
+        in.persistProgress(newGCGeneration(2, 1, true), 40, "cursor2,with,commas");
+        progress = in.readProgress();
+        assertNotNull(progress);
+        assertEquals(40, progress.getNodes());
+        assertEquals("cursor2,with,commas", progress.getCursor());
+
+        // A successful compaction to the same generation supersedes the progress
+        in.persist(0, 120, newGCGeneration(2, 1, true), 60, "root2");
+        assertNull(in.readProgress());
+        assertNull(new GCJournal(getPersistence().getGCJournalFile()).readProgress());
+        assertEquals(2, in.readAll().size());
+    }
+
     private void createOak16GCLog() throws IOException {
         try (InputStream source = GcJournalTest.class.getResourceAsStream("oak-1.6-gc.log")) {
             try (FileOutputStream target = new FileOutputStream(segmentFolder.newFile("gc.log"))) {
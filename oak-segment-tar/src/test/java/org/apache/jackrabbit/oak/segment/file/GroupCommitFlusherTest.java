@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.segment.file;
+
+import static java.util.concurrent.TimeUnit.HOURS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.collect.Lists;
+import org.apache.jackrabbit.oak.stats.StatisticsProvider;
+import org.junit.Test;
+
+public class GroupCommitFlusherTest {
+
+    private final FileStoreStats stats = new FileStoreStats(StatisticsProvider.NOOP, null, 0);
+
+    private final AtomicInteger flushes = new AtomicInteger();
+
+    @Test
+    public void sequentialFlushesAreNotCoalesced() throws IOException {
+        GroupCommitFlusher flusher = new GroupCommitFlusher(flushes::incrementAndGet, 0, 0, stats);
+        for (int i = 0; i < 3; i++) {
+            flusher.flush();
+        }
+        assertEquals(3, flushes.get());
+    }
+
+    @Test(timeout = 10000)
+    public void concurrentFlushesAreCoalesced() throws Exception {
+        CountDownLatch firstFlushStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirstFlush = new CountDownLatch(1);
+        GroupCommitFlusher flusher = new GroupCommitFlusher(() -> {
+            if (flushes.incrementAndGet() == 1) {
+                firstFlushStarted.countDown();
+                try {
+                    releaseFirstFlush.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+        }, 0, 0, stats);
+
+        Thread first = startFlush(flusher);
+        firstFlushStarted.await();
+
+        // These requests arrive while the first flush is in progress
+        List<Thread> waiting = Lists.newArrayList();
+        for (int i = 0; i < 4; i++) {
+            Thread thread = startFlush(flusher);
+            while (thread.getState() != Thread.State.WAITING) {
+                Thread.sleep(1);
+            }
+            waiting.add(thread);
+        }
+
+        releaseFirstFlush.countDown();
+        first.join();
+        for (Thread thread : waiting) {
+            thread.join();
+        }
+
+        // The waiting requests must not be served by the first flush, which
+        // started before they arrived, but share a single second flush
+        assertEquals(2, flushes.get());
+    }
+
+    @Test(timeout = 10000)
+    public void writtenBytesEndDelay() throws IOException {
+        GroupCommitFlusher flusher = new GroupCommitFlusher(flushes::incrementAndGet, HOURS.toNanos(1), 100, stats);
+        flusher.written(100);
+        flusher.flush();
+        assertEquals(1, flushes.get());
+    }
+
+    @Test
+    public void failedFlushIsRetried() throws IOException {
+        GroupCommitFlusher flusher = new GroupCommitFlusher(() -> {
+            if (flushes.incrementAndGet() == 1) {
+                throw new IOException("failed");
+            }
+        }, 0, 0, stats);
+
+        try {
+            flusher.flush();
+            fail("Expected IOException");
+        } catch (IOException expected) {
+            // expected
+        }
+
+        flusher.flush();
+        assertEquals(2, flushes.get());
+    }
+
+    private static Thread startFlush(GroupCommitFlusher flusher) {
+        Thread thread = new Thread(() -> {
+            try {
+                flusher.flush();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+}
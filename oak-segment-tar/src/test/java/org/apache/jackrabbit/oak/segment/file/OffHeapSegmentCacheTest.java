@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.segment.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.Random;
+import java.util.UUID;
+
+import org.apache.jackrabbit.oak.cache.AbstractCacheStats;
+import org.apache.jackrabbit.oak.commons.Buffer;
+import org.junit.After;
+import org.junit.Test;
+
+public class OffHeapSegmentCacheTest {
+
+    private final OffHeapSegmentCache cache = new OffHeapSegmentCache(1);
+
+    @After
+    public void tearDown() {
+        cache.close();
+    }
+
+    private static Buffer newSegment(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return Buffer.wrap(data);
+    }
+
+    @Test
+    public void readThrough() {
+        Buffer segment = newSegment(1024);
+        assertFalse(cache.containsSegment(1, 2));
+
+        assertEquals(segment, cache.readSegment(1, 2, () -> segment));
+        assertTrue(cache.containsSegment(1, 2));
+        assertEquals(1024, cache.getCurrentWeight());
+
+        Buffer cached = cache.readSegment(1, 2, () -> {
+            throw new AssertionError("Segment should be cached");
+        });
+        assertNotNull(cached);
+        assertEquals(segment, cached);
+        // hits are not copied back onto the heap
+        assertTrue(cached.isDirect());
+
+        AbstractCacheStats stats = cache.getCacheStats();
+        assertEquals(1, stats.getHitCount());
+        assertEquals(1, stats.getMissCount());
+        assertEquals(1, stats.getElementCount());
+        assertEquals(1024, stats.estimateCurrentWeight());
+    }
+
+    @Test
+    public void viewsAreIndependent() {
+        cache.writeSegment(1, 2, newSegment(1024));
+        Buffer first = cache.readSegment(1, 2, () -> null);
+        Buffer second = cache.readSegment(1, 2, () -> null);
+        assertNotNull(first);
+        assertNotNull(second);
+
+        first.position(512);
+        assertEquals(1024, second.remaining());
+        assertEquals(newSegment(1024), second);
+    }
+
+    @Test
+    public void evictionByWeight() {
+        for (int i = 0; i < 4096; i++) {
+            cache.writeSegment(i, i, newSegment(1024));
+        }
+        cache.cleanUp();
+
+        assertTrue(cache.getCurrentWeight() <= cache.getMaximumWeight());
+        assertTrue(cache.getCacheStats().getEvictionCount() > 0);
+        assertNull(cache.readSegment(0, 0, () -> null));
+    }
+
+    @Test
+    public void evictedMemoryIsReused() {
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 4096; i++) {
+                cache.writeSegment(round, i, newSegment(1024));
+                assertTrue(cache.getCurrentWeight() <= cache.getMaximumWeight());
+            }
+        }
+        cache.cleanUp();
+
+        assertEquals(newSegment(1024), cache.readSegment(2, 4095, () -> null));
+    }
+
+    @Test
+    public void invalidate() {
+        cache.writeSegment(1, 2, newSegment(1024));
+        cache.writeSegment(3, 4, newSegment(2048));
+        assertEquals(3072, cache.getCurrentWeight());
+
+        cache.invalidate(Collections.singleton(new UUID(1, 2)));
+
+        assertFalse(cache.containsSegment(1, 2));
+        assertTrue(cache.containsSegment(3, 4));
+        assertEquals(2048, cache.getCurrentWeight());
+        assertEquals(newSegment(2048), cache.readSegment(3, 4, () -> null));
+    }
+
+    @Test
+    public void close() {
+        cache.writeSegment(1, 2, newSegment(1024));
+        cache.close();
+
+        assertFalse(cache.containsSegment(1, 2));
+        assertEquals(0, cache.getCurrentWeight());
+
+        cache.writeSegment(3, 4, newSegment(1024));
+        assertFalse(cache.containsSegment(3, 4));
+    }
+
+}
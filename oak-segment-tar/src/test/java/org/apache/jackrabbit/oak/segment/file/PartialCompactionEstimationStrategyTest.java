@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.segment.file;
+
+import static org.apache.jackrabbit.oak.segment.file.tar.GCGeneration.newGCGeneration;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.apache.jackrabbit.oak.segment.file.EstimationStrategy.Context;
+import org.apache.jackrabbit.oak.segment.file.tar.GCGeneration;
+import org.apache.jackrabbit.oak.segment.file.tar.TarPersistence;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PartialCompactionEstimationStrategyTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder(new File("target"));
+
+    private GCJournal journal;
+
+    @Before
+    public void setUpJournal() {
+        journal = new GCJournal(new TarPersistence(folder.getRoot()).getGCJournalFile());
+        journal.persist(100, 1000, newGCGeneration(1, 1, true), 1000, "id");
+    }
+
+    @Test
+    public void testNoProgress() {
+        assertFalse(isGarbageCollectionNeeded(newGCGeneration(1, 1, true)));
+    }
+
+    @Test
+    public void testProgressForNextGeneration() {
+        journal.persistProgress(newGCGeneration(2, 2, true), 500, "cursor");
+        assertTrue(isGarbageCollectionNeeded(newGCGeneration(1, 1, true)));
+
+        journal.persistProgress(newGCGeneration(2, 1, true), 500, "cursor");
+        assertTrue(isGarbageCollectionNeeded(newGCGeneration(1, 1, true)));
+    }
+
+    @Test
+    public void testProgressForOtherGeneration() {
+        journal.persistProgress(newGCGeneration(3, 2, true), 500, "cursor");
+        assertFalse(isGarbageCollectionNeeded(newGCGeneration(1, 1, true)));
+        assertFalse(isGarbageCollectionNeeded(newGCGeneration(3, 2, true)));
+    }
+
+    private boolean isGarbageCollectionNeeded(GCGeneration generation) {
+        EstimationStrategy delegate = context -> new EstimationResult(false, "");
+        return new PartialCompactionEstimationStrategy(delegate).estimate(new Context() {
+
+            @Override
+            public long getSizeDelta() {
+                return 100;
+            }
+
+            @Override
+            public long getCurrentSize() {
+                return 1000;
+            }
+
+            @Override
+            public GCJournal getGCJournal() {
+                return journal;
+            }
+
+            @Override
+            public GCGeneration getGcGeneration() {
+                return generation;
+            }
+
+        }).isGcNeeded();
+    }
+
+}
@@ -27,8 +27,10 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assume.assumeTrue;
 
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.google.common.base.Predicate;
+import com.google.common.cache.CacheStats;
 import com.google.common.cache.Weigher;
 import org.apache.jackrabbit.oak.segment.CacheWeights;
 import org.junit.Test;
@@ -201,4 +203,59 @@ public class PriorityCacheTest {
         assertEquals(failure, cache.getStats().loadExceptionCount());
     }
 
+    @Test
+    public void segmentedCache() {
+        Random rnd = new Random();
+        PriorityCache<String, Integer> cache = new PriorityCache<>(1024, 4, CacheWeights.noopWeigher(), 8);
+        int success = 0;
+        int failure = 0;
+        for (int i = 0; i < 1000; i++) {
+            String key = "k-" + i + "-" + rnd.nextInt(1000);
+            if (cache.put(key, i, 0, (byte) 0)) {
+                success++;
+                assertEquals(Integer.valueOf(i), cache.get(key, 0));
+                assertNull(cache.get(key, 1));
+            } else {
+                failure++;
+            }
+        }
+
+        assertEquals(success, cache.size());
+        assertEquals(success, cache.getStats().hitCount());
+        assertEquals(success, cache.getStats().missCount());
+        assertEquals(failure, cache.getStats().loadExceptionCount());
+
+        cache.purgeGenerations(generation -> generation == 0);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void concurrentAccess() throws InterruptedException {
+        PriorityCache<String, Integer> cache = new PriorityCache<>(1024, 4, CacheWeights.noopWeigher(), 8);
+        Thread[] threads = new Thread[8];
+        AtomicInteger failures = new AtomicInteger();
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                Random rnd = new Random();
+                for (int i = 0; i < 100000; i++) {
+                    int k = rnd.nextInt(4096);
+                    Integer value = cache.get("key-" + k, 0);
+                    if (value == null) {
+                        cache.put("key-" + k, k, 0, (byte) 0);
+                    } else if (value != k) {
+                        failures.incrementAndGet();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(0, failures.get());
+        assertTrue(cache.size() <= 1024);
+        CacheStats stats = cache.getStats();
+        assertEquals(threads.length * 100000, stats.hitCount() + stats.missCount());
+    }
 }
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.segment.file;
+
+import static org.apache.jackrabbit.oak.segment.file.FileStoreBuilder.fileStoreBuilder;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.commons.concurrent.ExecutorCloser;
+import org.apache.jackrabbit.oak.segment.SegmentNodeStore;
+import org.apache.jackrabbit.oak.segment.SegmentNodeStoreBuilders;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.EmptyHook;
+import org.apache.jackrabbit.oak.spi.state.ChildNodeEntry;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.apache.jackrabbit.oak.stats.DefaultStatisticsProvider;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SegmentPrefetcherTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder(new File("target"));
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+    @After
+    public void shutDown() {
+        new ExecutorCloser(executor).close();
+    }
+
+    private File createContent() throws Exception {
+        File directory = folder.newFolder();
+        try (FileStore fileStore = fileStoreBuilder(directory).build()) {
+            SegmentNodeStore nodeStore = SegmentNodeStoreBuilders.builder(fileStore).build();
+            Random random = new Random(42);
+            for (int i = 0; i < 10; i++) {
+                NodeBuilder root = nodeStore.getRoot().builder();
+                NodeBuilder parent = root.child("c" + i);
+                for (int j = 0; j < 100; j++) {
+                    byte[] value = new byte[1024];
+                    random.nextBytes(value);
+                    parent.child("n" + j).setProperty("p", new String(value, "ISO-8859-1"));
+                }
+                nodeStore.merge(root, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+                fileStore.flush();
+            }
+        }
+        return directory;
+    }
+
+    private static void traverse(NodeState node) {
+        for (PropertyState property : node.getProperties()) {
+            property.getValue(property.getType());
+        }
+        for (ChildNodeEntry child : node.getChildNodeEntries()) {
+            traverse(child.getNodeState());
+        }
+    }
+
+    @Test
+    public void prefetchIsDisabledByDefault() throws Exception {
+        try (ReadOnlyFileStore fileStore = fileStoreBuilder(createContent()).buildReadOnly()) {
+            assertNull(fileStore.segmentPrefetcher);
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void prefetchReferencedSegments() throws Exception {
+        File directory = createContent();
+        try (ReadOnlyFileStore fileStore = fileStoreBuilder(directory)
+                .withSegmentPrefetch(2, 2)
+                .withStatisticsProvider(new DefaultStatisticsProvider(executor))
+                .buildReadOnly()) {
+            SegmentPrefetcher prefetcher = fileStore.segmentPrefetcher;
+            assertNotNull(prefetcher);
+
+            // Loading the head segment schedules its references for prefetching
+            fileStore.getHead().getChildNodeCount(Long.MAX_VALUE);
+            while (prefetcher.getPrefetchCount() == 0) {
+                Thread.sleep(10);
+            }
+
+            traverse(fileStore.getHead());
+            assertTrue(prefetcher.getHitCount() > 0);
+            assertTrue(prefetcher.getHitCount() <= prefetcher.getPrefetchCount());
+        }
+    }
+}
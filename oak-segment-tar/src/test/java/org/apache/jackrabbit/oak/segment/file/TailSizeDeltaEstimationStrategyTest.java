@@ -26,6 +26,7 @@ import static org.junit.Assert.assertTrue;
 import java.io.File;
 
 import org.apache.jackrabbit.oak.segment.file.EstimationStrategy.Context;
+import org.apache.jackrabbit.oak.segment.file.tar.GCGeneration;
 import org.apache.jackrabbit.oak.segment.file.tar.TarPersistence;
 import org.junit.Before;
 import org.junit.Rule;
@@ -88,6 +89,11 @@ public class TailSizeDeltaEstimationStrategyTest {
                 return journal;
             }
 
+            @Override
+            public GCGeneration getGcGeneration() {
+                return GCGeneration.NULL;
+            }
+
         }).isGcNeeded();
     }
 
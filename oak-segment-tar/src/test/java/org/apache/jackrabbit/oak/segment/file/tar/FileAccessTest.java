@@ -0,0 +1,242 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.segment.file.tar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.jackrabbit.oak.commons.Buffer;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileAccessTest {
+
+    private static final int FILE_SIZE = 64 * 1024;
+
+    private static final int WINDOW_SIZE = 8 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder(new File("target"));
+
+    private File file;
+
+    private byte[] data;
+
+    @Before
+    public void setUp() throws IOException {
+        data = new byte[FILE_SIZE];
+        new Random(42).nextBytes(data);
+        file = folder.newFile();
+        Files.write(file.toPath(), data);
+    }
+
+    private void assertContent(FileAccess access, int position, int length) throws IOException {
+        Buffer buffer = access.read(position, length);
+        assertEquals(length, buffer.remaining());
+        for (int i = 0; i < length; i++) {
+            assertEquals(data[position + i], buffer.get());
+        }
+    }
+
+    @Test
+    public void positionalReads() throws IOException {
+        FileAccess access = new FileAccess.Positional(new RandomAccessFile(file, "r"));
+        try {
+            assertFalse(access.isMemoryMapped());
+            assertEquals(FileAccess.POSITIONAL, access.getAccessMode());
+            assertEquals(FILE_SIZE, access.length());
+            assertContent(access, 0, 100);
+            assertContent(access, 1234, 4321);
+            assertContent(access, FILE_SIZE - 10, 10);
+        } finally {
+            access.close();
+        }
+    }
+
+    @Test
+    public void positionalOffHeapReads() throws IOException {
+        FileAccess access = new FileAccess.PositionalOffHeap(new RandomAccessFile(file, "r"));
+        try {
+            assertTrue(access.read(0, 10).isDirect());
+            assertContent(access, 4096, 512);
+        } finally {
+            access.close();
+        }
+    }
+
+    @Test
+    public void concurrentPositionalReads() throws Exception {
+        FileAccess access = new FileAccess.Positional(new RandomAccessFile(file, "r"));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int seed = t;
+                futures.add(executor.submit((Callable<Void>) () -> {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < 1000; i++) {
+                        int position = random.nextInt(FILE_SIZE - 1);
+                        int length = 1 + random.nextInt(Math.min(1024, FILE_SIZE - position));
+                        assertContent(access, position, length);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+            access.close();
+        }
+    }
+
+    @Test
+    public void windowedReads() throws IOException {
+        FileAccess.MappingBudget budget = new FileAccess.MappingBudget(Long.MAX_VALUE);
+        FileAccess access = new FileAccess.Windowed(new RandomAccessFile(file, "r"), WINDOW_SIZE, budget);
+        try {
+            assertTrue(access.isMemoryMapped());
+            assertEquals(FileAccess.WINDOWED, access.getAccessMode());
+            assertEquals(FILE_SIZE, access.length());
+            assertEquals(0, budget.getMappedBytes());
+
+            assertContent(access, 0, 100);
+            assertEquals(WINDOW_SIZE, budget.getMappedBytes());
+
+            // Reads within an already mapped window don't map anything else
+            assertContent(access, WINDOW_SIZE - 100, 100);
+            assertEquals(WINDOW_SIZE, budget.getMappedBytes());
+
+            // Reads spanning two windows are served by positional reads
+            assertContent(access, WINDOW_SIZE - 50, 100);
+            assertEquals(WINDOW_SIZE, budget.getMappedBytes());
+
+            assertContent(access, FILE_SIZE - 10, 10);
+            assertEquals(2 * WINDOW_SIZE, budget.getMappedBytes());
+        } finally {
+            access.close();
+        }
+        assertEquals(0, budget.getMappedBytes());
+    }
+
+    @Test
+    public void windowedReadsWithinBudget() throws IOException {
+        FileAccess.MappingBudget budget = new FileAccess.MappingBudget(2 * WINDOW_SIZE);
+        FileAccess first = new FileAccess.Windowed(new RandomAccessFile(file, "r"), WINDOW_SIZE, budget);
+        FileAccess second = new FileAccess.Windowed(new RandomAccessFile(file, "r"), WINDOW_SIZE, budget);
+        try {
+            for (int position = 0; position < FILE_SIZE; position += WINDOW_SIZE) {
+                assertContent(first, position, 100);
+                assertContent(second, position, 100);
+                assertTrue(budget.getMappedBytes() <= budget.getMaxMappedBytes());
+            }
+            assertEquals(2 * WINDOW_SIZE, budget.getMappedBytes());
+        } finally {
+            first.close();
+        }
+        assertContent(second, WINDOW_SIZE * 3, 100);
+        second.close();
+        assertEquals(0, budget.getMappedBytes());
+    }
+
+    @Test
+    public void windowedReadsEvictColdWindows() throws IOException {
+        FileAccess.MappingBudget budget = new FileAccess.MappingBudget(2 * WINDOW_SIZE);
+        FileAccess.Windowed access = new FileAccess.Windowed(new RandomAccessFile(file, "r"), WINDOW_SIZE, budget);
+        try {
+            assertContent(access, 0, 100);
+            assertContent(access, WINDOW_SIZE, 100);
+            assertTrue(access.isMapped(0));
+            assertTrue(access.isMapped(WINDOW_SIZE));
+            assertEquals(2 * WINDOW_SIZE, budget.getMappedBytes());
+
+            // The first window is hot, the second one is not
+            assertContent(access, 100, 100);
+
+            // A window read for the first time doesn't replace mapped windows
+            assertContent(access, 2 * WINDOW_SIZE, 100);
+            assertFalse(access.isMapped(2 * WINDOW_SIZE));
+
+            // A window read again replaces the window that was not read
+            assertContent(access, 2 * WINDOW_SIZE, 100);
+            assertTrue(access.isMapped(2 * WINDOW_SIZE));
+            assertEquals(2 * WINDOW_SIZE, budget.getMappedBytes());
+            assertTrue(access.isMapped(0));
+            assertFalse(access.isMapped(WINDOW_SIZE));
+            assertContent(access, WINDOW_SIZE, 100);
+            assertContent(access, 2 * WINDOW_SIZE, 100);
+        } finally {
+            access.close();
+        }
+        assertEquals(0, budget.getMappedBytes());
+    }
+
+    @Test
+    public void windowedReadsConcurrentWithClose() throws Exception {
+        FileAccess.MappingBudget budget = new FileAccess.MappingBudget(Long.MAX_VALUE);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int k = 0; k < 100; k++) {
+                final FileAccess access = new FileAccess.Windowed(new RandomAccessFile(file, "r"), WINDOW_SIZE, budget);
+                List<Future<Void>> futures = new ArrayList<>();
+                for (int t = 0; t < 4; t++) {
+                    final int offset = t;
+                    futures.add(executor.submit(new Callable<Void>() {
+
+                        @Override
+                        public Void call() {
+                            for (int position = offset; position < FILE_SIZE; position += WINDOW_SIZE) {
+                                try {
+                                    access.read(position, 100);
+                                } catch (IOException e) {
+                                    // Reads fail once the file is closed
+                                    return null;
+                                }
+                            }
+                            return null;
+                        }
+
+                    }));
+                }
+                access.close();
+                for (Future<Void> future : futures) {
+                    future.get();
+                }
+                assertEquals(0, budget.getMappedBytes());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+}
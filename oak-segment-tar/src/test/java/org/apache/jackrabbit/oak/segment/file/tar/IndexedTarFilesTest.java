@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jackrabbit.oak.segment.file.tar;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptySet;
+import static java.util.UUID.randomUUID;
+import static org.apache.jackrabbit.oak.segment.file.tar.GCGeneration.newGCGeneration;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.jackrabbit.oak.segment.file.tar.TarFiles.CleanupResult;
+import org.apache.jackrabbit.oak.segment.spi.monitor.FileStoreMonitorAdapter;
+import org.apache.jackrabbit.oak.segment.spi.monitor.IOMonitorAdapter;
+import org.apache.jackrabbit.oak.segment.spi.monitor.RemoteStoreMonitorAdapter;
+import org.junit.Before;
+import org.junit.Test;
+
+public class IndexedTarFilesTest extends TarFilesTest {
+
+    @Before
+    @Override
+    public void setUp() throws Exception {
+        tarFiles = newTarFiles();
+    }
+
+    private TarFiles newTarFiles() throws IOException {
+        return TarFiles.builder()
+            .withDirectory(folder.getRoot())
+            .withTarRecovery((id, data, recovery) -> {
+                // Intentionally left blank
+            })
+            .withIOMonitor(new IOMonitorAdapter())
+            .withFileStoreMonitor(new FileStoreMonitorAdapter())
+            .withMaxFileSize(MAX_FILE_SIZE)
+            .withRemoteStoreMonitor(new RemoteStoreMonitorAdapter())
+            .withSegmentLocationIndex(true)
+            .build();
+    }
+
+    @Test
+    public void testReopen() throws Exception {
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            UUID id = randomUUID();
+            byte[] data = new byte[512];
+            tarFiles.writeSegment(id, data, 0, data.length, newGCGeneration(1, 1, false), emptySet(), emptySet());
+            tarFiles.newWriter();
+            ids.add(id);
+        }
+        tarFiles.close();
+
+        tarFiles = newTarFiles();
+        assertEquals(3, tarFiles.readerCount());
+        for (UUID id : ids) {
+            assertTrue(tarFiles.containsSegment(id.getMostSignificantBits(), id.getLeastSignificantBits()));
+            assertNotNull(tarFiles.readSegment(id.getMostSignificantBits(), id.getLeastSignificantBits()));
+        }
+        UUID absent = randomUUID();
+        assertFalse(tarFiles.containsSegment(absent.getMostSignificantBits(), absent.getLeastSignificantBits()));
+    }
+
+    @Test
+    public void testCleanupKeepsDuplicatesInOlderFiles() throws Exception {
+        UUID a = randomUUID();
+        UUID b = randomUUID();
+
+        // The older TAR file is not worth rewriting for `a` because of `b`,
+        // while the newer one only contains a duplicate of `a`
+
+        byte[] small = new byte[512];
+        byte[] large = new byte[64 * 1024];
+        tarFiles.writeSegment(a, small, 0, small.length, newGCGeneration(1, 1, false), emptySet(), emptySet());
+        tarFiles.writeSegment(b, large, 0, large.length, newGCGeneration(1, 1, false), emptySet(), emptySet());
+        tarFiles.newWriter();
+        tarFiles.writeSegment(a, small, 0, small.length, newGCGeneration(1, 1, false), emptySet(), emptySet());
+        tarFiles.newWriter();
+
+        CleanupResult result = tarFiles.cleanup(new CleanupContext() {
+
+            @Override
+            public Collection<UUID> initialReferences() {
+                return emptyList();
+            }
+
+            @Override
+            public boolean shouldReclaim(UUID id, GCGeneration generation, boolean referenced) {
+                return id.equals(a);
+            }
+
+            @Override
+            public boolean shouldFollow(UUID from, UUID to) {
+                return true;
+            }
+
+        });
+
+        assertEquals(1, result.getRemovableFiles().size());
+        assertTrue(tarFiles.containsSegment(a.getMostSignificantBits(), a.getLeastSignificantBits()));
+        assertNotNull(tarFiles.readSegment(a.getMostSignificantBits(), a.getLeastSignificantBits()));
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jackrabbit.oak.segment.file.tar;
+
+import static java.util.Collections.emptySet;
+import static org.apache.jackrabbit.oak.segment.file.tar.GCGeneration.newGCGeneration;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.UUID;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.oak.segment.spi.monitor.FileStoreMonitorAdapter;
+import org.apache.jackrabbit.oak.segment.spi.monitor.IOMonitorAdapter;
+import org.apache.jackrabbit.oak.segment.spi.monitor.RemoteStoreMonitorAdapter;
+
+/**
+ * Measures the cost of {@link TarFiles#readSegment(long, long)} and of
+ * {@link TarFiles#containsSegment(long, long)} for absent segments with and
+ * without the segment location index for an increasing number of TAR files.
+ */
+public class SegmentLocationIndexBenchmark {
+
+    private static final int SEGMENTS_PER_TAR = Integer.getInteger("segmentsPerTar", 64);
+
+    private static final int LOOKUPS = Integer.getInteger("lookups", 200000);
+
+    private static final int[] TAR_COUNTS = {10, 100, 1000, 4000};
+
+    public static void main(String... args) throws IOException {
+        System.out.printf("%8s %10s %14s %18s%n", "tars", "index", "read ns/op", "contains ns/op");
+        for (int tarCount : TAR_COUNTS) {
+            File directory = Files.createTempDirectory("tar-files").toFile();
+            try {
+                UUID[] ids = createTarFiles(directory, tarCount);
+                for (boolean index : new boolean[] {false, true}) {
+                    try (TarFiles tarFiles = newTarFiles(directory, index)) {
+                        // warm up
+                        lookup(tarFiles, ids);
+                        long[] nanos = lookup(tarFiles, ids);
+                        System.out.printf("%8d %10s %14d %18d%n",
+                                tarCount, index, nanos[0] / LOOKUPS, nanos[1] / LOOKUPS);
+                    }
+                }
+            } finally {
+                FileUtils.deleteQuietly(directory);
+            }
+        }
+    }
+
+    private static TarFiles newTarFiles(File directory, boolean segmentLocationIndex) throws IOException {
+        return TarFiles.builder()
+                .withDirectory(directory)
+                .withTarRecovery((id, data, recovery) -> {
+                    // Intentionally left blank
+                })
+                .withIOMonitor(new IOMonitorAdapter())
+                .withFileStoreMonitor(new FileStoreMonitorAdapter())
+                .withRemoteStoreMonitor(new RemoteStoreMonitorAdapter())
+                .withMaxFileSize(Long.MAX_VALUE)
+                .withMemoryMapping(true)
+                .withSegmentLocationIndex(segmentLocationIndex)
+                .build();
+    }
+
+    private static UUID[] createTarFiles(File directory, int tarCount) throws IOException {
+        Random random = new Random(42);
+        byte[] data = new byte[512];
+        UUID[] ids = new UUID[tarCount * SEGMENTS_PER_TAR];
+        try (TarFiles tarFiles = newTarFiles(directory, false)) {
+            for (int k = 0; k < ids.length; k++) {
+                random.nextBytes(data);
+                ids[k] = new UUID(random.nextLong(), 0xA000000000000000L | (random.nextLong() >>> 4));
+                tarFiles.writeSegment(ids[k], data, 0, data.length, newGCGeneration(1, 1, false), emptySet(), emptySet());
+                if ((k + 1) % SEGMENTS_PER_TAR == 0) {
+                    tarFiles.newWriter();
+                }
+            }
+        }
+        return ids;
+    }
+
+    private static long[] lookup(TarFiles tarFiles, UUID[] ids) {
+        Random random = new Random(1);
+
+        long t0 = System.nanoTime();
+        for (int k = 0; k < LOOKUPS; k++) {
+            UUID id = ids[random.nextInt(ids.length)];
+            if (tarFiles.readSegment(id.getMostSignificantBits(), id.getLeastSignificantBits()) == null) {
+                throw new IllegalStateException("Segment not found " + id);
+            }
+        }
+        long read = System.nanoTime() - t0;
+
+        t0 = System.nanoTime();
+        for (int k = 0; k < LOOKUPS; k++) {
+            if (tarFiles.containsSegment(random.nextLong(), random.nextLong())) {
+                throw new IllegalStateException("Unexpected segment");
+            }
+        }
+        long contains = System.nanoTime() - t0;
+
+        return new long[] {read, contains};
+    }
+}
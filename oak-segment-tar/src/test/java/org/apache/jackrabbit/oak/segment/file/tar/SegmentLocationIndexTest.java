@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jackrabbit.oak.segment.file.tar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import org.junit.Test;
+
+public class SegmentLocationIndexTest {
+
+    private final SegmentLocationIndex index = new SegmentLocationIndex();
+
+    @Test
+    public void emptyIndex() {
+        assertEquals(0, index.size());
+        assertEquals(-1, index.get(1, 2));
+        assertFalse(index.remove(1, 2, 0));
+    }
+
+    @Test
+    public void putGetRemove() {
+        index.put(1, 2, 0);
+        index.put(3, 4, 7);
+        assertEquals(2, index.size());
+        assertEquals(0, index.get(1, 2));
+        assertEquals(7, index.get(3, 4));
+
+        index.put(1, 2, 5);
+        assertEquals(2, index.size());
+        assertEquals(5, index.get(1, 2));
+
+        assertFalse(index.remove(1, 2, 0));
+        assertTrue(index.remove(1, 2, 5));
+        assertEquals(1, index.size());
+        assertEquals(-1, index.get(1, 2));
+        assertEquals(7, index.get(3, 4));
+    }
+
+    @Test
+    public void randomOperations() {
+        Random random = new Random(42);
+        Map<UUID, Integer> expected = new HashMap<>();
+        List<UUID> ids = new ArrayList<>();
+
+        for (int k = 0; k < 100000; k++) {
+            if (ids.isEmpty() || random.nextInt(3) > 0) {
+                UUID id = UUID.randomUUID();
+                int tar = random.nextInt(1000);
+                ids.add(id);
+                expected.put(id, tar);
+                index.put(id.getMostSignificantBits(), id.getLeastSignificantBits(), tar);
+            } else {
+                UUID id = ids.remove(random.nextInt(ids.size()));
+                int tar = expected.remove(id);
+                assertTrue(index.remove(id.getMostSignificantBits(), id.getLeastSignificantBits(), tar));
+            }
+        }
+
+        assertEquals(expected.size(), index.size());
+        for (Map.Entry<UUID, Integer> entry : expected.entrySet()) {
+            UUID id = entry.getKey();
+            assertEquals((int) entry.getValue(), index.get(id.getMostSignificantBits(), id.getLeastSignificantBits()));
+        }
+        for (int k = 0; k < 1000; k++) {
+            UUID id = UUID.randomUUID();
+            assertEquals(-1, index.get(id.getMostSignificantBits(), id.getLeastSignificantBits()));
+        }
+    }
+}
@@ -18,6 +18,8 @@
 package org.apache.jackrabbit.oak.segment.file.tar;
 
 import static com.google.common.collect.Sets.newHashSet;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.Files.readAllLines;
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptySet;
 import static java.util.Collections.singleton;
@@ -32,12 +34,14 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.UUID;
 
 import org.apache.jackrabbit.oak.commons.Buffer;
@@ -290,6 +294,74 @@ public class TarFilesTest {
         assertEquals(references, singleton("ok"));
     }
 
+    @Test
+    public void testCollectBlobReferencesSorted() throws Exception {
+        writeSegmentWithBinaryReferences(randomUUID(), "c", "a");
+        tarFiles.newWriter();
+        writeSegmentWithBinaryReferences(randomUUID(), "b", "a");
+        tarFiles.newWriter();
+        writeSegmentWithBinaryReferences(randomUUID());
+
+        File references = folder.newFile();
+        tarFiles.collectBlobReferences(references, gen -> false, new BinaryReferencesCollector(null, 2));
+        assertEquals(asList("a", "b", "c"), readAllLines(references.toPath(), UTF_8));
+    }
+
+    @Test
+    public void testCollectBlobReferencesSortedWithGenerationFilter() throws Exception {
+        GCGeneration ok = newGCGeneration(1, 1, false);
+        GCGeneration ko = newGCGeneration(2, 2, false);
+
+        writeSegmentWithBinaryReferences(randomUUID(), ok, "ok");
+        writeSegmentWithBinaryReferences(randomUUID(), ko, "ko", "ok");
+
+        File references = folder.newFile();
+        tarFiles.collectBlobReferences(references, ko::equals, new BinaryReferencesCollector(null, 2));
+        assertEquals(singletonList("ok"), readAllLines(references.toPath(), UTF_8));
+    }
+
+    @Test
+    public void testCollectBlobReferencesCached() throws Exception {
+        GCGeneration ok = newGCGeneration(1, 1, false);
+        GCGeneration ko = newGCGeneration(2, 2, false);
+
+        writeSegmentWithBinaryReferences(randomUUID(), ok, "a");
+        writeSegmentWithBinaryReferences(randomUUID(), ko, "b");
+        tarFiles.newWriter();
+        writeSegmentWithBinaryReferences(randomUUID(), ok, "c");
+
+        File cache = folder.newFolder();
+        BinaryReferencesCollector collector = new BinaryReferencesCollector(cache, 2);
+        File references = folder.newFile();
+        tarFiles.collectBlobReferences(references, gen -> false, collector);
+        assertEquals(asList("a", "b", "c"), readAllLines(references.toPath(), UTF_8));
+        assertEquals(2, cache.list().length);
+
+        // The cached references are filtered by generation
+        tarFiles.collectBlobReferences(references, ko::equals, collector);
+        assertEquals(asList("a", "c"), readAllLines(references.toPath(), UTF_8));
+
+        // Only the TAR file created in between is added to the cache
+        writeSegmentWithBinaryReferences(randomUUID(), ok, "d");
+        tarFiles.collectBlobReferences(references, gen -> false, collector);
+        assertEquals(asList("a", "b", "c", "d"), readAllLines(references.toPath(), UTF_8));
+        assertEquals(3, cache.list().length);
+    }
+
+    @Test
+    public void testCollectBlobReferencesMergesInRounds() throws Exception {
+        Set<String> expected = new TreeSet<>();
+        for (int i = 0; i < BinaryReferencesCollector.MERGE_FAN_IN + 10; i++) {
+            writeSegmentWithBinaryReferences(randomUUID(), newGCGeneration(i, i, false), "r" + i, "r" + (i + 1));
+            expected.add("r" + i);
+            expected.add("r" + (i + 1));
+        }
+
+        File references = folder.newFile();
+        tarFiles.collectBlobReferences(references, gen -> false, new BinaryReferencesCollector(null, 4));
+        assertEquals(new ArrayList<>(expected), readAllLines(references.toPath(), UTF_8));
+    }
+
     @Test
     public void testGetSegmentId() throws Exception {
         UUID a = randomUUID();
@@ -53,6 +53,10 @@ public class SegmentNodeStoreServiceTest {
             .withIntegerType()
             .withValue("64")
             .check());
+        assertTrue(cd.hasProperty("mapRecordCache.size")
+            .withIntegerType()
+            .withValue("0")
+            .check());
         assertTrue(cd.hasProperty("stringDeduplicationCache.size")
             .withIntegerType()
             .withValue("15000")
@@ -171,6 +175,10 @@ public class SegmentNodeStoreServiceTest {
             .withIntegerType()
             .withDefaultValue("64")
             .check());
+        assertTrue(ocd.hasAttributeDefinition("mapRecordCache.size")
+            .withIntegerType()
+            .withDefaultValue("0")
+            .check());
         assertTrue(ocd.hasAttributeDefinition("stringDeduplicationCache.size")
             .withIntegerType()
             .withDefaultValue("15000")
@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jackrabbit.oak.segment.scheduler;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.EMPTY_NODE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.commons.concurrent.ExecutorCloser;
+import org.apache.jackrabbit.oak.segment.RecordId;
+import org.apache.jackrabbit.oak.segment.SegmentNodeState;
+import org.apache.jackrabbit.oak.segment.SegmentNodeStoreStats;
+import org.apache.jackrabbit.oak.segment.memory.MemoryStore;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.EmptyHook;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.apache.jackrabbit.oak.stats.StatisticsProvider;
+import org.junit.Test;
+
+public class OptimisticSchedulerTest {
+
+    private static NodeState getRoot(Scheduler scheduler) {
+        return scheduler.getHeadNodeState().getChildNode("root");
+    }
+
+    private static OptimisticScheduler newScheduler(MemoryStore ms, int maxAttempts) {
+        SegmentNodeStoreStats stats = new SegmentNodeStoreStats(StatisticsProvider.NOOP);
+        return OptimisticScheduler.builder(ms.getRevisions(), ms.getReader(), stats)
+                .withMaxAttempts(maxAttempts)
+                .build();
+    }
+
+    @Test
+    public void concurrentDisjointCommits() throws Exception {
+        assertAllCommitsApplied(5);
+    }
+
+    @Test
+    public void concurrentCommitsWithoutOptimisticAttempts() throws Exception {
+        assertAllCommitsApplied(0);
+    }
+
+    private static void assertAllCommitsApplied(int maxAttempts) throws Exception {
+        MemoryStore ms = new MemoryStore();
+        OptimisticScheduler scheduler = newScheduler(ms, maxAttempts);
+        ExecutorService executorService = newFixedThreadPool(10);
+        AtomicInteger count = new AtomicInteger();
+
+        try {
+            List<Future<?>> results = newArrayList();
+            for (int i = 0; i < 100; i++) {
+                results.add(executorService.submit(() -> {
+                    String child = "child" + count.incrementAndGet();
+                    NodeBuilder builder = getRoot(scheduler).builder();
+                    builder.child(child).setProperty("p", child);
+                    return scheduler.schedule(new Commit(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY));
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            new ExecutorCloser(executorService).close();
+        }
+
+        NodeState root = getRoot(scheduler);
+        assertEquals(100, root.getChildNodeCount(Long.MAX_VALUE));
+        for (int i = 1; i <= 100; i++) {
+            assertTrue(root.hasChildNode("child" + i));
+        }
+        assertEquals(ms.getRevisions().getHead(), ((SegmentNodeState) scheduler.getHeadNodeState()).getRecordId());
+    }
+
+    /**
+     * Same as {@link LockBasedSchedulerTest#testSimulatedRaceOnRevisions()}:
+     * external updates of the head state must not cause commits to get lost.
+     */
+    @Test
+    public void testSimulatedRaceOnRevisions() throws Exception {
+        final MemoryStore ms = new MemoryStore();
+        final OptimisticScheduler scheduler = newScheduler(ms, 5);
+
+        final RecordId initialHead = ms.getRevisions().getHead();
+        ExecutorService executorService = newFixedThreadPool(10);
+        final AtomicInteger count = new AtomicInteger();
+        final Random rand = new Random();
+
+        try {
+            Callable<PropertyState> commitTask = () -> {
+                String property = "prop" + count.incrementAndGet();
+                NodeBuilder a = getRoot(scheduler).builder();
+                a.setProperty(property, "value");
+                Commit commit = new Commit(a, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+                SegmentNodeState result = (SegmentNodeState) scheduler.schedule(commit);
+
+                return result.getProperty(property);
+            };
+
+            Callable<Void> parallelTask = () -> {
+                Thread.sleep(rand.nextInt(10));
+                ms.getRevisions().setHead(ms.getRevisions().getHead(), initialHead);
+                return null;
+            };
+
+            List<Future<PropertyState>> results = newArrayList();
+            for (int i = 0; i < 100; i++) {
+                results.add(executorService.submit(commitTask));
+                executorService.submit(parallelTask);
+            }
+
+            for (Future<PropertyState> result : results) {
+                assertNotNull(
+                        "PropertyState must not be null! The corresponding commit got lost because of a race condition.",
+                        result.get());
+            }
+        } finally {
+            new ExecutorCloser(executorService).close();
+        }
+    }
+
+    @Test
+    public void overlappingChanges() {
+        NodeBuilder builder = EMPTY_NODE.builder();
+        builder.child("a").child("b");
+        builder.child("c");
+        NodeState base = builder.getNodeState();
+
+        NodeState addToA = addChild(base, "a", "x");
+        NodeState addToC = addChild(base, "c", "y");
+        assertFalse(OptimisticScheduler.overlaps(base, addToA, addToC));
+        assertTrue(OptimisticScheduler.overlaps(base, addToA, addChild(base, "a", "x")));
+
+        NodeBuilder removeA = base.builder();
+        removeA.getChildNode("a").remove();
+        assertTrue(OptimisticScheduler.overlaps(base, addToA, removeA.getNodeState()));
+
+        NodeBuilder changeB = base.builder();
+        changeB.child("a").child("b").setProperty("p", "q");
+        assertFalse(OptimisticScheduler.overlaps(base, addToC, changeB.getNodeState()));
+
+        NodeBuilder changeA = base.builder();
+        changeA.child("a").setProperty("p", "q");
+        assertTrue(OptimisticScheduler.overlaps(base, changeA.getNodeState(), changeB.getNodeState()));
+    }
+
+    private static NodeState addChild(NodeState base, String parent, String name) {
+        NodeBuilder builder = base.builder();
+        builder.child(parent).child(name);
+        return builder.getNodeState();
+    }
+}
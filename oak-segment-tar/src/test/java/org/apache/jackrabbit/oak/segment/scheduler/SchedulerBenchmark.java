@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.jackrabbit.oak.segment.scheduler;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.jackrabbit.oak.segment.SegmentNodeStoreStats;
+import org.apache.jackrabbit.oak.segment.memory.MemoryStore;
+import org.apache.jackrabbit.oak.spi.commit.CommitHook;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.state.DefaultNodeStateDiff;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.stats.StatisticsProvider;
+
+/**
+ * Measures commits per second of the {@link LockBasedScheduler} and the
+ * {@link OptimisticScheduler} for an increasing number of writer threads.
+ * Writers either change disjoint subtrees ({@code /writer-n}) or all change
+ * the same node ({@code /shared}). The commit hook diffs the changes and
+ * spins for {@code hookCostMicros} (default 200) to simulate the cost of
+ * validators and editors.
+ */
+public class SchedulerBenchmark {
+
+    private static final long HOOK_COST_MICROS = Long.getLong("hookCostMicros", 200);
+
+    private static final long DURATION_MILLIS = Long.getLong("durationMillis", 5000);
+
+    private static final int[] THREADS = {1, 2, 4, 8, 16};
+
+    private static final CommitHook HOOK = (before, after, info) -> {
+        after.compareAgainstBaseState(before, new DefaultNodeStateDiff());
+        long end = System.nanoTime() + MICROSECONDS.toNanos(HOOK_COST_MICROS);
+        while (System.nanoTime() < end) {
+            // busy wait
+        }
+        return after;
+    };
+
+    public static void main(String... args) throws Exception {
+        System.out.printf("%-12s %-12s %8s %12s%n", "scheduler", "writes", "threads", "commits/s");
+        for (boolean overlapping : new boolean[] {false, true}) {
+            for (int threads : THREADS) {
+                run(false, overlapping, threads);
+                run(true, overlapping, threads);
+            }
+        }
+    }
+
+    private static void run(boolean optimistic, boolean overlapping, int threads) throws Exception {
+        MemoryStore store = new MemoryStore();
+        SegmentNodeStoreStats stats = new SegmentNodeStoreStats(StatisticsProvider.NOOP);
+        Scheduler scheduler = optimistic
+            ? OptimisticScheduler.builder(store.getRevisions(), store.getReader(), stats).dispatchChanges(false).build()
+            : LockBasedScheduler.builder(store.getRevisions(), store.getReader(), stats).dispatchChanges(false).build();
+
+        AtomicLong commits = new AtomicLong();
+        long end = System.currentTimeMillis() + DURATION_MILLIS;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int t = 0; t < threads; t++) {
+                String node = overlapping ? "shared" : "writer-" + t;
+                String property = "p" + t;
+                futures.add(executor.submit(() -> {
+                    for (long k = 0; System.currentTimeMillis() < end; k++) {
+                        NodeBuilder builder = scheduler.getHeadNodeState().getChildNode(Commit.ROOT).builder();
+                        builder.child(node).setProperty(property, k);
+                        scheduler.schedule(new Commit(builder, HOOK, CommitInfo.EMPTY));
+                        commits.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            long elapsed = System.nanoTime() - start;
+            System.out.printf("%-12s %-12s %8d %12.0f%n",
+                    optimistic ? "optimistic" : "lock-based",
+                    overlapping ? "overlapping" : "disjoint",
+                    threads,
+                    commits.get() * 1e9 / elapsed);
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(1, NANOSECONDS);
+        }
+    }
+}
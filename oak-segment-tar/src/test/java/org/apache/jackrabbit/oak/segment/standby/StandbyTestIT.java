@@ -102,6 +102,41 @@ public class StandbyTestIT extends TestBase {
         }
     }
 
+    @Test
+    public void testPipelinedSync() throws Exception {
+        int blobSize = 5 * MB;
+        FileStore primary = serverFileStore.fileStore();
+        FileStore secondary = clientFileStore.fileStore();
+
+        NodeStore store = SegmentNodeStoreBuilders.builder(primary).build();
+        try (
+            StandbyServerSync serverSync = StandbyServerSync.builder()
+                .withPort(serverPort.getPort())
+                .withFileStore(primary)
+                .withBlobChunkSize(MB)
+                .build();
+            StandbyClientSync clientSync = new StandbyClientSync(getServerHost(), serverPort.getPort(), secondary, false, getClientTimeout(), false, folder.newFolder(), 16)
+        ) {
+            serverSync.start();
+            byte[] data = addTestContent(store, "server", blobSize, 5000);
+            primary.flush();
+
+            clientSync.run();
+
+            assertEquals(primary.getHead(), secondary.getHead());
+
+            PropertyState ps = secondary.getHead().getChildNode("root")
+                    .getChildNode("server").getProperty("testBlob");
+            assertNotNull(ps);
+            Blob b = ps.getValue(Type.BINARY);
+            assertEquals(blobSize, b.length());
+
+            byte[] testData = new byte[blobSize];
+            ByteStreams.readFully(b.getNewStream(), testData);
+            assertArrayEquals(data, testData);
+        }
+    }
+
     /**
      * OAK-2430
      */
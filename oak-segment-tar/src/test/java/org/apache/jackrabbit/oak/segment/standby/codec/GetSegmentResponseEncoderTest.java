@@ -25,6 +25,7 @@ import java.util.UUID;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.embedded.EmbeddedChannel;
+import org.apache.jackrabbit.oak.commons.Buffer;
 import org.junit.Test;
 
 public class GetSegmentResponseEncoderTest {
@@ -49,4 +50,33 @@ public class GetSegmentResponseEncoderTest {
         assertEquals(expected, buffer);
     }
 
+    @Test
+    public void encodeResponseFromDirectBuffer() throws Exception {
+        UUID uuid = new UUID(1, 2);
+        byte[] data = new byte[20000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+
+        Buffer segment = Buffer.allocateDirect(data.length + 10);
+        segment.position(5);
+        segment.put(data);
+        segment.position(5);
+        segment.limit(5 + data.length);
+
+        EmbeddedChannel channel = new EmbeddedChannel(new GetSegmentResponseEncoder());
+        channel.writeOutbound(new GetSegmentResponse("clientId", uuid.toString(), segment.slice()));
+        ByteBuf buffer = (ByteBuf) channel.readOutbound();
+
+        ByteBuf expected = Unpooled.buffer();
+        expected.writeInt(data.length + 25);
+        expected.writeByte(Messages.HEADER_SEGMENT);
+        expected.writeLong(uuid.getMostSignificantBits());
+        expected.writeLong(uuid.getLeastSignificantBits());
+        expected.writeLong(hash(data));
+        expected.writeBytes(data);
+
+        assertEquals(expected, buffer);
+    }
+
 }
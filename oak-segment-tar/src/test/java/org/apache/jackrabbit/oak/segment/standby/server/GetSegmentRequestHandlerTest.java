@@ -26,6 +26,7 @@ import static org.mockito.Mockito.when;
 import java.util.UUID;
 
 import io.netty.channel.embedded.EmbeddedChannel;
+import org.apache.jackrabbit.oak.commons.Buffer;
 import org.apache.jackrabbit.oak.segment.standby.codec.GetSegmentRequest;
 import org.apache.jackrabbit.oak.segment.standby.codec.GetSegmentResponse;
 import org.junit.Test;
@@ -37,7 +38,7 @@ public class GetSegmentRequestHandlerTest {
         byte[] data = new byte[] {3, 4, 5};
 
         StandbySegmentReader reader = mock(StandbySegmentReader.class);
-        when(reader.readSegment("segmentId")).thenReturn(data);
+        when(reader.readSegment("segmentId")).thenReturn(Buffer.wrap(data));
 
         EmbeddedChannel channel = new EmbeddedChannel(new GetSegmentRequestHandler(reader));
         channel.writeInbound(new GetSegmentRequest("clientId", "segmentId"));
@@ -107,6 +107,14 @@ import static org.apache.jackrabbit.oak.plugins.document.DocumentNodeStoreBuilde
                     "but slightly lower cache hit rate)")
     int cacheStackMoveDistance() default DEFAULT_CACHE_STACK_MOVE_DISTANCE;
 
+    @AttributeDefinition(
+            name = "Off-Heap Document Cache Size (in MB)",
+            description = "Size in MB of the off-heap cache for documents evicted " +
+                    "from the Document and PreviousDocument caches (default 0, " +
+                    "which disables the off-heap cache). The JVM must allow this " +
+                    "amount of direct memory (-XX:MaxDirectMemorySize)")
+    int offHeapDocumentCache() default DocumentNodeStoreService.DEFAULT_OFF_HEAP_DOCUMENT_CACHE;
+
     @AttributeDefinition(
             name = "Blob Cache Size (in MB)",
             description = "Cache size to store blobs in memory. Used only with default BlobStore " +
@@ -20,6 +20,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
@@ -608,6 +609,35 @@ public class DocumentNodeState extends AbstractDocumentNodeState implements Cach
             return children.toString();
         }
 
+        /**
+         * @return the ascending sorted list of names of child nodes.
+         */
+        public List<String> getNames() {
+            return Collections.unmodifiableList(children);
+        }
+
+        /**
+         * @return {@code true} if there are more child nodes than listed
+         *          by {@link #getNames()}.
+         */
+        public boolean hasMore() {
+            return hasMore;
+        }
+
+        /**
+         * Creates a new instance with the given child node names.
+         *
+         * @param names the ascending sorted list of names of child nodes.
+         * @param hasMore whether there are more child nodes than listed.
+         * @return the children.
+         */
+        public static Children fromNames(List<String> names, boolean hasMore) {
+            Children children = new Children();
+            children.children.addAll(names);
+            children.hasMore = hasMore;
+            return children;
+        }
+
         public String asString() {
             JsopWriter json = new JsopBuilder();
             if (hasMore) {
@@ -516,6 +516,11 @@ public final class DocumentNodeStore
 
     private final int updateLimit;
 
+    /**
+     * Minimum number of uncached child nodes read with a single query.
+     */
+    private final int childPrefetchThreshold;
+
     /**
      * A set of non-branch commit revisions that are currently in progress. A
      * revision is added to this set when {@link #newTrunkCommit(Changes, RevisionVector)}
@@ -536,6 +541,7 @@ public final class DocumentNodeStore
     public DocumentNodeStore(DocumentNodeStoreBuilder<?> builder) {
         this.nodeCachePredicate = builder.getNodeCachePathPredicate();
         this.updateLimit = builder.getUpdateLimit();
+        this.childPrefetchThreshold = builder.getChildPrefetchThreshold();
         this.commitValueResolver = new CachingCommitValueResolver(
                 builder.getCommitValueCacheSize(), this::getSweepRevisions)
                 .withEmptyCommitValueCache(
@@ -1412,7 +1418,9 @@ public final class DocumentNodeStore
         }
 
         final RevisionVector readRevision = parent.getLastRevision();
-        return transform(getChildren(parent, name, limit).children, new Function<String, DocumentNodeState>() {
+        DocumentNodeState.Children children = getChildren(parent, name, limit);
+        prefetchChildren(parent.getPath(), children, readRevision);
+        return transform(children.children, new Function<String, DocumentNodeState>() {
             @Override
             public DocumentNodeState apply(String input) {
                 Path p = new Path(parent.getPath(), input);
@@ -1458,6 +1466,51 @@ public final class DocumentNodeStore
         });
     }
 
+    /**
+     * Reads the documents of the uncached child nodes with a single bulk
+     * {@link DocumentStore#findBatch(Collection, List)} and puts the child node
+     * states into the node cache, if at least {@link #childPrefetchThreshold}
+     * of the child nodes are neither in the node cache nor in the document
+     * cache. Otherwise every uncached child node would be read with a
+     * separate call to the {@link DocumentStore}.
+     *
+     * @param path the path of the parent node.
+     * @param children the child nodes to prefetch.
+     * @param readRevision the read revision of the child nodes.
+     */
+    private void prefetchChildren(@NotNull Path path,
+                                  @NotNull DocumentNodeState.Children children,
+                                  @NotNull RevisionVector readRevision) {
+        if (childPrefetchThreshold <= 0
+                || children.children.size() < childPrefetchThreshold) {
+            return;
+        }
+        List<String> uncached = new ArrayList<>();
+        for (String c : children.children) {
+            Path p = new Path(path, c);
+            String id = Utils.getIdFromPath(p);
+            if (nodeCache.getIfPresent(new PathRev(p, readRevision)) == null
+                    && store.getIfCached(Collection.NODES, id) == null) {
+                uncached.add(id);
+            }
+        }
+        if (uncached.size() < childPrefetchThreshold) {
+            return;
+        }
+        final long start = PERFLOG.start();
+        int numPrefetched = 0;
+        for (NodeDocument doc : store.findBatch(Collection.NODES, uncached)) {
+            Path p = doc.getPath();
+            Revision lastRevision = getPendingModifications().get(p);
+            DocumentNodeState child = doc.getNodeAtRevision(this, readRevision, lastRevision);
+            nodeCache.put(new PathRev(p, readRevision), child != null ? child : missing);
+            numPrefetched++;
+        }
+        nodeStoreStatsCollector.doneChildPrefetch(numPrefetched);
+        PERFLOG.end(start, 1, "prefetchChildren: path={}, numPrefetched={}",
+                path, numPrefetched);
+    }
+
     @Nullable
     private DocumentNodeState readNode(Path path, RevisionVector readRevision) {
         final long start = PERFLOG.start();
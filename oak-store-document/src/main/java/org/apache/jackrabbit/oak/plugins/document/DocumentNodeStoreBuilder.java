@@ -41,6 +41,7 @@ import org.apache.jackrabbit.oak.plugins.blob.BlobStoreStats;
 import org.apache.jackrabbit.oak.plugins.blob.CachingBlobStore;
 import org.apache.jackrabbit.oak.plugins.blob.ReferencedBlob;
 import org.apache.jackrabbit.oak.plugins.document.cache.NodeDocumentCache;
+import org.apache.jackrabbit.oak.plugins.document.cache.OffHeapDocumentCache;
 import org.apache.jackrabbit.oak.plugins.document.locks.NodeDocumentLocks;
 import org.apache.jackrabbit.oak.plugins.document.memory.MemoryDocumentStore;
 import org.apache.jackrabbit.oak.plugins.document.persistentCache.CacheType;
@@ -83,6 +84,7 @@ public class DocumentNodeStoreBuilder<T extends DocumentNodeStoreBuilder<T>> {
     public static final int DEFAULT_CACHE_SEGMENT_COUNT = 16;
     public static final int DEFAULT_CACHE_STACK_MOVE_DISTANCE = 16;
     public static final int DEFAULT_UPDATE_LIMIT = 100000;
+    public static final int DEFAULT_CHILD_PREFETCH_THRESHOLD = 10;
 
     /**
      * The path where the persistent cache is stored.
@@ -107,6 +109,20 @@ public class DocumentNodeStoreBuilder<T extends DocumentNodeStoreBuilder<T>> {
      */
     static final int UPDATE_LIMIT = Integer.getInteger("update.limit", DEFAULT_UPDATE_LIMIT);
 
+    /**
+     * Minimum number of uncached child nodes to read with a single query
+     * when child nodes are iterated.
+     */
+    static final int CHILD_PREFETCH_THRESHOLD = Integer.getInteger(
+            "oak.documentMK.childPrefetchThreshold", DEFAULT_CHILD_PREFETCH_THRESHOLD);
+
+    /**
+     * Size in MB of the off-heap cache for documents evicted from the
+     * document caches. Zero (the default) disables the off-heap cache.
+     */
+    static final long OFF_HEAP_DOCUMENT_CACHE_SIZE = Long.getLong(
+            "oak.documentMK.offHeapDocumentCacheSizeMB", 0);
+
     protected Supplier<DocumentStore> documentStoreSupplier = ofInstance(new MemoryDocumentStore());
     protected Supplier<BlobStore> blobStoreSupplier;
     private DiffCache diffCache;
@@ -141,10 +157,13 @@ public class DocumentNodeStoreBuilder<T extends DocumentNodeStoreBuilder<T>> {
     private DocumentStoreStatsCollector documentStoreStatsCollector;
     private DocumentNodeStoreStatsCollector nodeStoreStatsCollector;
     private Map<String, PersistentCacheStats> persistentCacheStats = new HashMap<>();
+    private long offHeapDocumentCacheSize = OFF_HEAP_DOCUMENT_CACHE_SIZE * 1024 * 1024;
+    private Map<String, OffHeapDocumentCache<?>> offHeapCaches = new HashMap<>();
     private boolean bundlingDisabled;
     private JournalPropertyHandlerFactory journalPropertyHandlerFactory =
             new JournalPropertyHandlerFactory();
     private int updateLimit = UPDATE_LIMIT;
+    private int childPrefetchThreshold = CHILD_PREFETCH_THRESHOLD;
     private int commitValueCacheSize = 10000;
     private boolean cacheEmptyCommitValue = false;
     private long maxRevisionAgeMillis = DEFAULT_JOURNAL_GC_MAX_AGE_MILLIS;
@@ -435,6 +454,27 @@ public class DocumentNodeStoreBuilder<T extends DocumentNodeStoreBuilder<T>> {
         return memoryCacheSize * diffCachePercentage / 100;
     }
 
+    /**
+     * Sets the size of the off-heap cache for {@link NodeDocument}s evicted
+     * from the document and previous document caches. The size is
+     * distributed among the two caches in the same ratio as the in-memory
+     * caches. Zero disables the off-heap cache. The off-heap cache is only
+     * used with the LIRS cache implementation and the JVM must allow the
+     * given amount of direct memory (-XX:MaxDirectMemorySize).
+     *
+     * @param offHeapDocumentCacheSize the size in bytes.
+     * @return this builder.
+     */
+    public T setOffHeapDocumentCacheSize(long offHeapDocumentCacheSize) {
+        checkArgument(offHeapDocumentCacheSize >= 0);
+        this.offHeapDocumentCacheSize = offHeapDocumentCacheSize;
+        return thisBuilder();
+    }
+
+    public long getOffHeapDocumentCacheSize() {
+        return offHeapDocumentCacheSize;
+    }
+
     public long getMemoryDiffCacheSize() {
         return getDiffCacheSize() / 2;
     }
@@ -565,6 +605,24 @@ public class DocumentNodeStoreBuilder<T extends DocumentNodeStoreBuilder<T>> {
         return updateLimit;
     }
 
+    /**
+     * Sets the minimum number of child nodes neither in the node cache nor
+     * in the document cache, for which the child node documents are read
+     * with a single query instead of one read per child node. A value of
+     * zero or less disables reading child node documents in bulk.
+     *
+     * @param threshold the minimum number of uncached child nodes.
+     * @return this
+     */
+    public T setChildPrefetchThreshold(int threshold) {
+        this.childPrefetchThreshold = threshold;
+        return thisBuilder();
+    }
+
+    public int getChildPrefetchThreshold() {
+        return childPrefetchThreshold;
+    }
+
     public T setCommitValueCacheSize(int cacheSize) {
         this.commitValueCacheSize = cacheSize;
         return thisBuilder();
@@ -663,7 +721,8 @@ public class DocumentNodeStoreBuilder<T extends DocumentNodeStoreBuilder<T>> {
         Cache<StringValue, NodeDocument> prevDocumentsCache = buildPrevDocumentsCache(docStore);
         CacheStats prevDocumentsCacheStats = new CacheStats(prevDocumentsCache, "Document-PrevDocuments", getWeigher(), getPrevDocumentCacheSize());
 
-        return new NodeDocumentCache(nodeDocumentsCache, nodeDocumentsCacheStats, prevDocumentsCache, prevDocumentsCacheStats, locks);
+        return new NodeDocumentCache(nodeDocumentsCache, nodeDocumentsCacheStats, prevDocumentsCache, prevDocumentsCacheStats,
+                offHeapCaches.values(), locks);
     }
 
     /**
@@ -700,6 +759,17 @@ public class DocumentNodeStoreBuilder<T extends DocumentNodeStoreBuilder<T>> {
             DocumentStore docStore) {
         Set<EvictionListener<K, V>> listeners = new CopyOnWriteArraySet<EvictionListener<K,V>>();
         Cache<K, V> cache = buildCache(cacheType.name(), maxWeight, listeners);
+        long offHeapSize = getOffHeapCacheSize(cacheType);
+        if (docStore != null && LIRS_CACHE && offHeapSize > 0) {
+            // the off-heap cache is the second level below the in-memory
+            // cache and above the persistent cache
+            String name = cacheType == CacheType.DOCUMENT ? "Document-Documents-OffHeap" : "Document-PrevDocuments-OffHeap";
+            OffHeapDocumentCache<K> offHeap = new OffHeapDocumentCache<K>((Cache<K, NodeDocument>) cache,
+                    docStore, name, offHeapSize, cacheSegmentCount, cacheStackMoveDistance);
+            listeners.add((EvictionListener<K, V>) offHeap);
+            offHeapCaches.put(cacheType.name(), offHeap);
+            cache = (Cache<K, V>) offHeap;
+        }
         PersistentCache p = null;
         if (cacheType == CacheType.DIFF || cacheType == CacheType.LOCAL_DIFF) {
             // use separate journal cache if configured
@@ -722,6 +792,23 @@ public class DocumentNodeStoreBuilder<T extends DocumentNodeStoreBuilder<T>> {
         return cache;
     }
 
+    /**
+     * Returns the share of the off-heap cache for the given cache type.
+     */
+    private long getOffHeapCacheSize(CacheType cacheType) {
+        if (cacheType != CacheType.DOCUMENT && cacheType != CacheType.PREV_DOCUMENT) {
+            return 0;
+        }
+        long documentCacheSize = getDocumentCacheSize();
+        long prevDocumentCacheSize = getPrevDocumentCacheSize();
+        long total = documentCacheSize + prevDocumentCacheSize;
+        if (offHeapDocumentCacheSize <= 0 || total <= 0) {
+            return 0;
+        }
+        long size = cacheType == CacheType.DOCUMENT ? documentCacheSize : prevDocumentCacheSize;
+        return (long) ((double) offHeapDocumentCacheSize * size / total);
+    }
+
     public PersistentCache getPersistentCache() {
         if (persistentCacheURI == null) {
             return null;
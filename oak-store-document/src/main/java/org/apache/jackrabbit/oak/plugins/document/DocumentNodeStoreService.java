@@ -131,6 +131,7 @@ public class DocumentNodeStoreService {
     static final String DEFAULT_URI = "mongodb://localhost:27017/oak";
     static final int DEFAULT_CACHE = (int) (DEFAULT_MEMORY_CACHE_SIZE / MB);
     static final int DEFAULT_BLOB_CACHE_SIZE = 16;
+    static final int DEFAULT_OFF_HEAP_DOCUMENT_CACHE = 0;
     static final String DEFAULT_DB = "oak";
     static final boolean DEFAULT_SO_KEEP_ALIVE = true;
     static final String DEFAULT_PERSISTENT_CACHE = "cache";
@@ -429,6 +430,7 @@ public class DocumentNodeStoreService {
                         config.diffCachePercentage()).
                 setCacheSegmentCount(config.cacheSegmentCount()).
                 setCacheStackMoveDistance(config.cacheStackMoveDistance()).
+                setOffHeapDocumentCacheSize(config.offHeapDocumentCache() * MB).
                 setBundlingDisabled(config.bundlingDisabled()).
                 setJournalPropertyHandlerFactory(journalPropertyHandlerFactory).
                 setLeaseCheckMode(ClusterNodeInfo.DEFAULT_LEASE_CHECK_DISABLED ? LeaseCheckMode.DISABLED : LeaseCheckMode.valueOf(config.leaseCheckMode())).
@@ -65,6 +65,10 @@ public class DocumentNodeStoreStats implements DocumentNodeStoreStatsCollector {
     static final String BRANCH_COMMIT_COUNT = "DOCUMENT_NS_BRANCH_COMMIT_COUNT";
     static final String MERGE_BRANCH_COMMIT_COUNT = "DOCUMENT_NS_MERGE_BRANCH_COMMIT_COUNT";
 
+    static final String CHILD_PREFETCH_COUNT = "DOCUMENT_NS_CHILD_PREFETCH_COUNT";
+    static final String CHILD_PREFETCH_ROUND_TRIPS_SAVED = "DOCUMENT_NS_CHILD_PREFETCH_ROUND_TRIPS_SAVED";
+    private static final String CHILD_PREFETCH_NUM = "DOCUMENT_NS_CHILD_PREFETCH_NUM";
+
     // background read
     private final TimerStats readHead;
     private final TimerStats readCacheInvalidate;
@@ -107,6 +111,11 @@ public class DocumentNodeStoreStats implements DocumentNodeStoreStatsCollector {
     private final MeterStats branchCommitRate;
     private final MeterStats mergeBranchCommitRate;
 
+    // child prefetch stats
+    private final MeterStats childPrefetchRate;
+    private final MeterStats childPrefetchRoundTripsSaved;
+    private final HistogramStats childPrefetchNum;
+
 
     public DocumentNodeStoreStats(StatisticsProvider sp) {
         readHead = sp.getTimer(BGR_READ_HEAD, StatsOptions.METRICS_ONLY);
@@ -145,6 +154,10 @@ public class DocumentNodeStoreStats implements DocumentNodeStoreStatsCollector {
 
         branchCommitRate = sp.getMeter(BRANCH_COMMIT_COUNT, StatsOptions.DEFAULT);
         mergeBranchCommitRate = sp.getMeter(MERGE_BRANCH_COMMIT_COUNT, StatsOptions.DEFAULT);
+
+        childPrefetchRate = sp.getMeter(CHILD_PREFETCH_COUNT, StatsOptions.METRICS_ONLY);
+        childPrefetchRoundTripsSaved = sp.getMeter(CHILD_PREFETCH_ROUND_TRIPS_SAVED, StatsOptions.METRICS_ONLY);
+        childPrefetchNum = sp.getHistogram(CHILD_PREFETCH_NUM, StatsOptions.METRICS_ONLY);
     }
 
     @Override
@@ -245,4 +258,14 @@ public class DocumentNodeStoreStats implements DocumentNodeStoreStatsCollector {
     public void doneChangesApplied(long timeMicros) {
         mergeChangesApplied.update(timeMicros, TimeUnit.MICROSECONDS);
     }
+
+    @Override
+    public void doneChildPrefetch(int numChildren) {
+        childPrefetchRate.mark();
+        childPrefetchNum.update(numChildren);
+        // a single query instead of one read per child node
+        if (numChildren > 1) {
+            childPrefetchRoundTripsSaved.mark(numChildren - 1);
+        }
+    }
 }
@@ -114,4 +114,12 @@ public interface DocumentNodeStoreStatsCollector {
      * @param timeMicros the time in microseconds.
      */
     void doneChangesApplied(long timeMicros);
+
+    /**
+     * Reports to the collector that the documents of child nodes were read
+     * with a single query instead of one read per child node.
+     *
+     * @param numChildren the number of child nodes read with the query.
+     */
+    void doneChildPrefetch(int numChildren);
 }
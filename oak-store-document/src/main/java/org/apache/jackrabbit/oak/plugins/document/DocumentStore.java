@@ -81,6 +81,26 @@ public interface DocumentStore {
     <T extends Document> T find(Collection<T> collection, String key, int maxCacheAge)
             throws DocumentStoreException;
 
+    /**
+     * Get the documents with the given {@code keys}. This method is
+     * equivalent to calling {@link #find(Collection, String)} for each of
+     * the keys, but an implementation reads the documents not in its cache
+     * with as few calls to the underlying storage as possible.
+     * <p>
+     * The returned documents are immutable.
+     *
+     * @param <T> the document type
+     * @param collection the collection
+     * @param keys the keys
+     * @return the documents found, in the order of the given keys. The list
+     *          does not contain entries for keys without a document.
+     * @throws DocumentStoreException if the operation failed. E.g. because of
+     *          an I/O error.
+     */
+    @NotNull
+    <T extends Document> List<T> findBatch(Collection<T> collection, List<String> keys)
+            throws DocumentStoreException;
+
     /**
      * Get a list of documents where the key is greater than a start value and
      * less than an end value.
@@ -25,6 +25,7 @@ import javax.management.openmbean.CompositeData;
 
 import org.apache.jackrabbit.api.stats.TimeSeries;
 import org.apache.jackrabbit.oak.plugins.document.util.Utils;
+import org.apache.jackrabbit.oak.stats.HistogramStats;
 import org.apache.jackrabbit.oak.stats.MeterStats;
 import org.apache.jackrabbit.oak.stats.StatisticsProvider;
 import org.apache.jackrabbit.oak.stats.StatsOptions;
@@ -50,6 +51,9 @@ public class DocumentStoreStats implements DocumentStoreStatsCollector, Document
     static final String NODES_FIND_MISSING = "DOCUMENT_NODES_FIND_MISSING";
     static final String NODES_FIND_MISSING_TIMER = "DOCUMENT_NODES_FIND_MISSING_TIMER";
     static final String NODES_FIND_TIMER = "DOCUMENT_NODES_FIND";
+    static final String NODES_FIND_BATCH = "DOCUMENT_NODES_FIND_BATCH";
+    static final String NODES_FIND_BATCH_SIZE = "DOCUMENT_NODES_FIND_BATCH_SIZE";
+    static final String NODES_FIND_BATCH_TIMER = "DOCUMENT_NODES_FIND_BATCH_TIMER";
 
     static final String NODES_QUERY_FIND_READ_COUNT = "DOCUMENT_NODES_QUERY_FIND";
     static final String NODES_QUERY_FILTER = "DOCUMENT_NODES_QUERY_FILTER";
@@ -85,6 +89,9 @@ public class DocumentStoreStats implements DocumentStoreStatsCollector, Document
     private final MeterStats findNodesSlave;
     private final TimerStats findNodesTimer;
     private final MeterStats findNodesPrimary;
+    private final MeterStats findNodesBatch;
+    private final HistogramStats findNodesBatchSize;
+    private final TimerStats findNodesBatchTimer;
     private final MeterStats queryNodesSlave;
     private final MeterStats queryNodesPrimary;
     private final MeterStats queryNodesResult;
@@ -121,6 +128,10 @@ public class DocumentStoreStats implements DocumentStoreStatsCollector, Document
         findNodesSlave = provider.getMeter(NODES_FIND_SLAVE, StatsOptions.DEFAULT);
         findNodesPrimary = provider.getMeter(NODES_FIND_PRIMARY, StatsOptions.DEFAULT);
 
+        findNodesBatch = provider.getMeter(NODES_FIND_BATCH, StatsOptions.DEFAULT);
+        findNodesBatchSize = provider.getHistogram(NODES_FIND_BATCH_SIZE, StatsOptions.METRICS_ONLY);
+        findNodesBatchTimer = provider.getTimer(NODES_FIND_BATCH_TIMER, StatsOptions.METRICS_ONLY);
+
         queryNodesSlave = provider.getMeter(NODES_QUERY_SLAVE, StatsOptions.DEFAULT);
         queryNodesPrimary = provider.getMeter(NODES_QUERY_PRIMARY, StatsOptions.DEFAULT);
         queryNodesResult = provider.getMeter(NODES_QUERY_FIND_READ_COUNT, StatsOptions.DEFAULT);
@@ -189,6 +200,29 @@ public class DocumentStoreStats implements DocumentStoreStatsCollector, Document
         perfLog(timeTakenNanos, "findUncached on key={}, isSlaveOk={}", key, isSlaveOk);
     }
 
+    @Override
+    public void doneFindBatch(long timeTakenNanos, Collection<? extends Document> collection, int numKeys,
+                              int numFound, boolean isSlaveOk) {
+        if (collection == Collection.NODES){
+            findNodesBatch.mark();
+            findNodesBatchSize.update(numKeys);
+            findNodesBatchTimer.update(timeTakenNanos, TimeUnit.NANOSECONDS);
+
+            //Documents not found in a batch count as missing like for single reads
+            if (numFound < numKeys) {
+                findNodesMissing.mark(numKeys - numFound);
+            }
+
+            if (isSlaveOk){
+                findNodesSlave.mark();
+            } else {
+                findNodesPrimary.mark();
+            }
+        }
+
+        perfLog(timeTakenNanos, "findBatch on {} keys, found={}, isSlaveOk={}", numKeys, numFound, isSlaveOk);
+    }
+
     @Override
     public void doneQuery(long timeTakenNanos, Collection<? extends Document> collection, String fromKey, String toKey,
                           boolean indexedProperty, int resultSize, long lockTime, boolean isSlaveOk) {
@@ -40,6 +40,17 @@ public interface DocumentStoreStatsCollector {
      */
     void doneFindUncached(long timeTakenNanos, Collection<? extends Document> collection, String key, boolean docFound, boolean isSlaveOk);
 
+    /**
+     * Called when documents with the given number of keys were read from
+     * the remote store with a single call
+     * @param timeTakenNanos time taken
+     * @param collection the collection
+     * @param numKeys number of keys read from the remote store
+     * @param numFound number of documents found
+     * @param isSlaveOk true if find was performed against a secondary instance
+     */
+    void doneFindBatch(long timeTakenNanos, Collection<? extends Document> collection, int numKeys, int numFound, boolean isSlaveOk);
+
     /**
      * Called when query with given parameters is performed
      * @param timeTakenNanos time taken
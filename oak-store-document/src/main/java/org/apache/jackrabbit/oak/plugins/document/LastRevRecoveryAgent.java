@@ -30,6 +30,7 @@ import static org.apache.jackrabbit.oak.plugins.document.util.Utils.resolveCommi
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
@@ -517,17 +518,26 @@ public class LastRevRecoveryAgent {
     @Nullable
     private NodeDocument findNearestAncestorOrSelf(@NotNull Path path,
                                                    @NotNull List<Path> missingDocuments) {
-        NodeDocument ancestor;
-        for (;;) {
-            ancestor = store.find(NODES, Utils.getIdFromPath(path));
+        NodeDocument ancestor = store.find(NODES, Utils.getIdFromPath(path));
+        if (ancestor != null) {
+            return ancestor;
+        }
+        missingDocuments.add(path);
+        // read the documents of all ancestors at once
+        List<String> ids = new ArrayList<>();
+        for (Path p = path.getParent(); p != null; p = p.getParent()) {
+            ids.add(Utils.getIdFromPath(p));
+        }
+        Map<String, NodeDocument> ancestors = new HashMap<>();
+        for (NodeDocument doc : store.findBatch(NODES, ids)) {
+            ancestors.put(doc.getId(), doc);
+        }
+        for (Path p = path.getParent(); p != null; p = p.getParent()) {
+            ancestor = ancestors.get(Utils.getIdFromPath(p));
             if (ancestor != null) {
                 break;
             }
-            missingDocuments.add(path);
-            path = path.getParent();
-            if (path == null) {
-                break;
-            }
+            missingDocuments.add(p);
         }
         return ancestor;
     }
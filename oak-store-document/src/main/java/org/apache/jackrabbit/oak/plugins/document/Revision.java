@@ -16,6 +16,8 @@
  */
 package org.apache.jackrabbit.oak.plugins.document;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.apache.jackrabbit.oak.cache.CacheValue;
 import org.apache.jackrabbit.oak.plugins.document.util.Utils;
 import org.apache.jackrabbit.oak.stats.Clock;
@@ -27,6 +29,21 @@ import static com.google.common.base.Preconditions.checkNotNull;
  */
 public final class Revision implements CacheValue {
 
+    /**
+     * Number of low order bits of {@link #lastRevision} holding the counter.
+     * This leaves 43 bits for timestamps, which is sufficient until the
+     * year 2248.
+     */
+    private static final int COUNTER_BITS = 20;
+
+    /**
+     * The timestamp and the counter of the last revision created by
+     * {@link #newRevision(int)}, packed into a single value: the timestamp in
+     * the high order bits, the counter in the low order {@link #COUNTER_BITS}
+     * bits. Must be initialized before {@link #REV_STRING_APPROX_SIZE}.
+     */
+    private static final AtomicLong lastRevision = new AtomicLong();
+
     //Extra 2 for those cases where counter or clusterId is 2 digit
     final static int REV_STRING_APPROX_SIZE = Revision.newRevision(0).toString().length() + 2;
 
@@ -34,9 +51,6 @@ public final class Revision implements CacheValue {
 
     private static volatile long lastTimestamp;
 
-    private static volatile long lastRevisionTimestamp;
-    private static volatile int lastRevisionCount;
-
     /**
      * The timestamp in milliseconds since 1970 (unlike in seconds as in
      * MongoDB). The timestamp is local to the machine that generated the
@@ -76,7 +90,7 @@ public final class Revision implements CacheValue {
         checkNotNull(c);
         clock = c;
         lastTimestamp = clock.getTime();
-        lastRevisionTimestamp = clock.getTime();
+        lastRevision.set(clock.getTime() << COUNTER_BITS);
     }
 
     /**
@@ -176,22 +190,23 @@ public final class Revision implements CacheValue {
      */
     static Revision newRevision(int clusterId) {
         long timestamp = getCurrentTimestamp();
-        int c;
-        synchronized (Revision.class) {
-            // need to check again, because threads
-            // could arrive inside the synchronized block
-            // out of order
-            if (timestamp < lastRevisionTimestamp) {
-                timestamp = lastRevisionTimestamp;
-            }
-            if (timestamp == lastRevisionTimestamp) {
-                c = ++lastRevisionCount;
+        long last;
+        long next;
+        do {
+            // need to check against the last revision, because threads
+            // may get their timestamps out of order
+            last = lastRevision.get();
+            if (timestamp > last >>> COUNTER_BITS) {
+                next = timestamp << COUNTER_BITS;
             } else {
-                lastRevisionTimestamp = timestamp;
-                lastRevisionCount = c = 0;
+                // same or earlier timestamp: increment the counter. On
+                // overflow of the counter this moves on to the next
+                // millisecond
+                next = last + 1;
             }
-        }
-        return new Revision(timestamp, c, clusterId);
+        } while (!lastRevision.compareAndSet(last, next));
+        return new Revision(next >>> COUNTER_BITS,
+                (int) (next & ((1 << COUNTER_BITS) - 1)), clusterId);
     }
 
     /**
@@ -883,11 +883,8 @@ public class VersionGarbageCollector {
                     if (nRemoved < deletionBatch.size()) {
                         // some nodes were re-created while GC was running
                         // find the document that still exist
-                        for (String id : deletionBatch.keySet()) {
-                            NodeDocument d = ds.find(NODES, id);
-                            if (d != null) {
-                                concurrentModification(d);
-                            }
+                        for (NodeDocument d : ds.findBatch(NODES, Lists.newArrayList(deletionBatch.keySet()))) {
+                            concurrentModification(d);
                         }
                         recreatedCount += (deletionBatch.size() - nRemoved);
                     }
@@ -18,6 +18,7 @@ package org.apache.jackrabbit.oak.plugins.document.cache;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -62,6 +63,11 @@ public class NodeDocumentCache implements Closeable {
     private final Cache<StringValue, NodeDocument> prevDocumentsCache;
     private final CacheStats prevDocumentsCacheStats;
 
+    /**
+     * The {@link OffHeapDocumentCache}s below the document caches, if any.
+     */
+    private final List<OffHeapDocumentCache<?>> offHeapCaches;
+
     private final NodeDocumentLocks locks;
 
     private final List<CacheChangesTracker> changeTrackers;
@@ -71,10 +77,21 @@ public class NodeDocumentCache implements Closeable {
                              @NotNull Cache<StringValue, NodeDocument> prevDocumentsCache,
                              @NotNull CacheStats prevDocumentsCacheStats,
                              @NotNull NodeDocumentLocks locks) {
+        this(nodeDocumentsCache, nodeDocumentsCacheStats, prevDocumentsCache,
+                prevDocumentsCacheStats, Collections.<OffHeapDocumentCache<?>>emptyList(), locks);
+    }
+
+    public NodeDocumentCache(@NotNull Cache<CacheValue, NodeDocument> nodeDocumentsCache,
+                             @NotNull CacheStats nodeDocumentsCacheStats,
+                             @NotNull Cache<StringValue, NodeDocument> prevDocumentsCache,
+                             @NotNull CacheStats prevDocumentsCacheStats,
+                             @NotNull Iterable<? extends OffHeapDocumentCache<?>> offHeapCaches,
+                             @NotNull NodeDocumentLocks locks) {
         this.nodeDocumentsCache = nodeDocumentsCache;
         this.nodeDocumentsCacheStats = nodeDocumentsCacheStats;
         this.prevDocumentsCache = prevDocumentsCache;
         this.prevDocumentsCacheStats = prevDocumentsCacheStats;
+        this.offHeapCaches = Lists.newArrayList(offHeapCaches);
         this.locks = locks;
         this.changeTrackers = new CopyOnWriteArrayList<CacheChangesTracker>();
     }
@@ -126,8 +143,14 @@ public class NodeDocumentCache implements Closeable {
         for (Entry<String, ModificationStamp> e : modStamps.entrySet()) {
             String id = e.getKey();
             ModificationStamp stamp = e.getValue();
-            NodeDocument doc = getIfPresent(id);
+            NodeDocument doc = getIfPresentInMemory(id);
             if (doc == null) {
+                if (isCached(id)) {
+                    // do not read the document from off-heap memory
+                    // just to compare it, drop it instead
+                    invalidate(id);
+                    invalidatedCount++;
+                }
                 continue;
             }
             if (!Objects.equal(stamp.modCount, doc.getModCount())
@@ -154,6 +177,27 @@ public class NodeDocumentCache implements Closeable {
         }
     }
 
+    /**
+     * Checks whether a document with the given key is cached, either in memory
+     * or in off-heap memory. Unlike {@link #getIfPresent(String)}, this method
+     * does not read a document from off-heap memory into the in-memory cache.
+     *
+     * @param key document key
+     * @return {@code true} if a document with the given key is cached
+     */
+    public boolean isCached(@NotNull String key) {
+        if (getIfPresentInMemory(key) != null) {
+            return true;
+        }
+        StringValue k = new StringValue(key);
+        for (OffHeapDocumentCache<?> offHeap : offHeapCaches) {
+            if (offHeap.containsOffHeap(k)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Return the document matching given key, optionally loading it from an
      * external source.
@@ -321,7 +365,8 @@ public class NodeDocumentCache implements Closeable {
     }
 
     /**
-     * @return keys stored in cache
+     * @return keys stored in the in-memory caches. Keys of documents in
+     *          off-heap memory are not included, see {@link #invalidateOffHeap()}.
      */
     public Iterable<CacheValue> keys() {
         return Iterables.concat(nodeDocumentsCache.asMap().keySet(), prevDocumentsCache.asMap().keySet());
@@ -334,8 +379,24 @@ public class NodeDocumentCache implements Closeable {
         return Iterables.concat(nodeDocumentsCache.asMap().values(), prevDocumentsCache.asMap().values());
     }
 
+    /**
+     * Removes all documents from off-heap memory. A full invalidation must
+     * call this method after it invalidated the documents returned by {@link
+     * #keys()}, so that it also covers documents evicted to off-heap memory
+     * in the meantime.
+     */
+    public void invalidateOffHeap() {
+        for (OffHeapDocumentCache<?> offHeap : offHeapCaches) {
+            offHeap.invalidateOffHeap();
+        }
+    }
+
     public Iterable<CacheStats> getCacheStats() {
-        return Lists.newArrayList(nodeDocumentsCacheStats, prevDocumentsCacheStats);
+        List<CacheStats> stats = Lists.newArrayList(nodeDocumentsCacheStats, prevDocumentsCacheStats);
+        for (OffHeapDocumentCache<?> offHeap : offHeapCaches) {
+            stats.add(offHeap.getCacheStats());
+        }
+        return stats;
     }
 
     @Override
@@ -346,6 +407,11 @@ public class NodeDocumentCache implements Closeable {
         if (nodeDocumentsCache instanceof Closeable) {
             ((Closeable) nodeDocumentsCache).close();
         }
+        // the off-heap caches may be wrapped by a persistent cache, which
+        // does not close them
+        for (OffHeapDocumentCache<?> offHeap : offHeapCaches) {
+            offHeap.close();
+        }
     }
 
     /**
@@ -454,6 +520,22 @@ public class NodeDocumentCache implements Closeable {
 
     //----------------------------< internal >----------------------------------
 
+    /**
+     * Returns the document from the in-memory cache without reading it from
+     * off-heap memory or a persistent cache.
+     *
+     * @param key document key
+     * @return the cached document or {@code null}
+     */
+    @Nullable
+    private NodeDocument getIfPresentInMemory(@NotNull String key) {
+        if (isLeafPreviousDocId(key)) {
+            return prevDocumentsCache.asMap().get(new StringValue(key));
+        } else {
+            return nodeDocumentsCache.asMap().get(new StringValue(key));
+        }
+    }
+
     /**
      * Marks the document as potentially changed.
      * 
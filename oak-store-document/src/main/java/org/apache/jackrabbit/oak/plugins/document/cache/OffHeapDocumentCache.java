@@ -0,0 +1,398 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document.cache;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.jackrabbit.oak.cache.CacheLIRS;
+import org.apache.jackrabbit.oak.cache.CacheStats;
+import org.apache.jackrabbit.oak.cache.CacheValue;
+import org.apache.jackrabbit.oak.commons.Buffer;
+import org.apache.jackrabbit.oak.commons.DirectMemorySlab;
+import org.apache.jackrabbit.oak.plugins.document.DocumentStore;
+import org.apache.jackrabbit.oak.plugins.document.NodeDocument;
+import org.apache.jackrabbit.oak.plugins.document.persistentCache.DataTypeUtil;
+import org.apache.jackrabbit.oak.plugins.document.persistentCache.EvictionListener;
+import org.h2.mvstore.WriteBuffer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * A second level cache for {@link NodeDocument}s in direct memory. Documents
+ * evicted from the wrapped in-memory cache are serialized into off-heap
+ * memory with the compact binary format of the persistent cache, which is
+ * considerably smaller than the heap representation of a document. A lookup
+ * that misses the in-memory cache deserializes the document from off-heap
+ * memory and puts it back into the in-memory cache.
+ * <p>
+ * The off-heap entries are managed by a {@link CacheLIRS} weighed by their
+ * size in direct memory, so entries are evicted with the same policy as from
+ * the in-memory caches. Only the key and a small handle of an entry are kept
+ * on the heap.
+ * <p>
+ * Puts and invalidations remove the off-heap entry before and after the
+ * in-memory cache is updated, and an entry deserialized from off-heap memory
+ * is only used when it was not removed in the meantime. The second removal
+ * covers a concurrent eviction of the previous document, which must therefore
+ * be reported while the in-memory cache holds the lock for the key, as
+ * {@link CacheLIRS} does. The cache therefore never returns a document older
+ * than the one last put into or invalidated on this cache, which is what the
+ * {@link NodeDocumentCache} and its {@link CacheChangesTracker}s rely on.
+ *
+ * @param <K> the key type
+ */
+public class OffHeapDocumentCache<K extends CacheValue>
+        implements Cache<K, NodeDocument>, EvictionListener<K, NodeDocument>, Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OffHeapDocumentCache.class);
+
+    /**
+     * The size of the blocks of direct memory in bytes.
+     */
+    static final int BLOCK_SIZE = 512;
+
+    private final Cache<K, NodeDocument> memCache;
+
+    private final DocumentStore store;
+
+    private final DirectMemorySlab memory;
+
+    private final CacheLIRS<K, Entry> entries;
+
+    private final CacheStats stats;
+
+    private volatile boolean closed;
+
+    /**
+     * Creates a new off-heap cache for the documents evicted from
+     * {@code memCache}. The caller must register the returned cache as an
+     * {@link EvictionListener} of {@code memCache}.
+     *
+     * @param memCache the in-memory cache to wrap.
+     * @param store the store of the documents.
+     * @param name the name of the cache.
+     * @param maxMemory the amount of direct memory in bytes.
+     * @param segmentCount the number of segments of the off-heap cache.
+     * @param stackMoveDistance the stack move distance of the off-heap cache.
+     */
+    public OffHeapDocumentCache(@NotNull Cache<K, NodeDocument> memCache,
+                                @NotNull DocumentStore store,
+                                @NotNull String name,
+                                long maxMemory,
+                                int segmentCount,
+                                int stackMoveDistance) {
+        this.memCache = memCache;
+        this.store = store;
+        this.memory = new DirectMemorySlab(maxMemory, BLOCK_SIZE);
+        Weigher<K, Entry> weigher = new Weigher<K, Entry>() {
+            @Override
+            public int weigh(@NotNull K key, @NotNull Entry value) {
+                return value.getMemory();
+            }
+        };
+        // leave some headroom: entries are allocated before the
+        // LIRS cache evicts other entries to make room for them
+        long maxWeight = memory.getMaxMemory() - memory.getMaxMemory() / 16;
+        this.entries = CacheLIRS.<K, Entry>newBuilder()
+                .module(name)
+                .weigher(weigher)
+                .averageWeight(2048)
+                .maximumWeight(maxWeight)
+                .segmentCount(segmentCount)
+                .stackMoveDistance(stackMoveDistance)
+                .recordStats()
+                .evictionCallback(new CacheLIRS.EvictionCallback<K, Entry>() {
+                    @Override
+                    public void evicted(@NotNull K key,
+                                        @Nullable Entry value,
+                                        @NotNull RemovalCause cause) {
+                        if (value != null) {
+                            value.free();
+                        }
+                    }
+                })
+                .build();
+        this.stats = new CacheStats(entries, name, weigher, maxWeight);
+        LOG.info("Off-heap cache {} with {} MB", name, maxMemory / 1024 / 1024);
+    }
+
+    /**
+     * @return the statistics of the off-heap entries.
+     */
+    @NotNull
+    public CacheStats getCacheStats() {
+        return stats;
+    }
+
+    /**
+     * @return the number of bytes of direct memory in use.
+     */
+    public long getUsedMemory() {
+        return memory.getUsedMemory();
+    }
+
+    @Override
+    @Nullable
+    public NodeDocument getIfPresent(@NotNull Object key) {
+        NodeDocument doc = memCache.getIfPresent(key);
+        if (doc != null || closed) {
+            return doc;
+        }
+        Entry e = entries.getIfPresent(key);
+        if (e == null) {
+            return null;
+        }
+        doc = e.read();
+        if (doc == null) {
+            // freed concurrently
+            return null;
+        }
+        @SuppressWarnings("unchecked")
+        K k = (K) key;
+        NodeDocument existing = memCache.asMap().putIfAbsent(k, doc);
+        if (existing != null) {
+            return existing;
+        }
+        if (e.isFreed()) {
+            // a put or invalidate removed the entry while it was read,
+            // the document may be outdated
+            memCache.asMap().remove(k, doc);
+            return memCache.getIfPresent(key);
+        }
+        return doc;
+    }
+
+    /**
+     * Checks whether a document with the given key is in off-heap memory.
+     * Unlike {@link #getIfPresent(Object)}, the document is neither read nor
+     * put into the in-memory cache.
+     *
+     * @param key the key of the document.
+     * @return {@code true} if the document is in off-heap memory.
+     */
+    public boolean containsOffHeap(@NotNull Object key) {
+        if (closed) {
+            return false;
+        }
+        @SuppressWarnings("unchecked")
+        Entry e = entries.peek((K) key);
+        return e != null && !e.isFreed();
+    }
+
+    /**
+     * Removes all documents from off-heap memory, but keeps the in-memory
+     * cache. A full invalidation of the document store only walks the keys
+     * of the in-memory cache and uses this method to drop the documents
+     * evicted to off-heap memory, which may have been changed by another
+     * cluster node.
+     */
+    public void invalidateOffHeap() {
+        entries.invalidateAll();
+    }
+
+    @Override
+    @NotNull
+    public NodeDocument get(@NotNull K key,
+                            @NotNull Callable<? extends NodeDocument> valueLoader)
+            throws ExecutionException {
+        NodeDocument doc = getIfPresent(key);
+        if (doc != null) {
+            return doc;
+        }
+        return memCache.get(key, valueLoader);
+    }
+
+    @Override
+    public ImmutableMap<K, NodeDocument> getAllPresent(@NotNull Iterable<?> keys) {
+        ImmutableMap.Builder<K, NodeDocument> builder = ImmutableMap.builder();
+        for (Object key : keys) {
+            NodeDocument doc = getIfPresent(key);
+            if (doc != null) {
+                @SuppressWarnings("unchecked")
+                K k = (K) key;
+                builder.put(k, doc);
+            }
+        }
+        return builder.build();
+    }
+
+    @Override
+    public void put(@NotNull K key, @NotNull NodeDocument value) {
+        entries.invalidate(key);
+        memCache.put(key, value);
+        entries.invalidate(key);
+    }
+
+    @Override
+    public void putAll(@NotNull Map<? extends K, ? extends NodeDocument> m) {
+        entries.invalidateAll(m.keySet());
+        memCache.putAll(m);
+        entries.invalidateAll(m.keySet());
+    }
+
+    @Override
+    public void invalidate(@NotNull Object key) {
+        entries.invalidate(key);
+        memCache.invalidate(key);
+        entries.invalidate(key);
+    }
+
+    @Override
+    public void invalidateAll(@NotNull Iterable<?> keys) {
+        entries.invalidateAll(keys);
+        memCache.invalidateAll(keys);
+        entries.invalidateAll(keys);
+    }
+
+    @Override
+    public void invalidateAll() {
+        entries.invalidateAll();
+        memCache.invalidateAll();
+        entries.invalidateAll();
+    }
+
+    @Override
+    public long size() {
+        return memCache.size();
+    }
+
+    @Override
+    public com.google.common.cache.CacheStats stats() {
+        return memCache.stats();
+    }
+
+    @Override
+    public ConcurrentMap<K, NodeDocument> asMap() {
+        return memCache.asMap();
+    }
+
+    @Override
+    public void cleanUp() {
+        memCache.cleanUp();
+    }
+
+    /**
+     * Invoked on the eviction from the in-memory cache. The document is
+     * written to off-heap memory, unless it is already there.
+     */
+    @Override
+    public void evicted(@NotNull K key,
+                        @Nullable NodeDocument value,
+                        @NotNull RemovalCause cause) {
+        if (cause != RemovalCause.SIZE || value == null
+                || value == NodeDocument.NULL || closed) {
+            return;
+        }
+        Entry e = entries.peek(key);
+        if (e != null && !e.isFreed() && e.modCount != null
+                && e.modCount.equals(value.getModCount())) {
+            // read from off-heap memory and not modified since
+            return;
+        }
+        WriteBuffer buffer = new WriteBuffer();
+        DataTypeUtil.documentToBuffer(value, buffer);
+        ByteBuffer data = buffer.getBuffer();
+        data.flip();
+        int[] blocks = memory.allocate(data.remaining());
+        if (blocks == null) {
+            // no room or closed, drop the document
+            entries.invalidate(key);
+            return;
+        }
+        e = new Entry(blocks, data.remaining(), value.getModCount(), value.getCreated());
+        // the write buffer is backed by a heap array
+        if (!memory.write(blocks, Buffer.wrap(data.array(), data.arrayOffset() + data.position(), data.remaining()))) {
+            entries.invalidate(key);
+            return;
+        }
+        entries.put(key, e);
+    }
+
+    /**
+     * Removes all entries and releases the direct memory.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        entries.invalidateAll();
+        memory.close();
+    }
+
+    /**
+     * The handle of a document in off-heap memory.
+     */
+    private final class Entry {
+
+        private final int[] blocks;
+
+        private final int length;
+
+        private final Long modCount;
+
+        private final long created;
+
+        private boolean freed;
+
+        Entry(int[] blocks, int length, Long modCount, long created) {
+            this.blocks = blocks;
+            this.length = length;
+            this.modCount = modCount;
+            this.created = created;
+        }
+
+        int getMemory() {
+            return blocks.length * BLOCK_SIZE;
+        }
+
+        synchronized boolean isFreed() {
+            return freed;
+        }
+
+        /**
+         * @return the document or {@code null} if the entry was freed.
+         */
+        @Nullable
+        NodeDocument read() {
+            byte[] data = new byte[length];
+            synchronized (this) {
+                if (freed || !memory.read(blocks, length, Buffer.wrap(data))) {
+                    return null;
+                }
+            }
+            return DataTypeUtil.documentFromBuffer(store, ByteBuffer.wrap(data), created);
+        }
+
+        synchronized void free() {
+            if (!freed) {
+                freed = true;
+                memory.release(blocks);
+            }
+        }
+    }
+}
@@ -126,6 +126,26 @@ public class MemoryDocumentStore implements DocumentStore {
         }
     }
 
+    @Override
+    @NotNull
+    public <T extends Document> List<T> findBatch(Collection<T> collection, List<String> keys) {
+        Lock lock = rwLock.readLock();
+        lock.lock();
+        try {
+            ConcurrentSkipListMap<String, T> map = getMap(collection);
+            List<T> docs = new ArrayList<T>(keys.size());
+            for (String key : keys) {
+                T doc = map.get(key);
+                if (doc != null) {
+                    docs.add(doc);
+                }
+            }
+            return docs;
+        } finally {
+            lock.unlock();
+        }
+    }
+
     @Override
     @NotNull
     public <T extends Document> List<T> query(Collection<T> collection,
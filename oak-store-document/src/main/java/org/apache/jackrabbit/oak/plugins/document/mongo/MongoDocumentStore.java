@@ -41,6 +41,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.mongodb.Block;
 import com.mongodb.DBObject;
@@ -370,6 +371,7 @@ public class MongoDocumentStore implements DocumentStore {
             result.invalidationCount++;
             invalidateCache(Collection.NODES, key.toString());
         }
+        nodesCache.invalidateOffHeap();
         return result;
     }
 
@@ -385,7 +387,7 @@ public class MongoDocumentStore implements DocumentStore {
             final List<String> ids = new ArrayList<String>(IN_CLAUSE_BATCH_SIZE);
             while(it.hasNext() && ids.size() < IN_CLAUSE_BATCH_SIZE) {
                 final String id = it.next();
-                if (nodesCache.getIfPresent(id) != null) {
+                if (nodesCache.isCached(id)) {
                     // only add those that we actually do have cached
                     ids.add(id);
                 }
@@ -589,6 +591,136 @@ public class MongoDocumentStore implements DocumentStore {
         }
     }
 
+    @SuppressWarnings("unchecked")
+    @NotNull
+    @Override
+    public <T extends Document> List<T> findBatch(Collection<T> collection,
+                                                  List<String> keys) {
+        final long start = PERFLOG.start();
+        Map<String, T> found = Maps.newHashMap();
+        List<String> uncached = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            if (collection == Collection.NODES) {
+                NodeDocument doc = nodesCache.getIfPresent(key);
+                if (doc != null) {
+                    stats.doneFindCached(collection, key);
+                    if (doc != NodeDocument.NULL) {
+                        found.put(key, (T) doc);
+                    }
+                    continue;
+                }
+            }
+            uncached.add(key);
+        }
+        for (List<String> keyBatch : Lists.partition(uncached, IN_CLAUSE_BATCH_SIZE)) {
+            for (T doc : findUncachedWithRetry(collection, keyBatch)) {
+                found.put(doc.getId(), doc);
+            }
+        }
+        List<T> result = new ArrayList<>(found.size());
+        for (String key : keys) {
+            T doc = found.get(key);
+            if (doc != null) {
+                result.add(doc);
+            }
+        }
+        PERFLOG.end(start, 1, "findBatch: keys={}, uncached={}", keys.size(), uncached.size());
+        return result;
+    }
+
+    /**
+     * Finds a batch of documents with a single read and performs a number of
+     * retries if the read fails with an exception.
+     *
+     * @param collection the collection to read from.
+     * @param keys the keys of the documents to find.
+     * @param <T> the document type of the given collection.
+     * @return the documents found, in no particular order.
+     */
+    @NotNull
+    private <T extends Document> List<T> findUncachedWithRetry(
+            Collection<T> collection, List<String> keys) {
+        int numAttempts = queryRetries + 1;
+        MongoException ex = null;
+        for (int i = 0; i < numAttempts; i++) {
+            if (i > 0) {
+                LOG.warn("Retrying read of {} documents", keys.size());
+            }
+            try {
+                return findUncached(collection, keys);
+            } catch (MongoException e) {
+                ex = e;
+            }
+        }
+        if (ex != null) {
+            throw handleException(ex, collection, keys);
+        } else {
+            // impossible to get here
+            throw new IllegalStateException();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @NotNull
+    protected <T extends Document> List<T> findUncached(Collection<T> collection,
+                                                        List<String> keys) {
+        log("findUncached", keys);
+        final Stopwatch watch = startWatch();
+        boolean isSlaveOk = false;
+        int resultSize = 0;
+        CacheChangesTracker cacheChangesTracker = null;
+        DocumentReadPreference docReadPref;
+        if (collection == Collection.NODES) {
+            cacheChangesTracker = nodesCache.registerTracker(Sets.newHashSet(keys));
+            docReadPref = getReadPreference(-1);
+        } else if (withClientSession()) {
+            docReadPref = getDefaultReadPreference(collection);
+        } else {
+            docReadPref = DocumentReadPreference.PRIMARY;
+        }
+        try {
+            ReadPreference readPreference = getMongoReadPreference(collection, null, docReadPref);
+            MongoCollection<BasicDBObject> dbCollection = getDBCollection(collection, readPreference);
+
+            if (readPreference.isSlaveOk()) {
+                LOG.trace("Routing call to secondary for fetching {} documents", keys.size());
+                isSlaveOk = true;
+            }
+
+            Bson query = Filters.in(Document.ID, keys);
+            List<BasicDBObject> objects = new ArrayList<>(keys.size());
+            execute(session -> {
+                if (session != null) {
+                    dbCollection.find(session, query).into(objects);
+                } else {
+                    dbCollection.find(query).into(objects);
+                }
+                return null;
+            });
+
+            List<T> list = new ArrayList<>(objects.size());
+            for (BasicDBObject o : objects) {
+                T doc = convertFromDBObject(collection, o);
+                if (doc != null) {
+                    doc.seal();
+                    list.add(doc);
+                }
+            }
+            resultSize = list.size();
+
+            if (cacheChangesTracker != null) {
+                nodesCache.putNonConflictingDocs(cacheChangesTracker, (List<NodeDocument>) list);
+            }
+            return list;
+        } finally {
+            if (cacheChangesTracker != null) {
+                cacheChangesTracker.close();
+            }
+            stats.doneFindBatch(watch.elapsed(TimeUnit.NANOSECONDS), collection,
+                    keys.size(), resultSize, isSlaveOk);
+        }
+    }
+
     @NotNull
     @Override
     public <T extends Document> List<T> query(Collection<T> collection,
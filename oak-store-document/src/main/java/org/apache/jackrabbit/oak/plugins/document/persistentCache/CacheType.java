@@ -32,6 +32,7 @@ import org.apache.jackrabbit.oak.plugins.document.util.RevisionsKey;
 import org.apache.jackrabbit.oak.plugins.document.util.StringValue;
 import org.h2.mvstore.WriteBuffer;
 import org.h2.mvstore.type.StringDataType;
+import org.jetbrains.annotations.Nullable;
 
 public enum CacheType {
     
@@ -95,10 +96,14 @@ public enum CacheType {
             return ((NamePathRev) a).compareTo((NamePathRev) b);
         }
 
+        @Override
+        int getVersion() {
+            return 2;
+        }
+
         @Override
         public <V> void writeValue(WriteBuffer buffer, V value) {
-            String s = ((DocumentNodeState.Children) value).asString();
-            StringDataType.INSTANCE.write(buffer, s);
+            DataTypeUtil.childrenToBuffer((DocumentNodeState.Children) value, buffer);
         }
 
         @SuppressWarnings("unchecked")
@@ -106,6 +111,20 @@ public enum CacheType {
         public <V> V readValue(DocumentNodeStore store,
                                DocumentStore docStore,
                                ByteBuffer buffer) {
+            return (V) DataTypeUtil.childrenFromBuffer(buffer);
+        }
+
+        @Override
+        <V> void writeLegacyValue(WriteBuffer buffer, V value) {
+            String s = ((DocumentNodeState.Children) value).asString();
+            StringDataType.INSTANCE.write(buffer, s);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        <V> V readLegacyValue(DocumentNodeStore store,
+                              DocumentStore docStore,
+                              ByteBuffer buffer) {
             return (V) DocumentNodeState.Children.fromString(readString(buffer));
         }
 
@@ -218,10 +237,14 @@ public enum CacheType {
             return ((StringValue) a).asString().compareTo(((StringValue) b).asString());
         }
 
+        @Override
+        int getVersion() {
+            return 2;
+        }
+
         @Override
         public <V> void writeValue(WriteBuffer buffer, V value) {
-            String s = ((NodeDocument) value).asString();
-            StringDataType.INSTANCE.write(buffer, s);
+            DataTypeUtil.documentToBuffer((NodeDocument) value, buffer);
         }
 
         @SuppressWarnings("unchecked")
@@ -229,6 +252,20 @@ public enum CacheType {
         public <V> V readValue(DocumentNodeStore store,
                                DocumentStore docStore,
                                ByteBuffer buffer) {
+            return (V) DataTypeUtil.documentFromBuffer(docStore, buffer);
+        }
+
+        @Override
+        <V> void writeLegacyValue(WriteBuffer buffer, V value) {
+            String s = ((NodeDocument) value).asString();
+            StringDataType.INSTANCE.write(buffer, s);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        <V> V readLegacyValue(DocumentNodeStore store,
+                              DocumentStore docStore,
+                              ByteBuffer buffer) {
             return (V) NodeDocument.fromString(docStore, readString(buffer));
         }
 
@@ -260,10 +297,14 @@ public enum CacheType {
             return ((RevisionsKey) a).compareTo((RevisionsKey) b);
         }
 
+        @Override
+        int getVersion() {
+            return 2;
+        }
+
         @Override
         public <V> void writeValue(WriteBuffer buffer, V value) {
-            String s = ((LocalDiffCache.Diff) value).asString();
-            StringDataType.INSTANCE.write(buffer, s);
+            DataTypeUtil.diffToBuffer((LocalDiffCache.Diff) value, buffer);
         }
 
         @SuppressWarnings("unchecked")
@@ -271,6 +312,20 @@ public enum CacheType {
         public <V> V readValue(DocumentNodeStore store,
                                DocumentStore docStore,
                                ByteBuffer buffer) {
+            return (V) DataTypeUtil.diffFromBuffer(buffer);
+        }
+
+        @Override
+        <V> void writeLegacyValue(WriteBuffer buffer, V value) {
+            String s = ((LocalDiffCache.Diff) value).asString();
+            StringDataType.INSTANCE.write(buffer, s);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        <V> V readLegacyValue(DocumentNodeStore store,
+                              DocumentStore docStore,
+                              ByteBuffer buffer) {
             return (V) LocalDiffCache.Diff.fromString(readString(buffer));
         }
 
@@ -285,7 +340,32 @@ public enum CacheType {
     public String getMapName() {
         // add a version suffix to the name and increment the version
         // whenever the serialization for a key or value changes
-        return name() + "-v1";
+        return getMapName(getVersion());
+    }
+
+    /**
+     * Returns the name of the map with the values of the previous version,
+     * which are read with {@link #readLegacyValue}. Keys of both versions
+     * must be serialized the same way.
+     *
+     * @return the name of the map or {@code null} if this type doesn't
+     *          support reading the values of the previous version.
+     */
+    @Nullable
+    public String getLegacyMapName() {
+        int version = getVersion();
+        return version > 1 ? getMapName(version - 1) : null;
+    }
+
+    private String getMapName(int version) {
+        return name() + "-v" + version;
+    }
+
+    /**
+     * @return the version of the serialization of this type.
+     */
+    int getVersion() {
+        return 1;
     }
 
     public abstract <K> void writeKey(WriteBuffer buffer, K key);
@@ -296,6 +376,25 @@ public enum CacheType {
             DocumentNodeStore store, DocumentStore docStore, ByteBuffer buffer);
     public abstract <K> boolean shouldCache(DocumentNodeStore store, K key);
 
+    /**
+     * Writes a value with the serialization of the previous version. Besides
+     * tests, this is used for broadcast messages, which cluster nodes running
+     * the previous version must be able to read. Must only be called if
+     * {@link #getLegacyMapName()} is not {@code null}.
+     */
+    <V> void writeLegacyValue(WriteBuffer buffer, V value) {
+        throw new IllegalStateException(this + " has no previous version");
+    }
+
+    /**
+     * Reads a value with the serialization of the previous version. Must
+     * only be called if {@link #getLegacyMapName()} is not {@code null}.
+     */
+    <V> V readLegacyValue(
+            DocumentNodeStore store, DocumentStore docStore, ByteBuffer buffer) {
+        throw new IllegalStateException(this + " has no previous version");
+    }
+
     private static String readString(ByteBuffer buffer) {
         return StringDataType.INSTANCE.read(buffer);
     }
@@ -21,15 +21,22 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 import org.apache.jackrabbit.oak.api.PropertyState;
 import org.apache.jackrabbit.oak.plugins.document.DocumentNodeState;
+import org.apache.jackrabbit.oak.plugins.document.DocumentNodeState.Children;
 import org.apache.jackrabbit.oak.plugins.document.DocumentNodeStore;
+import org.apache.jackrabbit.oak.plugins.document.DocumentStore;
+import org.apache.jackrabbit.oak.plugins.document.LocalDiffCache;
 import org.apache.jackrabbit.oak.plugins.document.NamePathRev;
+import org.apache.jackrabbit.oak.plugins.document.NodeDocument;
 import org.apache.jackrabbit.oak.plugins.document.Path;
 import org.apache.jackrabbit.oak.plugins.document.PathRev;
 import org.apache.jackrabbit.oak.plugins.document.Revision;
 import org.apache.jackrabbit.oak.plugins.document.RevisionVector;
+import org.apache.jackrabbit.oak.plugins.document.StableRevisionComparator;
 import org.h2.mvstore.DataUtils;
 import org.h2.mvstore.WriteBuffer;
 import org.h2.mvstore.type.StringDataType;
@@ -37,7 +44,7 @@ import org.h2.mvstore.type.StringDataType;
 /**
  * Utility class to write various types to a buffer and read it back again.
  */
-class DataTypeUtil {
+public class DataTypeUtil {
 
     static void booleanToBuffer(boolean b, WriteBuffer buffer) {
         buffer.put((byte) (b ? 1 : 0));
@@ -47,13 +54,25 @@ class DataTypeUtil {
         return buffer.get() != 0;
     }
 
+    static void revisionToBuffer(Revision r, WriteBuffer buffer) {
+        buffer.putLong(r.getTimestamp());
+        buffer.putVarInt(r.getCounter());
+        buffer.putVarInt(r.getClusterId());
+        booleanToBuffer(r.isBranch(), buffer);
+    }
+
+    static Revision revisionFromBuffer(ByteBuffer buffer) {
+        return new Revision(
+                buffer.getLong(),
+                DataUtils.readVarInt(buffer),
+                DataUtils.readVarInt(buffer),
+                booleanFromBuffer(buffer));
+    }
+
     static void revisionVectorToBuffer(RevisionVector rv, WriteBuffer buffer) {
         buffer.putVarInt(rv.getDimensions());
         for (Revision r : rv) {
-            buffer.putLong(r.getTimestamp());
-            buffer.putVarInt(r.getCounter());
-            buffer.putVarInt(r.getClusterId());
-            booleanToBuffer(r.isBranch(), buffer);
+            revisionToBuffer(r, buffer);
         }
     }
 
@@ -61,12 +80,7 @@ class DataTypeUtil {
         int dim  = DataUtils.readVarInt(buffer);
         List<Revision> revisions = new ArrayList<>();
         for (int i = 0; i < dim; i++) {
-            revisions.add(new Revision(
-                    buffer.getLong(),
-                    DataUtils.readVarInt(buffer),
-                    DataUtils.readVarInt(buffer),
-                    booleanFromBuffer(buffer))
-            );
+            revisions.add(revisionFromBuffer(buffer));
         }
         return new RevisionVector(revisions);
     }
@@ -166,4 +180,187 @@ class DataTypeUtil {
         return new DocumentNodeState(store, p, rootRevision, props,
                 !noChildren, mem, lastRevision, false);
     }
+
+    static void childrenToBuffer(Children children, WriteBuffer buffer) {
+        booleanToBuffer(children.hasMore(), buffer);
+        List<String> names = children.getNames();
+        buffer.putVarInt(names.size());
+        // names are sorted: only write the suffix after the prefix
+        // shared with the previous name
+        String previous = "";
+        for (String name : names) {
+            int prefix = commonPrefixLength(previous, name);
+            buffer.putVarInt(prefix);
+            StringDataType.INSTANCE.write(buffer, name.substring(prefix));
+            previous = name;
+        }
+    }
+
+    static Children childrenFromBuffer(ByteBuffer buffer) {
+        boolean hasMore = booleanFromBuffer(buffer);
+        int size = DataUtils.readVarInt(buffer);
+        List<String> names = new ArrayList<>(size);
+        String previous = "";
+        for (int i = 0; i < size; i++) {
+            int prefix = DataUtils.readVarInt(buffer);
+            String name = previous.substring(0, prefix)
+                    + StringDataType.INSTANCE.read(buffer);
+            names.add(name);
+            previous = name;
+        }
+        return Children.fromNames(names, hasMore);
+    }
+
+    static void diffToBuffer(LocalDiffCache.Diff diff, WriteBuffer buffer) {
+        Map<Path, String> changes = diff.getChanges();
+        buffer.putVarInt(changes.size());
+        for (Map.Entry<Path, String> e : changes.entrySet()) {
+            pathToBuffer(e.getKey(), buffer);
+            StringDataType.INSTANCE.write(buffer, e.getValue());
+        }
+    }
+
+    static LocalDiffCache.Diff diffFromBuffer(ByteBuffer buffer) {
+        int size = DataUtils.readVarInt(buffer);
+        Map<Path, String> changes = new HashMap<>(size);
+        for (int i = 0; i < size; i++) {
+            Path p = pathFromBuffer(buffer);
+            changes.put(p, StringDataType.INSTANCE.read(buffer));
+        }
+        return new LocalDiffCache.Diff(changes, 0);
+    }
+
+    /**
+     * Writes the document to the buffer. Strings, like property names and
+     * commit values, are written once per document and referenced by their
+     * index afterwards. Revisions are written as numbers. Values are read
+     * back with the same types as by {@link NodeDocument#fromString}.
+     */
+    public static void documentToBuffer(NodeDocument doc, WriteBuffer buffer) {
+        Map<String, Integer> strings = new HashMap<>();
+        Set<Map.Entry<String, Object>> entries = doc.entrySet();
+        buffer.putVarInt(entries.size());
+        for (Map.Entry<String, Object> e : entries) {
+            stringToBuffer(e.getKey(), strings, buffer);
+            valueToBuffer(e.getValue(), strings, buffer);
+        }
+    }
+
+    public static NodeDocument documentFromBuffer(DocumentStore store, ByteBuffer buffer) {
+        return documentFromBuffer(store, buffer, Revision.getCurrentTimestamp());
+    }
+
+    /**
+     * Reads a document written with {@link #documentToBuffer} and sets its
+     * creation time to {@code created}.
+     */
+    public static NodeDocument documentFromBuffer(DocumentStore store, ByteBuffer buffer, long created) {
+        List<String> strings = new ArrayList<>();
+        NodeDocument doc = new NodeDocument(store, created);
+        int size = DataUtils.readVarInt(buffer);
+        for (int i = 0; i < size; i++) {
+            String key = stringFromBuffer(buffer, strings);
+            doc.put(key, valueFromBuffer(buffer, strings));
+        }
+        doc.seal();
+        return doc;
+    }
+
+    private static final byte NULL_VALUE = 0;
+    private static final byte TRUE_VALUE = 1;
+    private static final byte FALSE_VALUE = 2;
+    private static final byte LONG_VALUE = 3;
+    private static final byte STRING_VALUE = 4;
+    private static final byte MAP_VALUE = 5;
+
+    @SuppressWarnings("unchecked")
+    private static void valueToBuffer(Object value,
+                                      Map<String, Integer> strings,
+                                      WriteBuffer buffer) {
+        if (value == null) {
+            buffer.put(NULL_VALUE);
+        } else if (value instanceof Boolean) {
+            buffer.put((Boolean) value ? TRUE_VALUE : FALSE_VALUE);
+        } else if (value instanceof Long || value instanceof Integer) {
+            buffer.put(LONG_VALUE);
+            buffer.putVarLong(((Number) value).longValue());
+        } else if (value instanceof Map) {
+            Map<Object, Object> map = (Map<Object, Object>) value;
+            buffer.put(MAP_VALUE);
+            buffer.putVarInt(map.size());
+            for (Map.Entry<Object, Object> e : map.entrySet()) {
+                Object key = e.getKey();
+                revisionToBuffer(key instanceof Revision
+                        ? (Revision) key : Revision.fromString(key.toString()), buffer);
+                valueToBuffer(e.getValue(), strings, buffer);
+            }
+        } else {
+            buffer.put(STRING_VALUE);
+            stringToBuffer(value instanceof Revision
+                    ? value.toString() : (String) value, strings, buffer);
+        }
+    }
+
+    private static Object valueFromBuffer(ByteBuffer buffer, List<String> strings) {
+        byte type = buffer.get();
+        switch (type) {
+            case NULL_VALUE:
+                return null;
+            case TRUE_VALUE:
+                return true;
+            case FALSE_VALUE:
+                return false;
+            case LONG_VALUE:
+                return DataUtils.readVarLong(buffer);
+            case STRING_VALUE:
+                return stringFromBuffer(buffer, strings);
+            case MAP_VALUE:
+                int size = DataUtils.readVarInt(buffer);
+                TreeMap<Revision, Object> map = new TreeMap<>(StableRevisionComparator.REVERSE);
+                for (int i = 0; i < size; i++) {
+                    Revision r = revisionFromBuffer(buffer);
+                    map.put(r, valueFromBuffer(buffer, strings));
+                }
+                return map;
+            default:
+                throw new IllegalArgumentException("Unknown value type: " + type);
+        }
+    }
+
+    /**
+     * Writes a string, or a reference to it if it was written before: zero
+     * followed by the string for a new string, otherwise the index of the
+     * string plus one.
+     */
+    private static void stringToBuffer(String s,
+                                       Map<String, Integer> strings,
+                                       WriteBuffer buffer) {
+        Integer index = strings.get(s);
+        if (index != null) {
+            buffer.putVarInt(index + 1);
+        } else {
+            strings.put(s, strings.size());
+            buffer.putVarInt(0);
+            StringDataType.INSTANCE.write(buffer, s);
+        }
+    }
+
+    private static String stringFromBuffer(ByteBuffer buffer, List<String> strings) {
+        int index = DataUtils.readVarInt(buffer);
+        if (index > 0) {
+            return strings.get(index - 1);
+        }
+        String s = StringDataType.INSTANCE.read(buffer);
+        strings.add(s);
+        return s;
+    }
+
+    private static int commonPrefixLength(String a, String b) {
+        int len = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < len && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
 }
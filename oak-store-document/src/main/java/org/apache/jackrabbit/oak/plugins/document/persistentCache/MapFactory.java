@@ -69,6 +69,14 @@ public abstract class MapFactory {
      * @return
      */
     abstract <K, V> Map<K, V> openMap(String name, MVMap.Builder<K, V> builder);
+
+    /**
+     * Check whether the store contains the given map.
+     *
+     * @param name the map name
+     * @return whether the map exists
+     */
+    abstract boolean hasMap(String name);
     
     /**
      * Get the file size in bytes.
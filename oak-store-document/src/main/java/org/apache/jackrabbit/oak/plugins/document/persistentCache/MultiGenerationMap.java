@@ -26,6 +26,13 @@ public class MultiGenerationMap<K, V> implements Map<K, V> {
     private volatile CacheMap<K, V> write;
     private ConcurrentSkipListMap<Integer, CacheMap<K, V>> read = 
             new ConcurrentSkipListMap<Integer, CacheMap<K, V>>();
+
+    /**
+     * Maps with values serialized in the previous version, which are only
+     * read if the key is not found in any of the {@link #read} maps.
+     */
+    private ConcurrentSkipListMap<Integer, CacheMap<K, V>> legacy =
+            new ConcurrentSkipListMap<Integer, CacheMap<K, V>>();
     
     MultiGenerationMap() {
     }
@@ -38,8 +45,13 @@ public class MultiGenerationMap<K, V> implements Map<K, V> {
         read.put(generation, m);
     }
     
+    public void addLegacyReadMap(int generation, CacheMap<K, V> m) {
+        legacy.put(generation, m);
+    }
+
     public void removeReadMap(int generation) {
         read.remove(generation);
+        legacy.remove(generation);
     }
     
     @Override
@@ -74,6 +86,17 @@ public class MultiGenerationMap<K, V> implements Map<K, V> {
                 }
             }
         }
+        // values of legacy maps are never current and
+        // are written again in the current version
+        for (int generation : legacy.descendingKeySet()) {
+            CacheMap<K, V> m = legacy.get(generation);
+            if (m != null) {
+                V value = m.get(key);
+                if (value != null) {
+                    return new ValueWithGenerationInfo<V>(value, false);
+                }
+            }
+        }
         return null;
     }
     
@@ -87,6 +110,14 @@ public class MultiGenerationMap<K, V> implements Map<K, V> {
                 }
             }
         }
+        for (int generation : legacy.descendingKeySet()) {
+            CacheMap<K, V> m = legacy.get(generation);
+            if (m != null) {
+                if (m.containsKey(key)) {
+                    return true;
+                }
+            }
+        }
         return false;
     }
 
@@ -68,6 +68,15 @@ class NodeCache<K extends CacheValue, V extends  CacheValue>
     private final CacheType type;
     private final DataType keyType;
     private final DataType valueType;
+    @Nullable
+    private final DataType legacyValueType;
+    /**
+     * The type of the values in broadcast messages. Broadcast messages do
+     * not carry a format version, so values are sent in the format of the
+     * previous version of the type, which cluster nodes still running the
+     * previous version can read during a rolling upgrade.
+     */
+    private final DataType broadcastValueType;
     private final CacheMetadata<K> memCacheMetadata;
     private final DocumentNodeStore nodeStore;
     private final boolean async;
@@ -91,6 +100,10 @@ class NodeCache<K extends CacheValue, V extends  CacheValue>
         map = new MultiGenerationMap<K, V>();
         keyType = new KeyDataType(type);
         valueType = new ValueDataType(docNodeStore, docStore, type);
+        legacyValueType = type.getLegacyMapName() != null
+                ? new ValueDataType(docNodeStore, docStore, type, true)
+                : null;
+        broadcastValueType = legacyValueType != null ? legacyValueType : valueType;
         this.memCacheMetadata = new CacheMetadata<K>();
         if (async) {
             this.writeQueue = new CacheWriteQueue<K, V>(dispatcher, cache, map);
@@ -114,6 +127,13 @@ class NodeCache<K extends CacheValue, V extends  CacheValue>
                 keyType(keyType).valueType(valueType);
         CacheMap<K, V> m = cache.openMap(generation, type.getMapName(), b);
         map.addReadMap(generation, m);
+        String legacyName = type.getLegacyMapName();
+        if (legacyName != null && cache.hasMap(generation, legacyName)) {
+            // migrate entries written by the previous version on access
+            MVMap.Builder<K, V> lb = new MVMap.Builder<K, V>().
+                    keyType(keyType).valueType(legacyValueType);
+            map.addLegacyReadMap(generation, cache.openMap(generation, legacyName, lb));
+        }
         if (!readOnly) {
             map.setWriteMap(m);
             stats.addWriteGeneration(generation);
@@ -171,7 +191,7 @@ class NodeCache<K extends CacheValue, V extends  CacheValue>
                     buffer.put((byte) 0);
                 } else {
                     buffer.put((byte) 1);
-                    valueType.write(buffer, value);
+                    broadcastValueType.write(buffer, value);
                 }
                 return null;
             }
@@ -338,7 +358,7 @@ class NodeCache<K extends CacheValue, V extends  CacheValue>
             memCache.invalidate(key);
             memCacheMetadata.remove(key);
         } else {
-            value = (V) valueType.read(buff);
+            value = (V) broadcastValueType.read(buff);
             memCacheMetadata.put(key);
             memCache.put(key, value);
         }
@@ -345,6 +345,17 @@ public class PersistentCache implements Broadcaster.Listener {
                 }
             }
 
+            @Override
+            boolean hasMap(String name) {
+                try {
+                    return store != null && store.hasMap(name);
+                } catch (Exception e) {
+                    exceptionCount++;
+                    LOG.warn("Could not check for the map", e);
+                    return false;
+                }
+            }
+
             @Override
             long getFileSize() {
                 try {
@@ -445,16 +456,30 @@ public class PersistentCache implements Broadcaster.Listener {
     
     public synchronized <K, V> CacheMap<K, V> openMap(int generation, String name, 
             MVMap.Builder<K, V> builder) {
-        MapFactory s;
+        return new CacheMap<K, V>(getMapFactory(generation), name, builder);
+    }
+
+    /**
+     * Checks whether the store of the given generation contains the named
+     * map, without creating it.
+     *
+     * @param generation the generation
+     * @param name the map name
+     * @return whether the map exists
+     */
+    synchronized boolean hasMap(int generation, String name) {
+        return getMapFactory(generation).hasMap(name);
+    }
+
+    private MapFactory getMapFactory(int generation) {
         if (generation == readGeneration) {
-            s = readStore;
+            return readStore;
         } else if (generation == writeGeneration) {
-            s = writeStore;
+            return writeStore;
         } else {
             exceptionCount++;
             throw new IllegalArgumentException("Unknown generation: " + generation);
         }
-        return new CacheMap<K, V>(s, name, builder);
     }
     
     public void switchGenerationIfNeeded() {
@@ -25,6 +25,7 @@ import org.h2.mvstore.WriteBuffer;
 import org.h2.mvstore.type.DataType;
 import org.jetbrains.annotations.NotNull;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 public class ValueDataType implements DataType {
@@ -32,13 +33,29 @@ public class ValueDataType implements DataType {
     private final DocumentNodeStore docNodeStore;
     private final DocumentStore docStore;
     private final CacheType type;
+    private final boolean legacy;
     
     ValueDataType(DocumentNodeStore docNodeStore,
                   DocumentStore docStore,
                   CacheType type) {
+        this(docNodeStore, docStore, type, false);
+    }
+
+    /**
+     * @param legacy whether to use the serialization of the previous
+     *               version of the type. Only allowed if the type has a
+     *               {@link CacheType#getLegacyMapName() legacy map}.
+     */
+    ValueDataType(DocumentNodeStore docNodeStore,
+                  DocumentStore docStore,
+                  CacheType type,
+                  boolean legacy) {
+        checkArgument(!legacy || type.getLegacyMapName() != null,
+                "%s has no previous version", type);
         this.docNodeStore = docNodeStore;
         this.docStore = docStore;
         this.type = type;
+        this.legacy = legacy;
     }
 
     @Override
@@ -53,11 +70,18 @@ public class ValueDataType implements DataType {
 
     @Override
     public void write(WriteBuffer buff, Object obj) {
-        type.writeValue(buff, obj);
+        if (legacy) {
+            type.writeLegacyValue(buff, obj);
+        } else {
+            type.writeValue(buff, obj);
+        }
     }
 
     @Override
     public Object read(ByteBuffer buff) {
+        if (legacy) {
+            return type.readLegacyValue(docNodeStore, docStore, buff);
+        }
         return type.readValue(docNodeStore, docStore, buff);
     }
 
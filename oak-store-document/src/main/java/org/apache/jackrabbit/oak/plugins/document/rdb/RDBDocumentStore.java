@@ -281,6 +281,53 @@ public class RDBDocumentStore implements DocumentStore {
         return readDocumentCached(collection, id, maxCacheAge);
     }
 
+    @NotNull
+    @Override
+    public <T extends Document> List<T> findBatch(Collection<T> collection, List<String> keys) {
+        Map<String, T> documents = new HashMap<String, T>();
+        Set<String> documentsToRead = new HashSet<String>();
+        for (String key : keys) {
+            if (collection == Collection.NODES) {
+                NodeDocument cached = nodesCache.getIfPresent(key);
+                if (cached != null && cached.getLastCheckTime() != 0) {
+                    stats.doneFindCached(Collection.NODES, key);
+                    if (cached != NodeDocument.NULL) {
+                        documents.put(key, castAsT(unwrap(cached)));
+                    }
+                    continue;
+                }
+            }
+            documentsToRead.add(key);
+        }
+
+        if (!documentsToRead.isEmpty()) {
+            final Stopwatch watch = startWatch();
+            int numFound = 0;
+            try (CacheChangesTracker tracker = obtainTracker(collection, documentsToRead)) {
+                Map<String, T> readDocuments = readDocumentsUncached(collection, documentsToRead);
+                for (T doc : readDocuments.values()) {
+                    doc.seal();
+                }
+                numFound = readDocuments.size();
+                if (tracker != null) {
+                    nodesCache.putNonConflictingDocs(tracker, castAsNodeDocumentList(newArrayList(readDocuments.values())));
+                }
+                documents.putAll(readDocuments);
+            } finally {
+                stats.doneFindBatch(watch.elapsed(TimeUnit.NANOSECONDS), collection, documentsToRead.size(), numFound, false);
+            }
+        }
+
+        List<T> result = new ArrayList<T>(documents.size());
+        for (String key : keys) {
+            T doc = documents.get(key);
+            if (doc != null) {
+                result.add(doc);
+            }
+        }
+        return result;
+    }
+
     @NotNull
     @Override
     public <T extends Document> List<T> query(Collection<T> collection, String fromKey, String toKey, int limit) {
@@ -609,6 +656,7 @@ public class RDBDocumentStore implements DocumentStore {
         for (CacheValue key : nodesCache.keys()) {
             invalidateCache(Collection.NODES, key.toString());
         }
+        nodesCache.invalidateOffHeap();
         return null;
     }
 
@@ -70,6 +70,13 @@ public final class LeaseCheckDocumentStoreWrapper implements DocumentStore {
         return delegate.find(collection, key, maxCacheAge);
     }
 
+    @Override
+    public final <T extends Document> List<T> findBatch(Collection<T> collection,
+            List<String> keys) {
+        performLeaseCheck();
+        return delegate.findBatch(collection, keys);
+    }
+
     @Override
     public final <T extends Document> List<T> query(Collection<T> collection,
             String fromKey, String toKey, int limit) {
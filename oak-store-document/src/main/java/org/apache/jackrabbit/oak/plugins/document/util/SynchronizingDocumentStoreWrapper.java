@@ -50,6 +50,12 @@ public class SynchronizingDocumentStoreWrapper implements DocumentStore {
         return store.find(collection, key, maxCacheAge);
     }
 
+    @Override
+    @NotNull
+    public synchronized <T extends Document> List<T> findBatch(final Collection<T> collection, final List<String> keys) {
+        return store.findBatch(collection, keys);
+    }
+
     @Override
     @NotNull
     public synchronized <T extends Document> List<T> query(final Collection<T> collection, final String fromKey,
@@ -139,6 +139,22 @@ public class TimingDocumentStoreWrapper implements DocumentStore {
         }
     }
 
+    @Override
+    @NotNull
+    public <T extends Document> List<T> findBatch(Collection<T> collection, List<String> keys) {
+        try {
+            long start = now();
+            List<T> result = base.findBatch(collection, keys);
+            updateAndLogTimes("findBatch", start, 0, size(result));
+            if (logCommonCall()) {
+                logCommonCall(start, "findBatch " + collection + " " + keys.size() + " keys");
+            }
+            return result;
+        } catch (Exception e) {
+            throw convert(e);
+        }
+    }
+
     @Override
     @NotNull
     public <T extends Document> List<T> query(Collection<T> collection,
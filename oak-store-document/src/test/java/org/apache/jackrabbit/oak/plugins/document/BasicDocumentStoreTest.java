@@ -147,6 +147,49 @@ public class BasicDocumentStoreTest extends AbstractDocumentStoreTest {
         assertNull(nd.get(NodeDocument.HAS_BINARY_FLAG));
     }
 
+    @Test
+    public void testFindMultiple() {
+        String base = this.getClass().getName() + ".testFindMultiple";
+        List<String> keys = new ArrayList<String>();
+        List<UpdateOp> ops = new ArrayList<UpdateOp>();
+        // more than the batch size of the IN clauses
+        for (int i = 0; i < 600; i++) {
+            String id = base + "-" + i;
+            // every third document does not exist
+            if (i % 3 != 0) {
+                ops.add(new UpdateOp(id, true));
+                removeMe.add(id);
+            }
+            keys.add(id);
+        }
+        super.ds.remove(Collection.NODES, keys);
+        assertTrue(super.ds.create(Collection.NODES, ops));
+
+        // read some of the documents into the cache
+        super.ds.invalidateCache();
+        for (int i = 0; i < 100; i++) {
+            super.ds.find(Collection.NODES, keys.get(i));
+        }
+
+        // reverse order to check the result is ordered like the keys
+        List<String> reversed = Lists.reverse(keys);
+        List<NodeDocument> docs = super.ds.findBatch(Collection.NODES, reversed);
+        assertEquals(ops.size(), docs.size());
+        int idx = 0;
+        for (String id : reversed) {
+            if (Integer.parseInt(id.substring(base.length() + 1)) % 3 != 0) {
+                assertEquals(id, docs.get(idx++).getId());
+            }
+        }
+
+        // documents are now cached
+        for (NodeDocument doc : docs) {
+            assertNotNull(super.ds.getIfCached(Collection.NODES, doc.getId()));
+        }
+
+        assertTrue(super.ds.findBatch(Collection.NODES, Collections.<String>emptyList()).isEmpty());
+    }
+
     @Test
     public void testSetId() {
         String id = this.getClass().getName() + ".testSetId";
@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import org.apache.jackrabbit.oak.plugins.document.memory.MemoryDocumentStore;
+import org.apache.jackrabbit.oak.spi.state.ChildNodeEntry;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.apache.jackrabbit.oak.plugins.document.Collection.NODES;
+import static org.apache.jackrabbit.oak.plugins.document.TestUtils.merge;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+public class ChildNodePrefetchTest {
+
+    private static final int NUM_CHILDREN = 100;
+
+    @Rule
+    public DocumentMKBuilderProvider builderProvider = new DocumentMKBuilderProvider();
+
+    // a store without a document cache, like a cold MongoDB or RDB store
+    private CountingDocumentStore store = new CountingDocumentStore(new MemoryDocumentStore() {
+        @Override
+        public <T extends Document> T getIfCached(Collection<T> collection, String key) {
+            return null;
+        }
+    });
+
+    @Test
+    public void prefetch() throws Exception {
+        DocumentNodeStore ns = createNodeStore(10);
+        NodeState test = createChildNodes(ns, NUM_CHILDREN);
+
+        ns.getNodeCache().invalidateAll();
+        store.resetCounters();
+        assertEquals(NUM_CHILDREN, readChildNodes(test));
+        // a single bulk find instead of one find per child node
+        assertThat(store.getNumFindCalls(NODES), lessThan(NUM_CHILDREN / 10));
+
+        // child nodes are now in the node cache
+        store.resetCounters();
+        assertEquals(NUM_CHILDREN, readChildNodes(test));
+        assertEquals(0, store.getNumFindCalls(NODES));
+        assertEquals(0, store.getNumQueryCalls(NODES));
+    }
+
+    @Test
+    public void prefetchWithDeletedChildNodes() throws Exception {
+        DocumentNodeStore ns = createNodeStore(10);
+        createChildNodes(ns, NUM_CHILDREN);
+        NodeBuilder builder = ns.getRoot().builder();
+        for (int i = 0; i < NUM_CHILDREN; i += 2) {
+            builder.child("test").child("node-" + i).remove();
+        }
+        merge(ns, builder);
+        NodeState test = ns.getRoot().getChildNode("test");
+        readChildNodes(test);
+
+        ns.getNodeCache().invalidateAll();
+        store.resetCounters();
+        assertEquals(NUM_CHILDREN / 2, readChildNodes(test));
+        // only the documents of existing child nodes are read
+        assertThat(store.getNumFindCalls(NODES), lessThan(NUM_CHILDREN / 10));
+        assertEquals(0, store.getNumQueryCalls(NODES));
+    }
+
+    @Test
+    public void belowThreshold() throws Exception {
+        DocumentNodeStore ns = createNodeStore(10);
+        NodeState test = createChildNodes(ns, 5);
+
+        ns.getNodeCache().invalidateAll();
+        store.resetCounters();
+        assertEquals(5, readChildNodes(test));
+        assertThat(store.getNumFindCalls(NODES), greaterThanOrEqualTo(5));
+        assertEquals(0, store.getNumQueryCalls(NODES));
+    }
+
+    @Test
+    public void disabled() throws Exception {
+        DocumentNodeStore ns = createNodeStore(0);
+        NodeState test = createChildNodes(ns, NUM_CHILDREN);
+
+        ns.getNodeCache().invalidateAll();
+        store.resetCounters();
+        assertEquals(NUM_CHILDREN, readChildNodes(test));
+        assertThat(store.getNumFindCalls(NODES), greaterThanOrEqualTo(NUM_CHILDREN));
+        assertEquals(0, store.getNumQueryCalls(NODES));
+    }
+
+    private DocumentNodeStore createNodeStore(int childPrefetchThreshold) {
+        return builderProvider.newBuilder().setAsyncDelay(0)
+                .setChildPrefetchThreshold(childPrefetchThreshold)
+                .setDocumentStore(store).getNodeStore();
+    }
+
+    /**
+     * Creates child nodes of /test and returns the /test node with the
+     * list of its child nodes in the children cache.
+     */
+    @NotNull
+    private static NodeState createChildNodes(DocumentNodeStore ns, int num)
+            throws Exception {
+        NodeBuilder builder = ns.getRoot().builder();
+        for (int i = 0; i < num; i++) {
+            builder.child("test").child("node-" + i);
+        }
+        merge(ns, builder);
+        NodeState test = ns.getRoot().getChildNode("test");
+        readChildNodes(test);
+        return test;
+    }
+
+    private static int readChildNodes(NodeState state) {
+        int num = 0;
+        for (ChildNodeEntry entry : state.getChildNodeEntries()) {
+            if (entry.getNodeState().exists()) {
+                num++;
+            }
+        }
+        return num;
+    }
+}
@@ -97,6 +97,17 @@ public class CountingDocumentStore implements DocumentStore {
         return rewrap(collection, delegate.find(collection, key, maxCacheAge));
     }
 
+    @NotNull
+    @Override
+    public <T extends Document> List<T> findBatch(Collection<T> collection,
+                                                  List<String> keys) {
+        getStats(collection).numFindCalls++;
+        if (printStacks) {
+            new Exception("find [" + getStats(collection).numFindCalls + "] (" + collection + ") " + keys.size() + " keys").printStackTrace();
+        }
+        return rewrap(collection, delegate.findBatch(collection, keys));
+    }
+
     @NotNull
     @Override
     public <T extends Document> List<T> query(Collection<T> collection,
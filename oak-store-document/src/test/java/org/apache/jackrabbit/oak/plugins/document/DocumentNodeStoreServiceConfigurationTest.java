@@ -57,6 +57,7 @@ public class DocumentNodeStoreServiceConfigurationTest {
         assertEquals(DocumentMK.Builder.DEFAULT_DIFF_CACHE_PERCENTAGE, config.diffCachePercentage());
         assertEquals(DocumentMK.Builder.DEFAULT_CACHE_SEGMENT_COUNT, config.cacheSegmentCount());
         assertEquals(DocumentMK.Builder.DEFAULT_CACHE_STACK_MOVE_DISTANCE, config.cacheStackMoveDistance());
+        assertEquals(DocumentNodeStoreService.DEFAULT_OFF_HEAP_DOCUMENT_CACHE, config.offHeapDocumentCache());
         assertEquals(DocumentNodeStoreService.DEFAULT_BLOB_CACHE_SIZE, config.blobCacheSize());
         assertEquals(DocumentNodeStoreService.DEFAULT_PERSISTENT_CACHE, config.persistentCache());
         assertEquals(DocumentNodeStoreService.DEFAULT_JOURNAL_CACHE, config.journalCache());
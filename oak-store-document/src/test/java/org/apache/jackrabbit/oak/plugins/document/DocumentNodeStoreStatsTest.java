@@ -86,6 +86,15 @@ public class DocumentNodeStoreStatsTest {
         assertEquals(105, m.getCount());
     }
 
+    @Test
+    public void childPrefetch() {
+        stats.doneChildPrefetch(10);
+        stats.doneChildPrefetch(1);
+        stats.doneChildPrefetch(0);
+        assertEquals(3, getMeter(DocumentNodeStoreStats.CHILD_PREFETCH_COUNT).getCount());
+        assertEquals(9, getMeter(DocumentNodeStoreStats.CHILD_PREFETCH_ROUND_TRIPS_SAVED).getCount());
+    }
+
     private Meter getMeter(String name) {
         return statsProvider.getRegistry().getMeters().get(name);
     }
@@ -79,6 +79,25 @@ public class DocumentStoreStatsTest {
         assertEquals(2, getMeter(DocumentStoreStats.NODES_FIND_PRIMARY).getCount());
     }
 
+    @Test
+    public void doneFindBatch() throws Exception{
+        stats.doneFindBatch(100, Collection.NODES, 10, 8, false);
+        assertEquals(1, getMeter(DocumentStoreStats.NODES_FIND_BATCH).getCount());
+        assertEquals(10, statsProvider.getRegistry().getHistograms()
+                .get(DocumentStoreStats.NODES_FIND_BATCH_SIZE).getSnapshot().getMax());
+        assertEquals(100, getTimer(DocumentStoreStats.NODES_FIND_BATCH_TIMER).getSnapshot().getMax());
+        assertEquals(2, getMeter(DocumentStoreStats.NODES_FIND_MISSING).getCount());
+        assertEquals(1, getMeter(DocumentStoreStats.NODES_FIND_PRIMARY).getCount());
+
+        stats.doneFindBatch(100, Collection.NODES, 5, 5, true);
+        assertEquals(2, getMeter(DocumentStoreStats.NODES_FIND_BATCH).getCount());
+        assertEquals(2, getMeter(DocumentStoreStats.NODES_FIND_MISSING).getCount());
+        assertEquals(1, getMeter(DocumentStoreStats.NODES_FIND_SLAVE).getCount());
+
+        stats.doneFindBatch(100, Collection.SETTINGS, 5, 5, false);
+        assertEquals(2, getMeter(DocumentStoreStats.NODES_FIND_BATCH).getCount());
+    }
+
     @Test
     public void doneQuery_Nodes() throws Exception{
         stats.doneQuery(100, Collection.NODES, "foo", "bar", false, 5, -1, false);
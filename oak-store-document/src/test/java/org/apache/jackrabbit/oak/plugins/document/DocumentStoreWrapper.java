@@ -47,6 +47,13 @@ public class DocumentStoreWrapper implements DocumentStore {
         return store.find(collection, key, maxCacheAge);
     }
 
+    @NotNull
+    @Override
+    public <T extends Document> List<T> findBatch(Collection<T> collection,
+                                                  List<String> keys) {
+        return store.findBatch(collection, keys);
+    }
+
     @NotNull
     @Override
     public <T extends Document> List<T> query(Collection<T> collection,
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.Test;
+
+/**
+ * Measures the throughput of {@link Revision#newRevision(int)} with an
+ * increasing number of threads. A generator synchronizing on a global lock,
+ * like {@code newRevision()} used to, serves as the baseline.
+ */
+public class RevisionPerformance {
+
+    private static final int[] THREADS = {1, 2, 4, 8, 16, 32};
+
+    private static final long DURATION_MS = Long.getLong("durationMs", 1000);
+
+    private static long lastTimestamp;
+
+    private static int lastCount;
+
+    @Test
+    public void newRevision() throws Exception {
+        System.out.printf("%8s %16s %16s%n", "threads", "locked ops/ms", "lock-free ops/ms");
+        for (int threads : THREADS) {
+            // warm up
+            run(threads, true);
+            run(threads, false);
+            long locked = run(threads, true);
+            long lockFree = run(threads, false);
+            System.out.printf("%8d %16d %16d%n", threads, locked / DURATION_MS, lockFree / DURATION_MS);
+        }
+    }
+
+    private static long run(int threads, final boolean locked) throws InterruptedException {
+        final AtomicBoolean stop = new AtomicBoolean();
+        final LongAdder count = new LongAdder();
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread t = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long n = 0;
+                while (!stop.get()) {
+                    if (locked) {
+                        newLockedRevision(1);
+                    } else {
+                        Revision.newRevision(1);
+                    }
+                    n++;
+                }
+                count.add(n);
+            });
+            t.start();
+            workers.add(t);
+        }
+        start.countDown();
+        TimeUnit.MILLISECONDS.sleep(DURATION_MS);
+        stop.set(true);
+        for (Thread t : workers) {
+            t.join();
+        }
+        return count.sum();
+    }
+
+    private static Revision newLockedRevision(int clusterId) {
+        long timestamp = Revision.getCurrentTimestamp();
+        int c;
+        synchronized (RevisionPerformance.class) {
+            if (timestamp < lastTimestamp) {
+                timestamp = lastTimestamp;
+            }
+            if (timestamp == lastTimestamp) {
+                c = ++lastCount;
+            } else {
+                lastTimestamp = timestamp;
+                lastCount = c = 0;
+            }
+        }
+        return new Revision(timestamp, c, clusterId);
+    }
+}
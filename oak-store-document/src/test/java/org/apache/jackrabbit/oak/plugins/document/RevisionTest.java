@@ -38,6 +38,7 @@ import com.google.common.collect.Queues;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.Uninterruptibles;
 
+import org.apache.jackrabbit.oak.stats.Clock;
 import org.junit.Test;
 
 /**
@@ -265,4 +266,45 @@ public class RevisionTest {
         }
         assertTrue(String.format("Duplicate rev seen %s %n Seen %s", duplicates, seenRevs), duplicates.isEmpty());
     }
+
+    @Test
+    public void counterOverflow() {
+        final long now = 1000;
+        Revision.setClock(new Clock() {
+            @Override
+            public long getTime() {
+                return now;
+            }
+        });
+        try {
+            Revision last = Revision.newRevision(1);
+            for (int i = 0; i < (1 << 21); i++) {
+                Revision r = Revision.newRevision(1);
+                assertTrue(r.compareRevisionTime(last) > 0);
+                assertTrue(r.getCounter() >= 0);
+                last = r;
+            }
+            // the counter overflowed at least once
+            assertTrue(last.getTimestamp() > now);
+        } finally {
+            Revision.resetClockToDefault();
+        }
+    }
+
+    @Test
+    public void clockSetBack() {
+        Revision.setClock(new Clock.Virtual());
+        try {
+            Revision.getCurrentTimestamp();
+            Revision r1 = Revision.newRevision(1);
+            Revision r2 = Revision.newRevision(1);
+            assertTrue(r2.compareRevisionTime(r1) > 0);
+            // setting a new clock resets the revision timestamp
+            Revision.setClock(new Clock.Virtual());
+            Revision r3 = Revision.newRevision(1);
+            assertTrue(r3.getTimestamp() <= r1.getTimestamp());
+        } finally {
+            Revision.resetClockToDefault();
+        }
+    }
 }
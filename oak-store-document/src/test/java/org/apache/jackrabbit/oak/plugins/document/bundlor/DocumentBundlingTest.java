@@ -1085,6 +1085,17 @@ public class DocumentBundlingTest {
             return super.find(collection, key);
         }
 
+        @NotNull
+        @Override
+        public <T extends Document> List<T> findBatch(Collection<T> collection, List<String> keys) {
+            if (collection == Collection.NODES){
+                for (String key : keys) {
+                    findPaths.add(Utils.getPathFromId(key));
+                }
+            }
+            return super.findBatch(collection, keys);
+        }
+
         @NotNull
         @Override
         public <T extends Document> List<T> query(Collection<T> collection, String fromKey, String toKey,
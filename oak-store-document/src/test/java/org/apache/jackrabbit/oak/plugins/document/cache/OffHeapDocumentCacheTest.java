@@ -0,0 +1,296 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.sql.DataSource;
+
+import com.google.common.base.Strings;
+import com.google.common.cache.RemovalCause;
+import org.apache.jackrabbit.oak.cache.CacheLIRS;
+import org.apache.jackrabbit.oak.cache.CacheStats;
+import org.apache.jackrabbit.oak.cache.CacheValue;
+import org.apache.jackrabbit.oak.plugins.document.Collection;
+import org.apache.jackrabbit.oak.plugins.document.DocumentStore;
+import org.apache.jackrabbit.oak.plugins.document.NodeDocument;
+import org.apache.jackrabbit.oak.plugins.document.Path;
+import org.apache.jackrabbit.oak.plugins.document.Revision;
+import org.apache.jackrabbit.oak.plugins.document.StableRevisionComparator;
+import org.apache.jackrabbit.oak.plugins.document.UpdateOp;
+import org.apache.jackrabbit.oak.plugins.document.locks.StripedNodeDocumentLocks;
+import org.apache.jackrabbit.oak.plugins.document.memory.MemoryDocumentStore;
+import org.apache.jackrabbit.oak.plugins.document.persistentCache.EvictionListener;
+import org.apache.jackrabbit.oak.plugins.document.rdb.RDBDataSourceFactory;
+import org.apache.jackrabbit.oak.plugins.document.rdb.RDBDocumentNodeStoreBuilder;
+import org.apache.jackrabbit.oak.plugins.document.rdb.RDBDocumentStore;
+import org.apache.jackrabbit.oak.plugins.document.util.StringValue;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import static org.apache.jackrabbit.oak.plugins.document.util.Utils.getKeyLowerLimit;
+import static org.apache.jackrabbit.oak.plugins.document.util.Utils.getKeyUpperLimit;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class OffHeapDocumentCacheTest {
+
+    private static final int NUM_DOCS = 100;
+
+    private DocumentStore ds;
+
+    private CacheLIRS<CacheValue, NodeDocument> memCache;
+
+    private OffHeapDocumentCache<CacheValue> cache;
+
+    @Before
+    public void before() {
+        ds = new MemoryDocumentStore();
+        final List<EvictionListener<CacheValue, NodeDocument>> listeners = new CopyOnWriteArrayList<>();
+        memCache = CacheLIRS.<CacheValue, NodeDocument>newBuilder()
+                .maximumSize(10)
+                .evictionCallback(new CacheLIRS.EvictionCallback<CacheValue, NodeDocument>() {
+                    @Override
+                    public void evicted(@NotNull CacheValue key,
+                                        @Nullable NodeDocument value,
+                                        @NotNull RemovalCause cause) {
+                        for (EvictionListener<CacheValue, NodeDocument> l : listeners) {
+                            l.evicted(key, value, cause);
+                        }
+                    }
+                }).build();
+        cache = new OffHeapDocumentCache<CacheValue>(memCache, ds, "test", 1024 * 1024, 1, 16);
+        listeners.add(cache);
+    }
+
+    @Test
+    public void evictedDocuments() {
+        for (int i = 0; i < NUM_DOCS; i++) {
+            cache.put(new StringValue(id(i)), createDoc(id(i), 1));
+        }
+        assertTrue(memCache.size() <= 10);
+        assertTrue(cache.getUsedMemory() > 0);
+        for (int i = 0; i < NUM_DOCS; i++) {
+            NodeDocument doc = cache.getIfPresent(new StringValue(id(i)));
+            assertNotNull(doc);
+            NodeDocument expected = createDoc(id(i), 1);
+            assertEquals(expected.getId(), doc.getId());
+            assertEquals(expected.getModCount(), doc.getModCount());
+            assertEquals(expected.get("prop"), doc.get("prop"));
+            assertTrue(doc.isSealed());
+        }
+        assertTrue(cache.getCacheStats().getHitCount() > 0);
+    }
+
+    @Test
+    public void invalidate() {
+        for (int i = 0; i < NUM_DOCS; i++) {
+            cache.put(new StringValue(id(i)), createDoc(id(i), 1));
+        }
+        for (int i = 0; i < NUM_DOCS; i++) {
+            cache.invalidate(new StringValue(id(i)));
+        }
+        for (int i = 0; i < NUM_DOCS; i++) {
+            assertNull(cache.getIfPresent(new StringValue(id(i))));
+        }
+        assertEquals(0, cache.getUsedMemory());
+    }
+
+    @Test
+    public void invalidateAll() {
+        for (int i = 0; i < NUM_DOCS; i++) {
+            cache.put(new StringValue(id(i)), createDoc(id(i), 1));
+        }
+        cache.invalidateAll();
+        for (int i = 0; i < NUM_DOCS; i++) {
+            assertNull(cache.getIfPresent(new StringValue(id(i))));
+        }
+        assertEquals(0, cache.getUsedMemory());
+    }
+
+    @Test
+    public void putNewer() {
+        for (int i = 0; i < NUM_DOCS; i++) {
+            cache.put(new StringValue(id(i)), createDoc(id(i), 1));
+        }
+        // first document is evicted to off-heap memory
+        assertNull(memCache.getIfPresent(new StringValue(id(0))));
+        cache.put(new StringValue(id(0)), createDoc(id(0), 2));
+        for (int i = 1; i < NUM_DOCS; i++) {
+            cache.put(new StringValue(id(i)), createDoc(id(i), 2));
+        }
+        for (int i = 0; i < NUM_DOCS; i++) {
+            NodeDocument doc = cache.getIfPresent(new StringValue(id(i)));
+            assertNotNull(doc);
+            assertEquals(Long.valueOf(2), doc.getModCount());
+        }
+    }
+
+    @Test
+    public void noRoom() {
+        NodeDocument doc = createDoc(id(0), 1);
+        for (int i = 0; i < 100000; i++) {
+            doc.put("p-" + i, "value-" + i);
+        }
+        for (int i = 0; i < NUM_DOCS; i++) {
+            cache.put(new StringValue(id(i)), createDoc(id(i), 1));
+        }
+        // the large document does not fit into the off-heap memory
+        // and is dropped when evicted
+        cache.put(new StringValue(id(0)), doc);
+        for (int i = 0; i < NUM_DOCS; i++) {
+            cache.put(new StringValue(id(NUM_DOCS + i)), createDoc(id(NUM_DOCS + i), 1));
+        }
+        assertNull(cache.getIfPresent(new StringValue(id(0))));
+        assertNotNull(cache.getIfPresent(new StringValue(id(1))));
+    }
+
+    @Test
+    public void nodeDocumentCache() {
+        NodeDocumentCache nodeDocumentCache = new NodeDocumentCache(cache,
+                Mockito.mock(CacheStats.class),
+                new CacheLIRS<StringValue, NodeDocument>(10),
+                Mockito.mock(CacheStats.class),
+                Collections.singletonList(cache),
+                new StripedNodeDocumentLocks());
+        for (int i = 0; i < NUM_DOCS; i++) {
+            nodeDocumentCache.put(createDoc(id(i), 1));
+        }
+        // the presence check does not read the document from off-heap memory
+        assertNull(memCache.getIfPresent(new StringValue(id(0))));
+        assertTrue(nodeDocumentCache.isCached(id(0)));
+        assertNull(memCache.getIfPresent(new StringValue(id(0))));
+        assertFalse(nodeDocumentCache.isCached(id(NUM_DOCS)));
+
+        NodeDocument doc = nodeDocumentCache.getIfPresent(id(0));
+        assertNotNull(doc);
+        // the document read from off-heap memory is now in memory
+        assertSame(doc, memCache.getIfPresent(new StringValue(id(0))));
+
+        // documents in off-heap memory are considered cached
+        Path parent = Path.fromString("/parent");
+        CacheChangesTracker tracker = nodeDocumentCache.registerTracker(
+                getKeyLowerLimit(parent), getKeyUpperLimit(parent));
+        nodeDocumentCache.putNonConflictingDocs(tracker, Collections.singleton(createDoc(id(1), 2)));
+        assertEquals(Long.valueOf(2), nodeDocumentCache.getIfPresent(id(1)).getModCount());
+        tracker.close();
+
+        nodeDocumentCache.invalidate(id(2));
+        assertNull(nodeDocumentCache.getIfPresent(id(2)));
+
+        int numStats = 0;
+        for (CacheStats ignored : nodeDocumentCache.getCacheStats()) {
+            numStats++;
+        }
+        assertEquals(3, numStats);
+    }
+
+    @Test
+    public void closeWrappedOffHeapCache() throws Exception {
+        // the off-heap cache is wrapped, like by a persistent cache
+        NodeDocumentCache nodeDocumentCache = new NodeDocumentCache(memCache,
+                Mockito.mock(CacheStats.class),
+                new CacheLIRS<StringValue, NodeDocument>(10),
+                Mockito.mock(CacheStats.class),
+                Collections.singletonList(cache),
+                new StripedNodeDocumentLocks());
+        for (int i = 0; i < NUM_DOCS; i++) {
+            cache.put(new StringValue(id(i)), createDoc(id(i), 1));
+        }
+        assertTrue(cache.getUsedMemory() > 0);
+
+        nodeDocumentCache.close();
+        assertEquals(0, cache.getUsedMemory());
+        assertFalse(cache.containsOffHeap(new StringValue(id(0))));
+    }
+
+    @Test
+    public void externalChangeAndFullInvalidation() {
+        DataSource dataSource = RDBDataSourceFactory.forJdbcUrl("jdbc:h2:mem:" + UUID.randomUUID(), "", "");
+        DocumentStore store = new RDBDocumentStore(dataSource, RDBDocumentNodeStoreBuilder.newRDBDocumentNodeStoreBuilder()
+                .memoryCacheSize(4 * 1024 * 1024)
+                .setOffHeapDocumentCacheSize(16 * 1024 * 1024));
+        // another cluster node without a cache
+        DocumentStore other = new RDBDocumentStore(dataSource, RDBDocumentNodeStoreBuilder.newRDBDocumentNodeStoreBuilder());
+        try {
+            int numDocs = 2000;
+            String padding = Strings.repeat("x", 500);
+            List<UpdateOp> ops = new ArrayList<>();
+            for (int i = 0; i < numDocs; i++) {
+                UpdateOp op = new UpdateOp(id(i), true);
+                op.set("p", 1L);
+                op.set("padding", padding);
+                ops.add(op);
+            }
+            assertTrue(store.create(Collection.NODES, ops));
+            for (int i = 0; i < numDocs; i++) {
+                assertNotNull(store.find(Collection.NODES, id(i)));
+            }
+            long offHeapCount = 0;
+            for (CacheStats stats : store.getCacheStats()) {
+                if (stats.getName().endsWith("-OffHeap")) {
+                    offHeapCount += stats.getElementCount();
+                }
+            }
+            assertTrue(offHeapCount > 0);
+
+            for (int i = 0; i < numDocs; i++) {
+                UpdateOp op = new UpdateOp(id(i), false);
+                op.set("p", 2L);
+                assertNotNull(other.findAndUpdate(Collection.NODES, op));
+            }
+            store.invalidateCache();
+
+            for (int i = 0; i < numDocs; i++) {
+                NodeDocument doc = store.find(Collection.NODES, id(i));
+                assertNotNull(doc);
+                assertEquals("outdated document " + id(i), 2L, doc.get("p"));
+            }
+        } finally {
+            other.dispose();
+            store.dispose();
+        }
+    }
+
+    private static String id(int i) {
+        return "2:/parent/node-" + i;
+    }
+
+    private NodeDocument createDoc(String id, long modCount) {
+        NodeDocument doc = Collection.NODES.newDocument(ds);
+        doc.put(NodeDocument.ID, id);
+        doc.put(NodeDocument.MOD_COUNT, modCount);
+        TreeMap<Revision, Object> values = new TreeMap<>(StableRevisionComparator.REVERSE);
+        for (int i = 0; i < 10; i++) {
+            values.put(new Revision(1000 + i, 0, 1), "\"value-" + i + "\"");
+        }
+        doc.put("prop", values);
+        return doc;
+    }
+}
@@ -20,21 +20,29 @@ package org.apache.jackrabbit.oak.plugins.document.persistentCache;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Map;
 
 import com.google.common.cache.Cache;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.jackrabbit.oak.cache.CacheLIRS;
 import org.apache.jackrabbit.oak.commons.junit.LogCustomizer;
+import org.apache.jackrabbit.oak.plugins.document.LocalDiffCache;
 import org.apache.jackrabbit.oak.plugins.document.Path;
 import org.apache.jackrabbit.oak.plugins.document.PathRev;
 import org.apache.jackrabbit.oak.plugins.document.Revision;
 import org.apache.jackrabbit.oak.plugins.document.RevisionVector;
+import org.apache.jackrabbit.oak.plugins.document.util.RevisionsKey;
 import org.apache.jackrabbit.oak.plugins.document.util.StringValue;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.WriteBuffer;
 import org.junit.Test;
 import org.slf4j.event.Level;
 
@@ -79,6 +87,76 @@ public class CacheTest {
         }
     }
 
+    @Test
+    public void readLegacyValues() throws Exception {
+        FileUtils.deleteDirectory(new File("target/cacheTest"));
+        RevisionsKey key = new RevisionsKey(
+                new RevisionVector(new Revision(1, 0, 1)),
+                new RevisionVector(new Revision(2, 0, 1)));
+        Map<Path, String> changes = Collections.singletonMap(
+                Path.fromString("/foo"), "^\"bar\":{}");
+
+        // write a value with the serialization of the previous version
+        PersistentCache pCache = new PersistentCache("target/cacheTest");
+        CacheType type = CacheType.LOCAL_DIFF;
+        MVMap.Builder<RevisionsKey, LocalDiffCache.Diff> b =
+                new MVMap.Builder<RevisionsKey, LocalDiffCache.Diff>()
+                        .keyType(new KeyDataType(type))
+                        .valueType(new ValueDataType(null, null, type, true));
+        CacheMap<RevisionsKey, LocalDiffCache.Diff> legacy =
+                pCache.openMap(0, type.getLegacyMapName(), b);
+        legacy.put(key, new LocalDiffCache.Diff(changes, 0));
+        pCache.close();
+
+        pCache = new PersistentCache("target/cacheTest");
+        try {
+            CacheLIRS<RevisionsKey, LocalDiffCache.Diff> cache =
+                    new CacheLIRS.Builder<RevisionsKey, LocalDiffCache.Diff>()
+                            .maximumSize(1).build();
+            Cache<RevisionsKey, LocalDiffCache.Diff> map =
+                    pCache.wrap(null, null, cache, type);
+            LocalDiffCache.Diff diff = map.getIfPresent(key);
+            assertNotNull(diff);
+            assertEquals(changes, diff.getChanges());
+        } finally {
+            pCache.close();
+        }
+    }
+
+    @Test
+    public void broadcastLegacyValues() throws Exception {
+        FileUtils.deleteDirectory(new File("target/cacheTest"));
+        RevisionsKey key = new RevisionsKey(
+                new RevisionVector(new Revision(1, 0, 1)),
+                new RevisionVector(new Revision(2, 0, 1)));
+        Map<Path, String> changes = Collections.singletonMap(
+                Path.fromString("/foo"), "^\"bar\":{}");
+        CacheType type = CacheType.LOCAL_DIFF;
+
+        // a broadcast message of a cluster node running the previous version
+        WriteBuffer buffer = new WriteBuffer();
+        new KeyDataType(type).write(buffer, key);
+        buffer.put((byte) 1);
+        new ValueDataType(null, null, type, true).write(buffer, new LocalDiffCache.Diff(changes, 0));
+        ByteBuffer message = buffer.getBuffer();
+        message.flip();
+
+        PersistentCache pCache = new PersistentCache("target/cacheTest");
+        try {
+            CacheLIRS<RevisionsKey, LocalDiffCache.Diff> cache =
+                    new CacheLIRS.Builder<RevisionsKey, LocalDiffCache.Diff>()
+                            .maximumSize(1).build();
+            NodeCache<RevisionsKey, LocalDiffCache.Diff> map =
+                    (NodeCache<RevisionsKey, LocalDiffCache.Diff>) pCache.wrap(null, null, cache, type);
+            map.receive(message);
+            LocalDiffCache.Diff diff = cache.getIfPresent(key);
+            assertNotNull(diff);
+            assertEquals(changes, diff.getChanges());
+        } finally {
+            pCache.close();
+        }
+    }
+
     @Test
     public void closeAlways() throws Exception {
         FileUtils.deleteDirectory(new File("target/cacheTest"));
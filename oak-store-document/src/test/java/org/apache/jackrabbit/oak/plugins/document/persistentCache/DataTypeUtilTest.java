@@ -18,20 +18,31 @@ package org.apache.jackrabbit.oak.plugins.document.persistentCache;
 
 import java.nio.ByteBuffer;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
 
 import org.apache.jackrabbit.oak.plugins.document.DocumentMKBuilderProvider;
 import org.apache.jackrabbit.oak.plugins.document.DocumentNodeState;
 import org.apache.jackrabbit.oak.plugins.document.DocumentNodeStore;
+import org.apache.jackrabbit.oak.plugins.document.LocalDiffCache;
+import org.apache.jackrabbit.oak.plugins.document.NodeDocument;
 import org.apache.jackrabbit.oak.plugins.document.Path;
 import org.apache.jackrabbit.oak.plugins.document.NamePathRev;
 import org.apache.jackrabbit.oak.plugins.document.PathRev;
+import org.apache.jackrabbit.oak.plugins.document.Revision;
 import org.apache.jackrabbit.oak.plugins.document.RevisionVector;
+import org.apache.jackrabbit.oak.plugins.document.StableRevisionComparator;
+import org.apache.jackrabbit.oak.plugins.document.memory.MemoryDocumentStore;
+import com.google.common.collect.Lists;
+
 import org.h2.mvstore.WriteBuffer;
 import org.junit.Rule;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 public class DataTypeUtilTest {
@@ -159,6 +170,88 @@ public class DataTypeUtilTest {
         assertEquals(expected, DataTypeUtil.stateFromBuffer(ns, rb));
     }
 
+    @Test
+    public void childrenToBufferEmpty() {
+        DocumentNodeState.Children expected = new DocumentNodeState.Children();
+        DataTypeUtil.childrenToBuffer(expected, wb);
+        ByteBuffer rb = readBufferFrom(wb);
+        DocumentNodeState.Children children = DataTypeUtil.childrenFromBuffer(rb);
+        assertEquals(expected.asString(), children.asString());
+        assertFalse(children.hasMore());
+    }
+
+    @Test
+    public void childrenToBuffer() {
+        DocumentNodeState.Children expected = DocumentNodeState.Children.fromNames(
+                Lists.newArrayList("a", "node-1", "node-10", "node-2", "nodes", "z"), true);
+        DataTypeUtil.childrenToBuffer(expected, wb);
+        ByteBuffer rb = readBufferFrom(wb);
+        DocumentNodeState.Children children = DataTypeUtil.childrenFromBuffer(rb);
+        assertEquals(expected.asString(), children.asString());
+        assertEquals(expected.getNames(), children.getNames());
+        assertTrue(children.hasMore());
+    }
+
+    @Test
+    public void diffToBuffer() {
+        Map<Path, String> changes = new HashMap<>();
+        changes.put(Path.ROOT, "^\"foo\":{}");
+        changes.put(Path.fromString("/foo"), "-\"bar\"");
+        LocalDiffCache.Diff expected = new LocalDiffCache.Diff(changes, 0);
+        DataTypeUtil.diffToBuffer(expected, wb);
+        ByteBuffer rb = readBufferFrom(wb);
+        assertEquals(changes, DataTypeUtil.diffFromBuffer(rb).getChanges());
+    }
+
+    @Test
+    public void documentToBuffer() {
+        MemoryDocumentStore store = new MemoryDocumentStore();
+        Revision r1 = Revision.fromString("r9-0-1");
+        Revision r2 = Revision.fromString("br7-3-2");
+        TreeMap<Revision, Object> commits = new TreeMap<>(StableRevisionComparator.REVERSE);
+        commits.put(r1, "c");
+        commits.put(r2, "c-" + r1);
+        TreeMap<Revision, Object> values = new TreeMap<>(StableRevisionComparator.REVERSE);
+        values.put(r1, "\"value\"");
+        values.put(r2, null);
+        NodeDocument expected = new NodeDocument(store, Revision.getCurrentTimestamp());
+        expected.put(NodeDocument.ID, "2:/foo/bar");
+        expected.put(NodeDocument.MOD_COUNT, 42L);
+        expected.put(NodeDocument.MODIFIED_IN_SECS, 1234567);
+        expected.put(NodeDocument.HAS_BINARY_FLAG, true);
+        expected.put(NodeDocument.DELETED_ONCE, false);
+        expected.put("_revisions", commits);
+        expected.put("prop", values);
+        expected.put("other", "c");
+        expected.put("empty", new TreeMap<Revision, Object>(StableRevisionComparator.REVERSE));
+        expected.put("removed", null);
+        DataTypeUtil.documentToBuffer(expected, wb);
+        ByteBuffer rb = readBufferFrom(wb);
+        NodeDocument doc = DataTypeUtil.documentFromBuffer(store, rb);
+        assertEquals(expected.asString(), doc.asString());
+        assertTrue(doc.isSealed());
+        assertEquals(1234567L, doc.get(NodeDocument.MODIFIED_IN_SECS));
+        assertNull(doc.get("removed"));
+        assertEquals(values, doc.get("prop"));
+        assertEquals("c", doc.get("other"));
+    }
+
+    @Test
+    public void documentToBufferSmallerThanString() {
+        MemoryDocumentStore store = new MemoryDocumentStore();
+        TreeMap<Revision, Object> commits = new TreeMap<>(StableRevisionComparator.REVERSE);
+        for (int i = 0; i < 100; i++) {
+            commits.put(new Revision(1500000000000L + i, 0, 1), "c");
+        }
+        NodeDocument doc = new NodeDocument(store, Revision.getCurrentTimestamp());
+        doc.put(NodeDocument.ID, "1:/foo");
+        doc.put("_revisions", commits);
+        DataTypeUtil.documentToBuffer(doc, wb);
+        WriteBuffer legacy = new WriteBuffer(1024);
+        new ValueDataType(null, store, CacheType.PREV_DOCUMENT, true).write(legacy, doc);
+        assertTrue(wb.position() < legacy.position());
+    }
+
     private static ByteBuffer readBufferFrom(WriteBuffer wb) {
         ByteBuffer rb = wb.getBuffer();
         rb.rewind();
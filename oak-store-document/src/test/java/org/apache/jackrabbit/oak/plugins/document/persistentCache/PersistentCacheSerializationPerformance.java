@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document.persistentCache;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.oak.plugins.document.NodeDocument;
+import org.apache.jackrabbit.oak.plugins.document.Revision;
+import org.apache.jackrabbit.oak.plugins.document.StableRevisionComparator;
+import org.apache.jackrabbit.oak.plugins.document.memory.MemoryDocumentStore;
+import org.apache.jackrabbit.oak.plugins.document.util.StringValue;
+import org.h2.mvstore.MVMap;
+import org.junit.Test;
+
+/**
+ * Compares the file size and the latency of cache hits of previous documents
+ * serialized as JSON strings (version 1) and in the binary format (version 2).
+ */
+public class PersistentCacheSerializationPerformance {
+
+    private static final File DIRECTORY = new File("target/cacheSerialization");
+
+    private static final int DOCUMENTS = Integer.getInteger("documents", 10000);
+
+    private static final int REVISIONS = Integer.getInteger("revisions", 50);
+
+    @Test
+    public void prevDocuments() throws Exception {
+        MemoryDocumentStore store = new MemoryDocumentStore();
+        List<NodeDocument> docs = new ArrayList<>();
+        for (int i = 0; i < DOCUMENTS; i++) {
+            docs.add(createDocument(store, i));
+        }
+        System.out.printf("%8s %12s %12s%n", "format", "file KB", "hit us");
+        for (int k = 0; k < 2; k++) {
+            // the first round warms up
+            for (boolean legacy : new boolean[]{true, false}) {
+                long[] result = run(store, docs, legacy);
+                System.out.printf("%8s %12d %12.2f%n", legacy ? "v1" : "v2",
+                        result[0] / 1024, result[1] / 1000.0 / docs.size());
+            }
+        }
+    }
+
+    /**
+     * @return the file size in bytes and the time in nanoseconds it took to
+     *          read all documents from the cache.
+     */
+    private static long[] run(MemoryDocumentStore store,
+                              List<NodeDocument> docs,
+                              boolean legacy) throws Exception {
+        FileUtils.deleteDirectory(DIRECTORY);
+        CacheType type = CacheType.PREV_DOCUMENT;
+        MVMap.Builder<StringValue, NodeDocument> b =
+                new MVMap.Builder<StringValue, NodeDocument>()
+                        .keyType(new KeyDataType(type))
+                        .valueType(new ValueDataType(null, store, type, legacy));
+        PersistentCache cache = new PersistentCache(DIRECTORY.getPath());
+        try {
+            CacheMap<StringValue, NodeDocument> map = cache.openMap(0, "test", b);
+            for (NodeDocument doc : docs) {
+                map.put(new StringValue(doc.getId()), doc);
+            }
+        } finally {
+            cache.close();
+        }
+        long size = new File(DIRECTORY, "cache-0.data").length();
+
+        cache = new PersistentCache(DIRECTORY.getPath());
+        try {
+            CacheMap<StringValue, NodeDocument> map = cache.openMap(0, "test", b);
+            long time = System.nanoTime();
+            for (NodeDocument doc : docs) {
+                if (map.get(new StringValue(doc.getId())) == null) {
+                    throw new IllegalStateException("Missing " + doc.getId());
+                }
+            }
+            time = System.nanoTime() - time;
+            return new long[]{size, time};
+        } finally {
+            cache.close();
+            FileUtils.deleteDirectory(DIRECTORY);
+        }
+    }
+
+    private static NodeDocument createDocument(MemoryDocumentStore store, int i) {
+        long timestamp = Revision.getCurrentTimestamp();
+        NodeDocument doc = new NodeDocument(store, timestamp);
+        doc.put(NodeDocument.ID, "2:p/node-" + i + "/" + new Revision(timestamp, i, 1) + "/0");
+        doc.put(NodeDocument.MOD_COUNT, 1L);
+        doc.put(NodeDocument.MODIFIED_IN_SECS, TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()));
+        TreeMap<Revision, Object> revisions = new TreeMap<>(StableRevisionComparator.REVERSE);
+        TreeMap<Revision, Object> values = new TreeMap<>(StableRevisionComparator.REVERSE);
+        for (int r = 0; r < REVISIONS; r++) {
+            Revision rev = new Revision(timestamp + r, i, 1);
+            revisions.put(rev, "c");
+            values.put(rev, "\"value-" + r + "\"");
+        }
+        doc.put("_revisions", revisions);
+        doc.put("prop", values);
+        return doc;
+    }
+}